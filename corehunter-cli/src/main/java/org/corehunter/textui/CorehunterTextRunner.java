@@ -15,6 +15,7 @@
 package org.corehunter.textui;
 
 import java.io.File;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -29,14 +30,27 @@ import org.apache.commons.cli.ParseException;
 import org.corehunter.Constants;
 import static org.corehunter.Constants.SECOND;
 import org.corehunter.CoreHunterException;
+import org.corehunter.model.Matrix;
+import org.corehunter.model.accession.Accession;
+import org.corehunter.model.impl.AbstractFileUtility;
+import org.corehunter.model.impl.BinaryDataFileFormat;
 import org.corehunter.model.ssr.AccessionSSRMarkerMatrix;
+import org.corehunter.model.ssr.impl.AccessionSSRMarkerMatrixBinaryDataFileReader;
+import org.corehunter.model.ssr.impl.AccessionSSRMarkerMatrixBinaryDataFileWriter;
 import org.corehunter.model.ssr.impl.AccessionSSRMarkerMatrixListImplDataFileReader;
-import org.corehunter.model.ssr.impl.AccessionSSRMarkerMatrixListImplDataFileWriter;
+import org.corehunter.model.ssr.impl.AccessionSSRMarkerMatrixSubsetDataFileWriter;
+import org.corehunter.model.variable.Variable;
+import org.corehunter.model.variable.impl.AccessionVariableMatrixBinaryDataFileWriter;
+import org.corehunter.model.variable.impl.AccessionVariableMatrixListImplDataFileReader;
 import org.corehunter.neighbourhood.SubsetNeighbourhood;
 import org.corehunter.objectivefunction.DuplicateMeasureException;
 import org.corehunter.objectivefunction.MultipleObjectiveFunction;
 import org.corehunter.objectivefunction.UnknownMeasureException;
+import org.corehunter.objectivefunction.impl.DistanceMatrixFile;
+import org.corehunter.objectivefunction.impl.ObjectiveFunctionWithData;
+import org.corehunter.objectivefunction.ssr.AbstractAccessionSSRDistanceMeasure;
 import org.corehunter.objectivefunction.ssr.MeasureFactorySSR;
+import org.corehunter.objectivefunction.ssr.SSROjectiveFunction;
 import org.corehunter.search.Search;
 import org.corehunter.search.solution.SubsetSolution;
 import org.corehunter.utils.CoreSubsetSearch;
@@ -49,6 +63,8 @@ import org.corehunter.utils.CoreSubsetSearch;
 public final class CorehunterTextRunner
 {
 
+	private static final String	CONVERT_COMMAND	                       = "convert";
+
 	private final String[]	    measureNames	                         = { "MR",
 	    "MRmin", "CE", "CEmin", "SH", "HE", "NE", "PN", "CV", "EX"	   };
 
@@ -86,6 +102,7 @@ public final class CorehunterTextRunner
 	private Options	            mixrepSearchOpts;
 	private Options	            lrSearchOpts;
 	private Options	            opts;
+	private Options	            convertOpts;
 
 	private double	            sampleIntensity;
 	private long   	            runtime;
@@ -123,6 +140,9 @@ public final class CorehunterTextRunner
 	private String	            collectionFile;
 	private String	            coresubsetFile;
 	private Map<String, Double>	measureWeights;
+	private File	              distanceMatrixDirectory;
+	private int	                precomputationThreadCount	             = -1;
+	private long	              distanceCacheSize	                     = -1;
 
 	private boolean	            remcSearch	                           = false;
 	private boolean	            exhSearch	                             = false;
@@ -152,6 +172,7 @@ public final class CorehunterTextRunner
 		mixrepSearchOpts = new Options();
 		lrSearchOpts = new Options();
 		opts = new Options();
+		convertOpts = new Options();
 
 		measureWeights = new HashMap<String, Double>();
 		collectionFile = coresubsetFile = null;
@@ -183,6 +204,12 @@ public final class CorehunterTextRunner
 
 	public void run(String[] args)
 	{
+		if (args.length > 0 && CONVERT_COMMAND.equals(args[0]))
+		{
+			convert(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+
 		try
     {
 	    setupOptions();
@@ -191,10 +218,19 @@ public final class CorehunterTextRunner
 	    	showUsage();
 	    }
 
-	    // try to create dataset
+	    // try to create dataset, from a binary data file if converted before
 	    System.out.println("Reading dataset...");
-	    AccessionSSRMarkerMatrix<Integer> dataset = new AccessionSSRMarkerMatrixListImplDataFileReader(
-	        new File(collectionFile)).readData();
+	    File file = new File(collectionFile);
+	    AccessionSSRMarkerMatrix<Integer> dataset;
+	    
+	    if (BinaryDataFileFormat.getDataType(file) == BinaryDataFileFormat.SSR_DATA)
+	    {
+	    	dataset = new AccessionSSRMarkerMatrixBinaryDataFileReader(file).readData();
+	    }
+	    else
+	    {
+	    	dataset = new AccessionSSRMarkerMatrixListImplDataFileReader(file).readData();
+	    }
 
 	    if (dataset == null)
 	    {
@@ -240,8 +276,36 @@ public final class CorehunterTextRunner
 	    		Double weight = measureWeights.get(measure);
 	    		try
 	    		{
-	    			objectiveFunction.addObjectiveFunction(
-	    			    MeasureFactorySSR.createMeasure(measure), weight.doubleValue());
+	    			SSROjectiveFunction<Integer> measureFunction = MeasureFactorySSR
+	    			    .createMeasure(measure);
+
+	    			if (distanceMatrixDirectory != null
+	    			    && measureFunction instanceof AbstractAccessionSSRDistanceMeasure)
+	    			{
+	    				// mean and min variants share the distances of the same measure
+	    				((AbstractAccessionSSRDistanceMeasure<Integer>) measureFunction)
+	    				    .setDistanceMatrixFile(new File(distanceMatrixDirectory, file
+	    				        .getName()
+	    				        + "."
+	    				        + measureFunction.getClass().getSimpleName()
+	    				        + DistanceMatrixFile.FILE_EXTENSION));
+	    			}
+
+	    			if (distanceCacheSize >= 0
+	    			    && measureFunction instanceof AbstractAccessionSSRDistanceMeasure)
+	    			{
+	    				((AbstractAccessionSSRDistanceMeasure<Integer>) measureFunction)
+	    				    .setMaximumDistanceCacheSize(distanceCacheSize);
+	    			}
+
+	    			if (measureFunction instanceof ObjectiveFunctionWithData)
+	    			{
+	    				((ObjectiveFunctionWithData<SubsetSolution<Integer>, AccessionSSRMarkerMatrix<Integer>>) measureFunction)
+	    				    .setData(dataset);
+	    			}
+
+	    			objectiveFunction.addObjectiveFunction(measureFunction,
+	    			    weight.doubleValue());
 	    		}
 	    		catch (DuplicateMeasureException dme)
 	    		{
@@ -260,6 +324,12 @@ public final class CorehunterTextRunner
 	    	}
 	    }
 
+	    if (precomputationThreadCount >= 0)
+	    {
+	    	System.out.println("Precomputing distances...");
+	    	objectiveFunction.precomputeDistances(precomputationThreadCount, null);
+	    }
+
 	    // System.out.println("Collection score: " +
 	    // pm.calculate(ac.getAccessions()));
 
@@ -416,9 +486,10 @@ public final class CorehunterTextRunner
 	    	System.out.println(comp + ": " + scores.get(comp));
 	    }
 
-	    AccessionSSRMarkerMatrixListImplDataFileWriter writer = new AccessionSSRMarkerMatrixListImplDataFileWriter(new File(coresubsetFile)) ;
+	    // the core is projected straight from the dataset, without creating a matrix of the core
+	    AccessionSSRMarkerMatrixSubsetDataFileWriter writer = new AccessionSSRMarkerMatrixSubsetDataFileWriter(new File(coresubsetFile)) ;
 	    
-	    writer.setIndices(dataset.getIndices()) ;
+	    writer.setIndices(search.getBestSolution().getSubsetIndices()) ;
 	    
 	    writer.writeData(dataset);
     }
@@ -428,6 +499,118 @@ public final class CorehunterTextRunner
     }
 	}
 
+	/**
+	 * Converts a text data file to a binary data file, which is read much
+	 * faster by later runs
+	 * 
+	 * @param args the arguments following the convert command
+	 */
+	@SuppressWarnings("static-access")
+	private void convert(String[] args)
+	{
+		convertOpts.addOption(new Option("variables",
+		    "convert a variable dataset instead of an SSR dataset"));
+		convertOpts.addOption(OptionBuilder.withArgName("delimiter").hasArg()
+		    .withDescription("delimiter of the text file, a single character or "
+		        + "'tab', defaults to tab").create("delimiter"));
+
+		char delimiter = AbstractFileUtility.TAB_DELIMITER;
+		boolean variables;
+		File textFile;
+		File binaryFile;
+
+		try
+		{
+			CommandLine cl = new GnuParser().parse(convertOpts, args);
+
+			if (cl.getArgs().length != 2)
+			{
+				System.err.println("\n2 required arguments expected");
+				showConvertUsage();
+				return;
+			}
+
+			if (cl.hasOption("delimiter"))
+			{
+				String value = cl.getOptionValue("delimiter");
+
+				if (value.equalsIgnoreCase("tab"))
+				{
+					delimiter = AbstractFileUtility.TAB_DELIMITER;
+				}
+				else
+					if (value.length() == 1)
+					{
+						delimiter = value.charAt(0);
+					}
+					else
+					{
+						System.err
+						    .println("\ndelimiter must be a single character or 'tab'");
+						showConvertUsage();
+						return;
+					}
+			}
+
+			variables = cl.hasOption("variables");
+			textFile = new File(cl.getArgs()[0]);
+			binaryFile = new File(cl.getArgs()[1]);
+		}
+		catch (ParseException e)
+		{
+			System.err.println("");
+			System.err.println(e.getMessage());
+			showConvertUsage();
+			return;
+		}
+
+		try
+		{
+			System.out.println("Reading dataset...");
+
+			if (variables)
+			{
+				Matrix<Integer, Object, Accession, Variable> dataset = new AccessionVariableMatrixListImplDataFileReader(
+				    textFile, delimiter).readData();
+
+				System.out.println("Writing binary dataset...");
+				new AccessionVariableMatrixBinaryDataFileWriter(binaryFile)
+				    .writeData(dataset);
+			}
+			else
+			{
+				AccessionSSRMarkerMatrix<Integer> dataset = new AccessionSSRMarkerMatrixListImplDataFileReader(
+				    textFile, delimiter).readData();
+
+				System.out.println("Writing binary dataset...");
+				new AccessionSSRMarkerMatrixBinaryDataFileWriter(binaryFile)
+				    .writeData(dataset);
+			}
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace(System.out);
+		}
+	}
+
+	private void showConvertUsage()
+	{
+		System.out.println("");
+		System.out
+		    .println("usage: corehunter convert [options] <text_file> <binary_file>");
+		System.out.println("");
+		System.out
+		    .println("\tConverts a dataset to a binary file, which can be given as collection file"
+		        + "\n\tto later runs and is read much faster than the text file.");
+		System.out.println("");
+
+		HelpFormatter f = new HelpFormatter();
+		f.setSyntaxPrefix("");
+
+		f.printHelp("convert options:", convertOpts);
+		System.out.println("");
+	}
+
 	@SuppressWarnings("static-access")
 	private void setupOptions()
 	{
@@ -554,6 +737,27 @@ public final class CorehunterTextRunner
 		        "specify minimum and maximum size of core (number of accessions)"
 		            + "\nNote: this overrides sample_intensity")
 		    .create("sample_size"));
+		commonSearchOpts
+		    .addOption(OptionBuilder
+		        .withArgName("dir")
+		        .hasArg()
+		        .withDescription(
+		            "store the pairwise distances of distance measures in directory dir and reuse them in later runs on the same dataset")
+		        .create("distance_matrix_dir"));
+		commonSearchOpts
+		    .addOption(OptionBuilder
+		        .withArgName("t")
+		        .hasArg()
+		        .withDescription(
+		            "precompute the pairwise distances of distance measures on t threads before searching, 0 uses all processors")
+		        .create("precompute_threads"));
+		commonSearchOpts
+		    .addOption(OptionBuilder
+		        .withArgName("m")
+		        .hasArg()
+		        .withDescription(
+		            "cache at most m megabytes of pairwise distances per distance measure, evicting the least recently used distances of larger datasets, 0 disables the cache")
+		        .create("distance_cache_mb"));
 
 		// set up the REMC advanced search option group
 		remcSearchOpts.addOption(OptionBuilder
@@ -838,6 +1042,58 @@ public final class CorehunterTextRunner
 				}
 			}
 
+			// check for a directory to store distance matrices in
+			if (cl.hasOption("distance_matrix_dir"))
+			{
+				distanceMatrixDirectory = new File(
+				    cl.getOptionValue("distance_matrix_dir"));
+
+				if (!distanceMatrixDirectory.isDirectory()
+				    && !distanceMatrixDirectory.mkdirs())
+				{
+					System.err
+					    .println("\ndistance_matrix_dir must be a directory that can be created");
+					return false;
+				}
+			}
+
+			// check for the number of threads to precompute distances on
+			if (cl.hasOption("precompute_threads"))
+			{
+				try
+				{
+					precomputationThreadCount = Integer.parseInt(cl
+					    .getOptionValue("precompute_threads"));
+					if (precomputationThreadCount < 0)
+						throw new NumberFormatException();
+				}
+				catch (NumberFormatException nfe)
+				{
+					System.err
+					    .println("\nprecompute_threads must be a non-negative integer");
+					return false;
+				}
+			}
+
+			// check for the size of the distance caches
+			if (cl.hasOption("distance_cache_mb"))
+			{
+				try
+				{
+					distanceCacheSize = Long.parseLong(cl
+					    .getOptionValue("distance_cache_mb"));
+					if (distanceCacheSize < 0)
+						throw new NumberFormatException();
+					distanceCacheSize *= 1024 * 1024;
+				}
+				catch (NumberFormatException nfe)
+				{
+					System.err
+					    .println("\ndistance_cache_mb must be a non-negative integer");
+					return false;
+				}
+			}
+
 			// make sure sampling intensity is between 0 and 1 inclusive
 			if (cl.hasOption("sample_intensity"))
 			{
@@ -1312,6 +1568,9 @@ public final class CorehunterTextRunner
 		System.out
 		    .println("\tcorehunter -remc -MR 0.7 -SH 0.3 collection.dat coresubset.dat");
 		System.out.println("");
+		System.out
+		    .println("\tThe collection file may also be a binary file created with 'corehunter convert'.");
+		System.out.println("");
 
 		HelpFormatter f = new HelpFormatter();
 		f.setSyntaxPrefix("");
@@ -0,0 +1,417 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.model;
+
+import java.util.List;
+
+/**
+ * 128-bit digest of the contents of a dataset. Digests are calculated in a
+ * single pass over the values with a {@link Builder}, after which datasets
+ * can be compared, or used as keys of caches, in constant time.
+ *
+ * Values of different types are digested differently, so that the digests of
+ * two datasets are equal if their values are equal according to
+ * {@link Object#equals(Object)}, regardless of how the values are stored.
+ * Different contents have the same digest with a negligible probability.
+ *
+ * Values of types that are not known to the {@link Builder} are digested by
+ * their hash codes only. A digest of such values is not exact: different
+ * digests still imply different contents, but equal digests do not imply
+ * equal contents, see {@link #isExact()}.
+ */
+public final class ContentDigest
+{
+	private final long	  high;
+	private final long	  low;
+	private final boolean	exact;
+
+	/**
+	 * Creates an exact digest
+	 *
+	 * @param high the high 64 bits of the digest
+	 * @param low the low 64 bits of the digest
+	 */
+	public ContentDigest(long high, long low)
+	{
+		this(high, low, true);
+	}
+
+	/**
+	 * Creates a digest
+	 *
+	 * @param high the high 64 bits of the digest
+	 * @param low the low 64 bits of the digest
+	 * @param exact <code>true</code> if the digest covers the values
+	 *          themselves, <code>false</code> if it covers the hash codes of
+	 *          some values only
+	 */
+	public ContentDigest(long high, long low, boolean exact)
+	{
+		this.high = high;
+		this.low = low;
+		this.exact = exact;
+	}
+
+	/**
+	 * Gets the high 64 bits of the digest
+	 *
+	 * @return the high 64 bits of the digest
+	 */
+	public long getHigh()
+	{
+		return high;
+	}
+
+	/**
+	 * Gets the low 64 bits of the digest
+	 *
+	 * @return the low 64 bits of the digest
+	 */
+	public long getLow()
+	{
+		return low;
+	}
+
+	/**
+	 * Indicates if the digest covers the values themselves. If not, contents
+	 * with equal digests must still be compared value by value.
+	 *
+	 * @return <code>true</code> if the digest covers the values themselves
+	 */
+	public boolean isExact()
+	{
+		return exact;
+	}
+
+	@Override
+	public boolean equals(Object object)
+	{
+		if (object instanceof ContentDigest)
+		{
+			return high == ((ContentDigest) object).high
+			    && low == ((ContentDigest) object).low;
+		}
+		else
+		{
+			return false;
+		}
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return (int) (low ^ (low >>> 32));
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("%016x%016x", high, low);
+	}
+
+	/**
+	 * Combines the digests of the rows of a matrix, in their order, into the
+	 * digest of the matrix. The rows may be built in any order, for example
+	 * while the values of a matrix are read column by column.
+	 *
+	 * @param rows the builders of the digests of the rows
+	 * @return the digest of the matrix
+	 */
+	public static ContentDigest combineRows(Builder[] rows)
+	{
+		Builder builder = new Builder();
+
+		for (Builder row : rows)
+		{
+			builder.addDigest(row.build());
+		}
+
+		return builder.build();
+	}
+
+	/**
+	 * Calculates a digest from a stream of values, using the block mixing and
+	 * finalisation of MurmurHash3 (x64, 128-bit). Each value starts with a word
+	 * holding its type, so values of different types never produce the same
+	 * words. Lists start with a word holding their size, so nested lists of
+	 * different shapes never produce the same words either.
+	 */
+	public static final class Builder
+	{
+		private static final long	C1	         = 0x87c37b91114253d5L;
+		private static final long	C2	         = 0x4cf5ad432745937fL;
+
+		private static final int	NULL	       = 1;
+		private static final int	BOOLEAN	     = 2;
+		private static final int	SHORT	       = 3;
+		private static final int	INTEGER	     = 4;
+		private static final int	LONG	       = 5;
+		private static final int	FLOAT	       = 6;
+		private static final int	DOUBLE	     = 7;
+		private static final int	STRING	     = 8;
+		private static final int	OTHER	       = 9;
+		private static final int	LIST	       = 10;
+		private static final int	DIGEST	     = 11;
+
+		private long	            h1;
+		private long	            h2;
+		private long	            pending;
+		private long	            wordCount;
+		private boolean	          exact	       = true;
+
+		/**
+		 * Adds a value. Lists are added by their size and then element by
+		 * element, other values according to their type. Values of unknown types
+		 * are added by their hash code and class, which makes the digest
+		 * inexact.
+		 *
+		 * @param value the value, may be <code>null</code>
+		 * @return this builder
+		 */
+		public Builder add(Object value)
+		{
+			if (value == null)
+			{
+				return addNull();
+			}
+
+			if (value instanceof Double)
+			{
+				return addDouble((Double) value);
+			}
+
+			if (value instanceof Integer)
+			{
+				return addInt((Integer) value);
+			}
+
+			if (value instanceof List)
+			{
+				startList(((List<?>) value).size());
+
+				for (Object element : (List<?>) value)
+				{
+					add(element);
+				}
+
+				return this;
+			}
+
+			if (value instanceof String)
+			{
+				return addString((String) value);
+			}
+
+			if (value instanceof Boolean)
+			{
+				addWord(BOOLEAN, (Boolean) value ? 1 : 0);
+				return this;
+			}
+
+			if (value instanceof Short)
+			{
+				addWord(SHORT, (Short) value);
+				return this;
+			}
+
+			if (value instanceof Long)
+			{
+				addWord(LONG, 0);
+				addWord((Long) value);
+				return this;
+			}
+
+			if (value instanceof Float)
+			{
+				addWord(FLOAT, Float.floatToIntBits((Float) value));
+				return this;
+			}
+
+			addWord(OTHER, value.hashCode());
+			addString(value.getClass().getName());
+			exact = false;
+			return this;
+		}
+
+		/**
+		 * Starts a list, as {@link #add(Object)} does for a {@link List} before
+		 * adding its elements
+		 *
+		 * @param size the number of elements that follow
+		 * @return this builder
+		 */
+		public Builder startList(int size)
+		{
+			addWord(LIST, size);
+			return this;
+		}
+
+		/**
+		 * Adds another digest, for example to combine the digest of a dataset
+		 * with other values. The result is only exact if both digests are.
+		 *
+		 * @param digest the digest
+		 * @return this builder
+		 */
+		public Builder addDigest(ContentDigest digest)
+		{
+			addWord(DIGEST, 0);
+			addWord(digest.getHigh());
+			addWord(digest.getLow());
+			exact = exact && digest.isExact();
+			return this;
+		}
+
+		/**
+		 * Adds a missing value, as {@link #add(Object)} adds <code>null</code>
+		 *
+		 * @return this builder
+		 */
+		public Builder addNull()
+		{
+			addWord(NULL, 0);
+			return this;
+		}
+
+		/**
+		 * Adds an integer value, as {@link #add(Object)} adds an {@link Integer}
+		 *
+		 * @param value the value
+		 * @return this builder
+		 */
+		public Builder addInt(int value)
+		{
+			addWord(INTEGER, value);
+			return this;
+		}
+
+		/**
+		 * Adds a double value, as {@link #add(Object)} adds a {@link Double}
+		 *
+		 * @param value the value
+		 * @return this builder
+		 */
+		public Builder addDouble(double value)
+		{
+			addWord(DOUBLE, 0);
+			addWord(Double.doubleToLongBits(value));
+			return this;
+		}
+
+		/**
+		 * Adds a string, as {@link #add(Object)} adds a {@link String}
+		 *
+		 * @param value the string
+		 * @return this builder
+		 */
+		public Builder addString(String value)
+		{
+			int length = value.length();
+
+			addWord(STRING, length);
+
+			for (int i = 0; i < length; i += 4)
+			{
+				long word = 0;
+
+				for (int j = i; j < length && j < i + 4; ++j)
+				{
+					word = (word << 16) | value.charAt(j);
+				}
+
+				addWord(word);
+			}
+
+			return this;
+		}
+
+		/**
+		 * Calculates the digest of the values added so far
+		 *
+		 * @return the digest
+		 */
+		public ContentDigest build()
+		{
+			long h1 = this.h1;
+			long h2 = this.h2;
+
+			if ((wordCount & 1) != 0)
+			{
+				h1 ^= mixK1(pending);
+			}
+
+			h1 ^= wordCount * 8;
+			h2 ^= wordCount * 8;
+
+			h1 += h2;
+			h2 += h1;
+
+			h1 = fmix(h1);
+			h2 = fmix(h2);
+
+			h1 += h2;
+			h2 += h1;
+
+			return new ContentDigest(h1, h2, exact);
+		}
+
+		private void addWord(int type, int payload)
+		{
+			addWord(((long) type << 32) | (payload & 0xffffffffL));
+		}
+
+		private void addWord(long word)
+		{
+			if ((wordCount & 1) == 0)
+			{
+				pending = word;
+			}
+			else
+			{
+				h1 ^= mixK1(pending);
+				h1 = Long.rotateLeft(h1, 27);
+				h1 += h2;
+				h1 = h1 * 5 + 0x52dce729;
+
+				h2 ^= mixK2(word);
+				h2 = Long.rotateLeft(h2, 31);
+				h2 += h1;
+				h2 = h2 * 5 + 0x38495ab5;
+			}
+
+			++wordCount;
+		}
+
+		private static long mixK1(long k1)
+		{
+			return Long.rotateLeft(k1 * C1, 31) * C2;
+		}
+
+		private static long mixK2(long k2)
+		{
+			return Long.rotateLeft(k2 * C2, 33) * C1;
+		}
+
+		private static long fmix(long k)
+		{
+			k ^= k >>> 33;
+			k *= 0xff51afd7ed558ccdL;
+			k ^= k >>> 33;
+			k *= 0xc4ceb9fe1a85ec53L;
+			k ^= k >>> 33;
+
+			return k;
+		}
+	}
+}
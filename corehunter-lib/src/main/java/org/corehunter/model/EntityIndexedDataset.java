@@ -18,5 +18,7 @@ public interface EntityIndexedDataset<IndexType, ValueType extends Entity> exten
 {
 	public ValueType getElementByName(String name) throws UnknownEntityException;
         public IndexType getIndexByName(String name) throws UnknownEntityException;
+	public ValueType getElementByUniqueIdentifier(String uniqueIdentifier) throws UnknownEntityException;
+	public IndexType getIndexByUniqueIdentifier(String uniqueIdentifier) throws UnknownEntityException;
         
 }
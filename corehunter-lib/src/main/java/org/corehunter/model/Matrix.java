@@ -37,6 +37,15 @@ public interface Matrix<
 	
 	public List<DataType> getRowElements(RowHeaderType rowHeader) throws UnknownEntityException ;
 	
+	/**
+	 * Gets the digest of the elements of the matrix, see {@link ContentDigest}.
+	 * Matrices with equal elements have equal digests, regardless of how the
+	 * elements are stored.
+	 * 
+	 * @return the digest of the elements
+	 */
+	public ContentDigest getContentDigest() ;
+	
 	//public List<Double> getColumnElements(IndexType index) throws UnknownIndexException ;
 	
 	//public List<Double> getColumnElements(RowHeaderType rowHeader) throws UnknownIndexException ;
@@ -0,0 +1,53 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.model.distance;
+
+import org.corehunter.model.Matrix;
+import org.corehunter.model.accession.Accession;
+
+/**
+ * Symmetric matrix of precomputed distances between accessions, with the
+ * accessions as both rows and columns. The distance of an accession to itself
+ * is always zero, so only the distances between pairs of different accessions
+ * are stored, as the upper triangle of the matrix, row by row. The distance
+ * between the accessions at positions <code>i &lt; j</code> is stored at
+ * position <code>i * (2n - i - 1) / 2 + j - i - 1</code>, where
+ * <code>n</code> is the number of accessions.
+ * 
+ * Distances are looked up in constant time, so distance based objective
+ * functions can be evaluated without any marker data.
+ */
+public interface AccessionDistanceMatrix extends
+    Matrix<Integer, Double, Accession, Accession>
+{
+	/**
+	 * Gets the distance between two accessions
+	 * 
+	 * @param accessionIndex1 the index of the first accession
+	 * @param accessionIndex2 the index of the second accession
+	 * @return the distance, <code>0</code> if the indices are equal
+	 */
+	public double getDistance(int accessionIndex1, int accessionIndex2);
+
+	/**
+	 * Sets the distance between two different accessions, which is also the
+	 * distance between the second and the first accession
+	 * 
+	 * @param accessionIndex1 the index of the first accession
+	 * @param accessionIndex2 the index of the second accession
+	 * @param distance the distance
+	 */
+	public void setDistance(int accessionIndex1, int accessionIndex2,
+	    double distance);
+}
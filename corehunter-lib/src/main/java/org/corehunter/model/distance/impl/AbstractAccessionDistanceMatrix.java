@@ -0,0 +1,202 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.model.distance.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.ContentDigest;
+import org.corehunter.model.EntityIndexedDataset;
+import org.corehunter.model.UnknownIndexException;
+import org.corehunter.model.accession.Accession;
+import org.corehunter.model.distance.AccessionDistanceMatrix;
+import org.corehunter.model.impl.AbstractEntityMatrix;
+
+/**
+ * Base class for distance matrices. Implements the list based methods of the
+ * matrix on top of the index based methods, and maps pairs of accessions to
+ * positions in the upper triangle, so that sub-classes only need to provide
+ * the storage of the distances. The lists returned by the list based methods
+ * are copies, changing them has no effect on the matrix.
+ */
+public abstract class AbstractAccessionDistanceMatrix extends
+    AbstractEntityMatrix<Integer, Double, Accession, Accession> implements
+    AccessionDistanceMatrix
+{
+	private int	size;
+
+	public AbstractAccessionDistanceMatrix(String uniqueIdentifier,
+	    String name, EntityIndexedDataset<Integer, Accession> accessions)
+	{
+		super(uniqueIdentifier, name, accessions, accessions);
+
+		this.size = accessions.getSize();
+	}
+
+	/**
+	 * Gets the number of distances stored for a given number of accessions
+	 * 
+	 * @param accessionCount the number of accessions
+	 * @return the number of distances
+	 */
+	public static long getDistanceCount(int accessionCount)
+	{
+		return (long) accessionCount * (accessionCount - 1) / 2;
+	}
+
+	/**
+	 * Gets the position of the distance between two different accessions
+	 * 
+	 * @param accessionCount the number of accessions
+	 * @param accessionIndex1 the index of the first accession
+	 * @param accessionIndex2 the index of the second accession
+	 * @return the position of the distance in the upper triangle
+	 */
+	public static long getPosition(int accessionCount, int accessionIndex1,
+	    int accessionIndex2)
+	{
+		int i = Math.min(accessionIndex1, accessionIndex2);
+		int j = Math.max(accessionIndex1, accessionIndex2);
+
+		return (long) i * (2L * accessionCount - i - 1) / 2 + j - i - 1;
+	}
+
+	@Override
+	public void validate() throws CoreHunterException
+	{
+		super.validate();
+
+		if (size != getRowHeaders().getSize())
+		{
+			throw new CoreHunterException(
+			    "Number of accessions has changed since the matrix was created!");
+		}
+	}
+
+	@Override
+	public final List<Integer> getIndices()
+	{
+		return getRowHeaders().getIndices();
+	}
+
+	@Override
+	public final int getSize()
+	{
+		return size;
+	}
+
+	@Override
+	public final double getDistance(int accessionIndex1, int accessionIndex2)
+	{
+		if (accessionIndex1 == accessionIndex2)
+		{
+			return 0;
+		}
+
+		return getValue(getPosition(size, accessionIndex1, accessionIndex2));
+	}
+
+	@Override
+	public final void setDistance(int accessionIndex1, int accessionIndex2,
+	    double distance)
+	{
+		if (accessionIndex1 == accessionIndex2)
+		{
+			throw new IllegalArgumentException(
+			    "The distance of an accession to itself is always zero");
+		}
+
+		storeValue(getPosition(size, accessionIndex1, accessionIndex2), distance);
+		invalidateContentDigest();
+	}
+
+	@Override
+	public final Double getElement(Integer rowIndex, Integer columnIndex)
+	    throws UnknownIndexException
+	{
+		checkIndex(rowIndex);
+		checkIndex(columnIndex);
+
+		return getDistance(rowIndex, columnIndex);
+	}
+
+	@Override
+	public final List<Double> getRowElements(Integer index)
+	    throws UnknownIndexException
+	{
+		checkIndex(index);
+
+		List<Double> row = new ArrayList<Double>(size);
+
+		for (int j = 0; j < size; ++j)
+		{
+			row.add(getDistance(index, j));
+		}
+
+		return row;
+	}
+
+	/**
+	 * Gets a distance
+	 * 
+	 * @param position the position of the distance in the upper triangle
+	 * @return the distance
+	 */
+	protected abstract double getValue(long position);
+
+	/**
+	 * Stores a distance
+	 * 
+	 * @param position the position of the distance in the upper triangle
+	 * @param distance the distance
+	 */
+	protected abstract void storeValue(long position, double distance);
+
+	@Override
+	protected void addContent(ContentDigest.Builder builder)
+	{
+		for (int i = 0; i < size; ++i)
+		{
+			ContentDigest.Builder row = new ContentDigest.Builder();
+			row.startList(size);
+
+			for (int j = 0; j < size; ++j)
+			{
+				row.addDouble(getDistance(i, j));
+			}
+
+			builder.addDigest(row.build());
+		}
+	}
+
+	/**
+	 * Sets the digest of the distances calculated while they were read, see
+	 * {@link AccessionDistanceMatrixDataFileReader}
+	 * 
+	 * @param digest the digest of the distances
+	 */
+	final void setLoadedContentDigest(ContentDigest digest)
+	{
+		setContentDigest(digest);
+	}
+
+	private void checkIndex(Integer index) throws UnknownIndexException
+	{
+		if (index == null || index < 0 || index >= size)
+		{
+			throw new UnknownIndexException("Unknown index : " + index);
+		}
+	}
+}
@@ -0,0 +1,94 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.model.distance.impl;
+
+import org.corehunter.model.EntityIndexedDataset;
+import org.corehunter.model.accession.Accession;
+import org.corehunter.model.distance.AccessionDistanceMatrix;
+
+/**
+ * Distance matrix that stores the distances in a single <code>double</code>
+ * array, as described in {@link AccessionDistanceMatrix}. The array can hold
+ * the distances of up to 65536 accessions.
+ */
+public class AccessionDistanceMatrixArrayImpl extends
+    AbstractAccessionDistanceMatrix
+{
+	private double[]	values;
+
+	/**
+	 * Creates a matrix in which all distances are zero
+	 * 
+	 * @param uniqueIdentifier the unique identifier of the matrix
+	 * @param name the name of the matrix
+	 * @param accessions the accessions
+	 */
+	public AccessionDistanceMatrixArrayImpl(String uniqueIdentifier,
+	    String name, EntityIndexedDataset<Integer, Accession> accessions)
+	{
+		this(uniqueIdentifier, name, accessions,
+		    new double[getArrayLength(accessions.getSize())]);
+	}
+
+	/**
+	 * Creates a matrix from the upper triangle of the distances. The array is
+	 * used directly, not copied.
+	 * 
+	 * @param uniqueIdentifier the unique identifier of the matrix
+	 * @param name the name of the matrix
+	 * @param accessions the accessions
+	 * @param values the distances, with at least
+	 *          {@link #getDistanceCount(int)} values
+	 */
+	public AccessionDistanceMatrixArrayImpl(String uniqueIdentifier,
+	    String name, EntityIndexedDataset<Integer, Accession> accessions,
+	    double[] values)
+	{
+		super(uniqueIdentifier, name, accessions);
+
+		this.values = values;
+
+		if (values.length < getDistanceCount(accessions.getSize()))
+		{
+			throw new IllegalArgumentException("Expected at least "
+			    + getDistanceCount(accessions.getSize()) + " distances but got "
+			    + values.length);
+		}
+	}
+
+	@Override
+	protected final double getValue(long position)
+	{
+		return values[(int) position];
+	}
+
+	@Override
+	protected final void storeValue(long position, double distance)
+	{
+		values[(int) position] = distance;
+	}
+
+	private static int getArrayLength(int accessionCount)
+	{
+		long count = getDistanceCount(accessionCount);
+
+		if (count > Integer.MAX_VALUE)
+		{
+			throw new IllegalArgumentException("Too many accessions for an array : "
+			    + accessionCount);
+		}
+
+		return (int) count;
+	}
+}
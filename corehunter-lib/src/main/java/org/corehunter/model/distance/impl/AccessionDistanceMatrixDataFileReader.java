@@ -0,0 +1,414 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.model.distance.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.ContentDigest;
+import org.corehunter.model.DataReader;
+import org.corehunter.model.EntityIndexedDataset;
+import org.corehunter.model.accession.Accession;
+import org.corehunter.model.accession.impl.AccessionImpl;
+import org.corehunter.model.distance.AccessionDistanceMatrix;
+import org.corehunter.model.distance.DistanceStorageType;
+import org.corehunter.model.impl.AbstractDataFileReader;
+import org.corehunter.model.impl.DataFileTokenizer;
+import org.corehunter.model.impl.OrderedEntityDatasetListImpl;
+
+/**
+ * Reads a matrix of precomputed distances between accessions. The first line
+ * contains a label followed by the names of the accessions, each following
+ * line the name of an accession, in the same order as the first line,
+ * followed by its distances to the other accessions, all separated by the
+ * delimiter. Either the full matrix is given, or only the lower triangle,
+ * with or without the diagonal, that is line <code>i</code> contains the
+ * distances to the first <code>i - 1</code> or <code>i</code> accessions.
+ * Distances must be non-negative, a full matrix must be symmetric and the
+ * diagonal must be zero. Accessions are indexed from 0 to n-1.
+ * 
+ * The number of accessions is known from the first line, so the distances are
+ * stored as soon as each line is read. By default the distances are stored in
+ * a <code>double</code> array, use {@link #setStorageType(DistanceStorageType)}
+ * to select another storage type. For the {@link DistanceStorageType#MAPPED}
+ * storage type the distances are written to the file given by
+ * {@link #setMappedFile(File)}, or to a temporary file if no file is given.
+ */
+public class AccessionDistanceMatrixDataFileReader extends
+    AbstractDataFileReader<AccessionDistanceMatrix> implements
+    DataReader<AccessionDistanceMatrix>
+{
+	private static final String	ACCESSION_DATASET_NAME_PREFIX	= "Accessions for ";
+	private char	              delimiter;
+	private DistanceStorageType	storageType	                  = DistanceStorageType.DOUBLE;
+	private File	              mappedFile;
+
+	public AccessionDistanceMatrixDataFileReader(File file)
+	{
+		super(file);
+		setDelimiter(TAB_DELIMITER);
+	}
+
+	public AccessionDistanceMatrixDataFileReader(File file, char delimiter)
+	{
+		super(file);
+		setDelimiter(delimiter);
+	}
+
+	public AccessionDistanceMatrixDataFileReader(String dataName, File file,
+	    char delimiter)
+	{
+		super(dataName, file);
+		setDelimiter(delimiter);
+	}
+
+	public AccessionDistanceMatrixDataFileReader(String dataUniqueIdentifier,
+	    String dataName, File file, char delimiter)
+	{
+		super(dataUniqueIdentifier, dataName, file);
+		setDelimiter(delimiter);
+	}
+
+	public final char getDelimiter()
+	{
+		return delimiter;
+	}
+
+	public final void setDelimiter(char delimiter)
+	{
+		this.delimiter = delimiter;
+	}
+
+	public final DistanceStorageType getStorageType()
+	{
+		return storageType;
+	}
+
+	public final void setStorageType(DistanceStorageType storageType)
+	{
+		this.storageType = storageType;
+	}
+
+	public final File getMappedFile()
+	{
+		return mappedFile;
+	}
+
+	public final void setMappedFile(File mappedFile)
+	{
+		this.mappedFile = mappedFile;
+	}
+
+	@Override
+	public AccessionDistanceMatrix readData() throws CoreHunterException
+	{
+		DataFileTokenizer reader = null;
+
+		try
+		{
+			reader = new DataFileTokenizer(openReader(), delimiter);
+
+			if (!reader.nextLine())
+			{
+				throw new CoreHunterException("Dataset is empty!");
+			}
+
+			List<Accession> accessions = new ArrayList<Accession>();
+
+			for (int i = 1; i < reader.getFieldCount(); i++)
+			{
+				accessions.add(createAccession(reader.getString(i).trim(), i - 1));
+			}
+
+			int accessionCount = accessions.size();
+
+			if (accessionCount < 2)
+			{
+				throw new CoreHunterException(
+				    "Dataset must contain at least 2 accessions");
+			}
+
+			AccessionDistanceMatrix matrix = createAccessionDistanceMatrix(
+			    getDataUniqueIdentifier(), getDataName(), createAccessionDataset(
+			        createAccessionDatasetName(), accessions));
+
+			// the digests of the rows, which receive their distances in the order
+			// of their columns from the full matrix as well as from the lower
+			// triangle
+			ContentDigest.Builder[] rows = new ContentDigest.Builder[accessionCount];
+
+			for (int i = 0; i < accessionCount; i++)
+			{
+				rows[i] = new ContentDigest.Builder();
+				rows[i].startList(accessionCount);
+			}
+
+			int lineNumber = 1;
+			int accessionIndex = 0;
+			int rowLength = -1;
+
+			while (reader.nextLine())
+			{
+				lineNumber++;
+
+				// skip blank lines
+				if (reader.getFieldCount() == 1 && reader.isBlank(0))
+				{
+					continue;
+				}
+
+				if (accessionIndex == accessionCount)
+				{
+					throw new CoreHunterException("Dataset has more than "
+					    + accessionCount + " accession lines, found line "
+					    + lineNumber);
+				}
+
+				String name = reader.getString(0).trim();
+
+				if (!name.equals(accessions.get(accessionIndex).getName()))
+				{
+					throw new CoreHunterException("Expected accession '"
+					    + accessions.get(accessionIndex).getName() + "' on line "
+					    + lineNumber + " but found '" + name + "'");
+				}
+
+				// the first line decides if the full matrix or the lower triangle,
+				// with or without the diagonal, is given
+				if (rowLength < 0)
+				{
+					rowLength = reader.getFieldCount() - 1;
+
+					if (rowLength != accessionCount && rowLength > 1)
+					{
+						throw new CoreHunterException(
+						    "Dataset is not properly formatted on line " + lineNumber
+						        + ". There should be 0, 1 or " + accessionCount
+						        + " distances, but found " + rowLength + " distances.");
+					}
+				}
+
+				int expected = rowLength == accessionCount ? accessionCount
+				    : accessionIndex + rowLength;
+
+				if (reader.getFieldCount() - 1 != expected)
+				{
+					throw new CoreHunterException(
+					    "Dataset is not properly formatted on line " + lineNumber
+					        + ". There should be an accession name followed by "
+					        + expected + " distances separated by a '" + delimiter
+					        + "', but found " + (reader.getFieldCount() - 1)
+					        + " distances.");
+				}
+
+				for (int j = 0; j < expected; j++)
+				{
+					double distance = parseDistance(reader, j + 1, name, accessions
+					    .get(j).getName(), lineNumber);
+
+					if (j == accessionIndex)
+					{
+						if (distance != 0)
+						{
+							throw new CoreHunterException("Distance of accession '" + name
+							    + "' to itself on line " + lineNumber + " must be zero");
+						}
+					}
+					else
+						if (j > accessionIndex)
+						{
+							matrix.setDistance(accessionIndex, j, distance);
+						}
+						else
+							if (rowLength == accessionCount)
+							{
+								// the distance was stored from the line of the other
+								// accession, compare them as stored to allow for rounding
+								double stored = matrix.getDistance(j, accessionIndex);
+
+								matrix.setDistance(j, accessionIndex, distance);
+
+								if (matrix.getDistance(j, accessionIndex) != stored)
+								{
+									throw new CoreHunterException("Distance between '" + name
+									    + "' and '" + accessions.get(j).getName()
+									    + "' on line " + lineNumber
+									    + " differs from the distance between '"
+									    + accessions.get(j).getName() + "' and '" + name
+									    + "', the matrix must be symmetric");
+								}
+							}
+							else
+							{
+								matrix.setDistance(j, accessionIndex, distance);
+							}
+				}
+
+				// the distances as stored, which may be rounded
+				if (rowLength == accessionCount)
+				{
+					for (int j = 0; j < accessionCount; j++)
+					{
+						rows[accessionIndex].addDouble(matrix.getDistance(accessionIndex,
+						    j));
+					}
+				}
+				else
+				{
+					for (int j = 0; j < accessionIndex; j++)
+					{
+						double stored = matrix.getDistance(accessionIndex, j);
+
+						rows[accessionIndex].addDouble(stored);
+						rows[j].addDouble(stored);
+					}
+
+					rows[accessionIndex].addDouble(matrix.getDistance(accessionIndex,
+					    accessionIndex));
+				}
+
+				accessionIndex++;
+			}
+
+			if (accessionIndex < accessionCount)
+			{
+				throw new CoreHunterException("Dataset has " + accessionIndex
+				    + " accession lines, expected " + accessionCount);
+			}
+
+			if (matrix instanceof AbstractAccessionDistanceMatrix)
+			{
+				((AbstractAccessionDistanceMatrix) matrix)
+				    .setLoadedContentDigest(ContentDigest.combineRows(rows));
+			}
+
+			return matrix;
+		}
+		catch (IOException e)
+		{
+			throw new CoreHunterException(e);
+		}
+		finally
+		{
+			if (reader != null)
+			{
+				try
+				{
+					reader.close();
+				}
+				catch (IOException e)
+				{
+					// ignore
+				}
+			}
+		}
+	}
+
+	protected String createAccessionDatasetName()
+	{
+		return ACCESSION_DATASET_NAME_PREFIX + getDataName();
+	}
+
+	protected Accession createAccession(String accessionName, int index)
+	{
+		return new AccessionImpl(accessionName);
+	}
+
+	protected EntityIndexedDataset<Integer, Accession> createAccessionDataset(
+	    String name, List<Accession> accessions)
+	{
+		return new OrderedEntityDatasetListImpl<Accession>(name, accessions);
+	}
+
+	/**
+	 * Creates the matrix in which the distances are stored while they are
+	 * read, according to the storage type
+	 * 
+	 * @param uniqueIdentifier the unique identifier of the matrix
+	 * @param name the name of the matrix
+	 * @param accessionDataset the accessions
+	 * @return the matrix with all distances zero
+	 * @throws CoreHunterException if the matrix can not be created
+	 */
+	protected AccessionDistanceMatrix createAccessionDistanceMatrix(
+	    String uniqueIdentifier, String name,
+	    EntityIndexedDataset<Integer, Accession> accessionDataset)
+	    throws CoreHunterException
+	{
+		switch (storageType)
+		{
+			case MAPPED:
+				if (mappedFile != null && mappedFile.exists() && !mappedFile.delete())
+				{
+					throw new CoreHunterException("Can not overwrite file : "
+					    + mappedFile.getAbsolutePath());
+				}
+
+				return new AccessionDistanceMatrixMappedImpl(uniqueIdentifier, name,
+				    accessionDataset, mappedFile != null ? mappedFile
+				        : createTemporaryMappedFile(), 0, true);
+			case FLOAT:
+				return new AccessionDistanceMatrixFloatImpl(uniqueIdentifier, name,
+				    accessionDataset);
+			case DOUBLE:
+			default:
+				return new AccessionDistanceMatrixArrayImpl(uniqueIdentifier, name,
+				    accessionDataset);
+		}
+	}
+
+	private double parseDistance(DataFileTokenizer line, int field,
+	    String accessionName1, String accessionName2, int lineNumber)
+	    throws CoreHunterException
+	{
+		double distance;
+
+		try
+		{
+			distance = line.parseDouble(field);
+		}
+		catch (NumberFormatException e)
+		{
+			distance = Double.NaN;
+		}
+
+		// NaN fails the test as well
+		if (!(distance >= 0))
+		{
+			throw new CoreHunterException("Invalid distance '"
+			    + line.getString(field) + "' between accessions '"
+			    + accessionName1 + "' and '" + accessionName2 + "' on line "
+			    + lineNumber + ", expected a non-negative number");
+		}
+
+		return distance;
+	}
+
+	private File createTemporaryMappedFile() throws CoreHunterException
+	{
+		try
+		{
+			File file = File.createTempFile("corehunter", ".dist");
+			file.deleteOnExit();
+			return file;
+		}
+		catch (IOException e)
+		{
+			throw new CoreHunterException(e);
+		}
+	}
+}
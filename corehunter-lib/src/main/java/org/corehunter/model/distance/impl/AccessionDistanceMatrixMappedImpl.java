@@ -0,0 +1,210 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.model.distance.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.EntityIndexedDataset;
+import org.corehunter.model.accession.Accession;
+import org.corehunter.model.distance.AccessionDistanceMatrix;
+
+/**
+ * Distance matrix that stores the distances in a memory-mapped binary file,
+ * so that the distances are paged in by the operating system instead of
+ * being held on the heap, and the number of accessions is not limited by the
+ * size of an array. Several processes mapping the same file share a single
+ * copy in the page cache.
+ *
+ * The file contains the upper triangle of the distances, as described in
+ * {@link AccessionDistanceMatrix}, as 8 byte big-endian doubles starting at a
+ * given offset in the file. The file is mapped in segments of 1GB.
+ *
+ * The mapping stays valid until the matrix is garbage collected, it can not
+ * be released explicitly.
+ */
+public class AccessionDistanceMatrixMappedImpl extends
+    AbstractAccessionDistanceMatrix
+{
+	private static final int	VALUE_SIZE	  = 8;
+	// each segment maps 2^27 values, that is 1GB
+	private static final int	SEGMENT_SHIFT	= 27;
+	private static final int	SEGMENT_MASK	= (1 << SEGMENT_SHIFT) - 1;
+
+	private File	           file;
+	private long	           offset;
+	private boolean	         writable;
+	private DoubleBuffer[]	 segments;
+
+	/**
+	 * Maps an existing file read-only
+	 *
+	 * @param uniqueIdentifier the unique identifier of the matrix
+	 * @param name the name of the matrix
+	 * @param accessions the accessions
+	 * @param file the file containing the distances
+	 * @throws CoreHunterException if the file can not be mapped or is too small
+	 */
+	public AccessionDistanceMatrixMappedImpl(String uniqueIdentifier,
+	    String name, EntityIndexedDataset<Integer, Accession> accessions,
+	    File file) throws CoreHunterException
+	{
+		this(uniqueIdentifier, name, accessions, file, 0, false);
+	}
+
+	/**
+	 * Maps a file. If the file is writable, it is created or extended as needed.
+	 *
+	 * @param uniqueIdentifier the unique identifier of the matrix
+	 * @param name the name of the matrix
+	 * @param accessions the accessions
+	 * @param file the file containing the distances
+	 * @param offset the position of the first distance in the file
+	 * @param writable <code>true</code> if the file should be mapped read-write
+	 * @throws CoreHunterException if the file can not be mapped or is too small
+	 */
+	public AccessionDistanceMatrixMappedImpl(String uniqueIdentifier,
+	    String name, EntityIndexedDataset<Integer, Accession> accessions,
+	    File file, long offset, boolean writable) throws CoreHunterException
+	{
+		super(uniqueIdentifier, name, accessions);
+
+		this.file = file;
+		this.offset = offset;
+		this.writable = writable;
+
+		map(getDistanceCount(accessions.getSize()));
+	}
+
+	@Override
+	public void validate() throws CoreHunterException
+	{
+		super.validate();
+
+		if (segments == null)
+		{
+			throw new CoreHunterException("File not mapped!");
+		}
+	}
+
+	/**
+	 * Gets the mapped file
+	 *
+	 * @return the mapped file
+	 */
+	public final File getFile()
+	{
+		return file;
+	}
+
+	/**
+	 * Gets the position of the first distance in the mapped file
+	 *
+	 * @return the position of the first distance in the mapped file
+	 */
+	public final long getOffset()
+	{
+		return offset;
+	}
+
+	/**
+	 * Indicates if the file is mapped read-write
+	 *
+	 * @return <code>true</code> if the file is mapped read-write
+	 */
+	public final boolean isWritable()
+	{
+		return writable;
+	}
+
+	@Override
+	protected final double getValue(long position)
+	{
+		return segments[(int) (position >>> SEGMENT_SHIFT)]
+		    .get((int) (position & SEGMENT_MASK));
+	}
+
+	@Override
+	protected final void storeValue(long position, double distance)
+	{
+		segments[(int) (position >>> SEGMENT_SHIFT)].put(
+		    (int) (position & SEGMENT_MASK), distance);
+	}
+
+	private void map(long count) throws CoreHunterException
+	{
+		long size = count * VALUE_SIZE;
+		int segmentCount = (int) ((count + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+
+		segments = new DoubleBuffer[segmentCount];
+
+		RandomAccessFile randomAccessFile = null;
+
+		try
+		{
+			randomAccessFile = new RandomAccessFile(file, writable ? "rw" : "r");
+
+			if (randomAccessFile.length() < offset + size)
+			{
+				if (writable)
+				{
+					randomAccessFile.setLength(offset + size);
+				}
+				else
+				{
+					throw new CoreHunterException("File " + file.getAbsolutePath()
+					    + " is too small, expected at least " + (offset + size)
+					    + " bytes!");
+				}
+			}
+
+			FileChannel channel = randomAccessFile.getChannel();
+
+			for (int s = 0; s < segmentCount; ++s)
+			{
+				long first = (long) s << SEGMENT_SHIFT;
+				long length = Math.min(count - first, 1L << SEGMENT_SHIFT);
+
+				segments[s] = channel.map(
+				    writable ? FileChannel.MapMode.READ_WRITE
+				        : FileChannel.MapMode.READ_ONLY,
+				    offset + first * VALUE_SIZE, length * VALUE_SIZE)
+				    .asDoubleBuffer();
+			}
+		}
+		catch (IOException e)
+		{
+			throw new CoreHunterException(e);
+		}
+		finally
+		{
+			// the mappings stay valid after the file is closed
+			if (randomAccessFile != null)
+			{
+				try
+				{
+					randomAccessFile.close();
+				}
+				catch (IOException e)
+				{
+					// ignore
+				}
+			}
+		}
+	}
+}
@@ -14,6 +14,9 @@
 package org.corehunter.model.impl;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 
 import org.corehunter.model.Data;
 import org.corehunter.model.DataReader;
@@ -62,4 +65,16 @@ public abstract class AbstractDataFileReader<DataType extends Data> extends
 	{
 		this.dataUniqueIdentifier = dataUniqueIdentifier;
 	}
+
+	/**
+	 * Opens the file for reading. Gzip compressed files are detected and
+	 * decompressed while they are read.
+	 * 
+	 * @return the reader of the file
+	 * @throws IOException if the file can not be opened
+	 */
+	protected Reader openReader() throws IOException
+	{
+		return new InputStreamReader(openInputStream(getFile()));
+	}
 }
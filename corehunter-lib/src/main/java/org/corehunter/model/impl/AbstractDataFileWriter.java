@@ -14,14 +14,52 @@
 package org.corehunter.model.impl;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 
 import org.corehunter.model.Data;
 import org.corehunter.model.DataWriter;
 
 public abstract class AbstractDataFileWriter<DataType extends Data> extends AbstractFileUtility<DataType> implements DataWriter<DataType> {
 
+    private boolean compressed;
+
     public AbstractDataFileWriter(File file) {
         super(file);
     }
-    
+
+    /**
+     * Indicates if the file is written gzip compressed, which is the case if
+     * compression was requested or the name of the file ends with
+     * {@link #COMPRESSED_FILE_EXTENSION}
+     * 
+     * @return <code>true</code> if the file is written gzip compressed
+     */
+    public final boolean isCompressed() {
+        return compressed
+                || getFile().getName().endsWith(COMPRESSED_FILE_EXTENSION);
+    }
+
+    /**
+     * Sets if the file is written gzip compressed, whatever its name
+     * 
+     * @param compressed <code>true</code> if the file should be gzip
+     *            compressed
+     */
+    public final void setCompressed(boolean compressed) {
+        this.compressed = compressed;
+    }
+
+    /**
+     * Opens the file for writing, compressing it if needed. The writer must be
+     * closed to complete the file.
+     * 
+     * @return the writer of the file
+     * @throws IOException if the file can not be opened
+     */
+    protected Writer openWriter() throws IOException {
+        return new OutputStreamWriter(openOutputStream(getFile(), isCompressed()));
+    }
+
 }
@@ -18,18 +18,31 @@ import java.util.Iterator;
 import java.util.List;
 
 import org.corehunter.CoreHunterException;
+import org.corehunter.model.ContentDigest;
 import org.corehunter.model.Entity;
 import org.corehunter.model.EntityIndexedDataset;
 import org.corehunter.model.Matrix;
 import org.corehunter.model.UnknownEntityException;
 import org.corehunter.model.UnknownIndexException;
 
+/**
+ * Base class of matrices. Matrices are equal if their row headers, column
+ * headers and elements are equal. The elements are compared through a
+ * {@link ContentDigest}, which is calculated once and kept until the matrix
+ * is changed, so that comparing matrices or using them as keys does not walk
+ * all elements each time. The digest combines the digests of the rows, so
+ * that readers which store the elements in another order than row by row can
+ * still calculate it while they store them, see
+ * {@link #setContentDigest(ContentDigest)}. Sub-classes that change their
+ * elements must call {@link #invalidateContentDigest()}.
+ */
 public abstract class AbstractEntityMatrix<IndexType, DataType, RowHeaderType extends Entity, ColumnHeaderType extends Entity>
         extends EntityImpl
         implements Matrix<IndexType, DataType, RowHeaderType, ColumnHeaderType> {
 
     private EntityIndexedDataset<IndexType, RowHeaderType> rowHeaders;
     private EntityIndexedDataset<IndexType, ColumnHeaderType> columnHeaders;
+    private volatile ContentDigest contentDigest;
 
     public AbstractEntityMatrix(String name,
             EntityIndexedDataset<IndexType, RowHeaderType> rowHeaders,
@@ -99,9 +112,92 @@ public abstract class AbstractEntityMatrix<IndexType, DataType, RowHeaderType ex
         }
     }
 
+    /**
+     * Gets the digest of the elements of the matrix. Unless it was set when the
+     * matrix was read, the digest is calculated the first time it is needed and
+     * kept until the matrix is changed.
+     *
+     * @return the digest of the elements
+     */
+    @Override
+    public final ContentDigest getContentDigest() {
+        ContentDigest digest = contentDigest;
+
+        if (digest == null) {
+            ContentDigest.Builder builder = new ContentDigest.Builder();
+
+            try {
+                addContent(builder);
+            } catch (UnknownIndexException e) {
+                throw new IllegalStateException(e.getLocalizedMessage(), e);
+            }
+
+            digest = builder.build();
+
+            if (isContentDigestCacheable()) {
+                contentDigest = digest;
+            }
+        }
+
+        return digest;
+    }
+
+    /**
+     * Adds the elements of the matrix to a digest, as the digest of each row in
+     * turn. Sub-classes with primitive storage can add their values directly,
+     * as long as the digest is the same as for the boxed elements, and may add
+     * other content that is part of their equality.
+     *
+     * @param builder the digest builder
+     * @throws UnknownIndexException if a row can not be read
+     */
+    protected void addContent(ContentDigest.Builder builder) throws UnknownIndexException {
+        for (IndexType index : getRowHeaders().getIndices()) {
+            builder.addDigest(new ContentDigest.Builder().add(getRowElements(index)).build());
+        }
+    }
+
+    /**
+     * Sets the digest of the elements, for readers that calculate it while they
+     * store the elements so that it is not calculated again by walking all
+     * elements. The digest must be built as {@link #addContent} builds it,
+     * from the digests of the rows in their order, and is discarded as usual
+     * when the elements change.
+     *
+     * @param digest the digest of the elements
+     */
+    protected final void setContentDigest(ContentDigest digest) {
+        if (isContentDigestCacheable()) {
+            contentDigest = digest;
+        }
+    }
+
+    /**
+     * Discards the digest of the elements, must be called whenever the
+     * elements change
+     */
+    protected final void invalidateContentDigest() {
+        contentDigest = null;
+    }
+
+    /**
+     * Indicates if the digest of the elements can be kept until
+     * {@link #invalidateContentDigest()} is called. Matrices that show the
+     * elements of other matrices are not notified of changes and return
+     * <code>false</code>.
+     *
+     * @return <code>true</code> if the digest can be kept
+     */
+    protected boolean isContentDigestCacheable() {
+        return true;
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public boolean equals(Object object) {
+        if (object == this) {
+            return true;
+        }
         if (object instanceof Matrix) {
             return rowHeaderEquals(((Matrix<IndexType, DataType, RowHeaderType, ColumnHeaderType>) object).getRowHeaders())
                     && columnHeaderEquals(((Matrix<IndexType, DataType, RowHeaderType, ColumnHeaderType>) object).getColumnHeaders())
@@ -116,15 +212,7 @@ public abstract class AbstractEntityMatrix<IndexType, DataType, RowHeaderType ex
         int hash = 7;
         hash = 37 * hash + (getRowHeaders() != null ? getRowHeaders().hashCode() : 0);
         hash = 37 * hash + (getColumnHeaders() != null ? getColumnHeaders().hashCode() : 0);
-        Iterator<IndexType> iterator = getRowHeaders().getIndices().iterator();
-        try{
-            while(iterator.hasNext()){
-                List<DataType> row = getRowElements(iterator.next());
-                hash = 37 * hash + (row != null ? row.hashCode() : 0);
-            }
-        } catch (UnknownIndexException ex){
-            return -1;
-        }
+        hash = 37 * hash + getContentDigest().hashCode();
         return hash;
     }
 
@@ -137,6 +225,18 @@ public abstract class AbstractEntityMatrix<IndexType, DataType, RowHeaderType ex
     }
 
     protected boolean elementsEquals(Matrix<IndexType, DataType, RowHeaderType, ColumnHeaderType> matrix) {
+        if (matrix instanceof AbstractEntityMatrix) {
+            ContentDigest digest = getContentDigest();
+            ContentDigest other = ((AbstractEntityMatrix<?, ?, ?, ?>) matrix).getContentDigest();
+
+            // digests of unknown element types only cover hash codes
+            if (!digest.equals(other)) {
+                return false;
+            } else if (digest.isExact() && other.isExact()) {
+                return true;
+            }
+        }
+
         Iterator<IndexType> iterator = matrix.getRowHeaders().getIndices().iterator();
 
         boolean equals = true;
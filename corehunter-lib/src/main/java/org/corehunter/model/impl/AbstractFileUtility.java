@@ -13,7 +13,15 @@
 // limitations under the License.
 package org.corehunter.model.impl;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.corehunter.model.Data;
 
@@ -22,7 +30,15 @@ public abstract class AbstractFileUtility<DataType extends Data> {
     public static final char COMMA_DELIMITER = ',';
     public static final char TAB_DELIMITER = '\t';
     public static final char SPACE_DELIMITER = ' ';
-    
+
+    /**
+     * The extension of gzip compressed files
+     */
+    public static final String COMPRESSED_FILE_EXTENSION = ".gz";
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int BUFFER_SIZE = 1 << 16;
+
     private File file;
 
     public AbstractFileUtility(File file) {
@@ -37,5 +53,62 @@ public abstract class AbstractFileUtility<DataType extends Data> {
     public final void setFile(File file) {
         this.file = file;
     }
-    
+
+    /**
+     * Indicates if a file is gzip compressed, which is detected from the
+     * first bytes of the file rather than from its name
+     * 
+     * @param file the file
+     * @return <code>true</code> if the file is gzip compressed
+     * @throws IOException if the file can not be read
+     */
+    public static boolean isCompressed(File file) throws IOException {
+        InputStream input = new FileInputStream(file);
+
+        try {
+            int b1 = input.read();
+            int b2 = input.read();
+
+            return b1 >= 0 && b2 >= 0 && (b1 | (b2 << 8)) == GZIP_MAGIC;
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Opens a file for reading. Gzip compressed files are decompressed on a
+     * separate thread, see {@link AsynchronousGZIPInputStream}.
+     * 
+     * @param file the file
+     * @return the buffered, and if needed decompressed, contents of the file
+     * @throws IOException if the file can not be opened
+     */
+    public static InputStream openInputStream(File file) throws IOException {
+        if (isCompressed(file)) {
+            return new AsynchronousGZIPInputStream(new FileInputStream(file));
+        } else {
+            return new BufferedInputStream(new FileInputStream(file),
+                    BUFFER_SIZE);
+        }
+    }
+
+    /**
+     * Opens a file for writing, replacing an existing file
+     * 
+     * @param file the file
+     * @param compressed <code>true</code> if the file should be gzip
+     *            compressed
+     * @return the buffered, and if needed compressing, output stream
+     * @throws IOException if the file can not be opened
+     */
+    public static OutputStream openOutputStream(File file, boolean compressed)
+            throws IOException {
+        OutputStream output = new FileOutputStream(file);
+
+        if (compressed) {
+            return new GZIPOutputStream(output, BUFFER_SIZE);
+        } else {
+            return new BufferedOutputStream(output, BUFFER_SIZE);
+        }
+    }
 }
@@ -0,0 +1,235 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.model.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Input stream that decompresses a gzip compressed stream on a separate
+ * thread, so that decompression overlaps with the processing of the
+ * decompressed data by the reading thread. The decompressed data is handed
+ * over in blocks through a bounded queue, so at most a few blocks are held in
+ * memory at any time, however fast the data is decompressed.
+ * 
+ * Errors of the decompressing thread are thrown by the reading thread once it
+ * has read all data decompressed before the error. Closing the stream stops
+ * the decompressing thread and closes the compressed stream.
+ */
+public class AsynchronousGZIPInputStream extends InputStream
+{
+	/**
+	 * The default number of bytes in a block
+	 */
+	public static final int	     DEFAULT_BLOCK_SIZE	 = 1 << 16;
+
+	/**
+	 * The default number of blocks in the queue
+	 */
+	public static final int	     DEFAULT_BLOCK_COUNT	= 4;
+
+	private static final byte[]	END	                = new byte[0];
+
+	private BlockingQueue<byte[]>	blocks;
+	private Thread	             inflater;
+	private volatile IOException	error;
+
+	private byte[]	             block;
+	private int	                 position;
+	private boolean	             closed;
+
+	/**
+	 * Creates a stream with the default block size and number of blocks
+	 * 
+	 * @param input the compressed stream
+	 */
+	public AsynchronousGZIPInputStream(InputStream input)
+	{
+		this(input, DEFAULT_BLOCK_SIZE, DEFAULT_BLOCK_COUNT);
+	}
+
+	/**
+	 * Creates a stream and starts the decompressing thread
+	 * 
+	 * @param input the compressed stream
+	 * @param blockSize the number of bytes in a block
+	 * @param blockCount the maximum number of decompressed blocks waiting to be
+	 *          read
+	 */
+	public AsynchronousGZIPInputStream(final InputStream input,
+	    final int blockSize, int blockCount)
+	{
+		blocks = new ArrayBlockingQueue<byte[]>(blockCount);
+
+		inflater = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				inflate(input, blockSize);
+			}
+		}, "gzip-inflater");
+
+		inflater.setDaemon(true);
+		inflater.start();
+	}
+
+	@Override
+	public int read() throws IOException
+	{
+		if (!nextBlock())
+		{
+			return -1;
+		}
+
+		return block[position++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] buffer, int offset, int length) throws IOException
+	{
+		if (length == 0)
+		{
+			return 0;
+		}
+
+		if (!nextBlock())
+		{
+			return -1;
+		}
+
+		int count = Math.min(length, block.length - position);
+
+		System.arraycopy(block, position, buffer, offset, count);
+		position += count;
+
+		return count;
+	}
+
+	@Override
+	public int available() throws IOException
+	{
+		return block != null && block != END ? block.length - position : 0;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		if (!closed)
+		{
+			closed = true;
+			block = END;
+
+			// the decompressing thread closes the compressed stream when it stops
+			inflater.interrupt();
+		}
+	}
+
+	/**
+	 * Makes sure there is data left in the current block
+	 * 
+	 * @return <code>false</code> at the end of the stream
+	 */
+	private boolean nextBlock() throws IOException
+	{
+		if (closed)
+		{
+			throw new IOException("Stream closed");
+		}
+
+		while (block == null || (block != END && position == block.length))
+		{
+			try
+			{
+				block = blocks.take();
+				position = 0;
+			}
+			catch (InterruptedException e)
+			{
+				throw new InterruptedIOException();
+			}
+		}
+
+		if (block == END)
+		{
+			if (error != null)
+			{
+				throw error;
+			}
+
+			return false;
+		}
+
+		return true;
+	}
+
+	private void inflate(InputStream input, int blockSize)
+	{
+		try
+		{
+			try
+			{
+				GZIPInputStream gzip = new GZIPInputStream(input, blockSize);
+				int length;
+				int count;
+
+				do
+				{
+					byte[] block = new byte[blockSize];
+
+					length = 0;
+
+					while (length < blockSize
+					    && (count = gzip.read(block, length, blockSize - length)) >= 0)
+					{
+						length += count;
+					}
+
+					if (length > 0)
+					{
+						blocks.put(length < blockSize ? Arrays.copyOf(block, length)
+						    : block);
+					}
+				}
+				while (length == blockSize);
+			}
+			catch (IOException e)
+			{
+				error = e;
+			}
+			finally
+			{
+				try
+				{
+					input.close();
+				}
+				catch (IOException e)
+				{
+					// ignore
+				}
+			}
+
+			blocks.put(END);
+		}
+		catch (InterruptedException e)
+		{
+			// the stream was closed
+		}
+	}
+}
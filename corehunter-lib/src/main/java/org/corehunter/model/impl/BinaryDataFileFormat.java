@@ -0,0 +1,224 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.model.impl;
+
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.Entity;
+
+/**
+ * Constants and helper methods of the binary data file format, used to store
+ * a snapshot of a dataset that can be loaded without parsing text. A binary
+ * data file starts with a header of {@link #HEADER_SIZE} bytes: the
+ * {@link #MAGIC} number, the format version, the type of data and the length
+ * of the metadata that follows the header. The metadata holds the names of the
+ * dataset and its entities, and is followed by a block of raw values whose
+ * layout depends on the type of data. All numbers are stored big-endian, as
+ * written by {@link DataOutput}.
+ */
+public final class BinaryDataFileFormat
+{
+	/**
+	 * The first four bytes of every binary data file, "CHBD"
+	 */
+	public static final int	MAGIC	        = 0x43484244;
+
+	/**
+	 * The current version of the format
+	 */
+	public static final int	VERSION	      = 1;
+
+	/**
+	 * The size of the header in bytes
+	 */
+	public static final int	HEADER_SIZE	  = 16;
+
+	/**
+	 * The data type of SSR datasets
+	 */
+	public static final int	SSR_DATA	    = 1;
+
+	/**
+	 * The data type of variable datasets
+	 */
+	public static final int	VARIABLE_DATA	= 2;
+
+	private BinaryDataFileFormat()
+	{
+
+	}
+
+	/**
+	 * Gets the type of data in a file
+	 * 
+	 * @param file the file
+	 * @return the type of data, or <code>-1</code> if the file is not a binary
+	 *         data file
+	 * @throws CoreHunterException if the file can not be read
+	 */
+	public static int getDataType(File file) throws CoreHunterException
+	{
+		DataInputStream in = null;
+
+		try
+		{
+			in = new DataInputStream(new FileInputStream(file));
+
+			if (file.length() >= HEADER_SIZE && in.readInt() == MAGIC)
+			{
+				in.readInt();
+
+				return in.readInt();
+			}
+			else
+			{
+				return -1;
+			}
+		}
+		catch (IOException e)
+		{
+			throw new CoreHunterException(e);
+		}
+		finally
+		{
+			close(in);
+		}
+	}
+
+	/**
+	 * Writes the header of a binary data file
+	 * 
+	 * @param out the output
+	 * @param dataType the type of data
+	 * @param metadataLength the length of the metadata in bytes
+	 * @throws IOException if the header can not be written
+	 */
+	public static void writeHeader(DataOutput out, int dataType,
+	    int metadataLength) throws IOException
+	{
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(dataType);
+		out.writeInt(metadataLength);
+	}
+
+	/**
+	 * Reads and checks the header of a binary data file
+	 * 
+	 * @param in the input
+	 * @param dataType the expected type of data
+	 * @return the length of the metadata in bytes
+	 * @throws IOException if the header can not be read
+	 * @throws CoreHunterException if the file is not a binary data file of the
+	 *           expected type and a supported version
+	 */
+	public static int readHeader(DataInput in, int dataType)
+	    throws IOException, CoreHunterException
+	{
+		if (in.readInt() != MAGIC)
+		{
+			throw new CoreHunterException("Not a binary data file!");
+		}
+
+		int version = in.readInt();
+
+		if (version < 1 || version > VERSION)
+		{
+			throw new CoreHunterException("Unsupported binary data file version : "
+			    + version);
+		}
+
+		int actualDataType = in.readInt();
+
+		if (actualDataType != dataType)
+		{
+			throw new CoreHunterException("Binary data file contains data of type "
+			    + actualDataType + ", expected " + dataType);
+		}
+
+		return in.readInt();
+	}
+
+	/**
+	 * Writes a string that may be <code>null</code>
+	 * 
+	 * @param out the output
+	 * @param string the string or <code>null</code>
+	 * @throws IOException if the string can not be written
+	 */
+	public static void writeString(DataOutput out, String string)
+	    throws IOException
+	{
+		out.writeBoolean(string != null);
+
+		if (string != null)
+		{
+			out.writeUTF(string);
+		}
+	}
+
+	/**
+	 * Reads a string written by {@link #writeString(DataOutput, String)}
+	 * 
+	 * @param in the input
+	 * @return the string or <code>null</code>
+	 * @throws IOException if the string can not be read
+	 */
+	public static String readString(DataInput in) throws IOException
+	{
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	/**
+	 * Writes the unique identifier and name of an entity, which are read back
+	 * with two calls to {@link #readString(DataInput)}
+	 * 
+	 * @param out the output
+	 * @param entity the entity
+	 * @throws IOException if the entity can not be written
+	 */
+	public static void writeEntity(DataOutput out, Entity entity)
+	    throws IOException
+	{
+		writeString(out, entity.getUniqueIdentifier());
+		writeString(out, entity.getName());
+	}
+
+	/**
+	 * Closes a stream, ignoring any errors
+	 * 
+	 * @param closeable the stream or <code>null</code>
+	 */
+	public static void close(Closeable closeable)
+	{
+		if (closeable != null)
+		{
+			try
+			{
+				closeable.close();
+			}
+			catch (IOException e)
+			{
+				// ignore
+			}
+		}
+	}
+}
@@ -0,0 +1,590 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.model.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Tokenizer of delimited text data files that reads the file line by line
+ * into a reused character buffer and splits each line into fields, without
+ * creating any objects per line. Fields are accessed by index, and numeric
+ * fields are converted straight to primitives by
+ * {@link #parseDouble(int)}, {@link #parseShort(int)},
+ * {@link #parseInt(int)} and {@link #parseLong(int)}.
+ * 
+ * Lines may be terminated by <code>\n</code>, <code>\r\n</code> or
+ * <code>\r</code>, and an empty line has a single empty field. Fields may be
+ * enclosed in double quotes, in which case two double quotes stand for a
+ * single one and the quotes are not part of the value, as read by opencsv.
+ * Quoted fields must not contain line terminators.
+ * 
+ * The number parsers accept the same strings as the corresponding methods of
+ * {@link Double}, {@link Short}, {@link Integer} and {@link Long}, and produce the same
+ * values. Plain decimal numbers are converted directly, all other strings are
+ * passed on to these methods, so that malformed fields are rejected with the
+ * same {@link NumberFormatException}.
+ */
+public class DataFileTokenizer implements Closeable
+{
+	private static final int	    BUFFER_SIZE	        = 1 << 16;
+
+	// the largest mantissa, and powers of ten, that are exact doubles
+	private static final long	    MAXIMUM_MANTISSA	  = 1L << 53;
+	private static final int	    MAXIMUM_DIGITS	    = 15;
+	private static final double[]	POWERS_OF_TEN	      = { 1e0, 1e1, 1e2, 1e3,
+	    1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+	    1e17, 1e18, 1e19, 1e20, 1e21, 1e22	          };
+
+	private Reader	              reader;
+	private char	                delimiter;
+
+	private char[]	              input	              = new char[BUFFER_SIZE];
+	private int	                  inputPosition;
+	private int	                  inputLimit;
+	private boolean	              endOfInput;
+
+	private char[]	              line	              = new char[256];
+	private int	                  lineLength;
+	private int[]	                fieldStarts	        = new int[16];
+	private int[]	                fieldEnds	          = new int[16];
+	private int	                  fieldCount;
+
+	/**
+	 * Creates a tokenizer
+	 * 
+	 * @param reader the reader of the file, which should not be buffered as the
+	 *          tokenizer reads large blocks
+	 * @param delimiter the delimiter between fields
+	 */
+	public DataFileTokenizer(Reader reader, char delimiter)
+	{
+		this.reader = reader;
+		this.delimiter = delimiter;
+	}
+
+	/**
+	 * Reads the next line
+	 * 
+	 * @return <code>true</code> if a line was read, <code>false</code> at the
+	 *         end of the file
+	 * @throws IOException if the line can not be read
+	 */
+	public boolean nextLine() throws IOException
+	{
+		lineLength = 0;
+
+		while (true)
+		{
+			if (inputPosition == inputLimit && !fill())
+			{
+				if (lineLength == 0)
+				{
+					fieldCount = 0;
+					return false;
+				}
+				else
+				{
+					break;
+				}
+			}
+
+			char c = input[inputPosition++];
+
+			if (c == '\n')
+			{
+				break;
+			}
+
+			if (c == '\r')
+			{
+				if (inputPosition < inputLimit || fill())
+				{
+					if (input[inputPosition] == '\n')
+					{
+						++inputPosition;
+					}
+				}
+
+				break;
+			}
+
+			if (lineLength == line.length)
+			{
+				line = Arrays.copyOf(line, line.length * 2);
+			}
+
+			line[lineLength++] = c;
+		}
+
+		split();
+
+		return true;
+	}
+
+	/**
+	 * Reads the next line as strings, like the <code>readNext</code> method of
+	 * the opencsv reader
+	 * 
+	 * @return the fields of the line, or <code>null</code> at the end of the
+	 *         file
+	 * @throws IOException if the line can not be read
+	 */
+	public String[] readNext() throws IOException
+	{
+		if (!nextLine())
+		{
+			return null;
+		}
+
+		String[] fields = new String[fieldCount];
+
+		for (int i = 0; i < fieldCount; ++i)
+		{
+			fields[i] = getString(i);
+		}
+
+		return fields;
+	}
+
+	/**
+	 * Gets the number of fields of the current line
+	 * 
+	 * @return the number of fields
+	 */
+	public final int getFieldCount()
+	{
+		return fieldCount;
+	}
+
+	/**
+	 * Gets the length of a field
+	 * 
+	 * @param field the index of the field
+	 * @return the number of characters of the field
+	 */
+	public final int getLength(int field)
+	{
+		return fieldEnds[field] - fieldStarts[field];
+	}
+
+	/**
+	 * Indicates if a field is empty
+	 * 
+	 * @param field the index of the field
+	 * @return <code>true</code> if the field has no characters
+	 */
+	public final boolean isEmpty(int field)
+	{
+		return fieldEnds[field] == fieldStarts[field];
+	}
+
+	/**
+	 * Indicates if a field is empty or contains only white space, as defined by
+	 * {@link String#trim()}
+	 * 
+	 * @param field the index of the field
+	 * @return <code>true</code> if the field has no characters other than white
+	 *         space
+	 */
+	public final boolean isBlank(int field)
+	{
+		for (int i = fieldStarts[field]; i < fieldEnds[field]; ++i)
+		{
+			if (line[i] > ' ')
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Compares a field to a string, ignoring case
+	 * 
+	 * @param field the index of the field
+	 * @param string the string
+	 * @return <code>true</code> if the field is equal to the string, ignoring
+	 *         case
+	 */
+	public final boolean equalsIgnoreCase(int field, String string)
+	{
+		int start = fieldStarts[field];
+		int length = fieldEnds[field] - start;
+
+		if (length != string.length())
+		{
+			return false;
+		}
+
+		for (int i = 0; i < length; ++i)
+		{
+			char c1 = line[start + i];
+			char c2 = string.charAt(i);
+
+			if (c1 != c2 && Character.toUpperCase(c1) != Character.toUpperCase(c2)
+			    && Character.toLowerCase(c1) != Character.toLowerCase(c2))
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Gets a field as a string
+	 * 
+	 * @param field the index of the field
+	 * @return the field
+	 */
+	public final String getString(int field)
+	{
+		return new String(line, fieldStarts[field], fieldEnds[field]
+		    - fieldStarts[field]);
+	}
+
+	/**
+	 * Parses a field as a double, as {@link Double#parseDouble(String)}
+	 * 
+	 * @param field the index of the field
+	 * @return the value of the field
+	 * @throws NumberFormatException if the field is not a number
+	 */
+	public final double parseDouble(int field)
+	{
+		int i = fieldStarts[field];
+		int end = fieldEnds[field];
+
+		boolean negative = false;
+
+		if (i < end && (line[i] == '-' || line[i] == '+'))
+		{
+			negative = line[i] == '-';
+			++i;
+		}
+
+		long mantissa = 0;
+		int digits = 0;
+		int exponent = 0;
+		boolean hasDigits = false;
+
+		for (; i < end && line[i] >= '0' && line[i] <= '9'; ++i)
+		{
+			hasDigits = true;
+
+			if (mantissa > 0 || line[i] != '0')
+			{
+				mantissa = mantissa * 10 + (line[i] - '0');
+				++digits;
+			}
+
+			if (digits > MAXIMUM_DIGITS)
+			{
+				return Double.parseDouble(getString(field));
+			}
+		}
+
+		if (i < end && line[i] == '.')
+		{
+			++i;
+
+			for (; i < end && line[i] >= '0' && line[i] <= '9'; ++i)
+			{
+				hasDigits = true;
+
+				if (mantissa > 0 || line[i] != '0')
+				{
+					mantissa = mantissa * 10 + (line[i] - '0');
+					++digits;
+				}
+
+				--exponent;
+
+				if (digits > MAXIMUM_DIGITS)
+				{
+					return Double.parseDouble(getString(field));
+				}
+			}
+		}
+
+		if (i < end && hasDigits && (line[i] == 'e' || line[i] == 'E'))
+		{
+			++i;
+
+			boolean negativeExponent = false;
+
+			if (i < end && (line[i] == '-' || line[i] == '+'))
+			{
+				negativeExponent = line[i] == '-';
+				++i;
+			}
+
+			int exponentStart = i;
+			int value = 0;
+
+			for (; i < end && line[i] >= '0' && line[i] <= '9' && value < 1000; ++i)
+			{
+				value = value * 10 + (line[i] - '0');
+			}
+
+			if (i == exponentStart)
+			{
+				return Double.parseDouble(getString(field));
+			}
+
+			exponent += negativeExponent ? -value : value;
+		}
+
+		// anything else, such as white space, NaN, Infinity, hexadecimal numbers,
+		// type suffixes or malformed numbers, is left to the standard parser
+		if (i != end || !hasDigits || mantissa >= MAXIMUM_MANTISSA)
+		{
+			return Double.parseDouble(getString(field));
+		}
+
+		double value;
+
+		// a single multiplication or division of two exact doubles is correctly
+		// rounded, so the result is the same as that of the standard parser
+		if (mantissa == 0 || exponent == 0)
+		{
+			value = mantissa;
+		}
+		else
+			if (exponent > 0 && exponent < POWERS_OF_TEN.length)
+			{
+				value = mantissa * POWERS_OF_TEN[exponent];
+			}
+			else
+				if (exponent < 0 && -exponent < POWERS_OF_TEN.length)
+				{
+					value = mantissa / POWERS_OF_TEN[-exponent];
+				}
+				else
+				{
+					return Double.parseDouble(getString(field));
+				}
+
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Parses a field as an integer, as {@link Integer#parseInt(String)}
+	 * 
+	 * @param field the index of the field
+	 * @return the value of the field
+	 * @throws NumberFormatException if the field is not an integer
+	 */
+	public final int parseInt(int field)
+	{
+		long value = parseLong(field, 9);
+
+		return value != Long.MIN_VALUE ? (int) value : Integer
+		    .parseInt(getString(field));
+	}
+
+	/**
+	 * Parses a field as a short integer, as {@link Short#parseShort(String)}
+	 * 
+	 * @param field the index of the field
+	 * @return the value of the field
+	 * @throws NumberFormatException if the field is not a short integer
+	 */
+	public final short parseShort(int field)
+	{
+		long value = parseLong(field, 5);
+
+		return value >= Short.MIN_VALUE && value <= Short.MAX_VALUE ? (short) value
+		    : Short.parseShort(getString(field));
+	}
+
+	/**
+	 * Parses a field as a long integer, as {@link Long#parseLong(String)}
+	 * 
+	 * @param field the index of the field
+	 * @return the value of the field
+	 * @throws NumberFormatException if the field is not a long integer
+	 */
+	public final long parseLong(int field)
+	{
+		long value = parseLong(field, 18);
+
+		return value != Long.MIN_VALUE ? value : Long.parseLong(getString(field));
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		reader.close();
+	}
+
+	/**
+	 * Parses a field of at most a given number of digits, and an optional sign
+	 * 
+	 * @return the value, or {@link Long#MIN_VALUE} if the field is not a plain
+	 *         integer of at most the given number of digits
+	 */
+	private long parseLong(int field, int maximumDigits)
+	{
+		int i = fieldStarts[field];
+		int end = fieldEnds[field];
+
+		boolean negative = false;
+
+		// a plus sign is left to the standard parser, as not all versions accept
+		// it
+		if (i < end && line[i] == '-')
+		{
+			negative = true;
+			++i;
+		}
+
+		if (i == end || end - i > maximumDigits)
+		{
+			return Long.MIN_VALUE;
+		}
+
+		long value = 0;
+
+		for (; i < end; ++i)
+		{
+			char c = line[i];
+
+			if (c < '0' || c > '9')
+			{
+				return Long.MIN_VALUE;
+			}
+
+			value = value * 10 + (c - '0');
+		}
+
+		return negative ? -value : value;
+	}
+
+	private boolean fill() throws IOException
+	{
+		if (endOfInput)
+		{
+			return false;
+		}
+
+		int count;
+
+		do
+		{
+			count = reader.read(input, 0, input.length);
+		}
+		while (count == 0);
+
+		if (count < 0)
+		{
+			endOfInput = true;
+			inputPosition = inputLimit = 0;
+			return false;
+		}
+
+		inputPosition = 0;
+		inputLimit = count;
+
+		return true;
+	}
+
+	/**
+	 * Splits the current line into fields, removing the quotes of quoted fields
+	 * in place
+	 */
+	private void split()
+	{
+		fieldCount = 0;
+
+		int read = 0;
+		int write = 0;
+
+		while (true)
+		{
+			if (fieldCount == fieldStarts.length)
+			{
+				fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+				fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+			}
+
+			// white space before a quote is ignored, as by opencsv
+			int quote = read;
+
+			while (quote < lineLength && line[quote] == ' ')
+			{
+				++quote;
+			}
+
+			if (quote < lineLength && line[quote] == '"')
+			{
+				read = quote + 1;
+				fieldStarts[fieldCount] = write;
+
+				while (read < lineLength)
+				{
+					if (line[read] == '"')
+					{
+						if (read + 1 < lineLength && line[read + 1] == '"')
+						{
+							line[write++] = '"';
+							read += 2;
+						}
+						else
+						{
+							++read;
+							break;
+						}
+					}
+					else
+					{
+						line[write++] = line[read++];
+					}
+				}
+
+				// characters between the closing quote and the delimiter are kept
+				while (read < lineLength && line[read] != delimiter)
+				{
+					line[write++] = line[read++];
+				}
+			}
+			else
+			{
+				fieldStarts[fieldCount] = write;
+
+				while (read < lineLength && line[read] != delimiter)
+				{
+					line[write++] = line[read++];
+				}
+			}
+
+			fieldEnds[fieldCount] = write;
+			++fieldCount;
+
+			if (read < lineLength)
+			{
+				// skip the delimiter
+				++read;
+			}
+			else
+			{
+				break;
+			}
+		}
+	}
+}
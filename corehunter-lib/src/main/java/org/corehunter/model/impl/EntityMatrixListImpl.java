@@ -22,6 +22,13 @@ import org.corehunter.model.EntityIndexedDataset;
 import org.corehunter.model.UnknownEntityException;
 import org.corehunter.model.UnknownIndexException;
 
+/**
+ * Matrix that stores its elements as nested lists. The lists returned by
+ * {@link #getRowElements(Integer)} are the lists of the matrix, elements must
+ * nevertheless be changed through {@link #setElement(Integer, Integer, Object)}
+ * or {@link #setRowElements(Integer, List)}, so that the digest of the matrix
+ * is updated.
+ */
 public class EntityMatrixListImpl<DataType, RowHeaderType extends Entity, ColumnHeaderType extends Entity>
     extends AbstractEntityMatrix<Integer, DataType, RowHeaderType, ColumnHeaderType> {
 
@@ -98,6 +105,7 @@ public class EntityMatrixListImpl<DataType, RowHeaderType extends Entity, Column
 
     public void setElement(Integer rowIndex, Integer columnIndex, DataType element) throws UnknownEntityException {
         elements.get(rowIndex).set(columnIndex, element);
+        invalidateContentDigest();
     }
 
     public void setElement(RowHeaderType rowHeader, ColumnHeaderType columnHeader, DataType element) throws UnknownEntityException {
@@ -106,5 +114,6 @@ public class EntityMatrixListImpl<DataType, RowHeaderType extends Entity, Column
 
     public void setRowElements(Integer index, List<DataType> values) throws UnknownEntityException {
         elements.set(index, values);
+        invalidateContentDigest();
     }
 }
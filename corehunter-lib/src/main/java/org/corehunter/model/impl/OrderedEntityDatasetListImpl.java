@@ -15,22 +15,32 @@
 package org.corehunter.model.impl;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.corehunter.CoreHunterException;
 import org.corehunter.model.Entity;
 import org.corehunter.model.OrderedEntityDataset;
 import org.corehunter.model.UnknownEntityException;
-import org.corehunter.utils.EntityUtils;
 
+/**
+ * Dataset that keeps its entities in a list, indexed from 0 to n-1. The
+ * entities are also indexed by unique identifier and by name in hash maps, so
+ * that finding the index of an entity is done in constant time. Entities must
+ * not change their unique identifier or name while they are in the dataset.
+ */
 public class OrderedEntityDatasetListImpl<ValueType extends Entity> extends EntityImpl implements OrderedEntityDataset<Integer, ValueType> {
 
     private List<ValueType> elements;
     private List<Integer> indices;
+    private Map<String, Integer> uniqueIdentifierIndices;
+    private Map<String, Integer> nameIndices;
 
     public OrderedEntityDatasetListImpl(String name, List<ValueType> elements) {
         this(name, name, elements);
@@ -42,8 +52,24 @@ public class OrderedEntityDatasetListImpl<ValueType extends Entity> extends Enti
         this.elements = new ArrayList<ValueType>(elements);
         this.indices = new ArrayList<Integer>(this.elements.size());
 
+        this.uniqueIdentifierIndices = new HashMap<String, Integer>(this.elements.size() * 2);
+        this.nameIndices = new HashMap<String, Integer>(this.elements.size() * 2);
+
         for (int i = 0; i < elements.size(); ++i) {
             this.indices.add(i);
+
+            // only the first entity with a given identifier or name is indexed
+            ValueType element = this.elements.get(i);
+
+            if (element != null) {
+                if (!uniqueIdentifierIndices.containsKey(element.getUniqueIdentifier())) {
+                    uniqueIdentifierIndices.put(element.getUniqueIdentifier(), i);
+                }
+
+                if (!nameIndices.containsKey(element.getName())) {
+                    nameIndices.put(element.getName(), i);
+                }
+            }
         }
     }
 
@@ -67,12 +93,48 @@ public class OrderedEntityDatasetListImpl<ValueType extends Entity> extends Enti
 
     @Override
     public Integer getIndex(ValueType value) {
-        return elements.indexOf(value);
+        if (value == null) {
+            return elements.indexOf(value);
+        }
+
+        Integer index = uniqueIdentifierIndices.get(value.getUniqueIdentifier());
+
+        if (index == null) {
+            // equal entities have the same unique identifier
+            return -1;
+        } else if (elements.get(index).equals(value)) {
+            return index;
+        } else {
+            // another entity has the same unique identifier
+            return elements.indexOf(value);
+        }
     }
     
     @Override
     public Integer getIndexByName(String name) throws UnknownEntityException {
-        return getIndex(getElementByName(name));
+        Integer index = nameIndices.get(name);
+
+        if (index != null) {
+            return index;
+        } else {
+            throw new UnknownEntityException("No entity with the name :" + name);
+        }
+    }
+
+    @Override
+    public ValueType getElementByUniqueIdentifier(String uniqueIdentifier) throws UnknownEntityException {
+        return elements.get(getIndexByUniqueIdentifier(uniqueIdentifier));
+    }
+
+    @Override
+    public Integer getIndexByUniqueIdentifier(String uniqueIdentifier) throws UnknownEntityException {
+        Integer index = uniqueIdentifierIndices.get(uniqueIdentifier);
+
+        if (index != null) {
+            return index;
+        } else {
+            throw new UnknownEntityException("No entity with the unique identifier :" + uniqueIdentifier);
+        }
     }
 
     @Override
@@ -104,7 +166,7 @@ public class OrderedEntityDatasetListImpl<ValueType extends Entity> extends Enti
 
     @Override
     public List<ValueType> getElementsAsList() {
-        return elements;
+        return Collections.unmodifiableList(elements);
     }
 
     @Override
@@ -120,16 +182,9 @@ public class OrderedEntityDatasetListImpl<ValueType extends Entity> extends Enti
         return set;
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public ValueType getElementByName(String name) throws UnknownEntityException {
-        Entity entity = EntityUtils.findByName(name, getElementsAsList());
-
-        if (entity != null) {
-            return (ValueType) entity;
-        } else {
-            throw new UnknownEntityException("No entity with the name :" + name);
-        }
+        return elements.get(getIndexByName(name));
     }
 
     @SuppressWarnings("unchecked")
@@ -0,0 +1,677 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.model.impl;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.corehunter.CoreHunterException;
+
+/**
+ * Parses the lines of a delimited text file in parallel. The part of the file
+ * after a given number of lines is split into chunks of whole lines, which
+ * are parsed on a pool of threads, each chunk into its own result. The
+ * results are returned in the order of the chunks, so that callers can
+ * stitch them together as if the file had been parsed sequentially.
+ * 
+ * The header lines at the start of the file can be passed to a
+ * {@link HeaderParser}, which reads them while they are skipped, before any
+ * chunk is parsed. The line numbers passed to the parsers are those of the
+ * whole file, counting from 1, so errors can be reported at the right line. To
+ * find the first line number of each chunk, the line terminators of the
+ * chunks are counted before they are parsed. Lines may be terminated by
+ * <code>\n</code>, <code>\r\n</code> or <code>\r</code>, but quoted values
+ * must not contain line terminators.
+ * 
+ * With a single thread, or for files smaller than
+ * {@link #MINIMUM_CHUNK_SIZE}, the file is parsed as a single chunk on the
+ * calling thread. Gzip compressed files are also parsed as a single chunk,
+ * while they are decompressed on another thread.
+ * 
+ * @param <ResultType> the type of the result of a chunk
+ */
+public class ParallelDataFileParser<ResultType>
+{
+	/**
+	 * The minimum number of bytes in a chunk
+	 */
+	public static final int	MINIMUM_CHUNK_SIZE	= 1 << 20;
+
+	private static final int	CHUNKS_PER_THREAD	= 4;
+	private static final int	BUFFER_SIZE	      = 1 << 16;
+
+	private File	           file;
+	private char	           delimiter;
+	private int	             threadCount;
+
+	/**
+	 * Parser of the header lines of a file, which are read on the calling
+	 * thread before any chunk is parsed
+	 */
+	public interface HeaderParser
+	{
+		/**
+		 * Parses a header line
+		 * 
+		 * @param line the tokenizer positioned at the line, whose fields are only
+		 *          valid until this method returns
+		 * @param lineNumber the number of the line in the file
+		 * @throws CoreHunterException if the line can not be parsed
+		 */
+		public void parseHeader(DataFileTokenizer line, int lineNumber)
+		    throws CoreHunterException;
+	}
+
+	/**
+	 * Parser of the lines of a chunk. The parser is used by several threads at
+	 * once, each with its own result, so it must not change any shared state.
+	 * 
+	 * @param <ResultType> the type of the result of a chunk
+	 */
+	public interface ChunkParser<ResultType>
+	{
+		/**
+		 * Creates the result of a chunk
+		 * 
+		 * @return the new result
+		 */
+		public ResultType createResult();
+
+		/**
+		 * Parses a line into the result of its chunk
+		 * 
+		 * @param result the result of the chunk
+		 * @param line the tokenizer positioned at the line, whose fields are only
+		 *          valid until this method returns
+		 * @param lineNumber the number of the line in the file
+		 * @throws CoreHunterException if the line can not be parsed
+		 */
+		public void parseLine(ResultType result, DataFileTokenizer line,
+		    int lineNumber) throws CoreHunterException;
+	}
+
+	/**
+	 * Creates a parser
+	 * 
+	 * @param file the file to be parsed
+	 * @param delimiter the delimiter between values
+	 * @param threadCount the number of threads, or <code>0</code> to use
+	 *          as many threads as there are available processors
+	 */
+	public ParallelDataFileParser(File file, char delimiter, int threadCount)
+	{
+		this.file = file;
+		this.delimiter = delimiter;
+		this.threadCount = threadCount > 0 ? threadCount : Runtime.getRuntime()
+		    .availableProcessors();
+	}
+
+	public final File getFile()
+	{
+		return file;
+	}
+
+	public final char getDelimiter()
+	{
+		return delimiter;
+	}
+
+	public final int getThreadCount()
+	{
+		return threadCount;
+	}
+
+	/**
+	 * Parses the lines of the file after a number of skipped lines
+	 * 
+	 * @param skippedLineCount the number of lines at the start of the file that
+	 *          are not parsed
+	 * @param parser the parser of the lines
+	 * @return the results of the chunks, in the order of the chunks in the file
+	 * @throws CoreHunterException if the file can not be read or a line can not
+	 *           be parsed, in which case the error of the first chunk that
+	 *           failed is thrown
+	 */
+	public List<ResultType> parse(int skippedLineCount,
+	    final ChunkParser<ResultType> parser) throws CoreHunterException
+	{
+		return parse(skippedLineCount, null, parser);
+	}
+
+	/**
+	 * Parses the header lines of the file and then the remaining lines. The
+	 * header lines are read only once, while they are skipped.
+	 * 
+	 * @param skippedLineCount the number of header lines at the start of the
+	 *          file
+	 * @param headerParser the parser of the header lines, or <code>null</code>
+	 *          if they are not parsed
+	 * @param parser the parser of the remaining lines
+	 * @return the results of the chunks, in the order of the chunks in the file
+	 * @throws CoreHunterException if the file can not be read or a line can not
+	 *           be parsed, in which case the error of the header or of the first
+	 *           chunk that failed is thrown
+	 */
+	public List<ResultType> parse(int skippedLineCount,
+	    HeaderParser headerParser, final ChunkParser<ResultType> parser)
+	    throws CoreHunterException
+	{
+		try
+		{
+			if (AbstractFileUtility.isCompressed(file))
+			{
+				List<ResultType> results = new ArrayList<ResultType>(1);
+
+				results.add(parseCompressed(parser, skippedLineCount, headerParser));
+
+				return results;
+			}
+
+			long start = skipLines(skippedLineCount, headerParser);
+			final long[] boundaries = createBoundaries(start);
+			final int chunkCount = boundaries.length - 1;
+
+			List<ResultType> results = new ArrayList<ResultType>(chunkCount);
+
+			if (chunkCount == 1)
+			{
+				results.add(parseChunk(parser, boundaries[0], boundaries[1],
+				    skippedLineCount + 1));
+
+				return results;
+			}
+
+			ExecutorService executor = Executors.newFixedThreadPool(Math.min(
+			    threadCount, chunkCount));
+
+			try
+			{
+				List<Future<Integer>> lineCounts = new ArrayList<Future<Integer>>(
+				    chunkCount);
+
+				for (int i = 0; i < chunkCount; ++i)
+				{
+					final int chunk = i;
+
+					lineCounts.add(executor.submit(new Callable<Integer>()
+					{
+						@Override
+						public Integer call() throws IOException
+						{
+							return countLines(boundaries[chunk], boundaries[chunk + 1]);
+						}
+					}));
+				}
+
+				List<Future<ResultType>> futures = new ArrayList<Future<ResultType>>(
+				    chunkCount);
+				int lineNumber = skippedLineCount + 1;
+
+				for (int i = 0; i < chunkCount; ++i)
+				{
+					final int chunk = i;
+					final int firstLineNumber = lineNumber;
+
+					futures.add(executor.submit(new Callable<ResultType>()
+					{
+						@Override
+						public ResultType call() throws CoreHunterException, IOException
+						{
+							return parseChunk(parser, boundaries[chunk],
+							    boundaries[chunk + 1], firstLineNumber);
+						}
+					}));
+
+					lineNumber += get(lineCounts.get(i));
+				}
+
+				for (Future<ResultType> future : futures)
+				{
+					results.add(get(future));
+				}
+			}
+			finally
+			{
+				executor.shutdownNow();
+			}
+
+			return results;
+		}
+		catch (IOException e)
+		{
+			throw new CoreHunterException(e);
+		}
+	}
+
+	private ResultType parseChunk(ChunkParser<ResultType> parser, long start,
+	    long end, int firstLineNumber) throws CoreHunterException, IOException
+	{
+		return parseLines(parser, new DataFileTokenizer(new InputStreamReader(
+		    openRange(start, end)), delimiter), firstLineNumber);
+	}
+
+	/**
+	 * Parses a gzip compressed file as a single chunk. Compressed files can not
+	 * be split, but they are decompressed on a separate thread while the lines
+	 * are parsed.
+	 */
+	private ResultType parseCompressed(ChunkParser<ResultType> parser,
+	    int skippedLineCount, HeaderParser headerParser)
+	    throws CoreHunterException, IOException
+	{
+		DataFileTokenizer tokenizer = new DataFileTokenizer(new InputStreamReader(
+		    AbstractFileUtility.openInputStream(file)), delimiter);
+
+		try
+		{
+			for (int i = 0; i < skippedLineCount && tokenizer.nextLine(); ++i)
+			{
+				if (headerParser != null)
+				{
+					headerParser.parseHeader(tokenizer, i + 1);
+				}
+			}
+		}
+		catch (CoreHunterException e)
+		{
+			tokenizer.close();
+			throw e;
+		}
+		catch (IOException e)
+		{
+			tokenizer.close();
+			throw e;
+		}
+
+		return parseLines(parser, tokenizer, skippedLineCount + 1);
+	}
+
+	private ResultType parseLines(ChunkParser<ResultType> parser,
+	    DataFileTokenizer tokenizer, int firstLineNumber)
+	    throws CoreHunterException, IOException
+	{
+		ResultType result = parser.createResult();
+
+		try
+		{
+			int lineNumber = firstLineNumber;
+
+			while (tokenizer.nextLine())
+			{
+				parser.parseLine(result, tokenizer, lineNumber);
+				++lineNumber;
+			}
+		}
+		finally
+		{
+			tokenizer.close();
+		}
+
+		return result;
+	}
+
+	private int countLines(long start, long end) throws IOException
+	{
+		InputStream input = openRange(start, end);
+
+		try
+		{
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int count = 0;
+			boolean carriageReturn = false;
+			int length;
+
+			while ((length = input.read(buffer)) > 0)
+			{
+				for (int i = 0; i < length; ++i)
+				{
+					byte b = buffer[i];
+
+					// \r\n is counted at the \r
+					if (b == '\r' || (b == '\n' && !carriageReturn))
+					{
+						++count;
+					}
+
+					carriageReturn = b == '\r';
+				}
+			}
+
+			return count;
+		}
+		finally
+		{
+			input.close();
+		}
+	}
+
+	/**
+	 * Skips the header lines and returns the position of the first line after
+	 * them. If there is a header parser, the bytes of the header lines are kept
+	 * while they are skipped, and parsed once the header lines are skipped.
+	 */
+	private long skipLines(int lineCount, HeaderParser headerParser)
+	    throws CoreHunterException, IOException
+	{
+		if (lineCount == 0)
+		{
+			return 0;
+		}
+
+		ByteArrayOutputStream header = headerParser != null ? new ByteArrayOutputStream()
+		    : null;
+		long position = skipLines(lineCount, header);
+
+		if (header != null)
+		{
+			DataFileTokenizer tokenizer = new DataFileTokenizer(
+			    new InputStreamReader(new ByteArrayInputStream(header.toByteArray())),
+			    delimiter);
+
+			try
+			{
+				int lineNumber = 1;
+
+				while (tokenizer.nextLine())
+				{
+					headerParser.parseHeader(tokenizer, lineNumber);
+					++lineNumber;
+				}
+			}
+			finally
+			{
+				tokenizer.close();
+			}
+		}
+
+		return position;
+	}
+
+	private long skipLines(int lineCount, ByteArrayOutputStream header)
+	    throws IOException
+	{
+		InputStream input = new BufferedInputStream(new FileInputStream(file),
+		    BUFFER_SIZE);
+
+		try
+		{
+			long position = 0;
+			int count = 0;
+			int b;
+
+			while ((b = input.read()) >= 0)
+			{
+				++position;
+
+				if (header != null)
+				{
+					header.write(b);
+				}
+
+				if (b == '\n' || b == '\r')
+				{
+					if (b == '\r')
+					{
+						input.mark(1);
+
+						if (input.read() == '\n')
+						{
+							++position;
+						}
+						else
+						{
+							input.reset();
+						}
+					}
+
+					if (++count == lineCount)
+					{
+						return position;
+					}
+				}
+			}
+
+			return position;
+		}
+		finally
+		{
+			input.close();
+		}
+	}
+
+	private long[] createBoundaries(long start) throws IOException
+	{
+		long length = file.length();
+		long size = length - start;
+
+		int chunkCount = threadCount > 1 ? (int) Math.max(1, Math.min(
+		    (long) threadCount * CHUNKS_PER_THREAD, size / MINIMUM_CHUNK_SIZE)) : 1;
+
+		List<Long> boundaries = new ArrayList<Long>(chunkCount + 1);
+		boundaries.add(start);
+
+		if (chunkCount > 1)
+		{
+			RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+
+			try
+			{
+				for (int i = 1; i < chunkCount; ++i)
+				{
+					long boundary = findLineStart(randomAccessFile, start + size * i
+					    / chunkCount, length);
+
+					if (boundary > boundaries.get(boundaries.size() - 1)
+					    && boundary < length)
+					{
+						boundaries.add(boundary);
+					}
+				}
+			}
+			finally
+			{
+				randomAccessFile.close();
+			}
+		}
+
+		boundaries.add(length);
+
+		long[] array = new long[boundaries.size()];
+
+		for (int i = 0; i < array.length; ++i)
+		{
+			array[i] = boundaries.get(i);
+		}
+
+		return array;
+	}
+
+	/**
+	 * Finds the start of the first line that starts at or after a position
+	 */
+	private static long findLineStart(RandomAccessFile randomAccessFile,
+	    long position, long length) throws IOException
+	{
+		byte[] buffer = new byte[BUFFER_SIZE];
+
+		// start at the previous byte, which is a terminator if the position is
+		// already at the start of a line
+		long offset = Math.max(0, position - 1);
+		boolean carriageReturn = false;
+
+		while (offset < length)
+		{
+			randomAccessFile.seek(offset);
+
+			int count = randomAccessFile.read(buffer);
+
+			for (int i = 0; i < count; ++i)
+			{
+				byte b = buffer[i];
+
+				if (carriageReturn)
+				{
+					return b == '\n' ? offset + i + 1 : offset + i;
+				}
+
+				if (b == '\n')
+				{
+					return offset + i + 1;
+				}
+
+				carriageReturn = b == '\r';
+			}
+
+			offset += count;
+		}
+
+		return length;
+	}
+
+	private InputStream openRange(long start, long end) throws IOException
+	{
+		FileInputStream input = new FileInputStream(file);
+
+		try
+		{
+			input.getChannel().position(start);
+		}
+		catch (IOException e)
+		{
+			input.close();
+			throw e;
+		}
+
+		return new RangeInputStream(new BufferedInputStream(input, BUFFER_SIZE),
+		    end - start);
+	}
+
+	private static <T> T get(Future<T> future) throws CoreHunterException,
+	    IOException
+	{
+		try
+		{
+			return future.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new CoreHunterException(e);
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof CoreHunterException)
+			{
+				throw (CoreHunterException) e.getCause();
+			}
+			else
+				if (e.getCause() instanceof IOException)
+				{
+					throw (IOException) e.getCause();
+				}
+				else
+				{
+					throw new CoreHunterException(e.getCause());
+				}
+		}
+	}
+
+	/**
+	 * Input stream that ends after a given number of bytes
+	 */
+	private static class RangeInputStream extends FilterInputStream
+	{
+		private long	remaining;
+
+		public RangeInputStream(InputStream input, long length)
+		{
+			super(input);
+			remaining = length;
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			if (remaining <= 0)
+			{
+				return -1;
+			}
+
+			int b = super.read();
+
+			if (b >= 0)
+			{
+				--remaining;
+			}
+
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException
+		{
+			if (remaining <= 0)
+			{
+				return -1;
+			}
+
+			int count = super.read(buffer, offset, (int) Math.min(length,
+			    remaining));
+
+			if (count > 0)
+			{
+				remaining -= count;
+			}
+
+			return count;
+		}
+
+		@Override
+		public long skip(long count) throws IOException
+		{
+			long skipped = super.skip(Math.min(count, remaining));
+
+			remaining -= skipped;
+
+			return skipped;
+		}
+
+		@Override
+		public int available() throws IOException
+		{
+			return (int) Math.min(super.available(), remaining);
+		}
+
+		@Override
+		public boolean markSupported()
+		{
+			return false;
+		}
+	}
+}
@@ -0,0 +1,85 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.model.snp;
+
+import org.corehunter.model.accession.AccessionEntityMatrix;
+
+/**
+ * Matrix of biallelic SNP genotypes, with accessions as rows and markers as
+ * columns. The elements are the genotypes 0, 1 or 2, or <code>null</code> if
+ * the genotype is missing.
+ *
+ * The genotypes are also available packed into <code>long</code> words, so
+ * that objective functions can process {@link #GENOTYPES_PER_WORD} markers at
+ * a time using bitwise operations. Marker <code>m</code> of an accession is
+ * stored in bits <code>2 * (m % 32)</code> (the low bit) and
+ * <code>2 * (m % 32) + 1</code> (the high bit) of word <code>m / 32</code>,
+ * genotype 0 being encoded as <code>00</code>, 1 as <code>01</code>, 2 as
+ * <code>10</code> and a missing genotype as <code>11</code>. The unused
+ * genotypes of the last word are always missing.
+ */
+public interface AccessionSNPMarkerMatrix extends
+    AccessionEntityMatrix<Integer, Integer, SNPMarker>
+{
+	/**
+	 * The number of genotypes packed into a word
+	 */
+	public static final int	 GENOTYPES_PER_WORD	= 32;
+
+	/**
+	 * The code of a missing genotype
+	 */
+	public static final int	 MISSING_GENOTYPE	  = 3;
+
+	/**
+	 * A word with the low bit of each genotype set
+	 */
+	public static final long	LOW_BITS	        = 0x5555555555555555L;
+
+	/**
+	 * Gets the genotype of an accession for a marker
+	 * 
+	 * @param accessionIndex the index of the accession
+	 * @param markerIndex the index of the marker
+	 * @return the genotype 0, 1 or 2, or {@link #MISSING_GENOTYPE} if the
+	 *         genotype is missing
+	 */
+	public int getGenotype(int accessionIndex, int markerIndex);
+
+	/**
+	 * Sets the genotype of an accession for a marker
+	 * 
+	 * @param accessionIndex the index of the accession
+	 * @param markerIndex the index of the marker
+	 * @param genotype the genotype 0, 1 or 2, or {@link #MISSING_GENOTYPE} if
+	 *          the genotype is missing
+	 */
+	public void setGenotype(int accessionIndex, int markerIndex, int genotype);
+
+	/**
+	 * Gets the number of words per accession
+	 * 
+	 * @return the number of words per accession
+	 */
+	public int getWordCount();
+
+	/**
+	 * Gets a word of packed genotypes of an accession
+	 * 
+	 * @param accessionIndex the index of the accession
+	 * @param wordIndex the index of the word
+	 * @return the word
+	 */
+	public long getWord(int accessionIndex, int wordIndex);
+}
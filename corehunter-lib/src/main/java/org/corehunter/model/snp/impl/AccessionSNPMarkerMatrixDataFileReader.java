@@ -0,0 +1,279 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.model.snp.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.ContentDigest;
+import org.corehunter.model.DataReader;
+import org.corehunter.model.EntityIndexedDataset;
+import org.corehunter.model.accession.Accession;
+import org.corehunter.model.accession.impl.AccessionImpl;
+import org.corehunter.model.impl.AbstractDataFileReader;
+import org.corehunter.model.impl.OrderedEntityDatasetListImpl;
+import org.corehunter.model.snp.AccessionSNPMarkerMatrix;
+import org.corehunter.model.snp.SNPMarker;
+
+import au.com.bytecode.opencsv.CSVReader;
+
+/**
+ * Reads a SNP genotype matrix. The first line contains a label followed by
+ * the names of the markers, each following line the name of an accession
+ * followed by its genotypes for each marker, all separated by the delimiter.
+ * Genotypes are the number of copies of the alternative allele, that is
+ * <code>0</code>, <code>1</code> or <code>2</code>. Empty values and the
+ * values <code>NA</code>, <code>-</code> and <code>?</code> denote missing
+ * genotypes. Accessions and markers are indexed from 0 to n-1.
+ * 
+ * The file is read line by line, the genotypes of each accession are packed
+ * into words as soon as the line is read.
+ */
+public class AccessionSNPMarkerMatrixDataFileReader extends
+    AbstractDataFileReader<AccessionSNPMarkerMatrix> implements
+    DataReader<AccessionSNPMarkerMatrix>
+{
+	private static final String	ACCESSION_DATASET_NAME_PREFIX	= "Accessions for ";
+	private static final String	MARKER_DATASET_NAME_PREFIX	  = "Markers for ";
+	private char	              delimiter;
+
+	public AccessionSNPMarkerMatrixDataFileReader(File file)
+	{
+		super(file);
+		setDelimiter(TAB_DELIMITER);
+	}
+
+	public AccessionSNPMarkerMatrixDataFileReader(File file, char delimiter)
+	{
+		super(file);
+		setDelimiter(delimiter);
+	}
+
+	public AccessionSNPMarkerMatrixDataFileReader(String dataName, File file,
+	    char delimiter)
+	{
+		super(dataName, file);
+		setDelimiter(delimiter);
+	}
+
+	public AccessionSNPMarkerMatrixDataFileReader(String dataUniqueIdentifier,
+	    String dataName, File file, char delimiter)
+	{
+		super(dataUniqueIdentifier, dataName, file);
+		setDelimiter(delimiter);
+	}
+
+	public final char getDelimiter()
+	{
+		return delimiter;
+	}
+
+	public final void setDelimiter(char delimiter)
+	{
+		this.delimiter = delimiter;
+	}
+
+	@Override
+	public AccessionSNPMarkerMatrix readData() throws CoreHunterException
+	{
+		List<Accession> accessions = new ArrayList<Accession>();
+		List<SNPMarker> markers = new ArrayList<SNPMarker>();
+		long[] words = new long[0];
+		// the digest of the genotypes, calculated row by row as they are read
+		ContentDigest.Builder contentDigest = new ContentDigest.Builder();
+
+		CSVReader reader = null;
+
+		try
+		{
+			reader = new CSVReader(openReader(), delimiter);
+
+			String[] nextLine = reader.readNext();
+
+			if (nextLine == null)
+			{
+				throw new CoreHunterException("Dataset is empty!");
+			}
+
+			for (int i = 1; i < nextLine.length; i++)
+			{
+				markers.add(createSNPMarker(nextLine[i].trim(), i - 1));
+			}
+
+			int markerCount = markers.size();
+			int wordCount = AccessionSNPMarkerMatrixPackedImpl
+			    .getWordCount(markerCount);
+			int lineNumber = 1;
+
+			while ((nextLine = reader.readNext()) != null)
+			{
+				lineNumber++;
+
+				// skip blank lines
+				if (nextLine.length == 1 && nextLine[0].trim().length() == 0)
+				{
+					continue;
+				}
+
+				if (nextLine.length != markerCount + 1)
+				{
+					throw new CoreHunterException(
+					    "Dataset is not properly formatted on line " + lineNumber
+					        + ". There should be an accession name followed by "
+					        + markerCount + " genotypes separated by a '" + delimiter
+					        + "', but found " + (nextLine.length - 1) + " genotypes.");
+				}
+
+				int accessionIndex = accessions.size();
+				Accession accession = createAccession(nextLine[0].trim(),
+				    accessionIndex);
+				accessions.add(accession);
+
+				int offset = accessionIndex * wordCount;
+
+				if (offset + wordCount > words.length)
+				{
+					int length = Math.max(offset + wordCount, words.length * 2);
+					int used = words.length;
+
+					words = Arrays.copyOf(words, length);
+					Arrays.fill(words, used, length, -1L);
+				}
+
+				ContentDigest.Builder row = new ContentDigest.Builder();
+				row.startList(markerCount);
+
+				for (int i = 1; i < nextLine.length; i++)
+				{
+					int genotype = parseGenotype(nextLine[i], accession,
+					    markers.get(i - 1), lineNumber);
+
+					AccessionSNPMarkerMatrixPackedImpl.setGenotype(words, offset,
+					    i - 1, genotype);
+					AccessionSNPMarkerMatrixPackedImpl.addGenotype(row, genotype);
+				}
+
+				contentDigest.addDigest(row.build());
+			}
+
+			if (accessions.size() < 2)
+			{
+				throw new CoreHunterException(
+				    "Dataset must contain at least 2 accessions");
+			}
+
+			if (markers.size() < 1)
+			{
+				throw new CoreHunterException("Dataset must contain at least 1 marker");
+			}
+		}
+		catch (IOException e)
+		{
+			throw new CoreHunterException(e);
+		}
+		finally
+		{
+			if (reader != null)
+			{
+				try
+				{
+					reader.close();
+				}
+				catch (IOException e)
+				{
+					// ignore
+				}
+			}
+		}
+
+		AccessionSNPMarkerMatrixPackedImpl matrix = new AccessionSNPMarkerMatrixPackedImpl(
+		    getDataUniqueIdentifier(), getDataName(), createAccessionDataset(
+		        createAccessionDatasetName(), accessions), createMarkerDataset(
+		        createMarkerDatasetName(), markers), words, null);
+
+		matrix.setLoadedContentDigest(contentDigest.build());
+
+		return matrix;
+	}
+
+	protected String createAccessionDatasetName()
+	{
+		return ACCESSION_DATASET_NAME_PREFIX + getDataName();
+	}
+
+	protected String createMarkerDatasetName()
+	{
+		return MARKER_DATASET_NAME_PREFIX + getDataName();
+	}
+
+	protected Accession createAccession(String accessionName, int index)
+	{
+		return new AccessionImpl(accessionName);
+	}
+
+	protected SNPMarker createSNPMarker(String markerName, int index)
+	{
+		return new SNPMarkerImpl(markerName);
+	}
+
+	protected EntityIndexedDataset<Integer, Accession> createAccessionDataset(
+	    String name, List<Accession> accessions)
+	{
+		return new OrderedEntityDatasetListImpl<Accession>(name, accessions);
+	}
+
+	protected EntityIndexedDataset<Integer, SNPMarker> createMarkerDataset(
+	    String name, List<SNPMarker> markers)
+	{
+		return new OrderedEntityDatasetListImpl<SNPMarker>(name, markers);
+	}
+
+	private int parseGenotype(String value, Accession accession,
+	    SNPMarker marker, int lineNumber) throws CoreHunterException
+	{
+		String trimmed = value.trim();
+
+		if (trimmed.length() == 1)
+		{
+			switch (trimmed.charAt(0))
+			{
+				case '0':
+					return 0;
+				case '1':
+					return 1;
+				case '2':
+					return 2;
+				case '-':
+				case '?':
+					return AccessionSNPMarkerMatrix.MISSING_GENOTYPE;
+				default:
+					break;
+			}
+		}
+		else
+			if (trimmed.length() == 0 || trimmed.equalsIgnoreCase("NA"))
+			{
+				return AccessionSNPMarkerMatrix.MISSING_GENOTYPE;
+			}
+
+		throw new CoreHunterException("Invalid genotype '" + value
+		    + "' for accession '" + accession.getName() + "' marker '"
+		    + marker.getName() + "' on line " + lineNumber
+		    + ", expected 0, 1 or 2");
+	}
+}
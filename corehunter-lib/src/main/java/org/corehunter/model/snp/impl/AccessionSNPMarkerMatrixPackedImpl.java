@@ -0,0 +1,342 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.model.snp.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.ContentDigest;
+import org.corehunter.model.EntityIndexedDataset;
+import org.corehunter.model.UnknownIndexException;
+import org.corehunter.model.accession.Accession;
+import org.corehunter.model.accession.AccessionEntityMatrix;
+import org.corehunter.model.impl.AbstractEntityMatrix;
+import org.corehunter.model.snp.AccessionSNPMarkerMatrix;
+import org.corehunter.model.snp.SNPMarker;
+
+/**
+ * SNP matrix that stores the genotypes packed into a single
+ * <code>long</code> array, accession by accession, using two bits per
+ * genotype as described in {@link AccessionSNPMarkerMatrix}. The words of
+ * accession <code>a</code> start at position
+ * <code>a * getWordCount()</code> of the array.
+ */
+public class AccessionSNPMarkerMatrixPackedImpl extends
+    AbstractEntityMatrix<Integer, Integer, Accession, SNPMarker> implements
+    AccessionSNPMarkerMatrix
+{
+	private int	     markerCount;
+	private int	     wordCount;
+	private long[]	 words;
+	private double[]	externalDistances;
+
+	/**
+	 * Creates a matrix in which all genotypes are missing
+	 * 
+	 * @param uniqueIdentifier the unique identifier of the matrix
+	 * @param name the name of the matrix
+	 * @param rowHeaders the accessions
+	 * @param columnHeaders the markers
+	 * @param externalDistances the external distances or <code>null</code>
+	 */
+	public AccessionSNPMarkerMatrixPackedImpl(String uniqueIdentifier,
+	    String name, EntityIndexedDataset<Integer, Accession> rowHeaders,
+	    EntityIndexedDataset<Integer, SNPMarker> columnHeaders,
+	    double[] externalDistances)
+	{
+		this(uniqueIdentifier, name, rowHeaders, columnHeaders, createWords(
+		    rowHeaders.getSize(), columnHeaders.getSize()), externalDistances);
+	}
+
+	/**
+	 * Creates a matrix from packed genotypes. The array is used directly, not
+	 * copied.
+	 * 
+	 * @param uniqueIdentifier the unique identifier of the matrix
+	 * @param name the name of the matrix
+	 * @param rowHeaders the accessions
+	 * @param columnHeaders the markers
+	 * @param words the packed genotypes, with at least
+	 *          {@link #getWordCount(int)} words for each accession
+	 * @param externalDistances the external distances or <code>null</code>
+	 */
+	public AccessionSNPMarkerMatrixPackedImpl(String uniqueIdentifier,
+	    String name, EntityIndexedDataset<Integer, Accession> rowHeaders,
+	    EntityIndexedDataset<Integer, SNPMarker> columnHeaders, long[] words,
+	    double[] externalDistances)
+	{
+		super(uniqueIdentifier, name, rowHeaders, columnHeaders);
+
+		this.markerCount = columnHeaders.getSize();
+		this.wordCount = getWordCount(markerCount);
+		this.words = words;
+		this.externalDistances = externalDistances;
+
+		if (words.length < rowHeaders.getSize() * wordCount)
+		{
+			throw new IllegalArgumentException("Expected at least "
+			    + rowHeaders.getSize() * wordCount + " words but got "
+			    + words.length);
+		}
+	}
+
+	/**
+	 * Gets the number of words needed for a given number of markers
+	 * 
+	 * @param markerCount the number of markers
+	 * @return the number of words
+	 */
+	public static int getWordCount(int markerCount)
+	{
+		return (markerCount + GENOTYPES_PER_WORD - 1) / GENOTYPES_PER_WORD;
+	}
+
+	/**
+	 * Creates the words for a given number of accessions and markers, with all
+	 * genotypes missing
+	 * 
+	 * @param accessionCount the number of accessions
+	 * @param markerCount the number of markers
+	 * @return the words
+	 */
+	public static long[] createWords(int accessionCount, int markerCount)
+	{
+		long[] words = new long[accessionCount * getWordCount(markerCount)];
+
+		Arrays.fill(words, -1L);
+
+		return words;
+	}
+
+	/**
+	 * Sets a genotype in packed words
+	 * 
+	 * @param words the words
+	 * @param offset the position of the first word of the accession
+	 * @param markerIndex the index of the marker
+	 * @param genotype the genotype 0, 1 or 2, or {@link #MISSING_GENOTYPE}
+	 */
+	public static void setGenotype(long[] words, int offset, int markerIndex,
+	    int genotype)
+	{
+		int position = offset + markerIndex / GENOTYPES_PER_WORD;
+		int shift = (markerIndex % GENOTYPES_PER_WORD) << 1;
+
+		words[position] = (words[position] & ~(3L << shift))
+		    | ((long) genotype << shift);
+	}
+
+	/**
+	 * Adds a genotype to the digest of a row, as the element of the row is
+	 * added
+	 * 
+	 * @param row the digest builder of the row
+	 * @param genotype the genotype 0, 1 or 2, or {@link #MISSING_GENOTYPE}
+	 */
+	static void addGenotype(ContentDigest.Builder row, int genotype)
+	{
+		if (genotype != MISSING_GENOTYPE)
+		{
+			row.addInt(genotype);
+		}
+		else
+		{
+			row.addNull();
+		}
+	}
+
+	@Override
+	public void validate() throws CoreHunterException
+	{
+		super.validate();
+
+		if (externalDistances != null
+		    && externalDistances.length != getRowHeaders().getSize())
+		{
+			throw new CoreHunterException(
+			    "Number of external distances does not match number of row headers!");
+		}
+	}
+
+	@Override
+	public final List<Integer> getIndices()
+	{
+		return getRowHeaders().getIndices();
+	}
+
+	@Override
+	public final int getSize()
+	{
+		return getRowHeaders().getSize();
+	}
+
+	@Override
+	public final int getGenotype(int accessionIndex, int markerIndex)
+	{
+		return (int) (words[accessionIndex * wordCount + markerIndex
+		    / GENOTYPES_PER_WORD] >>> ((markerIndex % GENOTYPES_PER_WORD) << 1)) & 3;
+	}
+
+	@Override
+	public final void setGenotype(int accessionIndex, int markerIndex,
+	    int genotype)
+	{
+		if (genotype < 0 || genotype > MISSING_GENOTYPE)
+		{
+			throw new IllegalArgumentException("Invalid genotype : " + genotype);
+		}
+
+		setGenotype(words, accessionIndex * wordCount, markerIndex, genotype);
+		invalidateContentDigest();
+	}
+
+	@Override
+	public final int getWordCount()
+	{
+		return wordCount;
+	}
+
+	@Override
+	public final long getWord(int accessionIndex, int wordIndex)
+	{
+		return words[accessionIndex * wordCount + wordIndex];
+	}
+
+	@Override
+	public final Integer getElement(Integer rowIndex, Integer columnIndex)
+	    throws UnknownIndexException
+	{
+		checkRowIndex(rowIndex);
+
+		if (columnIndex == null || columnIndex < 0 || columnIndex >= markerCount)
+		{
+			throw new UnknownIndexException("Unknown column index " + columnIndex);
+		}
+
+		return createElement(getGenotype(rowIndex, columnIndex));
+	}
+
+	@Override
+	public final List<Integer> getRowElements(Integer index)
+	    throws UnknownIndexException
+	{
+		checkRowIndex(index);
+
+		List<Integer> row = new ArrayList<Integer>(markerCount);
+
+		for (int m = 0; m < markerCount; ++m)
+		{
+			row.add(createElement(getGenotype(index, m)));
+		}
+
+		return row;
+	}
+
+	@Override
+	public final boolean externalDistancesSpecified()
+	{
+		return externalDistances != null;
+	}
+
+	@Override
+	public final double getExternalDistance(Integer index)
+	{
+		return externalDistances != null ? externalDistances[index] : 0;
+	}
+
+	public final double[] getExternalDistances()
+	{
+		return externalDistances;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public boolean equals(Object object)
+	{
+		if (object instanceof AccessionEntityMatrix)
+		{
+			boolean equals = super.equals(object);
+
+			Iterator<Integer> iterator = getIndices().iterator();
+
+			while (equals && iterator.hasNext())
+			{
+				Integer index = iterator.next();
+
+				equals = getExternalDistance(index) == ((AccessionEntityMatrix<Integer, Integer, SNPMarker>) object)
+				    .getExternalDistance(index);
+			}
+
+			return equals;
+		}
+		else
+		{
+			return super.equals(object);
+		}
+	}
+
+	@Override
+	public int hashCode()
+	{
+		int hash = super.hashCode();
+		hash = 53 * hash + Arrays.hashCode(getExternalDistances());
+		return hash;
+	}
+
+	@Override
+	protected void addContent(ContentDigest.Builder builder)
+	{
+		int accessionCount = getSize();
+
+		for (int a = 0; a < accessionCount; ++a)
+		{
+			ContentDigest.Builder row = new ContentDigest.Builder();
+			row.startList(markerCount);
+
+			for (int m = 0; m < markerCount; ++m)
+			{
+				addGenotype(row, getGenotype(a, m));
+			}
+
+			builder.addDigest(row.build());
+		}
+	}
+
+	/**
+	 * Sets the digest of the genotypes calculated while they were read, see
+	 * {@link AccessionSNPMarkerMatrixDataFileReader}
+	 * 
+	 * @param digest the digest of the genotypes
+	 */
+	final void setLoadedContentDigest(ContentDigest digest)
+	{
+		setContentDigest(digest);
+	}
+
+	private void checkRowIndex(Integer index) throws UnknownIndexException
+	{
+		if (index == null || index < 0 || index >= getRowHeaders().getSize())
+		{
+			throw new UnknownIndexException("Unknown row index : " + index);
+		}
+	}
+
+	private static Integer createElement(int genotype)
+	{
+		return genotype != MISSING_GENOTYPE ? genotype : null;
+	}
+}
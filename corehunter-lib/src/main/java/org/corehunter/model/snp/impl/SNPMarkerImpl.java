@@ -0,0 +1,30 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.model.snp.impl;
+
+import org.corehunter.model.impl.EntityImpl;
+import org.corehunter.model.snp.SNPMarker;
+
+public class SNPMarkerImpl extends EntityImpl implements SNPMarker
+{
+	public SNPMarkerImpl(String name)
+	{
+		super(name);
+	}
+
+	public SNPMarkerImpl(String uniqueIdentifier, String name)
+	{
+		super(uniqueIdentifier, name);
+	}
+}
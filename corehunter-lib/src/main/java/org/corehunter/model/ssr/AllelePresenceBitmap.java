@@ -0,0 +1,198 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.model.ssr;
+
+/**
+ * Immutable bitmap of the alleles that are present (have a value greater than
+ * zero) in each accession of an SSR matrix. The bits of each accession are
+ * packed into {@link #getWordCount()} consecutive <code>long</code> words,
+ * allele <code>i</code> being bit <code>i % 64</code> of word
+ * <code>i / 64</code>. Unused bits of the last word are always zero.
+ *
+ * Instances can be safely shared between threads.
+ */
+public final class AllelePresenceBitmap
+{
+	private final int	   alleleCount;
+	private final int	   wordCount;
+	private final long[]	words;
+
+	/**
+	 * Creates the bitmap from the current values of a matrix
+	 *
+	 * @param data the matrix
+	 */
+	public AllelePresenceBitmap(PrimitiveAccessionSSRMarkerMatrix data)
+	{
+		alleleCount = data.getTotalAlleleCount();
+		wordCount = getWordCount(alleleCount);
+
+		int accessionCount = data.getSize();
+
+		words = new long[accessionCount * wordCount];
+
+		double[] values = new double[alleleCount];
+
+		for (int a = 0; a < accessionCount; ++a)
+		{
+			data.getAlleleValues(a, values);
+
+			int offset = a * wordCount;
+
+			for (int i = 0; i < alleleCount; ++i)
+			{
+				// NaN > 0 is false, so missing values are never present
+				if (values[i] > 0)
+				{
+					words[offset + (i >>> 6)] |= 1L << i;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of words needed for a given number of alleles
+	 *
+	 * @param alleleCount the number of alleles
+	 * @return the number of words
+	 */
+	public static int getWordCount(int alleleCount)
+	{
+		return (alleleCount + 63) >>> 6;
+	}
+
+	/**
+	 * Counts the bits that are set in a bitmap
+	 *
+	 * @param bits the bitmap
+	 * @return the number of bits that are set
+	 */
+	public static int countBits(long[] bits)
+	{
+		int count = 0;
+
+		for (int w = 0; w < bits.length; ++w)
+		{
+			count += Long.bitCount(bits[w]);
+		}
+
+		return count;
+	}
+
+	/**
+	 * Gets the total number of alleles
+	 *
+	 * @return the total number of alleles
+	 */
+	public int getAlleleCount()
+	{
+		return alleleCount;
+	}
+
+	/**
+	 * Gets the number of words per accession
+	 *
+	 * @return the number of words per accession
+	 */
+	public int getWordCount()
+	{
+		return wordCount;
+	}
+
+	/**
+	 * Indicates if an allele is present in an accession
+	 *
+	 * @param accessionIndex the index of the accession
+	 * @param alleleIndex the index of the allele over all markers
+	 * @return <code>true</code> if the allele is present
+	 */
+	public boolean isPresent(int accessionIndex, int alleleIndex)
+	{
+		return (words[accessionIndex * wordCount + (alleleIndex >>> 6)] & (1L << alleleIndex)) != 0;
+	}
+
+	/**
+	 * Gets a word of an accession
+	 *
+	 * @param accessionIndex the index of the accession
+	 * @param wordIndex the index of the word
+	 * @return the word
+	 */
+	public long getWord(int accessionIndex, int wordIndex)
+	{
+		return words[accessionIndex * wordCount + wordIndex];
+	}
+
+	/**
+	 * Adds the alleles present in an accession to allele counts, and sets the
+	 * bits of these alleles in a coverage bitmap
+	 *
+	 * @param accessionIndex the index of the accession
+	 * @param counts the number of accessions in which each allele is present
+	 * @param covered the bitmap of alleles with a count greater than zero, with
+	 *          a length of at least {@link #getWordCount()}
+	 */
+	public void add(int accessionIndex, int[] counts, long[] covered)
+	{
+		int offset = accessionIndex * wordCount;
+
+		for (int w = 0; w < wordCount; ++w)
+		{
+			long word = words[offset + w];
+
+			covered[w] |= word;
+
+			while (word != 0)
+			{
+				++counts[(w << 6) + Long.numberOfTrailingZeros(word)];
+				word &= word - 1;
+			}
+		}
+	}
+
+	/**
+	 * Removes the alleles present in an accession from allele counts, and
+	 * clears the bits of the alleles whose count drops to zero in a coverage
+	 * bitmap
+	 *
+	 * @param accessionIndex the index of the accession
+	 * @param counts the number of accessions in which each allele is present
+	 * @param covered the bitmap of alleles with a count greater than zero, with
+	 *          a length of at least {@link #getWordCount()}
+	 */
+	public void remove(int accessionIndex, int[] counts, long[] covered)
+	{
+		int offset = accessionIndex * wordCount;
+
+		for (int w = 0; w < wordCount; ++w)
+		{
+			long word = words[offset + w];
+			long cleared = 0;
+
+			while (word != 0)
+			{
+				int bit = Long.numberOfTrailingZeros(word);
+
+				if (--counts[(w << 6) + bit] == 0)
+				{
+					cleared |= 1L << bit;
+				}
+
+				word &= word - 1;
+			}
+
+			covered[w] &= ~cleared;
+		}
+	}
+}
@@ -0,0 +1,118 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.model.ssr;
+
+/**
+ * An SSR matrix whose allele values can be accessed by accession and allele
+ * index without boxing. Alleles are numbered consecutively over all markers,
+ * the alleles of marker <code>m</code> having the indices from
+ * <code>getAlleleOffset(m)</code> (inclusive) to
+ * <code>getAlleleOffset(m + 1)</code> (exclusive). Missing values are
+ * represented by {@link Double#NaN}.
+ *
+ * The index based methods do not check their arguments, an invalid index
+ * results in a runtime exception.
+ */
+public interface PrimitiveAccessionSSRMarkerMatrix extends
+    AccessionSSRMarkerMatrix<Integer>
+{
+	/**
+	 * Gets the total number of alleles over all markers
+	 *
+	 * @return the total number of alleles over all markers
+	 */
+	public int getTotalAlleleCount();
+
+	/**
+	 * Gets the index of the first allele of a given marker. For
+	 * <code>markerIndex</code> equal to the number of markers the total number
+	 * of alleles is returned.
+	 *
+	 * @param markerIndex the index of the marker
+	 * @return the index of the first allele of the marker
+	 */
+	public int getAlleleOffset(int markerIndex);
+
+	/**
+	 * Gets a single allele value
+	 *
+	 * @param accessionIndex the index of the accession
+	 * @param alleleIndex the index of the allele over all markers
+	 * @return the allele value or {@link Double#NaN} if it is missing
+	 */
+	public double getAlleleValue(int accessionIndex, int alleleIndex);
+
+	/**
+	 * Sets a single allele value
+	 *
+	 * @param accessionIndex the index of the accession
+	 * @param alleleIndex the index of the allele over all markers
+	 * @param value the allele value or {@link Double#NaN} if it is missing
+	 */
+	public void setAlleleValue(int accessionIndex, int alleleIndex, double value);
+
+	/**
+	 * Copies all allele values of an accession into the given array, which must
+	 * have a length of at least {@link #getTotalAlleleCount()}
+	 *
+	 * @param accessionIndex the index of the accession
+	 * @param values the array to be filled
+	 */
+	public void getAlleleValues(int accessionIndex, double[] values);
+
+	/**
+	 * Adds the allele values of an accession, multiplied by a factor, to the
+	 * given allele totals. Missing values are ignored.
+	 *
+	 * @param accessionIndex the index of the accession
+	 * @param totals the allele totals to be updated
+	 * @param factor the factor, typically <code>1.0</code> to add or
+	 *          <code>-1.0</code> to remove an accession
+	 * @return the total amount added over all alleles
+	 */
+	public double addAlleleValues(int accessionIndex, double[] totals,
+	    double factor);
+
+	/**
+	 * Adds the allele values of an accession, multiplied by a factor, to the
+	 * given per marker allele totals. Missing values are ignored.
+	 *
+	 * @param accessionIndex the index of the accession
+	 * @param totals the allele totals to be updated, indexed by marker and by
+	 *          allele within the marker
+	 * @param factor the factor, typically <code>1.0</code> to add or
+	 *          <code>-1.0</code> to remove an accession
+	 */
+	public void addMarkerAlleleValues(int accessionIndex, double[][] totals,
+	    double factor);
+
+	/**
+	 * Adds a delta to the count of each allele that is present (has a value
+	 * greater than zero) in an accession
+	 *
+	 * @param accessionIndex the index of the accession
+	 * @param counts the allele counts to be updated
+	 * @param delta the delta, typically <code>1</code> to add or
+	 *          <code>-1</code> to remove an accession
+	 */
+	public void addAllelePresence(int accessionIndex, int[] counts, int delta);
+
+	/**
+	 * Gets the bitmap of the alleles present in each accession. The bitmap is
+	 * created on the first call and shared until an allele value is set.
+	 *
+	 * @return the bitmap of the alleles present in each accession
+	 */
+	public AllelePresenceBitmap getAllelePresence();
+}
@@ -0,0 +1,80 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.model.ssr;
+
+/**
+ * An SSR matrix that stores each allele value as a small integer code, which
+ * is translated into the value by a table of levels. Code <code>0</code> is
+ * reserved for missing values, its level is {@link Double#NaN}.
+ */
+public interface QuantizedAccessionSSRMarkerMatrix extends
+    PrimitiveAccessionSSRMarkerMatrix
+{
+	/**
+	 * Gets the number of levels, including the level for missing values. All
+	 * codes are smaller than this number.
+	 *
+	 * @return the number of levels
+	 */
+	public int getLevelCount();
+
+	/**
+	 * Gets the value of a level
+	 *
+	 * @param code the code of the level
+	 * @return the value of the level or {@link Double#NaN} for missing values
+	 */
+	public double getLevel(int code);
+
+	/**
+	 * Gets the code of a single allele value
+	 *
+	 * @param accessionIndex the index of the accession
+	 * @param alleleIndex the index of the allele over all markers
+	 * @return the code of the allele value
+	 */
+	public int getAlleleCode(int accessionIndex, int alleleIndex);
+
+	/**
+	 * Copies the codes of all allele values of an accession into the given
+	 * array, which must have a length of at least {@link #getTotalAlleleCount()}
+	 *
+	 * @param accessionIndex the index of the accession
+	 * @param codes the array to be filled
+	 */
+	public void getAlleleCodes(int accessionIndex, int[] codes);
+
+	/**
+	 * Sums the entries of a table indexed by pairs of codes over all alleles
+	 * of two accessions, reading the codes where they are stored. The entry of
+	 * a pair of codes <code>c1</code> and <code>c2</code> is at
+	 * <code>c1 * getLevelCount() + c2</code>.
+	 *
+	 * @param accessionIndex1 the index of the first accession
+	 * @param accessionIndex2 the index of the second accession
+	 * @param terms the table with an entry for each pair of codes
+	 * @return the sum of the entries of the codes of both accessions
+	 */
+	public double sumLevelTerms(int accessionIndex1, int accessionIndex2,
+	    double[] terms);
+
+	/**
+	 * Gets the maximum absolute difference between an original value and the
+	 * value of the level by which it is stored
+	 *
+	 * @return the maximum quantization error, <code>0</code> if all values are
+	 *         stored exactly
+	 */
+	public double getMaximumQuantizationError();
+}
@@ -0,0 +1,568 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.model.ssr.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.ContentDigest;
+import org.corehunter.model.EntityIndexedDataset;
+import org.corehunter.model.UnknownEntityException;
+import org.corehunter.model.UnknownIndexException;
+import org.corehunter.model.accession.Accession;
+import org.corehunter.model.accession.AccessionEntityMatrix;
+import org.corehunter.model.impl.AbstractEntityMatrix;
+import org.corehunter.model.ssr.AllelePresenceBitmap;
+import org.corehunter.model.ssr.PrimitiveAccessionSSRMarkerMatrix;
+import org.corehunter.model.ssr.SSRAllele;
+import org.corehunter.model.ssr.SSRMarker;
+
+/**
+ * Base class for SSR matrices that store their allele values in primitive
+ * form. Implements the list based methods of the matrix on top of the index
+ * based methods, so that sub-classes only need to provide the storage. The
+ * lists returned by the list based methods are copies, changing them has no
+ * effect on the matrix. Missing values, stored as {@link Double#NaN}, are
+ * returned as <code>null</code> in these lists.
+ *
+ * The allele offsets of the markers are determined when the matrix is
+ * created, alleles should not be added to or removed from the markers
+ * afterwards.
+ */
+public abstract class AbstractPrimitiveAccessionSSRMarkerMatrix extends
+    AbstractEntityMatrix<Integer, List<Double>, Accession, SSRMarker> implements
+    PrimitiveAccessionSSRMarkerMatrix
+{
+	private int[]	                        alleleOffsets;
+	private double[]	                      externalDistances;
+	private volatile AllelePresenceBitmap	allelePresence;
+
+	public AbstractPrimitiveAccessionSSRMarkerMatrix(String uniqueIdentifier,
+	    String name, EntityIndexedDataset<Integer, Accession> rowHeaders,
+	    EntityIndexedDataset<Integer, SSRMarker> columnHeaders,
+	    double[] externalDistances)
+	{
+		super(uniqueIdentifier, name, rowHeaders, columnHeaders);
+
+		this.alleleOffsets = createAlleleOffsets(columnHeaders);
+		this.externalDistances = externalDistances;
+	}
+
+	@Override
+	public void validate() throws CoreHunterException
+	{
+		super.validate();
+
+		if (externalDistances != null
+		    && externalDistances.length != getRowHeaders().getSize())
+		{
+			throw new CoreHunterException(
+			    "Number of external distances does not match number of row headers!");
+		}
+	}
+
+	@Override
+	public final List<Integer> getIndices()
+	{
+		return getRowHeaders().getIndices();
+	}
+
+	@Override
+	public final int getSize()
+	{
+		return getRowHeaders().getSize();
+	}
+
+	@Override
+	public final int getTotalAlleleCount()
+	{
+		return alleleOffsets[alleleOffsets.length - 1];
+	}
+
+	@Override
+	public final int getAlleleOffset(int markerIndex)
+	{
+		return alleleOffsets[markerIndex];
+	}
+
+	@Override
+	public final void setAlleleValue(int accessionIndex, int alleleIndex,
+	    double value)
+	{
+		storeAlleleValue(accessionIndex, alleleIndex, value);
+
+		allelePresence = null;
+		invalidateContentDigest();
+	}
+
+	@Override
+	public final AllelePresenceBitmap getAllelePresence()
+	{
+		AllelePresenceBitmap allelePresence = this.allelePresence;
+
+		if (allelePresence == null)
+		{
+			// concurrent callers may each create a bitmap, which is harmless
+			allelePresence = new AllelePresenceBitmap(this);
+			this.allelePresence = allelePresence;
+		}
+
+		return allelePresence;
+	}
+
+	@Override
+	public void getAlleleValues(int accessionIndex, double[] values)
+	{
+		int alleleCount = getTotalAlleleCount();
+
+		for (int i = 0; i < alleleCount; ++i)
+		{
+			values[i] = getAlleleValue(accessionIndex, i);
+		}
+	}
+
+	@Override
+	public double addAlleleValues(int accessionIndex, double[] totals,
+	    double factor)
+	{
+		int alleleCount = getTotalAlleleCount();
+		double sum = 0.0;
+
+		for (int i = 0; i < alleleCount; ++i)
+		{
+			double value = getAlleleValue(accessionIndex, i);
+
+			if (!Double.isNaN(value))
+			{
+				totals[i] += factor * value;
+				sum += factor * value;
+			}
+		}
+
+		return sum;
+	}
+
+	@Override
+	public void addMarkerAlleleValues(int accessionIndex, double[][] totals,
+	    double factor)
+	{
+		for (int m = 0; m < totals.length; ++m)
+		{
+			int offset = alleleOffsets[m];
+			double[] markerTotals = totals[m];
+
+			for (int j = 0; j < markerTotals.length; ++j)
+			{
+				double value = getAlleleValue(accessionIndex, offset + j);
+
+				if (!Double.isNaN(value))
+				{
+					markerTotals[j] += factor * value;
+				}
+			}
+		}
+	}
+
+	@Override
+	public void addAllelePresence(int accessionIndex, int[] counts, int delta)
+	{
+		int alleleCount = getTotalAlleleCount();
+
+		for (int i = 0; i < alleleCount; ++i)
+		{
+			// NaN > 0 is false, so missing values are never counted
+			if (getAlleleValue(accessionIndex, i) > 0)
+			{
+				counts[i] += delta;
+			}
+		}
+	}
+
+	@Override
+	public final List<Double> getElement(Integer rowIndex, Integer columnIndex)
+	    throws UnknownIndexException
+	{
+		checkRowIndex(rowIndex);
+
+		if (columnIndex == null || columnIndex < 0
+		    || columnIndex >= alleleOffsets.length - 1)
+		{
+			throw new UnknownIndexException("Unknown column index " + columnIndex);
+		}
+
+		return createMarkerValues(rowIndex, columnIndex);
+	}
+
+	@Override
+	public final List<List<Double>> getRowElements(Integer index)
+	    throws UnknownIndexException
+	{
+		checkRowIndex(index);
+
+		int markerCount = alleleOffsets.length - 1;
+		List<List<Double>> row = new ArrayList<List<Double>>(markerCount);
+
+		for (int m = 0; m < markerCount; ++m)
+		{
+			row.add(createMarkerValues(index, m));
+		}
+
+		return row;
+	}
+
+	@Override
+	public final int getAlleleCount(Integer index) throws UnknownIndexException
+	{
+		checkRowIndex(index);
+
+		return getTotalAlleleCount();
+	}
+
+	@Override
+	public final int getMarkerCount(Integer index) throws UnknownIndexException
+	{
+		checkRowIndex(index);
+
+		return alleleOffsets.length - 1;
+	}
+
+	@Override
+	public final double[][] getMarkerAlleleTotals(List<Integer> indices)
+	    throws UnknownIndexException
+	{
+		if (indices.isEmpty())
+		{
+			return null;
+		}
+
+		int markerCount = alleleOffsets.length - 1;
+		double[][] markerAlleleTotals = new double[markerCount][];
+
+		for (int m = 0; m < markerCount; ++m)
+		{
+			markerAlleleTotals[m] = new double[alleleOffsets[m + 1]
+			    - alleleOffsets[m]];
+		}
+
+		for (Integer index : indices)
+		{
+			checkRowIndex(index);
+			addMarkerAlleleValues(index, markerAlleleTotals, 1.0);
+		}
+
+		return markerAlleleTotals;
+	}
+
+	@Override
+	public final double[] getAlleleTotals(List<Integer> indices)
+	    throws UnknownIndexException
+	{
+		if (indices.isEmpty())
+		{
+			return null;
+		}
+
+		double[] alleleTotals = new double[getTotalAlleleCount()];
+
+		for (Integer index : indices)
+		{
+			checkRowIndex(index);
+			addAlleleValues(index, alleleTotals, 1.0);
+		}
+
+		return alleleTotals;
+	}
+
+	@Override
+	public final int[] getAlleleCounts(List<Integer> indices)
+	    throws UnknownIndexException
+	{
+		if (indices.isEmpty())
+		{
+			return null;
+		}
+
+		int[] alleleCounts = new int[getTotalAlleleCount()];
+
+		for (Integer index : indices)
+		{
+			checkRowIndex(index);
+			addAllelePresence(index, alleleCounts, 1);
+		}
+
+		return alleleCounts;
+	}
+
+	@Override
+	public final boolean externalDistancesSpecified()
+	{
+		return externalDistances != null;
+	}
+
+	@Override
+	public final double getExternalDistance(Integer index)
+	{
+		return externalDistances != null ? externalDistances[index] : 0;
+	}
+
+	public final void setExternalDistance(Integer index, double distance)
+	{
+		externalDistances[index] = distance;
+	}
+
+	public final double[] getExternalDistances()
+	{
+		return externalDistances;
+	}
+
+	@Override
+	public Double getValue(Accession accession, SSRMarker marker,
+	    SSRAllele alelle) throws UnknownEntityException
+	{
+		double value = getAlleleValue(getAccessionIndex(accession),
+		    getAlleleIndex(marker, alelle));
+
+		return Double.isNaN(value) ? null : value;
+	}
+
+	@Override
+	public void setValue(Accession accession, SSRMarker marker,
+	    SSRAllele alelle, Double value) throws UnknownEntityException
+	{
+		setAlleleValue(getAccessionIndex(accession),
+		    getAlleleIndex(marker, alelle), value != null ? value : Double.NaN);
+	}
+
+	@Override
+	public List<Double> getValues(Accession accession, SSRMarker marker)
+	    throws UnknownEntityException
+	{
+		return createMarkerValues(getAccessionIndex(accession),
+		    getMarkerIndex(marker));
+	}
+
+	@Override
+	public void setValues(Accession accession, SSRMarker marker,
+	    List<Double> values) throws UnknownEntityException
+	{
+		int accessionIndex = getAccessionIndex(accession);
+		int markerIndex = getMarkerIndex(marker);
+		int offset = alleleOffsets[markerIndex];
+
+		if (values.size() != alleleOffsets[markerIndex + 1] - offset)
+		{
+			throw new UnknownEntityException("Number of values "
+			    + values.size() + " does not match number of alleles for marker :"
+			    + marker.getName());
+		}
+
+		Iterator<Double> iterator = values.iterator();
+		int i = offset;
+
+		while (iterator.hasNext())
+		{
+			Double value = iterator.next();
+			setAlleleValue(accessionIndex, i, value != null ? value : Double.NaN);
+			++i;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public boolean equals(Object object)
+	{
+		if (object instanceof AccessionEntityMatrix)
+		{
+			boolean equals = super.equals(object);
+
+			Iterator<Integer> iterator = getIndices().iterator();
+
+			while (equals && iterator.hasNext())
+			{
+				Integer index = iterator.next();
+
+				equals = getExternalDistance(index) == ((AccessionEntityMatrix<Integer, List<Double>, SSRMarker>) object)
+				    .getExternalDistance(index);
+			}
+
+			return equals;
+		}
+		else
+		{
+			return super.equals(object);
+		}
+	}
+
+	@Override
+	protected void addContent(ContentDigest.Builder builder)
+	{
+		double[] values = new double[getTotalAlleleCount()];
+
+		for (int a = 0; a < getSize(); ++a)
+		{
+			getAlleleValues(a, values);
+			builder.addDigest(createRowDigest(values));
+		}
+	}
+
+	/**
+	 * Calculates the digest of a row from its allele values, with the same
+	 * words as for a row of marker lists
+	 * 
+	 * @param values the values of all alleles of the row
+	 * @return the digest of the row
+	 */
+	final ContentDigest createRowDigest(double[] values)
+	{
+		int markerCount = getColumnHeaders().getSize();
+		ContentDigest.Builder row = new ContentDigest.Builder();
+
+		row.startList(markerCount);
+
+		for (int m = 0; m < markerCount; ++m)
+		{
+			row.startList(getAlleleOffset(m + 1) - getAlleleOffset(m));
+
+			for (int i = getAlleleOffset(m); i < getAlleleOffset(m + 1); ++i)
+			{
+				// missing values are null in the rows of the matrix
+				if (Double.isNaN(values[i]))
+				{
+					row.addNull();
+				}
+				else
+				{
+					row.addDouble(values[i]);
+				}
+			}
+		}
+
+		return row.build();
+	}
+
+	@Override
+	public int hashCode()
+	{
+		int hash = super.hashCode();
+		hash = 53 * hash + Arrays.hashCode(getExternalDistances());
+		return hash;
+	}
+
+	/**
+	 * Stores a single allele value
+	 *
+	 * @param accessionIndex the index of the accession
+	 * @param alleleIndex the index of the allele over all markers
+	 * @param value the allele value or {@link Double#NaN} if it is missing
+	 */
+	protected abstract void storeAlleleValue(int accessionIndex,
+	    int alleleIndex, double value);
+
+	/**
+	 * Sets the digest of the values calculated while they were read, see
+	 * {@link AccessionSSRMarkerMatrixBuilder}
+	 * 
+	 * @param digest the digest of the values
+	 */
+	final void setLoadedContentDigest(ContentDigest digest)
+	{
+		setContentDigest(digest);
+	}
+
+	protected final void checkRowIndex(Integer index)
+	    throws UnknownIndexException
+	{
+		if (index == null || index < 0 || index >= getRowHeaders().getSize())
+		{
+			throw new UnknownIndexException("Unknown row index : " + index);
+		}
+	}
+
+	protected final int getAccessionIndex(Accession accession)
+	    throws UnknownEntityException
+	{
+		Integer index = getRowHeaders().getIndex(accession);
+
+		if (index == null || index < 0)
+		{
+			throw new UnknownEntityException("Unknown accession :"
+			    + (accession != null ? accession.getName() : null));
+		}
+
+		return index;
+	}
+
+	protected final int getMarkerIndex(SSRMarker marker)
+	    throws UnknownEntityException
+	{
+		Integer index = getColumnHeaders().getIndex(marker);
+
+		if (index == null || index < 0)
+		{
+			throw new UnknownEntityException("Unknown marker :"
+			    + (marker != null ? marker.getName() : null));
+		}
+
+		return index;
+	}
+
+	protected final int getAlleleIndex(SSRMarker marker, SSRAllele allele)
+	    throws UnknownEntityException
+	{
+		return alleleOffsets[getMarkerIndex(marker)] + marker.indexOfAllele(allele);
+	}
+
+	private List<Double> createMarkerValues(int accessionIndex, int markerIndex)
+	{
+		int start = alleleOffsets[markerIndex];
+		int end = alleleOffsets[markerIndex + 1];
+
+		List<Double> values = new ArrayList<Double>(end - start);
+
+		for (int i = start; i < end; ++i)
+		{
+			double value = getAlleleValue(accessionIndex, i);
+			values.add(Double.isNaN(value) ? null : value);
+		}
+
+		return values;
+	}
+
+	private static int[] createAlleleOffsets(
+	    EntityIndexedDataset<Integer, SSRMarker> columnHeaders)
+	{
+		List<Integer> indices = columnHeaders.getIndices();
+		int[] alleleOffsets = new int[indices.size() + 1];
+
+		int m = 0;
+		for (Integer index : indices)
+		{
+			try
+			{
+				alleleOffsets[m + 1] = alleleOffsets[m]
+				    + columnHeaders.getElement(index).getAlleles().size();
+			}
+			catch (UnknownEntityException e)
+			{
+				throw new IllegalArgumentException(e.getLocalizedMessage(), e);
+			}
+			++m;
+		}
+
+		return alleleOffsets;
+	}
+}
@@ -0,0 +1,189 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.model.ssr.impl;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.EntityIndexedDataset;
+import org.corehunter.model.accession.Accession;
+import org.corehunter.model.ssr.SSRMarker;
+
+/**
+ * SSR matrix that stores all allele values in a single contiguous
+ * <code>double</code> array, accession by accession. The values of accession
+ * <code>a</code> start at position <code>a * getTotalAlleleCount()</code>.
+ * Missing values are stored as {@link Double#NaN}.
+ */
+public class AccessionSSRMarkerMatrixArrayImpl extends
+    AbstractPrimitiveAccessionSSRMarkerMatrix
+{
+	private double[]	values;
+	private int	     alleleCount;
+
+	public AccessionSSRMarkerMatrixArrayImpl(String name,
+	    EntityIndexedDataset<Integer, Accession> rowHeaders,
+	    EntityIndexedDataset<Integer, SSRMarker> columnHeaders)
+	{
+		this(name, name, rowHeaders, columnHeaders, null);
+	}
+
+	/**
+	 * Creates a matrix in which all values are missing
+	 */
+	public AccessionSSRMarkerMatrixArrayImpl(String uniqueIdentifier,
+	    String name, EntityIndexedDataset<Integer, Accession> rowHeaders,
+	    EntityIndexedDataset<Integer, SSRMarker> columnHeaders,
+	    double[] externalDistances)
+	{
+		super(uniqueIdentifier, name, rowHeaders, columnHeaders,
+		    externalDistances);
+
+		alleleCount = getTotalAlleleCount();
+		values = new double[rowHeaders.getSize() * alleleCount];
+
+		Arrays.fill(values, Double.NaN);
+	}
+
+	/**
+	 * Creates a matrix from a value array, which is used directly without being
+	 * copied
+	 */
+	public AccessionSSRMarkerMatrixArrayImpl(String uniqueIdentifier,
+	    String name, EntityIndexedDataset<Integer, Accession> rowHeaders,
+	    EntityIndexedDataset<Integer, SSRMarker> columnHeaders, double[] values,
+	    double[] externalDistances)
+	{
+		super(uniqueIdentifier, name, rowHeaders, columnHeaders,
+		    externalDistances);
+
+		this.alleleCount = getTotalAlleleCount();
+		this.values = values;
+	}
+
+	/**
+	 * Creates a matrix by copying the values of nested lists as used by
+	 * {@link AccessionSSRMarkerMatrixListImpl}. <code>null</code> values are
+	 * stored as missing values.
+	 */
+	public AccessionSSRMarkerMatrixArrayImpl(String uniqueIdentifier,
+	    String name, EntityIndexedDataset<Integer, Accession> rowHeaders,
+	    EntityIndexedDataset<Integer, SSRMarker> columnHeaders,
+	    List<List<List<Double>>> elements, double[] externalDistances)
+	{
+		this(uniqueIdentifier, name, rowHeaders, columnHeaders,
+		    externalDistances);
+
+		Iterator<List<List<Double>>> rows = elements.iterator();
+		int i = 0;
+
+		while (rows.hasNext())
+		{
+			for (List<Double> markerValues : rows.next())
+			{
+				for (Double value : markerValues)
+				{
+					values[i] = value != null ? value : Double.NaN;
+					++i;
+				}
+			}
+		}
+	}
+
+	@Override
+	public void validate() throws CoreHunterException
+	{
+		super.validate();
+
+		if (values == null)
+		{
+			throw new CoreHunterException("Values not defined!");
+		}
+
+		if (values.length != getRowHeaders().getSize() * alleleCount)
+		{
+			throw new CoreHunterException(
+			    "Number of values does not match number of row headers and alleles!");
+		}
+	}
+
+	@Override
+	public final double getAlleleValue(int accessionIndex, int alleleIndex)
+	{
+		return values[accessionIndex * alleleCount + alleleIndex];
+	}
+
+	@Override
+	protected final void storeAlleleValue(int accessionIndex, int alleleIndex,
+	    double value)
+	{
+		values[accessionIndex * alleleCount + alleleIndex] = value;
+	}
+
+	@Override
+	public final void getAlleleValues(int accessionIndex, double[] values)
+	{
+		System.arraycopy(this.values, accessionIndex * alleleCount, values, 0,
+		    alleleCount);
+	}
+
+	@Override
+	public final double addAlleleValues(int accessionIndex, double[] totals,
+	    double factor)
+	{
+		int offset = accessionIndex * alleleCount;
+		double sum = 0.0;
+
+		for (int i = 0; i < alleleCount; ++i)
+		{
+			double value = values[offset + i];
+
+			if (!Double.isNaN(value))
+			{
+				totals[i] += factor * value;
+				sum += factor * value;
+			}
+		}
+
+		return sum;
+	}
+
+	@Override
+	public final void addAllelePresence(int accessionIndex, int[] counts,
+	    int delta)
+	{
+		int offset = accessionIndex * alleleCount;
+
+		for (int i = 0; i < alleleCount; ++i)
+		{
+			if (values[offset + i] > 0)
+			{
+				counts[i] += delta;
+			}
+		}
+	}
+
+	/**
+	 * Gets the underlying value array. Changes to the array are reflected in
+	 * the matrix.
+	 *
+	 * @return the underlying value array
+	 */
+	public final double[] getValues()
+	{
+		return values;
+	}
+}
@@ -0,0 +1,284 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.model.ssr.impl;
+
+import static org.corehunter.model.impl.BinaryDataFileFormat.HEADER_SIZE;
+import static org.corehunter.model.impl.BinaryDataFileFormat.SSR_DATA;
+import static org.corehunter.model.impl.BinaryDataFileFormat.close;
+import static org.corehunter.model.impl.BinaryDataFileFormat.readHeader;
+import static org.corehunter.model.impl.BinaryDataFileFormat.readString;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.ContentDigest;
+import org.corehunter.model.DataReader;
+import org.corehunter.model.EntityIndexedDataset;
+import org.corehunter.model.accession.Accession;
+import org.corehunter.model.impl.BinaryDataFileFormat;
+import org.corehunter.model.ssr.AccessionSSRMarkerMatrix;
+import org.corehunter.model.ssr.SSRAllele;
+import org.corehunter.model.ssr.SSRMarker;
+import org.corehunter.model.ssr.SSRStorageType;
+
+/**
+ * Reads an SSR dataset from a binary data file written by
+ * {@link AccessionSSRMarkerMatrixBinaryDataFileWriter}, without parsing any
+ * text. The storage type is selected as for the text reader, with
+ * {@link #setStorageType(SSRStorageType)}. For the
+ * {@link SSRStorageType#ARRAY} storage type the values are copied straight
+ * into the matrix, and for the {@link SSRStorageType#MAPPED} storage type the
+ * values in the binary data file itself are mapped read-only, so that the
+ * mapped file set on the reader is not used. For the other storage types the
+ * values are mapped read-only as well, and added allele by allele to an
+ * {@link AccessionSSRMarkerMatrixBuilder}. The unique identifier and name of
+ * the dataset are those stored in the file.
+ */
+public class AccessionSSRMarkerMatrixBinaryDataFileReader extends
+    AccessionSSRMarkerMatrixListImplDataFileReader implements
+    DataReader<AccessionSSRMarkerMatrix<Integer>>
+{
+	private static final int	VALUE_SIZE	= 8;
+
+	public AccessionSSRMarkerMatrixBinaryDataFileReader(File file)
+	{
+		super(file);
+	}
+
+	@Override
+	public AccessionSSRMarkerMatrix<Integer> readData()
+	    throws CoreHunterException
+	{
+		RandomAccessFile file = null;
+
+		try
+		{
+			file = new RandomAccessFile(getFile(), "r");
+
+			FileChannel channel = file.getChannel();
+
+			int metadataLength = readHeader(createInput(channel, 0, HEADER_SIZE),
+			    SSR_DATA);
+			DataInputStream metadata = createInput(channel, HEADER_SIZE,
+			    metadataLength);
+
+			String uniqueIdentifier = readString(metadata);
+			String name = readString(metadata);
+
+			setDataUniqueIdentifier(uniqueIdentifier);
+			setDatasetName(name);
+
+			int accessionCount = metadata.readInt();
+			List<Accession> accessions = new ArrayList<Accession>(accessionCount);
+
+			for (int i = 0; i < accessionCount; ++i)
+			{
+				String accessionUniqueIdentifier = readString(metadata);
+				Accession accession = createAccession(readString(metadata), i);
+
+				accession.setUniqueIdentifier(accessionUniqueIdentifier);
+				accessions.add(accession);
+			}
+
+			int markerCount = metadata.readInt();
+			List<SSRMarker> markers = new ArrayList<SSRMarker>(markerCount);
+			int alleleCount = 0;
+
+			for (int m = 0; m < markerCount; ++m)
+			{
+				String markerUniqueIdentifier = readString(metadata);
+				SSRMarker marker = createSSRMarker(readString(metadata), m);
+
+				marker.setUniqueIdentifier(markerUniqueIdentifier);
+				markers.add(marker);
+
+				int markerAlleleCount = metadata.readInt();
+
+				for (int i = 0; i < markerAlleleCount; ++i)
+				{
+					String alleleUniqueIdentifier = readString(metadata);
+					SSRAllele allele = createSSRAllele(readString(metadata), marker, i);
+
+					allele.setUniqueIdentifier(alleleUniqueIdentifier);
+					marker.addAllele(allele);
+				}
+
+				alleleCount += markerAlleleCount;
+			}
+
+			long valueOffset = HEADER_SIZE + metadataLength;
+			long valueSize = (long) accessionCount * alleleCount * VALUE_SIZE;
+
+			double[] externalDistances = readExternalDistances(channel, valueOffset
+			    + valueSize, accessionCount);
+
+			EntityIndexedDataset<Integer, Accession> accessionDataset = createAccessionDataset(
+			    createAccessionDatasetName(), accessions);
+			EntityIndexedDataset<Integer, SSRMarker> markerDataset = createMarkerDataset(
+			    createMarkerDatasetName(), markers);
+
+			AccessionSSRMarkerMatrix<Integer> dataset;
+
+			switch (getStorageType())
+			{
+				case MAPPED:
+					dataset = new AccessionSSRMarkerMatrixMappedImpl(uniqueIdentifier,
+					    name, accessionDataset, markerDataset, getFile(), valueOffset,
+					    false, externalDistances);
+					break;
+				case ARRAY:
+					AccessionSSRMarkerMatrixArrayImpl arrayMatrix = new AccessionSSRMarkerMatrixArrayImpl(
+					    uniqueIdentifier, name, accessionDataset, markerDataset,
+					    externalDistances);
+
+					readValues(channel, valueOffset, accessionCount, alleleCount,
+					    arrayMatrix);
+
+					dataset = arrayMatrix;
+					break;
+				default:
+					AccessionSSRMarkerMatrixMappedImpl values = new AccessionSSRMarkerMatrixMappedImpl(
+					    uniqueIdentifier, name, accessionDataset, markerDataset, getFile(),
+					    valueOffset, false, externalDistances);
+					AccessionSSRMarkerMatrixBuilder builder = createSSRAccessionMatrixBuilder(
+					    uniqueIdentifier, name, accessionDataset);
+					AccessionSSRMarkerMatrixBuilder.Part part = builder.createPart();
+					double[] alleleValues = new double[accessionCount];
+
+					for (int i = 0; i < alleleCount; ++i)
+					{
+						for (int a = 0; a < accessionCount; ++a)
+						{
+							alleleValues[a] = values.getAlleleValue(a, i);
+						}
+
+						part.addAllele(alleleValues);
+					}
+
+					List<AccessionSSRMarkerMatrixBuilder.Part> parts = Collections
+					    .singletonList(part);
+
+					if (getStorageType() == SSRStorageType.LIST)
+					{
+						dataset = createSSRAccessionMatrixDataset(uniqueIdentifier, name,
+						    accessionDataset, markerDataset,
+						    builder.buildElements(markerDataset, parts), externalDistances);
+						setContentDigest(dataset, builder);
+					}
+					else
+					{
+						dataset = builder.build(markerDataset, externalDistances, parts);
+					}
+			}
+
+			return completeDataset(dataset);
+		}
+		catch (EOFException e)
+		{
+			throw new CoreHunterException("Binary data file "
+			    + getFile().getAbsolutePath() + " is truncated!", e);
+		}
+		catch (IOException e)
+		{
+			throw new CoreHunterException(e);
+		}
+		finally
+		{
+			close(file);
+		}
+	}
+
+	/**
+	 * Reads the values accession by accession, and stores them in a matrix
+	 */
+	private static void readValues(FileChannel channel, long offset,
+	    int accessionCount, int alleleCount,
+	    AbstractPrimitiveAccessionSSRMarkerMatrix matrix) throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(alleleCount * VALUE_SIZE);
+		double[] values = new double[alleleCount];
+		ContentDigest.Builder contentDigest = new ContentDigest.Builder();
+
+		for (int a = 0; a < accessionCount; ++a)
+		{
+			buffer.clear();
+			read(channel, offset + (long) a * buffer.capacity(), buffer);
+			buffer.flip();
+			buffer.asDoubleBuffer().get(values);
+
+			for (int i = 0; i < alleleCount; ++i)
+			{
+				matrix.storeAlleleValue(a, i, values[i]);
+			}
+
+			contentDigest.addDigest(matrix.createRowDigest(values));
+		}
+
+		matrix.setLoadedContentDigest(contentDigest.build());
+	}
+
+	private static double[] readExternalDistances(FileChannel channel,
+	    long offset, int accessionCount) throws IOException
+	{
+		if (createInput(channel, offset, 1).readBoolean())
+		{
+			DataInputStream in = createInput(channel, offset + 1, accessionCount
+			    * VALUE_SIZE);
+			double[] externalDistances = new double[accessionCount];
+
+			for (int a = 0; a < accessionCount; ++a)
+			{
+				externalDistances[a] = in.readDouble();
+			}
+
+			return externalDistances;
+		}
+		else
+		{
+			return null;
+		}
+	}
+
+	private static DataInputStream createInput(FileChannel channel,
+	    long offset, int length) throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+
+		read(channel, offset, buffer);
+
+		return new DataInputStream(new ByteArrayInputStream(buffer.array()));
+	}
+
+	private static void read(FileChannel channel, long offset, ByteBuffer buffer)
+	    throws IOException
+	{
+		while (buffer.hasRemaining())
+		{
+			if (channel.read(buffer, offset + buffer.position()) < 0)
+			{
+				throw new EOFException();
+			}
+		}
+	}
+}
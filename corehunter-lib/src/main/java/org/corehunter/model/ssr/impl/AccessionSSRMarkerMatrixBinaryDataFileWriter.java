@@ -0,0 +1,180 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.model.ssr.impl;
+
+import static org.corehunter.model.impl.BinaryDataFileFormat.SSR_DATA;
+import static org.corehunter.model.impl.BinaryDataFileFormat.close;
+import static org.corehunter.model.impl.BinaryDataFileFormat.writeEntity;
+import static org.corehunter.model.impl.BinaryDataFileFormat.writeHeader;
+import static org.corehunter.model.impl.BinaryDataFileFormat.writeString;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.DataWriter;
+import org.corehunter.model.EntityIndexedDataset;
+import org.corehunter.model.accession.Accession;
+import org.corehunter.model.impl.AbstractDataFileWriter;
+import org.corehunter.model.impl.BinaryDataFileFormat;
+import org.corehunter.model.ssr.AccessionSSRMarkerMatrix;
+import org.corehunter.model.ssr.PrimitiveAccessionSSRMarkerMatrix;
+import org.corehunter.model.ssr.SSRAllele;
+import org.corehunter.model.ssr.SSRMarker;
+
+/**
+ * Writes an SSR dataset to a binary data file, see
+ * {@link BinaryDataFileFormat}, which can be read back with
+ * {@link AccessionSSRMarkerMatrixBinaryDataFileReader}. The metadata holds the
+ * unique identifier and name of the dataset, of each accession, and of each
+ * marker followed by its alleles. The values are stored accession by
+ * accession, as doubles, with {@link Double#NaN} for missing values, followed
+ * by a flag and the external distances if specified.
+ */
+public class AccessionSSRMarkerMatrixBinaryDataFileWriter extends
+    AbstractDataFileWriter<AccessionSSRMarkerMatrix<Integer>> implements
+    DataWriter<AccessionSSRMarkerMatrix<Integer>>
+{
+	public AccessionSSRMarkerMatrixBinaryDataFileWriter(File file)
+	{
+		super(file);
+	}
+
+	@Override
+	public void writeData(AccessionSSRMarkerMatrix<Integer> dataset)
+	    throws CoreHunterException
+	{
+		DataOutputStream out = null;
+
+		try
+		{
+			ByteArrayOutputStream metadata = new ByteArrayOutputStream();
+
+			int alleleCount = writeMetadata(new DataOutputStream(metadata), dataset);
+
+			out = new DataOutputStream(new BufferedOutputStream(
+			    new FileOutputStream(getFile())));
+
+			writeHeader(out, SSR_DATA, metadata.size());
+			metadata.writeTo(out);
+
+			double[] values = new double[alleleCount];
+			List<Integer> indices = dataset.getIndices();
+
+			for (int a = 0; a < indices.size(); ++a)
+			{
+				getAlleleValues(dataset, a, indices.get(a), values);
+
+				for (int i = 0; i < alleleCount; ++i)
+				{
+					out.writeDouble(values[i]);
+				}
+			}
+
+			out.writeBoolean(dataset.externalDistancesSpecified());
+
+			if (dataset.externalDistancesSpecified())
+			{
+				for (Integer index : indices)
+				{
+					out.writeDouble(dataset.getExternalDistance(index));
+				}
+			}
+
+			out.close();
+			out = null;
+		}
+		catch (IOException e)
+		{
+			throw new CoreHunterException(e);
+		}
+		finally
+		{
+			close(out);
+		}
+	}
+
+	private int writeMetadata(DataOutputStream out,
+	    AccessionSSRMarkerMatrix<Integer> dataset) throws IOException,
+	    CoreHunterException
+	{
+		writeString(out, dataset.getUniqueIdentifier());
+		writeString(out, dataset.getName());
+
+		EntityIndexedDataset<Integer, Accession> accessions = dataset
+		    .getRowHeaders();
+
+		out.writeInt(accessions.getSize());
+
+		for (Integer index : accessions.getIndices())
+		{
+			writeEntity(out, accessions.getElement(index));
+		}
+
+		EntityIndexedDataset<Integer, SSRMarker> markers = dataset
+		    .getColumnHeaders();
+
+		int alleleCount = 0;
+
+		out.writeInt(markers.getSize());
+
+		for (Integer index : markers.getIndices())
+		{
+			SSRMarker marker = markers.getElement(index);
+
+			writeEntity(out, marker);
+			out.writeInt(marker.getAlleles().size());
+
+			for (SSRAllele allele : marker.getAlleles())
+			{
+				writeEntity(out, allele);
+			}
+
+			alleleCount += marker.getAlleles().size();
+		}
+
+		out.close();
+
+		return alleleCount;
+	}
+
+	private void getAlleleValues(AccessionSSRMarkerMatrix<Integer> dataset,
+	    int accessionIndex, Integer index, double[] values)
+	    throws CoreHunterException
+	{
+		if (dataset instanceof PrimitiveAccessionSSRMarkerMatrix)
+		{
+			((PrimitiveAccessionSSRMarkerMatrix) dataset).getAlleleValues(
+			    accessionIndex, values);
+		}
+		else
+		{
+			int i = 0;
+
+			for (List<Double> markerValues : dataset.getRowElements(index))
+			{
+				for (Double value : markerValues)
+				{
+					values[i] = value != null ? value : Double.NaN;
+					++i;
+				}
+			}
+		}
+	}
+}
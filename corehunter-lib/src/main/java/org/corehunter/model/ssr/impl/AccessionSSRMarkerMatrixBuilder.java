@@ -0,0 +1,751 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.model.ssr.impl;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.ContentDigest;
+import org.corehunter.model.EntityIndexedDataset;
+import org.corehunter.model.accession.Accession;
+import org.corehunter.model.ssr.AccessionSSRMarkerMatrix;
+import org.corehunter.model.ssr.SSRMarker;
+import org.corehunter.model.ssr.SSRStorageType;
+import org.corehunter.model.ssr.impl.AccessionSSRMarkerMatrixQuantizedImpl.LevelCollector;
+
+/**
+ * Builds an SSR matrix of a given storage type from allele values that are
+ * streamed in allele by allele, for example while they are read from a file.
+ * 
+ * The values are streamed through {@link Part}s, each of which is filled by a
+ * single thread, while different parts may be filled by different threads at
+ * once. Each part grows with the alleles added to it and keeps their values
+ * in a form that suits the storage type: the values themselves for the list,
+ * array and mapped storage types, only the non-zero values for the sparse
+ * storage type, and a code per value for the quantized storage types, whose
+ * levels are only known once all values are added. The matrix is built by
+ * stitching the parts together in the order of their alleles, see
+ * {@link #build(EntityIndexedDataset, double[], List)}, which releases the
+ * values of each part once they are stored. The digest of the values is
+ * calculated while they are stitched together and set on the matrix, so that
+ * it is not calculated again when the matrix is first compared.
+ */
+public class AccessionSSRMarkerMatrixBuilder
+{
+	// the largest number of distinct values a part of a quantized matrix codes
+	// itself, before it keeps the values of the remaining alleles instead
+	private static final int	                       MAXIMUM_PART_CODE	= Character.MAX_VALUE;
+
+	private String	                                 uniqueIdentifier;
+	private String	                                 name;
+	private EntityIndexedDataset<Integer, Accession>	accessionDataset;
+	private SSRStorageType	                         storageType;
+	private File	                                   mappedFile;
+	private int	                                     accessionCount;
+	private ContentDigest	                           contentDigest;
+
+	/**
+	 * Creates a builder
+	 * 
+	 * @param uniqueIdentifier the unique identifier of the matrix
+	 * @param name the name of the matrix
+	 * @param accessionDataset the accessions
+	 * @param storageType the storage type of the matrix
+	 * @param mappedFile the file to which the values are written for the
+	 *          {@link SSRStorageType#MAPPED} storage type, which is overwritten
+	 *          if it exists
+	 */
+	public AccessionSSRMarkerMatrixBuilder(String uniqueIdentifier,
+	    String name, EntityIndexedDataset<Integer, Accession> accessionDataset,
+	    SSRStorageType storageType, File mappedFile)
+	{
+		this.uniqueIdentifier = uniqueIdentifier;
+		this.name = name;
+		this.accessionDataset = accessionDataset;
+		this.storageType = storageType;
+		this.mappedFile = mappedFile;
+
+		accessionCount = accessionDataset.getSize();
+	}
+
+	public final SSRStorageType getStorageType()
+	{
+		return storageType;
+	}
+
+	/**
+	 * Gets the digest of the values of the matrix or elements last built
+	 * 
+	 * @return the digest of the values, or <code>null</code> if nothing was
+	 *         built yet
+	 */
+	final ContentDigest getContentDigest()
+	{
+		return contentDigest;
+	}
+
+	/**
+	 * Creates an empty part to which alleles are added
+	 * 
+	 * @return the new part
+	 */
+	public final Part createPart()
+	{
+		return new Part();
+	}
+
+	/**
+	 * Builds the matrix from the alleles of all parts
+	 * 
+	 * @param markerDataset the markers
+	 * @param externalDistances the external distances or <code>null</code>
+	 * @param parts all parts, in the order of their alleles
+	 * @return the matrix
+	 * @throws CoreHunterException if the matrix can not be created
+	 */
+	public final AccessionSSRMarkerMatrix<Integer> build(
+	    EntityIndexedDataset<Integer, SSRMarker> markerDataset,
+	    double[] externalDistances, List<Part> parts) throws CoreHunterException
+	{
+		switch (storageType)
+		{
+			case ARRAY:
+				return buildPrimitiveMatrix(new AccessionSSRMarkerMatrixArrayImpl(
+				    uniqueIdentifier, name, accessionDataset, markerDataset,
+				    externalDistances), markerDataset, parts);
+			case MAPPED:
+				if (mappedFile.exists() && !mappedFile.delete())
+				{
+					throw new CoreHunterException("Can not overwrite file : "
+					    + mappedFile.getAbsolutePath());
+				}
+
+				return buildPrimitiveMatrix(new AccessionSSRMarkerMatrixMappedImpl(
+				    uniqueIdentifier, name, accessionDataset, markerDataset,
+				    mappedFile, 0, true, externalDistances), markerDataset, parts);
+			case QUANTIZED_8:
+			case QUANTIZED_16:
+				return buildQuantizedMatrix(markerDataset, externalDistances, parts);
+			case SPARSE:
+				return buildSparseMatrix(markerDataset, externalDistances, parts);
+			case LIST:
+			default:
+				AccessionSSRMarkerMatrixListImpl matrix = new AccessionSSRMarkerMatrixListImpl(
+				    uniqueIdentifier, name, accessionDataset, markerDataset,
+				    buildElements(markerDataset, parts), externalDistances);
+
+				matrix.setLoadedContentDigest(contentDigest);
+
+				return matrix;
+		}
+	}
+
+	/**
+	 * Builds nested lists as used by {@link AccessionSSRMarkerMatrixListImpl}
+	 * from the alleles of all parts, for the {@link SSRStorageType#LIST}
+	 * storage type. Missing values are <code>null</code>. The digest of the
+	 * values is available from {@link #getContentDigest()} afterwards.
+	 *  
+	 * @param markerDataset the markers
+	 * @param parts all parts, in the order of their alleles
+	 * @return the values
+	 * @throws CoreHunterException if the markers can not be accessed
+	 */
+	public final List<List<List<Double>>> buildElements(
+	    EntityIndexedDataset<Integer, SSRMarker> markerDataset, List<Part> parts)
+	    throws CoreHunterException
+	{
+		int markerCount = markerDataset.getSize();
+		int[] markerAlleleCounts = getMarkerAlleleCounts(markerDataset);
+		RowDigests digests = new RowDigests(markerAlleleCounts);
+
+		List<List<List<Double>>> elements = new ArrayList<List<List<Double>>>(
+		    accessionCount);
+
+		for (int a = 0; a < accessionCount; ++a)
+		{
+			List<List<Double>> row = new ArrayList<List<Double>>(markerCount);
+
+			for (int m = 0; m < markerCount; ++m)
+			{
+				row.add(new ArrayList<Double>(markerAlleleCounts[m]));
+			}
+
+			elements.add(row);
+		}
+
+		// the values of the alleles of each marker are appended in order
+		int markerIndex = 0;
+		int markerAlleleIndex = 0;
+
+		for (Part part : parts)
+		{
+			for (int i = 0; i < part.alleleCount; ++i)
+			{
+				while (markerAlleleIndex == markerAlleleCounts[markerIndex])
+				{
+					++markerIndex;
+					markerAlleleIndex = 0;
+				}
+
+				double[] values = part.alleleValues.get(i);
+
+				digests.startAllele();
+
+				for (int a = 0; a < accessionCount; ++a)
+				{
+					elements.get(a).get(markerIndex).add(
+					    Double.isNaN(values[a]) ? null : values[a]);
+					digests.addValue(a, values[a]);
+				}
+
+				part.alleleValues.set(i, null);
+				++markerAlleleIndex;
+			}
+
+			part.release();
+		}
+
+		contentDigest = digests.build();
+
+		return elements;
+	}
+
+	private AccessionSSRMarkerMatrix<Integer> buildPrimitiveMatrix(
+	    AbstractPrimitiveAccessionSSRMarkerMatrix matrix,
+	    EntityIndexedDataset<Integer, SSRMarker> markerDataset, List<Part> parts)
+	    throws CoreHunterException
+	{
+		RowDigests digests = new RowDigests(getMarkerAlleleCounts(markerDataset));
+		int alleleIndex = 0;
+
+		for (Part part : parts)
+		{
+			for (int i = 0; i < part.alleleCount; ++i)
+			{
+				double[] values = part.alleleValues.get(i);
+
+				digests.startAllele();
+
+				for (int a = 0; a < accessionCount; ++a)
+				{
+					matrix.storeAlleleValue(a, alleleIndex, values[a]);
+					digests.addValue(a, values[a]);
+				}
+
+				part.alleleValues.set(i, null);
+				++alleleIndex;
+			}
+
+			part.release();
+		}
+
+		setContentDigest(matrix, digests);
+
+		return matrix;
+	}
+
+	private AccessionSSRMarkerMatrix<Integer> buildSparseMatrix(
+	    EntityIndexedDataset<Integer, SSRMarker> markerDataset,
+	    double[] externalDistances, List<Part> parts) throws CoreHunterException
+	{
+		int[] rowEntryCounts = new int[accessionCount];
+
+		for (Part part : parts)
+		{
+			for (int[] accessions : part.entryAccessions)
+			{
+				for (int a : accessions)
+				{
+					++rowEntryCounts[a];
+				}
+			}
+		}
+
+		AccessionSSRMarkerMatrixSparseImpl matrix = new AccessionSSRMarkerMatrixSparseImpl(
+		    uniqueIdentifier, name, accessionDataset, markerDataset,
+		    externalDistances, rowEntryCounts);
+
+		// the position of the next entry of each accession, whose entries are
+		// set in the order of their alleles
+		int[] positions = new int[accessionCount];
+
+		for (int a = 0; a < accessionCount; ++a)
+		{
+			positions[a] = matrix.getRowStart(a);
+		}
+
+		RowDigests digests = new RowDigests(getMarkerAlleleCounts(markerDataset));
+		int alleleIndex = 0;
+
+		for (Part part : parts)
+		{
+			for (int i = 0; i < part.alleleCount; ++i)
+			{
+				int[] accessions = part.entryAccessions.get(i);
+				double[] values = part.entryValues.get(i);
+				int k = 0;
+
+				digests.startAllele();
+
+				// the accessions without an entry have a zero value
+				for (int a = 0; a < accessionCount; ++a)
+				{
+					if (k < accessions.length && accessions[k] == a)
+					{
+						matrix.setEntry(positions[a]++, alleleIndex, values[k]);
+						digests.addValue(a, values[k]);
+						++k;
+					}
+					else
+					{
+						digests.addValue(a, 0.0);
+					}
+				}
+
+				part.entryAccessions.set(i, null);
+				part.entryValues.set(i, null);
+				++alleleIndex;
+			}
+
+			part.release();
+		}
+
+		setContentDigest(matrix, digests);
+
+		return matrix;
+	}
+
+	private AccessionSSRMarkerMatrix<Integer> buildQuantizedMatrix(
+	    EntityIndexedDataset<Integer, SSRMarker> markerDataset,
+	    double[] externalDistances, List<Part> parts) throws CoreHunterException
+	{
+		LevelCollector collector = new LevelCollector(
+		    storageType == SSRStorageType.QUANTIZED_8 ? 8 : 16);
+
+		for (Part part : parts)
+		{
+			collector.addAll(part.levelCollector);
+		}
+
+		AccessionSSRMarkerMatrixQuantizedImpl matrix = new AccessionSSRMarkerMatrixQuantizedImpl(
+		    uniqueIdentifier, name, accessionDataset, markerDataset,
+		    externalDistances, collector);
+
+		RowDigests digests = new RowDigests(getMarkerAlleleCounts(markerDataset));
+		double maximumQuantizationError = 0;
+		int alleleIndex = 0;
+
+		for (Part part : parts)
+		{
+			// each distinct value of the part is quantized once
+			int[] codes = new int[part.codeCount + 1];
+
+			for (int c = 1; c <= part.codeCount; ++c)
+			{
+				double value = part.codeValues[c];
+
+				codes[c] = matrix.getNearestCode(value);
+				maximumQuantizationError = Math.max(maximumQuantizationError,
+				    Math.abs(value - matrix.getLevel(codes[c])));
+			}
+
+			for (int i = 0; i < part.alleleCount; ++i)
+			{
+				char[] partCodes = part.alleleCodes.get(i);
+
+				digests.startAllele();
+
+				// the digest covers the levels that are stored, not the values read
+				if (partCodes != null)
+				{
+					for (int a = 0; a < accessionCount; ++a)
+					{
+						matrix.setAlleleCode(a, alleleIndex, codes[partCodes[a]]);
+						digests.addValue(a, matrix.getLevel(codes[partCodes[a]]));
+					}
+				}
+				else
+				{
+					double[] values = part.alleleValues.get(i);
+
+					for (int a = 0; a < accessionCount; ++a)
+					{
+						maximumQuantizationError = Math.max(maximumQuantizationError,
+						    matrix.encodeAlleleValue(a, alleleIndex, values[a]));
+						digests.addValue(a, matrix.getAlleleValue(a, alleleIndex));
+					}
+				}
+
+				part.alleleCodes.set(i, null);
+				part.alleleValues.set(i, null);
+				++alleleIndex;
+			}
+
+			part.release();
+		}
+
+		matrix.updateMaximumQuantizationError(maximumQuantizationError);
+		setContentDigest(matrix, digests);
+
+		return matrix;
+	}
+
+	private void setContentDigest(AbstractPrimitiveAccessionSSRMarkerMatrix matrix,
+	    RowDigests digests)
+	{
+		contentDigest = digests.build();
+		matrix.setLoadedContentDigest(contentDigest);
+	}
+
+	private static int[] getMarkerAlleleCounts(
+	    EntityIndexedDataset<Integer, SSRMarker> markerDataset)
+	    throws CoreHunterException
+	{
+		int[] markerAlleleCounts = new int[markerDataset.getSize()];
+
+		for (int m = 0; m < markerAlleleCounts.length; ++m)
+		{
+			markerAlleleCounts[m] = markerDataset.getElement(m).getAlleles().size();
+		}
+
+		return markerAlleleCounts;
+	}
+
+	/**
+	 * The digests of the rows of the matrix, which receive the values of the
+	 * alleles in their order, each allele for all accessions at once, with the
+	 * same words as a row of marker lists
+	 */
+	private final class RowDigests
+	{
+		private int[]	                  markerAlleleCounts;
+		private ContentDigest.Builder[]	rows;
+		private int	                    markerIndex;
+		private int	                    markerAlleleIndex;
+
+		private RowDigests(int[] markerAlleleCounts)
+		{
+			this.markerAlleleCounts = markerAlleleCounts;
+
+			rows = new ContentDigest.Builder[accessionCount];
+
+			for (int a = 0; a < accessionCount; ++a)
+			{
+				rows[a] = new ContentDigest.Builder();
+				rows[a].startList(markerAlleleCounts.length);
+			}
+
+			markerIndex = -1;
+			markerAlleleIndex = 0;
+		}
+
+		/**
+		 * Starts the values of the next allele, and of its marker if it is the
+		 * first allele of the marker
+		 */
+		private void startAllele()
+		{
+			while (markerIndex < 0
+			    || markerAlleleIndex == markerAlleleCounts[markerIndex])
+			{
+				startMarker();
+			}
+
+			++markerAlleleIndex;
+		}
+
+		private void addValue(int accessionIndex, double value)
+		{
+			// missing values are null in the rows of the matrix
+			if (Double.isNaN(value))
+			{
+				rows[accessionIndex].addNull();
+			}
+			else
+			{
+				rows[accessionIndex].addDouble(value);
+			}
+		}
+
+		private ContentDigest build()
+		{
+			// markers without alleles after the last allele
+			while (markerIndex + 1 < markerAlleleCounts.length)
+			{
+				startMarker();
+			}
+
+			return ContentDigest.combineRows(rows);
+		}
+
+		private void startMarker()
+		{
+			++markerIndex;
+			markerAlleleIndex = 0;
+
+			for (int a = 0; a < accessionCount; ++a)
+			{
+				rows[a].startList(markerAlleleCounts[markerIndex]);
+			}
+		}
+	}
+
+	/**
+	 * A part of the alleles, which is filled by a single thread
+	 */
+	public final class Part
+	{
+		private int	           alleleCount;
+		// the values of each allele, or for the quantized storage types the
+		// values of the alleles that are not coded by the part
+		private List<double[]>	alleleValues;
+		// the accessions and values of the entries of each allele for the sparse
+		// storage type
+		private List<int[]>	   entryAccessions;
+		private List<double[]>	entryValues;
+		// the codes of the values of each allele for the quantized storage
+		// types, code 0 is a missing value and code c is the value codeValues[c]
+		private List<char[]>	  alleleCodes;
+		private double[]	     codeValues;
+		private int	           codeCount;
+		private long[]	       codeTableKeys;
+		private char[]	       codeTable;
+		private LevelCollector	levelCollector;
+
+		private Part()
+		{
+			switch (storageType)
+			{
+				case SPARSE:
+					entryAccessions = new ArrayList<int[]>();
+					entryValues = new ArrayList<double[]>();
+					break;
+				case QUANTIZED_8:
+				case QUANTIZED_16:
+					alleleValues = new ArrayList<double[]>();
+					alleleCodes = new ArrayList<char[]>();
+					codeValues = new double[256];
+					codeTableKeys = new long[512];
+					codeTable = new char[512];
+					levelCollector = new LevelCollector(
+					    storageType == SSRStorageType.QUANTIZED_8 ? 8 : 16);
+					break;
+				default:
+					alleleValues = new ArrayList<double[]>();
+			}
+		}
+
+		/**
+		 * Gets the number of alleles added to the part
+		 * 
+		 * @return the number of alleles
+		 */
+		public final int getAlleleCount()
+		{
+			return alleleCount;
+		}
+
+		/**
+		 * Adds the next allele
+		 * 
+		 * @param values the values of all accessions, {@link Double#NaN} if a
+		 *          value is missing, which may be changed once this method
+		 *          returns
+		 */
+		public final void addAllele(double[] values)
+		{
+			switch (storageType)
+			{
+				case SPARSE:
+					addEntries(values);
+					break;
+				case QUANTIZED_8:
+				case QUANTIZED_16:
+					addCodes(values);
+					break;
+				default:
+					alleleValues.add(values.clone());
+			}
+
+			++alleleCount;
+		}
+
+		private void addEntries(double[] values)
+		{
+			int count = 0;
+
+			// missing values are entries as well
+			for (int a = 0; a < accessionCount; ++a)
+			{
+				if (values[a] != 0.0)
+				{
+					++count;
+				}
+			}
+
+			int[] accessions = new int[count];
+			double[] entries = new double[count];
+			int k = 0;
+
+			for (int a = 0; a < accessionCount; ++a)
+			{
+				if (values[a] != 0.0)
+				{
+					accessions[k] = a;
+					entries[k] = values[a];
+					++k;
+				}
+			}
+
+			entryAccessions.add(accessions);
+			entryValues.add(entries);
+		}
+
+		private void addCodes(double[] values)
+		{
+			char[] codes = codeCount < MAXIMUM_PART_CODE ? new char[accessionCount]
+			    : null;
+
+			for (int a = 0; codes != null && a < accessionCount; ++a)
+			{
+				codes[a] = findCode(values[a]);
+
+				// too many distinct values, keep the values of this allele instead
+				if (codes[a] == 0 && !Double.isNaN(values[a]))
+				{
+					codes = null;
+				}
+			}
+
+			if (codes != null)
+			{
+				alleleCodes.add(codes);
+				alleleValues.add(null);
+			}
+			else
+			{
+				for (int a = 0; a < accessionCount; ++a)
+				{
+					levelCollector.add(values[a]);
+				}
+
+				alleleCodes.add(null);
+				alleleValues.add(values.clone());
+			}
+		}
+
+		/**
+		 * Finds the code of a value, adding it if it is new. Returns
+		 * <code>0</code> for a missing value, or if there are too many distinct
+		 * values.
+		 */
+		private char findCode(double value)
+		{
+			if (Double.isNaN(value))
+			{
+				return 0;
+			}
+
+			long key = Double.doubleToLongBits(value);
+			int mask = codeTable.length - 1;
+			int slot = hash(key) & mask;
+
+			while (codeTable[slot] != 0)
+			{
+				if (codeTableKeys[slot] == key)
+				{
+					return codeTable[slot];
+				}
+
+				slot = (slot + 1) & mask;
+			}
+
+			if (codeCount == MAXIMUM_PART_CODE)
+			{
+				return 0;
+			}
+
+			++codeCount;
+
+			if (codeCount == codeValues.length)
+			{
+				double[] newCodeValues = new double[codeValues.length * 2];
+
+				System.arraycopy(codeValues, 0, newCodeValues, 0, codeValues.length);
+				codeValues = newCodeValues;
+			}
+
+			codeValues[codeCount] = value;
+			codeTableKeys[slot] = key;
+			codeTable[slot] = (char) codeCount;
+			levelCollector.add(value);
+
+			// keep the table at most half full
+			if (codeCount * 2 > codeTable.length)
+			{
+				rehash();
+			}
+
+			return (char) codeCount;
+		}
+
+		private void rehash()
+		{
+			long[] oldKeys = codeTableKeys;
+			char[] oldTable = codeTable;
+
+			codeTableKeys = new long[oldKeys.length * 2];
+			codeTable = new char[oldTable.length * 2];
+
+			int mask = codeTable.length - 1;
+
+			for (int i = 0; i < oldTable.length; ++i)
+			{
+				if (oldTable[i] != 0)
+				{
+					int slot = hash(oldKeys[i]) & mask;
+
+					while (codeTable[slot] != 0)
+					{
+						slot = (slot + 1) & mask;
+					}
+
+					codeTableKeys[slot] = oldKeys[i];
+					codeTable[slot] = oldTable[i];
+				}
+			}
+		}
+
+		private int hash(long key)
+		{
+			long h = key * 0x9E3779B97F4A7C15L;
+
+			return (int) (h ^ (h >>> 32));
+		}
+
+		private void release()
+		{
+			alleleValues = null;
+			entryAccessions = null;
+			entryValues = null;
+			alleleCodes = null;
+			codeValues = null;
+			codeTableKeys = null;
+			codeTable = null;
+		}
+	}
+}
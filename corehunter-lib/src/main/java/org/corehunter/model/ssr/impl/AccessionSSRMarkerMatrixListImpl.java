@@ -18,8 +18,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 
-import org.apache.commons.lang3.ObjectUtils;
 import org.corehunter.CoreHunterException;
+import org.corehunter.model.ContentDigest;
 import org.corehunter.model.EntityIndexedDataset;
 import org.corehunter.model.UnknownEntityException;
 import org.corehunter.model.UnknownIndexException;
@@ -280,6 +280,7 @@ public class AccessionSSRMarkerMatrixListImpl extends
 	    Double value) throws UnknownEntityException
 	{
 		getElement(accession, marker).set(marker.indexOfAllele(alelle), value);
+		invalidateContentDigest();
 	}
 
 	@Override
@@ -305,7 +306,7 @@ public class AccessionSSRMarkerMatrixListImpl extends
 			if (object instanceof AccessionSSRMarkerMatrixListImpl)
 			{
 				return super.equals(object)
-				    && ObjectUtils.equals(getExternalDistances(),
+				    && Arrays.equals(getExternalDistances(),
 				        ((AccessionSSRMarkerMatrixListImpl) object)
 				            .getExternalDistances());
 			}
@@ -339,6 +340,17 @@ public class AccessionSSRMarkerMatrixListImpl extends
 		return hash;
 	}
 
+	/**
+	 * Sets the digest of the values calculated while they were read, see
+	 * {@link AccessionSSRMarkerMatrixBuilder}
+	 * 
+	 * @param digest the digest of the values
+	 */
+	final void setLoadedContentDigest(ContentDigest digest)
+	{
+		setContentDigest(digest);
+	}
+
 	private boolean externalDistancesEquals(
 	    AccessionEntityMatrix<Integer, List<Double>, SSRMarker> matrix,
 	    Integer index)
@@ -14,10 +14,8 @@
 package org.corehunter.model.ssr.impl;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 
 import org.corehunter.CoreHunterException;
@@ -26,17 +24,30 @@ import org.corehunter.model.EntityIndexedDataset;
 import org.corehunter.model.accession.Accession;
 import org.corehunter.model.accession.impl.AccessionImpl;
 import org.corehunter.model.impl.AbstractDataFileReader;
+import org.corehunter.model.impl.DataFileTokenizer;
 import org.corehunter.model.impl.OrderedEntityDatasetListImpl;
+import org.corehunter.model.impl.ParallelDataFileParser;
 import org.corehunter.model.ssr.AccessionSSRMarkerMatrix;
+import org.corehunter.model.ssr.PrimitiveAccessionSSRMarkerMatrix;
+import org.corehunter.model.ssr.QuantizedAccessionSSRMarkerMatrix;
 import org.corehunter.model.ssr.SSRAllele;
 import org.corehunter.model.ssr.SSRMarker;
-
-import au.com.bytecode.opencsv.CSVReader;
+import org.corehunter.model.ssr.SSRStorageType;
 
 /**
- * SSRAccessionMatrixDataset reader that reads the complete matrix into memory
- * before creating the Dataset. Accessions and Marker are indexed from 0 to n-1.
- * Not suitable for big datasets.
+ * SSRAccessionMatrixDataset reader. Accessions and Marker are indexed from 0
+ * to n-1. The file is read once, line by line, so that the lines are never
+ * held in memory. The allele values of each line are added to a part of an
+ * {@link AccessionSSRMarkerMatrixBuilder}, which keeps them in a form that
+ * suits the storage type until the parts are stitched into the dataset. Large
+ * files can be parsed in parallel, each chunk of lines into its own part, see
+ * {@link #setThreadCount(int)}. By default the dataset is stored as nested
+ * lists, use {@link #setStorageType(SSRStorageType)} to select another
+ * storage type. For the {@link SSRStorageType#MAPPED} storage type the values
+ * are written to the file given by {@link #setMappedFile(File)}, or to a
+ * temporary file if no file is given. For the quantized storage types the
+ * maximum quantization error of the last dataset read is available from
+ * {@link #getMaximumQuantizationError()}.
  * 
  * @author daveneti
  */
@@ -48,6 +59,10 @@ public class AccessionSSRMarkerMatrixListImplDataFileReader extends
 	private static final String	ACCESSION_DATASET_NAME_PREFIX	= "Accessions for ";
 	private static final String	MARKER_DATASET_NAME_PREFIX	  = "Markers for ";
 	private char	              delimiter;
+	private SSRStorageType	    storageType	                  = SSRStorageType.LIST;
+	private File	              mappedFile;
+	private double	            maximumQuantizationError;
+	private int	                threadCount	                  = 1;
 
 	public AccessionSSRMarkerMatrixListImplDataFileReader(File file)
 	{
@@ -99,225 +114,295 @@ public class AccessionSSRMarkerMatrixListImplDataFileReader extends
 		this.delimiter = delimiter;
 	}
 
-	@SuppressWarnings("rawtypes")
-	@Override
-	public AccessionSSRMarkerMatrix<Integer> readData()
-	    throws CoreHunterException
+	public final SSRStorageType getStorageType()
 	{
-		AccessionSSRMarkerMatrix<Integer> dataset = null;
-		List<Accession> accessions = new ArrayList<Accession>();
-		List<SSRMarker> markers = new ArrayList<SSRMarker>();
+		return storageType;
+	}
 
-		String nextLine[];
+	public final void setStorageType(SSRStorageType storageType)
+	{
+		this.storageType = storageType;
+	}
 
-		try
-		{
-			// TODO allow for other delimiters
-			CSVReader reader = new CSVReader(new FileReader(getFile()), delimiter);
+	public final File getMappedFile()
+	{
+		return mappedFile;
+	}
 
-			List lines = reader.readAll();
-			reader.close();
+	public final void setMappedFile(File mappedFile)
+	{
+		this.mappedFile = mappedFile;
+	}
 
-			Iterator iterator = lines.iterator();
+	/**
+	 * Gets the maximum quantization error of the last dataset read
+	 * 
+	 * @return the maximum quantization error, <code>0</code> if the dataset is
+	 *         not quantized or all values are stored exactly
+	 */
+	public final double getMaximumQuantizationError()
+	{
+		return maximumQuantizationError;
+	}
 
-			if (iterator.hasNext())
-			{
-				nextLine = (String[]) iterator.next();
-				for (int i = 2; i < nextLine.length; i++)
-				{
-					accessions.add(createAccession(nextLine[i], i - 2));
-				}
-			}
+	/**
+	 * Gets the number of threads used to parse the file
+	 * 
+	 * @return the number of threads, <code>0</code> if as many threads as there
+	 *         are available processors are used
+	 */
+	public final int getThreadCount()
+	{
+		return threadCount;
+	}
 
-			int lineNumber = 1;
-			int markerIndex = 0;
-			int alleleIndex = 0;
-			// Normal marker/allele line
-			String markerName = null;
-			String alleleName = null;
-			SSRMarker marker = null;
+	/**
+	 * Sets the number of threads used to parse the file. With more than one
+	 * thread, large files are split into chunks of whole lines that are parsed
+	 * in parallel, see {@link ParallelDataFileParser}. By default the file is
+	 * parsed on the calling thread.
+	 * 
+	 * @param threadCount the number of threads, or <code>0</code> to use as
+	 *          many threads as there are available processors
+	 */
+	public final void setThreadCount(int threadCount)
+	{
+		this.threadCount = threadCount;
+	}
 
-			while (iterator.hasNext())
+	@Override
+	public AccessionSSRMarkerMatrix<Integer> readData()
+	    throws CoreHunterException
+	{
+		final SSRHeader header = new SSRHeader();
+		List<SSRMarker> markers = new ArrayList<SSRMarker>();
+		double[] externalDistances = null;
+
+		// the accessions are read from the header line before the chunks are
+		// parsed, in the same pass over the file
+		List<SSRChunk> chunks = new ParallelDataFileParser<SSRChunk>(getFile(),
+		    delimiter, threadCount).parse(1,
+		    new ParallelDataFileParser.HeaderParser()
+		    {
+			    @Override
+			    public void parseHeader(DataFileTokenizer line, int lineNumber)
+			        throws CoreHunterException
+			    {
+				    readAccessions(header, line);
+			    }
+		    }, new ParallelDataFileParser.ChunkParser<SSRChunk>()
+		    {
+			    @Override
+			    public SSRChunk createResult()
+			    {
+				    return new SSRChunk(header);
+			    }
+
+			    @Override
+			    public void parseLine(SSRChunk chunk, DataFileTokenizer line,
+			        int lineNumber) throws CoreHunterException
+			    {
+				    AccessionSSRMarkerMatrixListImplDataFileReader.this.parseLine(chunk,
+				        line, lineNumber, header.accessions);
+			    }
+		    });
+
+		int markerIndex = 0;
+		int alleleIndex = 0;
+		String markerName = null;
+		SSRMarker marker = null;
+		List<AccessionSSRMarkerMatrixBuilder.Part> parts = new ArrayList<AccessionSSRMarkerMatrixBuilder.Part>(
+		    chunks.size());
+
+		for (SSRChunk chunk : chunks)
+		{
+			for (int i = 0; i < chunk.markerNames.size(); ++i)
 			{
-				nextLine = (String[]) iterator.next();
-				lineNumber++;
-
-				if (nextLine.length < 2)
+				if (!chunk.markerNames.get(i).equals(markerName))
 				{
-					throw new CoreHunterException(
-					    "Dataset is not properly formatted on line "
-					        + lineNumber
-					        + " Please refer to the CoreHunter manual.  "
-					        + "There should be a marker name and allele name separated by a "
-					        + delimiter
-					        + "followed by values for each accession also separated by a "
-					        + delimiter + ". '" + nextLine[0] + "'");
+					markerName = chunk.markerNames.get(i);
+					marker = createSSRMarker(markerName, markerIndex);
+					markers.add(marker);
+					alleleIndex = 0;
+					++markerIndex;
 				}
 
-				// Ignore (possible) external distances line at this point
-				if (!(nextLine[0].equalsIgnoreCase("DIST")))
-				{
-					if (!nextLine[0].equals(markerName))
-					{
-						markerName = nextLine[0];
-						marker = createSSRMarker(markerName, markerIndex);
-						markers.add(marker);
-						alleleIndex = 0;
-						++markerIndex;
-					}
-
-					alleleName = nextLine[1];
-					marker.addAllele(createSSRAllele(alleleName, marker, alleleIndex));
-					++alleleIndex;
-				}
+				marker.addAllele(createSSRAllele(chunk.alleleNames.get(i), marker,
+				    alleleIndex));
+				++alleleIndex;
 			}
 
-			if (accessions.size() < 2)
+			if (chunk.externalDistances != null)
 			{
-				throw new CoreHunterException(
-				    "Dataset must contain at least 2 accessions");
+				externalDistances = chunk.externalDistances;
 			}
 
-			if (markers.size() < 1)
-			{
-				throw new CoreHunterException(
-				    "Dataset must contain at least 1 marker/allele");
-			}
+			parts.add(chunk.part);
+		}
 
-			List<List<List<Double>>> elements = new ArrayList<List<List<Double>>>(
-			    accessions.size());
-			List<Double> externalDistances = null;
+		if (header.accessions.size() < 2)
+		{
+			throw new CoreHunterException("Dataset must contain at least 2 accessions");
+		}
 
-			for (int i = 0; i < accessions.size(); ++i)
-			{
-				elements.add(new ArrayList<List<Double>>(markers.size()));
-			}
+		if (markers.size() < 1)
+		{
+			throw new CoreHunterException(
+			    "Dataset must contain at least 1 marker/allele");
+		}
 
-			markerName = null;
-			markerIndex = -1;
+		EntityIndexedDataset<Integer, SSRMarker> markerDataset = createMarkerDataset(
+		    createMarkerDatasetName(), markers);
+		AccessionSSRMarkerMatrix<Integer> dataset;
 
-			iterator = lines.iterator();
-			iterator.next();
+		if (storageType == SSRStorageType.LIST)
+		{
+			dataset = createSSRAccessionMatrixDataset(getDataUniqueIdentifier(),
+			    getDataName(), header.accessionDataset, markerDataset,
+			    header.builder.buildElements(markerDataset, parts),
+			    externalDistances);
+			setContentDigest(dataset, header.builder);
+		}
+		else
+		{
+			dataset = header.builder.build(markerDataset, externalDistances, parts);
+		}
 
-			// add the allele values for each genotype
-			while (iterator.hasNext())
-			{
-				nextLine = (String[]) iterator.next();
+		return completeDataset(dataset);
+	}
 
-				// Check for external distances line
-				if (nextLine[0].equalsIgnoreCase("DIST"))
-				{
-					// ext. dist. line
-					externalDistances = new ArrayList<Double>(accessions.size());
-					for (int i = 2; i < nextLine.length; i++)
-					{
-						Accession accession = accessions.get(i - 2);
-						try
-						{
-							externalDistances.add(new Double(nextLine[i]));
-						}
-						catch (NumberFormatException numberFormatException)
-						{
-							throw new CoreHunterException(
-							    "Invalid external distance value for accession '" + accession,
-							    numberFormatException);
-						}
-					}
-				}
-				else
-				{
-					List<Double> markerValues;
-
-					if (!nextLine[0].equals(markerName))
-					{
-						++markerIndex;
-						marker = markers.get(markerIndex);
-						markerName = marker.getName();
-
-						for (int i = 2; i < nextLine.length; i++)
-						{
-							markerValues = new ArrayList<Double>(marker.getAlleles().size());
-							elements.get(i - 2).add(markerValues);
-
-							if (nextLine[i].equals(""))
-							{
-								markerValues.add(null);
-							}
-							else
-							{
-								try
-								{
-									markerValues.add(new Double(nextLine[i]));
-								}
-								catch (NumberFormatException numberFormatException)
-								{
-									Accession accession = accessions.get(i - 2);
-
-									throw new CoreHunterException("Invalid value for accession '"
-									    + accession + "' marker '" + markerName + "' allele '"
-									    + alleleName + "'", numberFormatException);
-								}
-							}
-						}
-					}
-					else
-					{
-						for (int i = 2; i < nextLine.length; i++)
-						{
-							markerValues = elements.get(i - 2).get(markerIndex);
-
-							if (nextLine[i].equals(""))
-							{
-								markerValues.add(null);
-							}
-							else
-							{
-								try
-								{
-									markerValues.add(new Double(nextLine[i]));
-								}
-								catch (NumberFormatException numberFormatException)
-								{
-									Accession accession = accessions.get(i - 2);
-
-									throw new CoreHunterException("Invalid value for accession '"
-									    + accession + "' marker '" + markerName + "' allele '"
-									    + alleleName + "'", numberFormatException);
-								}
-
-							}
-						}
-					}
+	/**
+	 * Sets the digest of the values, calculated while the builder built the
+	 * elements, on a list dataset created from these elements
+	 */
+	static void setContentDigest(AccessionSSRMarkerMatrix<Integer> dataset,
+	    AccessionSSRMarkerMatrixBuilder builder)
+	{
+		if (dataset instanceof AccessionSSRMarkerMatrixListImpl)
+		{
+			((AccessionSSRMarkerMatrixListImpl) dataset)
+			    .setLoadedContentDigest(builder.getContentDigest());
+		}
+	}
 
-				}
-			}
+	/**
+	 * Completes a dataset that was just read, by creating its derived data and
+	 * updating the maximum quantization error
+	 * 
+	 * @param dataset the dataset
+	 * @return the dataset
+	 */
+	protected AccessionSSRMarkerMatrix<Integer> completeDataset(
+	    AccessionSSRMarkerMatrix<Integer> dataset)
+	{
+		// create the derived allele presence bitmap once, at load time
+		if (dataset instanceof PrimitiveAccessionSSRMarkerMatrix)
+		{
+			((PrimitiveAccessionSSRMarkerMatrix) dataset).getAllelePresence();
+		}
+
+		maximumQuantizationError = dataset instanceof QuantizedAccessionSSRMarkerMatrix ? ((QuantizedAccessionSSRMarkerMatrix) dataset)
+		    .getMaximumQuantizationError() : 0;
 
-			// create the SSRDataset object
-			double[] extDistArray;
-			if (externalDistances != null)
+		return dataset;
+	}
+
+	/**
+	 * Reads the accessions from the header line and creates the builder of the
+	 * dataset
+	 */
+	private void readAccessions(SSRHeader header, DataFileTokenizer nextLine)
+	    throws CoreHunterException
+	{
+		for (int i = 2; i < nextLine.getFieldCount(); i++)
+		{
+			header.accessions.add(createAccession(nextLine.getString(i), i - 2));
+		}
+
+		header.accessionDataset = createAccessionDataset(
+		    createAccessionDatasetName(), header.accessions);
+		header.builder = createSSRAccessionMatrixBuilder(getDataUniqueIdentifier(),
+		    getDataName(), header.accessionDataset);
+	}
+
+	/**
+	 * Parses a marker/allele line or the external distances line. Called from
+	 * several threads at once, so only the chunk may be changed.
+	 */
+	private void parseLine(SSRChunk chunk, DataFileTokenizer nextLine,
+	    int lineNumber, List<Accession> accessions) throws CoreHunterException
+	{
+		int accessionCount = accessions.size();
+		int fieldCount = nextLine.getFieldCount();
+
+		if (fieldCount < 2)
+		{
+			throw new CoreHunterException(
+			    "Dataset is not properly formatted on line "
+			        + lineNumber
+			        + " Please refer to the CoreHunter manual.  "
+			        + "There should be a marker name and allele name separated by a "
+			        + delimiter
+			        + "followed by values for each accession also separated by a "
+			        + delimiter + ". '" + nextLine.getString(0) + "'");
+		}
+
+		// Check for external distances line
+		if (nextLine.equalsIgnoreCase(0, "DIST"))
+		{
+			chunk.externalDistances = new double[accessionCount];
+
+			for (int i = 2; i < fieldCount && i - 2 < accessionCount; i++)
 			{
-				extDistArray = new double[externalDistances.size()];
-				for (int ext = 0; ext < externalDistances.size(); ext++)
+				try
+				{
+					chunk.externalDistances[i - 2] = nextLine.parseDouble(i);
+				}
+				catch (NumberFormatException numberFormatException)
 				{
-					extDistArray[ext] = externalDistances.get(ext);
+					throw new CoreHunterException(
+					    "Invalid external distance value for accession '"
+					        + accessions.get(i - 2) + "' on line " + lineNumber,
+					    numberFormatException);
 				}
 			}
-			else
+		}
+		else
+		{
+			chunk.markerNames.add(nextLine.getString(0));
+			chunk.alleleNames.add(nextLine.getString(1));
+
+			for (int i = 0; i < accessionCount; i++)
 			{
-				extDistArray = null;
+				chunk.values[i] = parseAlleleValue(nextLine, i, lineNumber, accessions);
 			}
-			dataset = createSSRAccessionMatrixDataset(getDataUniqueIdentifier(), getDataName(),
-			    createAccessionDataset(createAccessionDatasetName(), accessions),
-			    createMarkerDataset(createMarkerDatasetName(), markers), elements,
-			    extDistArray);
 
+			chunk.part.addAllele(chunk.values);
 		}
-		catch (IOException e)
+	}
+
+	private double parseAlleleValue(DataFileTokenizer nextLine,
+	    int accessionIndex, int lineNumber, List<Accession> accessions)
+	    throws CoreHunterException
+	{
+		// values missing at the end of the line are missing values
+		if (accessionIndex + 2 >= nextLine.getFieldCount()
+		    || nextLine.isEmpty(accessionIndex + 2))
 		{
-			throw new CoreHunterException(e);
+			return Double.NaN;
 		}
 
-		return dataset;
+		try
+		{
+			return nextLine.parseDouble(accessionIndex + 2);
+		}
+		catch (NumberFormatException numberFormatException)
+		{
+			throw new CoreHunterException("Invalid value for accession '"
+			    + accessions.get(accessionIndex) + "' marker '"
+			    + nextLine.getString(0) + "' allele '" + nextLine.getString(1)
+			    + "' on line " + lineNumber, numberFormatException);
+		}
 	}
 
 	protected String createAccessionDatasetName()
@@ -346,13 +431,71 @@ public class AccessionSSRMarkerMatrixListImplDataFileReader extends
 		return new SSRAlleleImpl(alleleName, marker);
 	}
 
+	/**
+	 * Creates the builder of a dataset of the storage type of the reader, see
+	 * {@link AccessionSSRMarkerMatrixBuilder}
+	 * 
+	 * @param uniqueIdentifier the unique identifier of the dataset
+	 * @param name the name of the dataset
+	 * @param accessionDataset the accessions
+	 * @return the builder
+	 * @throws CoreHunterException if the builder can not be created
+	 */
+	protected AccessionSSRMarkerMatrixBuilder createSSRAccessionMatrixBuilder(
+	    String uniqueIdentifier, String name,
+	    EntityIndexedDataset<Integer, Accession> accessionDataset)
+	    throws CoreHunterException
+	{
+		return new AccessionSSRMarkerMatrixBuilder(uniqueIdentifier, name,
+		    accessionDataset, storageType,
+		    storageType == SSRStorageType.MAPPED ? (mappedFile != null ? mappedFile
+		        : createTemporaryMappedFile()) : null);
+	}
+
 	protected AccessionSSRMarkerMatrix<Integer> createSSRAccessionMatrixDataset(
 			String uniqueIdentifier, String name, EntityIndexedDataset<Integer, Accession> accessionDataset,
 	    EntityIndexedDataset<Integer, SSRMarker> markerDataset,
-	    List<List<List<Double>>> elements, double[] externalDistances)
+	    List<List<List<Double>>> elements, double[] externalDistances) throws CoreHunterException
 	{
-		return new AccessionSSRMarkerMatrixListImpl(uniqueIdentifier, name, accessionDataset,
-		    markerDataset, elements, externalDistances);
+		switch (storageType)
+		{
+			case MAPPED:
+				return AccessionSSRMarkerMatrixMappedImpl.create(uniqueIdentifier, name,
+				    accessionDataset, markerDataset, elements, externalDistances,
+				    mappedFile != null ? mappedFile : createTemporaryMappedFile());
+			case QUANTIZED_8:
+				return new AccessionSSRMarkerMatrixQuantizedImpl(uniqueIdentifier,
+				    name, accessionDataset, markerDataset, elements, externalDistances,
+				    8);
+			case QUANTIZED_16:
+				return new AccessionSSRMarkerMatrixQuantizedImpl(uniqueIdentifier,
+				    name, accessionDataset, markerDataset, elements, externalDistances,
+				    16);
+			case SPARSE:
+				return new AccessionSSRMarkerMatrixSparseImpl(uniqueIdentifier, name,
+				    accessionDataset, markerDataset, elements, externalDistances);
+			case ARRAY:
+				return new AccessionSSRMarkerMatrixArrayImpl(uniqueIdentifier, name,
+				    accessionDataset, markerDataset, elements, externalDistances);
+			case LIST:
+			default:
+				return new AccessionSSRMarkerMatrixListImpl(uniqueIdentifier, name,
+				    accessionDataset, markerDataset, elements, externalDistances);
+		}
+	}
+
+	private File createTemporaryMappedFile() throws CoreHunterException
+	{
+		try
+		{
+			File file = File.createTempFile("corehunter", ".ssr");
+			file.deleteOnExit();
+			return file;
+		}
+		catch (IOException e)
+		{
+			throw new CoreHunterException(e);
+		}
 	}
 
 	protected EntityIndexedDataset<Integer, Accession> createAccessionDataset(
@@ -366,4 +509,37 @@ public class AccessionSSRMarkerMatrixListImplDataFileReader extends
 	{
 		return new OrderedEntityDatasetListImpl<SSRMarker>(name, markers);
 	}
+
+	/**
+	 * The accessions read from the header line, and the builder of the dataset
+	 */
+	private static class SSRHeader
+	{
+		private List<Accession>	                        accessions	= new ArrayList<Accession>();
+		private EntityIndexedDataset<Integer, Accession>	accessionDataset;
+		private AccessionSSRMarkerMatrixBuilder	        builder;
+	}
+
+	/**
+	 * The marker/allele lines and external distances of a chunk of the file
+	 */
+	private static class SSRChunk
+	{
+		private List<String>	                      markerNames	= new ArrayList<String>();
+		private List<String>	                      alleleNames	= new ArrayList<String>();
+		private double[]	                          externalDistances;
+		private AccessionSSRMarkerMatrixBuilder.Part	part;
+		// the values of the line being parsed
+		private double[]	                          values;
+
+		public SSRChunk(SSRHeader header)
+		{
+			// there are no lines to parse if the file has no header line
+			if (header.builder != null)
+			{
+				part = header.builder.createPart();
+				values = new double[header.accessions.size()];
+			}
+		}
+	}
 }
@@ -14,7 +14,7 @@
 package org.corehunter.model.ssr.impl;
 
 import java.io.File;
-import java.io.FileWriter;
+import java.io.IOException;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
@@ -74,10 +74,12 @@ public class AccessionSSRMarkerMatrixListImplDataFileWriter extends
 	protected void writeData(AccessionSSRMarkerMatrix<Integer> dataset,
 	    List<Integer> indices) throws CoreHunterException
 	{
+		CSVWriter writer = null;
+
 		try
 		{
-			CSVWriter writer = new CSVWriter(new FileWriter(getFile()), ',',
-			    CSVWriter.NO_QUOTE_CHARACTER);
+			// the file is gzip compressed if its name ends with .gz
+			writer = new CSVWriter(openWriter(), ',', CSVWriter.NO_QUOTE_CHARACTER);
 
 			String[] line = new String[indices.size() + 2];
 			line[0] = "Marker";
@@ -95,7 +97,7 @@ public class AccessionSSRMarkerMatrixListImplDataFileWriter extends
 				line[1] = "";
 				for (int i = 0; i < indices.size(); i++)
 				{
-					line[2 + i] = String.valueOf(dataset.getExternalDistance(i));
+					line[2 + i] = String.valueOf(dataset.getExternalDistance(indices.get(i)));
 				}
 				writer.writeNext(line);
 			}
@@ -151,6 +153,21 @@ public class AccessionSSRMarkerMatrixListImplDataFileWriter extends
 			System.err.println("");
 			System.err.println(e.getMessage());
 		}
+		finally
+		{
+			if (writer != null)
+			{
+				try
+				{
+					writer.close();
+				}
+				catch (IOException e)
+				{
+					System.err.println("");
+					System.err.println(e.getMessage());
+				}
+			}
+		}
 	}
 
 	private String[] getLabels(Set<Accession> elementsAsList)
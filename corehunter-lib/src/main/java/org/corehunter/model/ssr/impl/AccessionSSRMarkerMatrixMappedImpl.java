@@ -0,0 +1,301 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.model.ssr.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.List;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.EntityIndexedDataset;
+import org.corehunter.model.accession.Accession;
+import org.corehunter.model.ssr.SSRMarker;
+
+/**
+ * SSR matrix that stores all allele values in a memory-mapped binary file,
+ * so that the values are paged in by the operating system instead of being
+ * held on the heap. Several processes mapping the same file share a single
+ * copy in the page cache.
+ *
+ * The file contains the allele values as 8 byte big-endian doubles,
+ * accession by accession, starting at a given offset in the file. Missing
+ * values are stored as {@link Double#NaN}. The file is mapped in segments of
+ * whole accessions, each smaller than 2GB, so files larger than 2GB are
+ * supported as long as the values of a single accession fit in one segment.
+ *
+ * The mapping stays valid until the matrix is garbage collected, it can not
+ * be released explicitly.
+ */
+public class AccessionSSRMarkerMatrixMappedImpl extends
+    AbstractPrimitiveAccessionSSRMarkerMatrix
+{
+	private static final int	VALUE_SIZE	= 8;
+
+	private File	           file;
+	private long	           offset;
+	private boolean	         writable;
+	private int	             alleleCount;
+	private int	             rowsPerSegment;
+	private DoubleBuffer[]	 segments;
+
+	/**
+	 * Maps an existing file read-only
+	 *
+	 * @param uniqueIdentifier the unique identifier of the matrix
+	 * @param name the name of the matrix
+	 * @param rowHeaders the accessions
+	 * @param columnHeaders the markers
+	 * @param file the file containing the allele values
+	 * @param externalDistances the external distances or <code>null</code>
+	 * @throws CoreHunterException if the file can not be mapped or is too small
+	 */
+	public AccessionSSRMarkerMatrixMappedImpl(String uniqueIdentifier,
+	    String name, EntityIndexedDataset<Integer, Accession> rowHeaders,
+	    EntityIndexedDataset<Integer, SSRMarker> columnHeaders, File file,
+	    double[] externalDistances) throws CoreHunterException
+	{
+		this(uniqueIdentifier, name, rowHeaders, columnHeaders, file, 0, false,
+		    externalDistances);
+	}
+
+	/**
+	 * Maps a file. If the file is writable, it is created or extended as needed.
+	 *
+	 * @param uniqueIdentifier the unique identifier of the matrix
+	 * @param name the name of the matrix
+	 * @param rowHeaders the accessions
+	 * @param columnHeaders the markers
+	 * @param file the file containing the allele values
+	 * @param offset the position of the first value in the file
+	 * @param writable <code>true</code> if the file should be mapped read-write
+	 * @param externalDistances the external distances or <code>null</code>
+	 * @throws CoreHunterException if the file can not be mapped or is too small
+	 */
+	public AccessionSSRMarkerMatrixMappedImpl(String uniqueIdentifier,
+	    String name, EntityIndexedDataset<Integer, Accession> rowHeaders,
+	    EntityIndexedDataset<Integer, SSRMarker> columnHeaders, File file,
+	    long offset, boolean writable, double[] externalDistances)
+	    throws CoreHunterException
+	{
+		super(uniqueIdentifier, name, rowHeaders, columnHeaders,
+		    externalDistances);
+
+		this.file = file;
+		this.offset = offset;
+		this.writable = writable;
+
+		alleleCount = getTotalAlleleCount();
+
+		map(rowHeaders.getSize());
+	}
+
+	/**
+	 * Creates a matrix by writing the values of nested lists, as used by
+	 * {@link AccessionSSRMarkerMatrixListImpl}, to a file, which is then mapped
+	 * read-write. <code>null</code> values are stored as missing values. An
+	 * existing file is overwritten.
+	 *
+	 * @param uniqueIdentifier the unique identifier of the matrix
+	 * @param name the name of the matrix
+	 * @param rowHeaders the accessions
+	 * @param columnHeaders the markers
+	 * @param elements the allele values
+	 * @param externalDistances the external distances or <code>null</code>
+	 * @param file the file to be written
+	 * @return the new matrix
+	 * @throws CoreHunterException if the file can not be written
+	 */
+	public static AccessionSSRMarkerMatrixMappedImpl create(
+	    String uniqueIdentifier, String name,
+	    EntityIndexedDataset<Integer, Accession> rowHeaders,
+	    EntityIndexedDataset<Integer, SSRMarker> columnHeaders,
+	    List<List<List<Double>>> elements, double[] externalDistances, File file)
+	    throws CoreHunterException
+	{
+		if (file.exists() && !file.delete())
+		{
+			throw new CoreHunterException("Can not overwrite file : "
+			    + file.getAbsolutePath());
+		}
+
+		AccessionSSRMarkerMatrixMappedImpl matrix = new AccessionSSRMarkerMatrixMappedImpl(
+		    uniqueIdentifier, name, rowHeaders, columnHeaders, file, 0, true,
+		    externalDistances);
+
+		Iterator<List<List<Double>>> rows = elements.iterator();
+		int accessionIndex = 0;
+
+		while (rows.hasNext())
+		{
+			int alleleIndex = 0;
+
+			for (List<Double> markerValues : rows.next())
+			{
+				for (Double value : markerValues)
+				{
+					matrix.setAlleleValue(accessionIndex, alleleIndex,
+					    value != null ? value : Double.NaN);
+					++alleleIndex;
+				}
+			}
+
+			++accessionIndex;
+		}
+
+		return matrix;
+	}
+
+	@Override
+	public void validate() throws CoreHunterException
+	{
+		super.validate();
+
+		if (segments == null)
+		{
+			throw new CoreHunterException("File not mapped!");
+		}
+	}
+
+	@Override
+	public final double getAlleleValue(int accessionIndex, int alleleIndex)
+	{
+		return segments[accessionIndex / rowsPerSegment].get(
+		    (accessionIndex % rowsPerSegment) * alleleCount + alleleIndex);
+	}
+
+	@Override
+	protected final void storeAlleleValue(int accessionIndex, int alleleIndex,
+	    double value)
+	{
+		segments[accessionIndex / rowsPerSegment].put(
+		    (accessionIndex % rowsPerSegment) * alleleCount + alleleIndex, value);
+	}
+
+	@Override
+	public final void getAlleleValues(int accessionIndex, double[] values)
+	{
+		// duplicate to keep the position of the shared buffer untouched
+		DoubleBuffer buffer = segments[accessionIndex / rowsPerSegment]
+		    .duplicate();
+
+		buffer.position((accessionIndex % rowsPerSegment) * alleleCount);
+		buffer.get(values, 0, alleleCount);
+	}
+
+	/**
+	 * Gets the mapped file
+	 *
+	 * @return the mapped file
+	 */
+	public final File getFile()
+	{
+		return file;
+	}
+
+	/**
+	 * Gets the position of the first value in the mapped file
+	 *
+	 * @return the position of the first value in the mapped file
+	 */
+	public final long getOffset()
+	{
+		return offset;
+	}
+
+	/**
+	 * Indicates if the file is mapped read-write
+	 *
+	 * @return <code>true</code> if the file is mapped read-write
+	 */
+	public final boolean isWritable()
+	{
+		return writable;
+	}
+
+	private void map(int rowCount) throws CoreHunterException
+	{
+		long rowSize = (long) alleleCount * VALUE_SIZE;
+		long size = rowSize * rowCount;
+
+		rowsPerSegment = rowSize > 0 ? (int) Math.max(1, Math.min(rowCount,
+		    Integer.MAX_VALUE / rowSize)) : Math.max(1, rowCount);
+
+		if (rowSize * rowsPerSegment > Integer.MAX_VALUE)
+		{
+			throw new CoreHunterException(
+			    "Values of a single accession are too large to be mapped!");
+		}
+
+		int segmentCount = (rowCount + rowsPerSegment - 1) / rowsPerSegment;
+
+		segments = new DoubleBuffer[segmentCount];
+
+		RandomAccessFile randomAccessFile = null;
+
+		try
+		{
+			randomAccessFile = new RandomAccessFile(file, writable ? "rw" : "r");
+
+			if (randomAccessFile.length() < offset + size)
+			{
+				if (writable)
+				{
+					randomAccessFile.setLength(offset + size);
+				}
+				else
+				{
+					throw new CoreHunterException("File " + file.getAbsolutePath()
+					    + " is too small, expected at least " + (offset + size)
+					    + " bytes!");
+				}
+			}
+
+			FileChannel channel = randomAccessFile.getChannel();
+
+			for (int i = 0; i < segmentCount; ++i)
+			{
+				int rows = Math.min(rowsPerSegment, rowCount - i * rowsPerSegment);
+
+				segments[i] = channel.map(
+				    writable ? FileChannel.MapMode.READ_WRITE
+				        : FileChannel.MapMode.READ_ONLY,
+				    offset + i * rowsPerSegment * rowSize, rows * rowSize)
+				    .asDoubleBuffer();
+			}
+		}
+		catch (IOException e)
+		{
+			throw new CoreHunterException(e);
+		}
+		finally
+		{
+			// the mappings stay valid after the file is closed
+			if (randomAccessFile != null)
+			{
+				try
+				{
+					randomAccessFile.close();
+				}
+				catch (IOException e)
+				{
+					// ignore
+				}
+			}
+		}
+	}
+}
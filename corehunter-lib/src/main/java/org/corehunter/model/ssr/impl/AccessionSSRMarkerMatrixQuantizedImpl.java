@@ -0,0 +1,523 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.model.ssr.impl;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.EntityIndexedDataset;
+import org.corehunter.model.accession.Accession;
+import org.corehunter.model.ssr.QuantizedAccessionSSRMarkerMatrix;
+import org.corehunter.model.ssr.SSRMarker;
+
+/**
+ * SSR matrix that stores each allele value as an 8 or 16 bit code. If the
+ * data contains no more distinct values than there are codes available, each
+ * distinct value gets its own level and all values are stored exactly.
+ * Otherwise the levels are spread evenly between the smallest and largest
+ * value, and each value is stored as the nearest level.
+ *
+ * Values set after the matrix is created are also stored as the nearest
+ * level, the maximum quantization error is updated accordingly.
+ */
+public class AccessionSSRMarkerMatrixQuantizedImpl extends
+    AbstractPrimitiveAccessionSSRMarkerMatrix implements
+    QuantizedAccessionSSRMarkerMatrix
+{
+	private static final int	MISSING_CODE	= 0;
+
+	private int	             bits;
+	private byte[]	         byteCodes;
+	private short[]	         shortCodes;
+	private double[]	       levels;
+	private boolean	         exact;
+	private int	             alleleCount;
+	private double	         maximumQuantizationError;
+
+	/**
+	 * Creates a matrix by quantizing the values of nested lists as used by
+	 * {@link AccessionSSRMarkerMatrixListImpl}. <code>null</code> values are
+	 * stored as missing values.
+	 *
+	 * @param uniqueIdentifier the unique identifier of the matrix
+	 * @param name the name of the matrix
+	 * @param rowHeaders the accessions
+	 * @param columnHeaders the markers
+	 * @param elements the allele values
+	 * @param externalDistances the external distances or <code>null</code>
+	 * @param bits the number of bits per code, either 8 or 16
+	 */
+	public AccessionSSRMarkerMatrixQuantizedImpl(String uniqueIdentifier,
+	    String name, EntityIndexedDataset<Integer, Accession> rowHeaders,
+	    EntityIndexedDataset<Integer, SSRMarker> columnHeaders,
+	    List<List<List<Double>>> elements, double[] externalDistances, int bits)
+	{
+		super(uniqueIdentifier, name, rowHeaders, columnHeaders,
+		    externalDistances);
+
+		// checks the number of bits
+		LevelCollector collector = new LevelCollector(bits);
+
+		this.bits = bits;
+
+		for (List<List<Double>> row : elements)
+		{
+			for (List<Double> markerValues : row)
+			{
+				for (Double value : markerValues)
+				{
+					if (value != null)
+					{
+						collector.add(value);
+					}
+				}
+			}
+		}
+
+		createCodes(collector);
+
+		Iterator<List<List<Double>>> rows = elements.iterator();
+		int accessionIndex = 0;
+
+		while (rows.hasNext())
+		{
+			int alleleIndex = 0;
+
+			for (List<Double> markerValues : rows.next())
+			{
+				for (Double value : markerValues)
+				{
+					setAlleleValue(accessionIndex, alleleIndex,
+					    value != null ? value : Double.NaN);
+					++alleleIndex;
+				}
+			}
+
+			++accessionIndex;
+		}
+	}
+
+	/**
+	 * Creates a matrix in which all values are missing, with the levels of the
+	 * values collected beforehand. The values must then be stored with
+	 * {@link #encodeAlleleValue(int, int, double)} or
+	 * {@link #setAlleleCode(int, int, int)}.
+	 *
+	 * @param uniqueIdentifier the unique identifier of the matrix
+	 * @param name the name of the matrix
+	 * @param rowHeaders the accessions
+	 * @param columnHeaders the markers
+	 * @param externalDistances the external distances or <code>null</code>
+	 * @param collector the values that determine the levels
+	 */
+	AccessionSSRMarkerMatrixQuantizedImpl(String uniqueIdentifier, String name,
+	    EntityIndexedDataset<Integer, Accession> rowHeaders,
+	    EntityIndexedDataset<Integer, SSRMarker> columnHeaders,
+	    double[] externalDistances, LevelCollector collector)
+	{
+		super(uniqueIdentifier, name, rowHeaders, columnHeaders,
+		    externalDistances);
+
+		this.bits = collector.bits;
+
+		createCodes(collector);
+	}
+
+	@Override
+	public void validate() throws CoreHunterException
+	{
+		super.validate();
+
+		int size = byteCodes != null ? byteCodes.length : shortCodes.length;
+
+		if (size != getRowHeaders().getSize() * alleleCount)
+		{
+			throw new CoreHunterException(
+			    "Number of values does not match number of row headers and alleles!");
+		}
+	}
+
+	@Override
+	public final double getAlleleValue(int accessionIndex, int alleleIndex)
+	{
+		return levels[getAlleleCode(accessionIndex, alleleIndex)];
+	}
+
+	@Override
+	protected final void storeAlleleValue(int accessionIndex, int alleleIndex,
+	    double value)
+	{
+		updateMaximumQuantizationError(encodeAlleleValue(accessionIndex,
+		    alleleIndex, value));
+	}
+
+	/**
+	 * Stores a value as the nearest level without updating the maximum
+	 * quantization error, so that different values can be stored from
+	 * different threads at once
+	 *
+	 * @param accessionIndex the index of the accession
+	 * @param alleleIndex the allele index
+	 * @param value the value
+	 * @return the quantization error of the value
+	 */
+	final double encodeAlleleValue(int accessionIndex, int alleleIndex,
+	    double value)
+	{
+		int code = encode(value);
+
+		setAlleleCode(accessionIndex, alleleIndex, code);
+
+		return code != MISSING_CODE ? Math.abs(value - levels[code]) : 0;
+	}
+
+	/**
+	 * Gets the code of the level nearest to a value
+	 *
+	 * @param value the value
+	 * @return the code of the nearest level, or the missing code if the value
+	 *         is missing
+	 */
+	final int getNearestCode(double value)
+	{
+		return encode(value);
+	}
+
+	/**
+	 * Stores the code of a value without updating the maximum quantization
+	 * error, so that different values can be stored from different threads at
+	 * once
+	 *
+	 * @param accessionIndex the index of the accession
+	 * @param alleleIndex the allele index
+	 * @param code the code
+	 */
+	final void setAlleleCode(int accessionIndex, int alleleIndex, int code)
+	{
+		if (byteCodes != null)
+		{
+			byteCodes[accessionIndex * alleleCount + alleleIndex] = (byte) code;
+		}
+		else
+		{
+			shortCodes[accessionIndex * alleleCount + alleleIndex] = (short) code;
+		}
+	}
+
+	/**
+	 * Updates the maximum quantization error with the error of values stored
+	 * by {@link #encodeAlleleValue(int, int, double)} or
+	 * {@link #setAlleleCode(int, int, int)}
+	 *
+	 * @param error the quantization error
+	 */
+	final void updateMaximumQuantizationError(double error)
+	{
+		maximumQuantizationError = Math.max(maximumQuantizationError, error);
+	}
+
+	@Override
+	public final int getLevelCount()
+	{
+		return levels.length;
+	}
+
+	@Override
+	public final double getLevel(int code)
+	{
+		return levels[code];
+	}
+
+	@Override
+	public final int getAlleleCode(int accessionIndex, int alleleIndex)
+	{
+		if (byteCodes != null)
+		{
+			return byteCodes[accessionIndex * alleleCount + alleleIndex] & 0xFF;
+		}
+		else
+		{
+			return shortCodes[accessionIndex * alleleCount + alleleIndex] & 0xFFFF;
+		}
+	}
+
+	@Override
+	public final void getAlleleCodes(int accessionIndex, int[] codes)
+	{
+		int offset = accessionIndex * alleleCount;
+
+		if (byteCodes != null)
+		{
+			for (int i = 0; i < alleleCount; ++i)
+			{
+				codes[i] = byteCodes[offset + i] & 0xFF;
+			}
+		}
+		else
+		{
+			for (int i = 0; i < alleleCount; ++i)
+			{
+				codes[i] = shortCodes[offset + i] & 0xFFFF;
+			}
+		}
+	}
+
+	@Override
+	public final double sumLevelTerms(int accessionIndex1, int accessionIndex2,
+	    double[] terms)
+	{
+		int offset1 = accessionIndex1 * alleleCount;
+		int offset2 = accessionIndex2 * alleleCount;
+		int levelCount = levels.length;
+		double sum = 0;
+
+		if (byteCodes != null)
+		{
+			for (int i = 0; i < alleleCount; ++i)
+			{
+				sum += terms[(byteCodes[offset1 + i] & 0xFF) * levelCount
+				    + (byteCodes[offset2 + i] & 0xFF)];
+			}
+		}
+		else
+		{
+			for (int i = 0; i < alleleCount; ++i)
+			{
+				sum += terms[(shortCodes[offset1 + i] & 0xFFFF) * levelCount
+				    + (shortCodes[offset2 + i] & 0xFFFF)];
+			}
+		}
+
+		return sum;
+	}
+
+	@Override
+	public final void getAlleleValues(int accessionIndex, double[] values)
+	{
+		int offset = accessionIndex * alleleCount;
+
+		if (byteCodes != null)
+		{
+			for (int i = 0; i < alleleCount; ++i)
+			{
+				values[i] = levels[byteCodes[offset + i] & 0xFF];
+			}
+		}
+		else
+		{
+			for (int i = 0; i < alleleCount; ++i)
+			{
+				values[i] = levels[shortCodes[offset + i] & 0xFFFF];
+			}
+		}
+	}
+
+	@Override
+	public final double getMaximumQuantizationError()
+	{
+		return maximumQuantizationError;
+	}
+
+	/**
+	 * Gets the number of bits per code
+	 *
+	 * @return the number of bits per code, either 8 or 16
+	 */
+	public final int getBits()
+	{
+		return bits;
+	}
+
+	/**
+	 * Indicates if each distinct value has its own level
+	 *
+	 * @return <code>true</code> if each distinct value has its own level,
+	 *         <code>false</code> if the levels are spread evenly
+	 */
+	public final boolean isExact()
+	{
+		return exact;
+	}
+
+	private int encode(double value)
+	{
+		if (Double.isNaN(value))
+		{
+			return MISSING_CODE;
+		}
+
+		if (levels.length == 1)
+		{
+			throw new IllegalArgumentException(
+			    "Matrix without levels can only store missing values : " + value);
+		}
+
+		// levels[1..n] are sorted, find the nearest one
+		int index = Arrays.binarySearch(levels, 1, levels.length, value);
+
+		if (index >= 0)
+		{
+			return index;
+		}
+
+		index = -index - 1;
+
+		if (index <= 1)
+		{
+			return 1;
+		}
+
+		if (index >= levels.length)
+		{
+			return levels.length - 1;
+		}
+
+		return value - levels[index - 1] <= levels[index] - value ? index - 1
+		    : index;
+	}
+
+	private void createCodes(LevelCollector collector)
+	{
+		alleleCount = getTotalAlleleCount();
+
+		int size = getRowHeaders().getSize() * alleleCount;
+
+		if (bits == 8)
+		{
+			byteCodes = new byte[size];
+		}
+		else
+		{
+			shortCodes = new short[size];
+		}
+
+		levels = createLevels(collector);
+	}
+
+	private double[] createLevels(LevelCollector collector)
+	{
+		TreeSet<Double> distinctValues = collector.distinctValues;
+		int maximumLevelCount = collector.maximumLevelCount;
+		double min = collector.min;
+		double max = collector.max;
+		double[] levels;
+
+		if (distinctValues.size() <= maximumLevelCount)
+		{
+			exact = true;
+			levels = new double[distinctValues.size() + 1];
+
+			int i = 1;
+			for (Double value : distinctValues)
+			{
+				levels[i] = value;
+				++i;
+			}
+		}
+		else
+		{
+			exact = false;
+			levels = new double[maximumLevelCount + 1];
+
+			double step = (max - min) / (maximumLevelCount - 1);
+
+			for (int i = 1; i <= maximumLevelCount; ++i)
+			{
+				levels[i] = min + (i - 1) * step;
+			}
+
+			levels[maximumLevelCount] = max;
+		}
+
+		levels[MISSING_CODE] = Double.NaN;
+
+		return levels;
+	}
+
+	/**
+	 * Collects the values that determine the levels of a matrix, so that the
+	 * levels are known before the values are stored. Several collectors can be
+	 * filled on different threads and then combined.
+	 */
+	static final class LevelCollector
+	{
+		private final int	            bits;
+		private final int	            maximumLevelCount;
+		private final TreeSet<Double>	distinctValues	= new TreeSet<Double>();
+		private double	              min	            = Double.POSITIVE_INFINITY;
+		private double	              max	            = Double.NEGATIVE_INFINITY;
+
+		/**
+		 * Creates a collector
+		 *
+		 * @param bits the number of bits per code, either 8 or 16
+		 */
+		LevelCollector(int bits)
+		{
+			if (bits != 8 && bits != 16)
+			{
+				throw new IllegalArgumentException("Number of bits must be 8 or 16 : "
+				    + bits);
+			}
+
+			this.bits = bits;
+
+			maximumLevelCount = (1 << bits) - 1;
+		}
+
+		/**
+		 * Adds a value, missing values are ignored
+		 *
+		 * @param value the value
+		 */
+		void add(double value)
+		{
+			if (!Double.isNaN(value))
+			{
+				min = Math.min(min, value);
+				max = Math.max(max, value);
+
+				// stop collecting once there are too many distinct values
+				if (distinctValues.size() <= maximumLevelCount)
+				{
+					distinctValues.add(value);
+				}
+			}
+		}
+
+		/**
+		 * Adds the values of another collector
+		 *
+		 * @param collector the other collector
+		 */
+		void addAll(LevelCollector collector)
+		{
+			min = Math.min(min, collector.min);
+			max = Math.max(max, collector.max);
+
+			for (Double value : collector.distinctValues)
+			{
+				if (distinctValues.size() > maximumLevelCount)
+				{
+					break;
+				}
+
+				distinctValues.add(value);
+			}
+		}
+	}
+}
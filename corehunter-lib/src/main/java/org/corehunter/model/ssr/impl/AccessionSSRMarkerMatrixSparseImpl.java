@@ -0,0 +1,358 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.model.ssr.impl;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.EntityIndexedDataset;
+import org.corehunter.model.accession.Accession;
+import org.corehunter.model.ssr.SSRMarker;
+
+/**
+ * SSR matrix that stores only the non-zero allele values, in compressed
+ * sparse row form. The entries of accession <code>a</code> are found at the
+ * positions from <code>rowStarts[a]</code> (inclusive) to
+ * <code>rowStarts[a + 1]</code> (exclusive) of the allele index and value
+ * arrays, sorted by allele index. Missing values are stored as entries with
+ * the value {@link Double#NaN}.
+ *
+ * Adding allele values, marker allele values or allele presence of an
+ * accession costs time proportional to the number of entries of the
+ * accession. Setting a value that changes between zero and non-zero moves
+ * all subsequent entries and should be avoided for large matrices.
+ */
+public class AccessionSSRMarkerMatrixSparseImpl extends
+    AbstractPrimitiveAccessionSSRMarkerMatrix
+{
+	private int[]	   rowStarts;
+	private int[]	   alleleIndices;
+	private double[]	values;
+	private int[]	   alleleMarkers;
+
+	/**
+	 * Creates a matrix from the non-zero values of nested lists as used by
+	 * {@link AccessionSSRMarkerMatrixListImpl}. <code>null</code> values are
+	 * stored as missing values.
+	 *
+	 * @param uniqueIdentifier the unique identifier of the matrix
+	 * @param name the name of the matrix
+	 * @param rowHeaders the accessions
+	 * @param columnHeaders the markers
+	 * @param elements the allele values
+	 * @param externalDistances the external distances or <code>null</code>
+	 */
+	public AccessionSSRMarkerMatrixSparseImpl(String uniqueIdentifier,
+	    String name, EntityIndexedDataset<Integer, Accession> rowHeaders,
+	    EntityIndexedDataset<Integer, SSRMarker> columnHeaders,
+	    List<List<List<Double>>> elements, double[] externalDistances)
+	{
+		super(uniqueIdentifier, name, rowHeaders, columnHeaders,
+		    externalDistances);
+
+		alleleMarkers = createAlleleMarkers();
+		rowStarts = new int[rowHeaders.getSize() + 1];
+
+		int entryCount = 0;
+
+		for (List<List<Double>> row : elements)
+		{
+			for (List<Double> markerValues : row)
+			{
+				for (Double value : markerValues)
+				{
+					if (value == null || value != 0.0)
+					{
+						++entryCount;
+					}
+				}
+			}
+		}
+
+		alleleIndices = new int[entryCount];
+		values = new double[entryCount];
+
+		int accessionIndex = 0;
+		int entry = 0;
+
+		for (List<List<Double>> row : elements)
+		{
+			int alleleIndex = 0;
+
+			for (List<Double> markerValues : row)
+			{
+				for (Double value : markerValues)
+				{
+					if (value == null || value != 0.0)
+					{
+						alleleIndices[entry] = alleleIndex;
+						values[entry] = value != null ? value : Double.NaN;
+						++entry;
+					}
+
+					++alleleIndex;
+				}
+			}
+
+			++accessionIndex;
+			rowStarts[accessionIndex] = entry;
+		}
+	}
+
+	/**
+	 * Creates a matrix with room for a given number of entries per accession,
+	 * which must be set with {@link #setEntry(int, int, double)} before the
+	 * matrix is used
+	 *
+	 * @param uniqueIdentifier the unique identifier of the matrix
+	 * @param name the name of the matrix
+	 * @param rowHeaders the accessions
+	 * @param columnHeaders the markers
+	 * @param externalDistances the external distances or <code>null</code>
+	 * @param rowEntryCounts the number of entries of each accession
+	 */
+	AccessionSSRMarkerMatrixSparseImpl(String uniqueIdentifier, String name,
+	    EntityIndexedDataset<Integer, Accession> rowHeaders,
+	    EntityIndexedDataset<Integer, SSRMarker> columnHeaders,
+	    double[] externalDistances, int[] rowEntryCounts)
+	{
+		super(uniqueIdentifier, name, rowHeaders, columnHeaders,
+		    externalDistances);
+
+		alleleMarkers = createAlleleMarkers();
+		rowStarts = new int[rowHeaders.getSize() + 1];
+
+		for (int a = 0; a < rowEntryCounts.length; ++a)
+		{
+			rowStarts[a + 1] = rowStarts[a] + rowEntryCounts[a];
+		}
+
+		alleleIndices = new int[getEntryCount()];
+		values = new double[getEntryCount()];
+	}
+
+	@Override
+	public void validate() throws CoreHunterException
+	{
+		super.validate();
+
+		if (rowStarts.length != getRowHeaders().getSize() + 1)
+		{
+			throw new CoreHunterException(
+			    "Number of rows does not match number of row headers!");
+		}
+	}
+
+	@Override
+	public final double getAlleleValue(int accessionIndex, int alleleIndex)
+	{
+		int entry = findEntry(accessionIndex, alleleIndex);
+
+		return entry >= 0 ? values[entry] : 0.0;
+	}
+
+	@Override
+	protected final void storeAlleleValue(int accessionIndex, int alleleIndex,
+	    double value)
+	{
+		int entry = findEntry(accessionIndex, alleleIndex);
+
+		if (entry >= 0)
+		{
+			if (value != 0.0)
+			{
+				values[entry] = value;
+			}
+			else
+			{
+				removeEntry(accessionIndex, entry);
+			}
+		}
+		else
+		{
+			if (value != 0.0)
+			{
+				insertEntry(accessionIndex, -entry - 1, alleleIndex, value);
+			}
+		}
+	}
+
+	@Override
+	public final void getAlleleValues(int accessionIndex, double[] values)
+	{
+		Arrays.fill(values, 0, getTotalAlleleCount(), 0.0);
+
+		for (int entry = rowStarts[accessionIndex]; entry < rowStarts[accessionIndex + 1]; ++entry)
+		{
+			values[alleleIndices[entry]] = this.values[entry];
+		}
+	}
+
+	@Override
+	public final double addAlleleValues(int accessionIndex, double[] totals,
+	    double factor)
+	{
+		double sum = 0.0;
+
+		for (int entry = rowStarts[accessionIndex]; entry < rowStarts[accessionIndex + 1]; ++entry)
+		{
+			double value = values[entry];
+
+			if (!Double.isNaN(value))
+			{
+				totals[alleleIndices[entry]] += factor * value;
+				sum += factor * value;
+			}
+		}
+
+		return sum;
+	}
+
+	@Override
+	public final void addMarkerAlleleValues(int accessionIndex,
+	    double[][] totals, double factor)
+	{
+		for (int entry = rowStarts[accessionIndex]; entry < rowStarts[accessionIndex + 1]; ++entry)
+		{
+			double value = values[entry];
+
+			if (!Double.isNaN(value))
+			{
+				int alleleIndex = alleleIndices[entry];
+				int markerIndex = alleleMarkers[alleleIndex];
+
+				totals[markerIndex][alleleIndex - getAlleleOffset(markerIndex)] += factor
+				    * value;
+			}
+		}
+	}
+
+	@Override
+	public final void addAllelePresence(int accessionIndex, int[] counts,
+	    int delta)
+	{
+		for (int entry = rowStarts[accessionIndex]; entry < rowStarts[accessionIndex + 1]; ++entry)
+		{
+			if (values[entry] > 0)
+			{
+				counts[alleleIndices[entry]] += delta;
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of entries, that is non-zero or missing values
+	 *
+	 * @return the number of entries
+	 */
+	public final int getEntryCount()
+	{
+		return rowStarts[rowStarts.length - 1];
+	}
+
+	/**
+	 * Gets the position of the first entry of an accession
+	 *
+	 * @param accessionIndex the index of the accession
+	 * @return the position of the first entry
+	 */
+	final int getRowStart(int accessionIndex)
+	{
+		return rowStarts[accessionIndex];
+	}
+
+	/**
+	 * Sets an entry of a matrix created with room for its entries. The entries
+	 * of each accession must be set in the order of their allele indices.
+	 *
+	 * @param entry the position of the entry
+	 * @param alleleIndex the allele index
+	 * @param value the non-zero or missing value
+	 */
+	final void setEntry(int entry, int alleleIndex, double value)
+	{
+		alleleIndices[entry] = alleleIndex;
+		values[entry] = value;
+	}
+
+	private int findEntry(int accessionIndex, int alleleIndex)
+	{
+		int from = rowStarts[accessionIndex];
+		int to = rowStarts[accessionIndex + 1];
+
+		// the insertion point of a missing entry is relative to the start of the
+		// array, as needed by insertEntry
+		return Arrays.binarySearch(alleleIndices, from, to, alleleIndex);
+	}
+
+	private void insertEntry(int accessionIndex, int entry, int alleleIndex,
+	    double value)
+	{
+		int entryCount = getEntryCount();
+
+		if (entryCount == alleleIndices.length)
+		{
+			int capacity = Math.max(16, entryCount + entryCount / 2);
+
+			alleleIndices = Arrays.copyOf(alleleIndices, capacity);
+			values = Arrays.copyOf(values, capacity);
+		}
+
+		System.arraycopy(alleleIndices, entry, alleleIndices, entry + 1,
+		    entryCount - entry);
+		System.arraycopy(values, entry, values, entry + 1, entryCount - entry);
+
+		alleleIndices[entry] = alleleIndex;
+		values[entry] = value;
+
+		for (int i = accessionIndex + 1; i < rowStarts.length; ++i)
+		{
+			++rowStarts[i];
+		}
+	}
+
+	private void removeEntry(int accessionIndex, int entry)
+	{
+		int entryCount = getEntryCount();
+
+		System.arraycopy(alleleIndices, entry + 1, alleleIndices, entry,
+		    entryCount - entry - 1);
+		System.arraycopy(values, entry + 1, values, entry, entryCount - entry
+		    - 1);
+
+		for (int i = accessionIndex + 1; i < rowStarts.length; ++i)
+		{
+			--rowStarts[i];
+		}
+	}
+
+	private int[] createAlleleMarkers()
+	{
+		int[] alleleMarkers = new int[getTotalAlleleCount()];
+		int markerIndex = 0;
+
+		for (int i = 0; i < alleleMarkers.length; ++i)
+		{
+			while (getAlleleOffset(markerIndex + 1) <= i)
+			{
+				++markerIndex;
+			}
+
+			alleleMarkers[i] = markerIndex;
+		}
+
+		return alleleMarkers;
+	}
+}
@@ -0,0 +1,355 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.model.ssr.impl;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.List;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.DataWriter;
+import org.corehunter.model.EntityIndexedDataset;
+import org.corehunter.model.accession.Accession;
+import org.corehunter.model.impl.AbstractDataFileWriter;
+import org.corehunter.model.ssr.AccessionSSRMarkerMatrix;
+import org.corehunter.model.ssr.PrimitiveAccessionSSRMarkerMatrix;
+import org.corehunter.model.ssr.SSRAllele;
+import org.corehunter.model.ssr.SSRMarker;
+
+/**
+ * Writer of a core subset that projects the selected accessions straight from
+ * the original dataset, without creating a matrix of the core. The file has
+ * the format read by {@link AccessionSSRMarkerMatrixListImplDataFileReader},
+ * with a column for each selected accession in the order of the indices, and
+ * is written line by line, so apart from the output buffer no memory is
+ * needed whatever the size of the core. Missing values are written as empty
+ * values.
+ * 
+ * Values of matrices implementing {@link PrimitiveAccessionSSRMarkerMatrix}
+ * are read as primitives. Gzip compressed files are written if the name of
+ * the file ends with <code>.gz</code>, see {@link AbstractDataFileWriter}.
+ */
+public class AccessionSSRMarkerMatrixSubsetDataFileWriter extends
+    AbstractDataFileWriter<AccessionSSRMarkerMatrix<Integer>> implements
+    DataWriter<AccessionSSRMarkerMatrix<Integer>>
+{
+	private static final int	BUFFER_SIZE	= 1 << 16;
+
+	private char	           delimiter;
+	private int[]	           indices;
+
+	public AccessionSSRMarkerMatrixSubsetDataFileWriter(File file)
+	{
+		this(file, COMMA_DELIMITER);
+	}
+
+	public AccessionSSRMarkerMatrixSubsetDataFileWriter(File file,
+	    char delimiter)
+	{
+		super(file);
+
+		setDelimiter(delimiter);
+	}
+
+	public final char getDelimiter()
+	{
+		return delimiter;
+	}
+
+	public final void setDelimiter(char delimiter)
+	{
+		this.delimiter = delimiter;
+	}
+
+	/**
+	 * Sets the indices of the accessions in the core subset
+	 * 
+	 * @param indices the indices of the selected accessions in the original
+	 *          dataset, or <code>null</code> to write all accessions
+	 */
+	public final void setIndices(Collection<Integer> indices)
+	{
+		if (indices != null)
+		{
+			this.indices = new int[indices.size()];
+
+			int i = 0;
+
+			for (Integer index : indices)
+			{
+				this.indices[i++] = index;
+			}
+		}
+		else
+		{
+			this.indices = null;
+		}
+	}
+
+	/**
+	 * Writes the selected accessions of a dataset, or all accessions if no
+	 * indices are set
+	 * 
+	 * @param dataset the original dataset
+	 * @throws CoreHunterException if an index is unknown or the file can not
+	 *           be written
+	 */
+	@Override
+	public void writeData(AccessionSSRMarkerMatrix<Integer> dataset)
+	    throws CoreHunterException
+	{
+		int[] indices = this.indices;
+
+		if (indices == null)
+		{
+			indices = new int[dataset.getRowHeaders().getSize()];
+
+			for (int i = 0; i < indices.length; ++i)
+			{
+				indices[i] = i;
+			}
+		}
+
+		// check before the file is replaced
+		checkIndices(dataset.getRowHeaders().getSize(), indices);
+
+		Writer writer = null;
+
+		try
+		{
+			writer = new BufferedWriter(openWriter(), BUFFER_SIZE);
+
+			writeHeader(writer, dataset, indices);
+
+			if (dataset instanceof PrimitiveAccessionSSRMarkerMatrix)
+			{
+				writeAlleleValues(writer, dataset,
+				    (PrimitiveAccessionSSRMarkerMatrix) dataset, indices);
+			}
+			else
+			{
+				writeAlleleValues(writer, dataset, indices);
+			}
+
+			writer.close();
+			writer = null;
+		}
+		catch (IOException e)
+		{
+			throw new CoreHunterException(e);
+		}
+		finally
+		{
+			if (writer != null)
+			{
+				try
+				{
+					writer.close();
+				}
+				catch (IOException e)
+				{
+					// ignore
+				}
+			}
+		}
+	}
+
+	private void writeHeader(Writer writer,
+	    AccessionSSRMarkerMatrix<Integer> dataset, int[] indices)
+	    throws CoreHunterException, IOException
+	{
+		EntityIndexedDataset<Integer, Accession> accessions = dataset.getRowHeaders();
+
+		writer.write("Marker");
+		writer.write(delimiter);
+		writer.write("Allele");
+
+		for (int i = 0; i < indices.length; ++i)
+		{
+			writer.write(delimiter);
+			writeLabel(writer, accessions.getElement(indices[i]).getName());
+		}
+
+		writer.write('\n');
+
+		if (dataset.externalDistancesSpecified())
+		{
+			writer.write("DIST");
+			writer.write(delimiter);
+
+			for (int i = 0; i < indices.length; ++i)
+			{
+				writer.write(delimiter);
+				writeValue(writer, dataset.getExternalDistance(indices[i]));
+			}
+
+			writer.write('\n');
+		}
+	}
+
+	private void writeAlleleValues(Writer writer,
+	    AccessionSSRMarkerMatrix<Integer> dataset,
+	    PrimitiveAccessionSSRMarkerMatrix matrix, int[] indices)
+	    throws CoreHunterException, IOException
+	{
+		int markerCount = dataset.getColumnHeaders().getSize();
+
+		for (int m = 0; m < markerCount; ++m)
+		{
+			SSRMarker marker = dataset.getColumnHeaders().getElement(m);
+			List<SSRAllele> alleles = marker.getAlleles();
+			int offset = matrix.getAlleleOffset(m);
+
+			for (int a = 0; a < alleles.size(); ++a)
+			{
+				writeLabels(writer, marker, alleles.get(a));
+
+				for (int i = 0; i < indices.length; ++i)
+				{
+					writer.write(delimiter);
+					writeValue(writer, matrix.getAlleleValue(indices[i], offset + a));
+				}
+
+				writer.write('\n');
+			}
+		}
+	}
+
+	private void writeAlleleValues(Writer writer,
+	    AccessionSSRMarkerMatrix<Integer> dataset, int[] indices)
+	    throws CoreHunterException, IOException
+	{
+		int markerCount = dataset.getColumnHeaders().getSize();
+
+		for (int m = 0; m < markerCount; ++m)
+		{
+			SSRMarker marker = dataset.getColumnHeaders().getElement(m);
+			List<SSRAllele> alleles = marker.getAlleles();
+
+			for (int a = 0; a < alleles.size(); ++a)
+			{
+				writeLabels(writer, marker, alleles.get(a));
+
+				for (int i = 0; i < indices.length; ++i)
+				{
+					Double value = dataset.getElement(indices[i], m).get(a);
+
+					writer.write(delimiter);
+					writeValue(writer, value != null ? value : Double.NaN);
+				}
+
+				writer.write('\n');
+			}
+		}
+	}
+
+	private void checkIndices(int size, int[] indices)
+	    throws CoreHunterException
+	{
+		for (int i = 0; i < indices.length; ++i)
+		{
+			if (indices[i] < 0 || indices[i] >= size)
+			{
+				throw new CoreHunterException("Unknown accession index : "
+				    + indices[i]);
+			}
+		}
+	}
+
+	private void writeLabels(Writer writer, SSRMarker marker, SSRAllele allele)
+	    throws IOException
+	{
+		writeLabel(writer, marker.getName());
+		writer.write(delimiter);
+		writeLabel(writer, allele.getName());
+	}
+
+	/**
+	 * Writes a label, quoted if it contains the delimiter, a quote or a line
+	 * terminator
+	 */
+	private void writeLabel(Writer writer, String label) throws IOException
+	{
+		if (label == null)
+		{
+			return;
+		}
+
+		boolean quoted = false;
+
+		for (int i = 0; i < label.length() && !quoted; ++i)
+		{
+			char c = label.charAt(i);
+
+			quoted = c == delimiter || c == '"' || c == '\n' || c == '\r';
+		}
+
+		if (quoted)
+		{
+			writer.write('"');
+			writer.write(label.replace("\"", "\"\""));
+			writer.write('"');
+		}
+		else
+		{
+			writer.write(label);
+		}
+	}
+
+	/**
+	 * Writes a value, leaving missing values empty. Whole numbers, such as the
+	 * usual 0 and 1, are written without creating a string.
+	 */
+	private void writeValue(Writer writer, double value) throws IOException
+	{
+		if (Double.isNaN(value))
+		{
+			return;
+		}
+
+		if (value == (int) value && (value != 0.0 || 1 / value > 0))
+		{
+			writeInt(writer, (int) value);
+		}
+		else
+		{
+			writer.write(Double.toString(value));
+		}
+	}
+
+	private void writeInt(Writer writer, int value) throws IOException
+	{
+		if (value < 0)
+		{
+			if (value == Integer.MIN_VALUE)
+			{
+				writer.write(Integer.toString(value));
+				return;
+			}
+
+			writer.write('-');
+			value = -value;
+		}
+
+		if (value >= 10)
+		{
+			writeInt(writer, value / 10);
+		}
+
+		writer.write('0' + value % 10);
+	}
+}
@@ -0,0 +1,309 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.model.ssr.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.corehunter.model.Entity;
+import org.corehunter.model.EntityIndexedDataset;
+import org.corehunter.model.UnknownEntityException;
+import org.corehunter.model.UnknownIndexException;
+import org.corehunter.model.accession.Accession;
+import org.corehunter.model.impl.OrderedEntityDatasetListImpl;
+import org.corehunter.model.ssr.PrimitiveAccessionSSRMarkerMatrix;
+import org.corehunter.model.ssr.SSRMarker;
+
+/**
+ * SSR matrix that shows a subset of the accessions and markers of another
+ * primitive matrix, without copying its allele values. Accession
+ * <code>a</code> of the view is accession <code>accessionIndices[a]</code> of
+ * the parent, and likewise for the markers. Values set through the view are
+ * set in the parent.
+ *
+ * Changes made directly to the parent are visible through the view, except
+ * for the allele presence bitmap of the view, which is created the first time
+ * it is needed. For the same reason the digest of the view is not kept. External distances are copied when the view is created.
+ *
+ * If the view shows all markers of the parent, the sums over the alleles of
+ * an accession are delegated to the parent, so that the parent storage is used
+ * as efficiently as it would be without the view.
+ */
+public class AccessionSSRMarkerMatrixViewImpl extends
+    AbstractPrimitiveAccessionSSRMarkerMatrix
+{
+	private static final String	            NAME_PREFIX	                  = "View of ";
+	private static final String	            ACCESSION_DATASET_NAME_PREFIX	= "Accessions for ";
+	private static final String	            MARKER_DATASET_NAME_PREFIX	  = "Markers for ";
+
+	private PrimitiveAccessionSSRMarkerMatrix	parent;
+	private int[]	                          accessionIndices;
+	private int[]	                          markerIndices;
+	private int[]	                          alleleIndices;
+
+	/**
+	 * Creates a view of a subset of the accessions and all markers
+	 *
+	 * @param parent the matrix to be viewed
+	 * @param accessionIndices the indices of the accessions in the parent
+	 * @throws UnknownIndexException if an index is not an index of the parent
+	 */
+	public AccessionSSRMarkerMatrixViewImpl(
+	    PrimitiveAccessionSSRMarkerMatrix parent, int[] accessionIndices)
+	    throws UnknownIndexException
+	{
+		this(parent, accessionIndices, null);
+	}
+
+	/**
+	 * Creates a view of a subset of the accessions and markers
+	 *
+	 * @param parent the matrix to be viewed
+	 * @param accessionIndices the indices of the accessions in the parent, or
+	 *          <code>null</code> for all accessions
+	 * @param markerIndices the indices of the markers in the parent, or
+	 *          <code>null</code> for all markers
+	 * @throws UnknownIndexException if an index is not an index of the parent
+	 */
+	public AccessionSSRMarkerMatrixViewImpl(
+	    PrimitiveAccessionSSRMarkerMatrix parent, int[] accessionIndices,
+	    int[] markerIndices) throws UnknownIndexException
+	{
+		this(NAME_PREFIX + parent.getName(), parent, accessionIndices,
+		    markerIndices);
+	}
+
+	/**
+	 * Creates a view of a subset of the accessions and markers
+	 *
+	 * @param name the name of the view
+	 * @param parent the matrix to be viewed
+	 * @param accessionIndices the indices of the accessions in the parent, or
+	 *          <code>null</code> for all accessions
+	 * @param markerIndices the indices of the markers in the parent, or
+	 *          <code>null</code> for all markers
+	 * @throws UnknownIndexException if an index is not an index of the parent
+	 */
+	public AccessionSSRMarkerMatrixViewImpl(String name,
+	    PrimitiveAccessionSSRMarkerMatrix parent, int[] accessionIndices,
+	    int[] markerIndices) throws UnknownIndexException
+	{
+		super(name, name, createHeaders(ACCESSION_DATASET_NAME_PREFIX + name,
+		    parent.getRowHeaders(), accessionIndices), createHeaders(
+		    MARKER_DATASET_NAME_PREFIX + name, parent.getColumnHeaders(),
+		    markerIndices), createExternalDistances(parent, accessionIndices));
+
+		this.parent = parent;
+		this.accessionIndices = accessionIndices != null ? accessionIndices
+		    .clone() : createIdentity(parent.getSize());
+		this.markerIndices = markerIndices != null ? markerIndices.clone()
+		    : null;
+
+		if (markerIndices != null)
+		{
+			alleleIndices = new int[getTotalAlleleCount()];
+
+			int i = 0;
+
+			for (int m = 0; m < markerIndices.length; ++m)
+			{
+				int offset = parent.getAlleleOffset(markerIndices[m]);
+				int end = parent.getAlleleOffset(markerIndices[m] + 1);
+
+				for (int j = offset; j < end; ++j)
+				{
+					alleleIndices[i] = j;
+					++i;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the matrix that is viewed
+	 *
+	 * @return the matrix that is viewed
+	 */
+	public final PrimitiveAccessionSSRMarkerMatrix getParent()
+	{
+		return parent;
+	}
+
+	/**
+	 * Gets the index in the parent of an accession of the view
+	 *
+	 * @param accessionIndex the index of the accession in the view
+	 * @return the index of the accession in the parent
+	 */
+	public final int getParentAccessionIndex(int accessionIndex)
+	{
+		return accessionIndices[accessionIndex];
+	}
+
+	/**
+	 * Gets the index in the parent of a marker of the view
+	 *
+	 * @param markerIndex the index of the marker in the view
+	 * @return the index of the marker in the parent
+	 */
+	public final int getParentMarkerIndex(int markerIndex)
+	{
+		return markerIndices != null ? markerIndices[markerIndex] : markerIndex;
+	}
+
+	@Override
+	protected boolean isContentDigestCacheable()
+	{
+		return false;
+	}
+
+	@Override
+	public final double getAlleleValue(int accessionIndex, int alleleIndex)
+	{
+		return parent.getAlleleValue(accessionIndices[accessionIndex],
+		    alleleIndices != null ? alleleIndices[alleleIndex] : alleleIndex);
+	}
+
+	@Override
+	protected final void storeAlleleValue(int accessionIndex, int alleleIndex,
+	    double value)
+	{
+		parent.setAlleleValue(accessionIndices[accessionIndex],
+		    alleleIndices != null ? alleleIndices[alleleIndex] : alleleIndex,
+		    value);
+	}
+
+	@Override
+	public final void getAlleleValues(int accessionIndex, double[] values)
+	{
+		if (alleleIndices == null)
+		{
+			parent.getAlleleValues(accessionIndices[accessionIndex], values);
+		}
+		else
+		{
+			super.getAlleleValues(accessionIndex, values);
+		}
+	}
+
+	@Override
+	public final double addAlleleValues(int accessionIndex, double[] totals,
+	    double factor)
+	{
+		if (alleleIndices == null)
+		{
+			return parent.addAlleleValues(accessionIndices[accessionIndex], totals,
+			    factor);
+		}
+		else
+		{
+			return super.addAlleleValues(accessionIndex, totals, factor);
+		}
+	}
+
+	@Override
+	public final void addMarkerAlleleValues(int accessionIndex,
+	    double[][] totals, double factor)
+	{
+		if (alleleIndices == null)
+		{
+			parent.addMarkerAlleleValues(accessionIndices[accessionIndex], totals,
+			    factor);
+		}
+		else
+		{
+			super.addMarkerAlleleValues(accessionIndex, totals, factor);
+		}
+	}
+
+	@Override
+	public final void addAllelePresence(int accessionIndex, int[] counts,
+	    int delta)
+	{
+		if (alleleIndices == null)
+		{
+			parent.addAllelePresence(accessionIndices[accessionIndex], counts,
+			    delta);
+		}
+		else
+		{
+			super.addAllelePresence(accessionIndex, counts, delta);
+		}
+	}
+
+	private static <T extends Entity> EntityIndexedDataset<Integer, T> createHeaders(
+	    String name, EntityIndexedDataset<Integer, T> parentHeaders,
+	    int[] indices) throws UnknownIndexException
+	{
+		if (indices == null)
+		{
+			return parentHeaders;
+		}
+
+		List<T> elements = new ArrayList<T>(indices.length);
+
+		for (int i = 0; i < indices.length; ++i)
+		{
+			if (indices[i] < 0 || indices[i] >= parentHeaders.getSize())
+			{
+				throw new UnknownIndexException("Unknown index : " + indices[i]);
+			}
+
+			try
+			{
+				elements.add(parentHeaders.getElement(indices[i]));
+			}
+			catch (UnknownEntityException e)
+			{
+				throw new UnknownIndexException(e.getLocalizedMessage(), e);
+			}
+		}
+
+		return new OrderedEntityDatasetListImpl<T>(name, elements);
+	}
+
+	private static double[] createExternalDistances(
+	    PrimitiveAccessionSSRMarkerMatrix parent, int[] accessionIndices)
+	{
+		if (!parent.externalDistancesSpecified())
+		{
+			return null;
+		}
+
+		int size = accessionIndices != null ? accessionIndices.length : parent
+		    .getSize();
+		double[] externalDistances = new double[size];
+
+		for (int i = 0; i < size; ++i)
+		{
+			externalDistances[i] = parent
+			    .getExternalDistance(accessionIndices != null ? accessionIndices[i]
+			        : i);
+		}
+
+		return externalDistances;
+	}
+
+	private static int[] createIdentity(int size)
+	{
+		int[] indices = new int[size];
+
+		for (int i = 0; i < size; ++i)
+		{
+			indices[i] = i;
+		}
+
+		return indices;
+	}
+}
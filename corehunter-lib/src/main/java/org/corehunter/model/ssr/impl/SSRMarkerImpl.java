@@ -14,7 +14,10 @@
 package org.corehunter.model.ssr.impl;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang3.ObjectUtils;
 import org.corehunter.model.DuplicateEntityException;
@@ -25,28 +28,39 @@ import org.corehunter.model.ssr.SSRMarker;
 import org.corehunter.utils.EntityUtils;
 
 
+/**
+ * SSR marker that indexes its alleles by unique identifier, so that finding
+ * the index of an allele is done in constant time. Alleles must not change
+ * their unique identifier while they belong to the marker.
+ */
 public class SSRMarkerImpl extends EntityImpl implements SSRMarker {
 
     private List<SSRAllele> alleles;
+    private Map<String, Integer> alleleIndices;
 
     public SSRMarkerImpl(String name) {
         super(name);
         alleles = new ArrayList<SSRAllele>();
+        alleleIndices = new HashMap<String, Integer>();
     }
 
     @Override
     public List<SSRAllele> getAlleles() {
-        return alleles;
+        return Collections.unmodifiableList(alleles);
     }
 
     @Override
     public boolean hasAllele(SSRAllele allele) {
-        return alleles.contains(allele);
+        return findAllele(allele) >= 0;
     }
 
     @Override
     public void addAllele(SSRAllele allele) throws DuplicateEntityException {
-        if (!alleles.contains(allele)) {
+        if (findAllele(allele) < 0) {
+            if (allele != null && !alleleIndices.containsKey(allele.getUniqueIdentifier())) {
+                alleleIndices.put(allele.getUniqueIdentifier(), alleles.size());
+            }
+
             alleles.add(allele);
         } else {
             throw new DuplicateEntityException("Allele already present :" + allele.getName());
@@ -55,8 +69,19 @@ public class SSRMarkerImpl extends EntityImpl implements SSRMarker {
 
     @Override
     public void removeAllele(SSRAllele allele) throws UnknownEntityException {
-        if (alleles.contains(allele)) {
-            alleles.remove(allele);
+        int index = findAllele(allele);
+
+        if (index >= 0) {
+            alleles.remove(index);
+
+            // the indices of all subsequent alleles change
+            alleleIndices.clear();
+
+            for (int i = 0; i < alleles.size(); ++i) {
+                if (alleles.get(i) != null && !alleleIndices.containsKey(alleles.get(i).getUniqueIdentifier())) {
+                    alleleIndices.put(alleles.get(i).getUniqueIdentifier(), i);
+                }
+            }
         } else {
             throw new UnknownEntityException("Unknown allele :" + allele.getName());
         }
@@ -64,7 +89,7 @@ public class SSRMarkerImpl extends EntityImpl implements SSRMarker {
 
     @Override
     public int indexOfAllele(SSRAllele allele) throws UnknownEntityException {
-        int index = alleles.indexOf(allele);
+        int index = findAllele(allele);
 
         if (index >= 0) {
             return index;
@@ -76,6 +101,24 @@ public class SSRMarkerImpl extends EntityImpl implements SSRMarker {
 
     }
 
+    private int findAllele(SSRAllele allele) {
+        if (allele == null) {
+            return alleles.indexOf(allele);
+        }
+
+        Integer index = alleleIndices.get(allele.getUniqueIdentifier());
+
+        if (index == null) {
+            // equal alleles have the same unique identifier
+            return -1;
+        } else if (alleles.get(index).equals(allele)) {
+            return index;
+        } else {
+            // another allele has the same unique identifier
+            return alleles.indexOf(allele);
+        }
+    }
+
     @Override
     public SSRAllele getAlleleByName(String name) {
         return (SSRAllele) EntityUtils.findByName(name, alleles);
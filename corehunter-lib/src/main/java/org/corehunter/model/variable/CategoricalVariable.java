@@ -7,4 +7,31 @@ public interface CategoricalVariable<DataType extends Object> extends Variable
 	public List<DataType> getValues() ;
 
 	public boolean addValue(DataType value);
+
+	/**
+	 * Gets the code of a value, which is the position of the value in
+	 * {@link #getValues()}
+	 *
+	 * @param value the value
+	 * @return the code or <code>-1</code> if the value is not a value of this
+	 *         variable
+	 */
+	public int getCode(DataType value);
+
+	/**
+	 * Gets the value represented by a code
+	 *
+	 * @param code the code
+	 * @return the value
+	 */
+	public DataType getValue(int code);
+
+	/**
+	 * Gets the code of a value, adding the value to the values of this variable
+	 * if needed
+	 *
+	 * @param value the value
+	 * @return the code
+	 */
+	public int encodeValue(DataType value);
 }
@@ -0,0 +1,91 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.model.variable;
+
+import org.corehunter.model.Matrix;
+import org.corehunter.model.accession.Accession;
+
+/**
+ * A variable matrix whose values can be accessed by accession and variable
+ * index without boxing. The values of each variable are stored in a column of
+ * their own, according to the type of the variable:
+ * <ul>
+ * <li>{@link VariableType#INTERVAL} and {@link VariableType#RATIO} values as
+ * doubles</li>
+ * <li>{@link VariableType#NOMINAL} and {@link VariableType#ORDINAL} values as
+ * the integer codes given by {@link CategoricalVariable#getCode(Object)}</li>
+ * <li>{@link VariableType#BINARY} values as bits</li>
+ * </ul>
+ *
+ * The index based methods do not check their arguments, an invalid index or
+ * an index of a variable of the wrong type results in a runtime exception.
+ */
+public interface ColumnarAccessionVariableMatrix extends
+    Matrix<Integer, Object, Accession, Variable>
+{
+	/**
+	 * Indicates if a value is missing
+	 *
+	 * @param accessionIndex the index of the accession
+	 * @param variableIndex the index of the variable
+	 * @return <code>true</code> if the value is missing
+	 */
+	public boolean isMissing(int accessionIndex, int variableIndex);
+
+	/**
+	 * Gets the value of an interval, ratio or ordinal variable as a double.
+	 * For ordinal variables this is the numeric value of the code.
+	 *
+	 * @param accessionIndex the index of the accession
+	 * @param variableIndex the index of the variable
+	 * @return the value or {@link Double#NaN} if it is missing
+	 */
+	public double getNumericValue(int accessionIndex, int variableIndex);
+
+	/**
+	 * Gets the code of the value of a nominal or ordinal variable
+	 *
+	 * @param accessionIndex the index of the accession
+	 * @param variableIndex the index of the variable
+	 * @return the code or <code>-1</code> if the value is missing
+	 */
+	public int getCode(int accessionIndex, int variableIndex);
+
+	/**
+	 * Gets the value of a binary variable
+	 *
+	 * @param accessionIndex the index of the accession
+	 * @param variableIndex the index of the variable
+	 * @return the value, <code>false</code> if it is missing
+	 */
+	public boolean getBinaryValue(int accessionIndex, int variableIndex);
+
+	/**
+	 * Gets the number of different codes of a nominal or ordinal variable
+	 *
+	 * @param variableIndex the index of the variable
+	 * @return the number of different codes
+	 */
+	public int getCodeCount(int variableIndex);
+
+	/**
+	 * Gets the value that is represented by a code of a nominal or ordinal
+	 * variable
+	 *
+	 * @param variableIndex the index of the variable
+	 * @param code the code
+	 * @return the value
+	 */
+	public Object getCodeValue(int variableIndex, int code);
+}
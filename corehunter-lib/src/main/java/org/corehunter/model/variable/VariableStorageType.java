@@ -0,0 +1,66 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.model.variable;
+
+/**
+ * The ways in which the values of a variable matrix can be stored in memory
+ */
+public enum VariableStorageType
+{
+	LIST("list", "Nested lists"),
+	COLUMNAR("columnar", "Primitive columns") ;
+
+	private String code ;
+	private String name ;
+
+	VariableStorageType(String code, String name)
+	{
+		this.code = code ;
+		this.name = name ;
+	}
+
+	public final String getCode()
+	{
+		return code;
+	}
+
+	public final String getName()
+	{
+		return name;
+	}
+
+	@Override
+  public String toString()
+  {
+	  return name ;
+  }
+
+	public static final VariableStorageType find(String code)
+	{
+		VariableStorageType[] storageTypes = VariableStorageType.values() ;
+
+		VariableStorageType storageType = null ;
+
+		int i = 0 ;
+
+		while (storageType == null && i < storageTypes.length)
+		{
+			if (storageTypes[i].getCode().equals(code))
+				storageType = storageTypes[i] ;
+		  ++i ;
+		}
+
+		return storageType ;
+	}
+}
@@ -0,0 +1,172 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.model.variable.impl;
+
+import static org.corehunter.model.impl.BinaryDataFileFormat.VARIABLE_DATA;
+import static org.corehunter.model.impl.BinaryDataFileFormat.close;
+import static org.corehunter.model.impl.BinaryDataFileFormat.readHeader;
+import static org.corehunter.model.impl.BinaryDataFileFormat.readString;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.DataReader;
+import org.corehunter.model.Matrix;
+import org.corehunter.model.accession.Accession;
+import org.corehunter.model.impl.BinaryDataFileFormat;
+import org.corehunter.model.variable.Variable;
+import org.corehunter.model.variable.VariableDataType;
+import org.corehunter.model.variable.VariableStorageType;
+import org.corehunter.model.variable.VariableType;
+
+/**
+ * Reads a variable dataset from a binary data file written by
+ * {@link AccessionVariableMatrixBinaryDataFileWriter}, without parsing any
+ * text. The storage type is selected as for the text reader, with
+ * {@link #setStorageType(VariableStorageType)}. The values are added to the
+ * variables accession by accession, as in the text reader, so that the
+ * variables have the same ranges and dictionaries as the variables of the
+ * dataset that was written. The name of the dataset is the name stored in the
+ * file.
+ */
+public class AccessionVariableMatrixBinaryDataFileReader extends
+    AccessionVariableMatrixListImplDataFileReader implements
+    DataReader<Matrix<Integer, Object, Accession, Variable>>
+{
+	public AccessionVariableMatrixBinaryDataFileReader(File file)
+	{
+		super(file);
+	}
+
+	@Override
+	public Matrix<Integer, Object, Accession, Variable> readData()
+	    throws CoreHunterException
+	{
+		DataInputStream in = null;
+
+		try
+		{
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(
+			    getFile())));
+
+			readHeader(in, VARIABLE_DATA);
+
+			setDataUniqueIdentifier(readString(in));
+			setDatasetName(readString(in));
+
+			int accessionCount = in.readInt();
+			List<Accession> accessions = new ArrayList<Accession>(accessionCount);
+
+			for (int i = 0; i < accessionCount; ++i)
+			{
+				String uniqueIdentifier = readString(in);
+
+				accessions.add(createAccession(uniqueIdentifier, readString(in), i));
+			}
+
+			int variableCount = in.readInt();
+			List<Variable> variables = new ArrayList<Variable>(variableCount);
+
+			for (int i = 0; i < variableCount; ++i)
+			{
+				String uniqueIdentifier = readString(in);
+				String variableName = readString(in);
+				String description = readString(in);
+				VariableType type = VariableType.find(readString(in));
+				VariableDataType dataType = VariableDataType.find(readString(in));
+				String minimumValue = readString(in);
+				String maximumValue = readString(in);
+
+				variables.add(createVariable(variableName, uniqueIdentifier,
+				    description, type, dataType, minimumValue, maximumValue, i));
+			}
+
+			Object[][] values = new Object[accessionCount][variableCount];
+
+			for (int i = 0; i < variableCount; ++i)
+			{
+				VariableDataType dataType = variables.get(i).getDataType();
+
+				for (int a = 0; a < accessionCount; ++a)
+				{
+					values[a][i] = readValue(in, dataType);
+				}
+			}
+
+			List<List<Object>> elements = new ArrayList<List<Object>>(
+			    accessionCount);
+
+			for (int a = 0; a < accessionCount; ++a)
+			{
+				updateVariables(elements, variables, values[a], false, false, a, 0);
+
+				// release the values of the accession as soon as they are added
+				values[a] = null;
+			}
+
+			return createAccessionVariableMatrixDataset(createDataName(),
+			    createAccessionDataset(createAccessionDatasetName(), accessions),
+			    createVariableDataset(createVariableDatasetName(), variables),
+			    elements);
+		}
+		catch (EOFException e)
+		{
+			throw new CoreHunterException("Binary data file "
+			    + getFile().getAbsolutePath() + " is truncated!", e);
+		}
+		catch (IOException e)
+		{
+			throw new CoreHunterException(e);
+		}
+		finally
+		{
+			close(in);
+		}
+	}
+
+	private Object readValue(DataInputStream in, VariableDataType dataType)
+	    throws IOException
+	{
+		if (!in.readBoolean())
+		{
+			return null;
+		}
+
+		switch (dataType)
+		{
+			case BOOLEAN:
+				return in.readBoolean();
+			case SHORT:
+				return in.readShort();
+			case INTEGER:
+				return in.readInt();
+			case LONG:
+				return in.readLong();
+			case FLOAT:
+				return in.readFloat();
+			case DOUBLE:
+				return in.readDouble();
+			case STRING:
+			default:
+				return in.readUTF();
+		}
+	}
+}
@@ -0,0 +1,190 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.model.variable.impl;
+
+import static org.corehunter.model.impl.BinaryDataFileFormat.VARIABLE_DATA;
+import static org.corehunter.model.impl.BinaryDataFileFormat.close;
+import static org.corehunter.model.impl.BinaryDataFileFormat.writeEntity;
+import static org.corehunter.model.impl.BinaryDataFileFormat.writeHeader;
+import static org.corehunter.model.impl.BinaryDataFileFormat.writeString;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.DataWriter;
+import org.corehunter.model.EntityIndexedDataset;
+import org.corehunter.model.Matrix;
+import org.corehunter.model.accession.Accession;
+import org.corehunter.model.impl.AbstractDataFileWriter;
+import org.corehunter.model.impl.BinaryDataFileFormat;
+import org.corehunter.model.variable.RangedVariable;
+import org.corehunter.model.variable.Variable;
+
+/**
+ * Writes a variable dataset to a binary data file, see
+ * {@link BinaryDataFileFormat}, which can be read back with
+ * {@link AccessionVariableMatrixBinaryDataFileReader}. The metadata holds the
+ * unique identifier and name of the dataset and of each accession, and for
+ * each variable its unique identifier, name, description, type and data type
+ * codes, and its minimum and maximum value if it is ranged. The values are
+ * stored variable by variable, each value as a flag that is <code>false</code>
+ * for missing values, followed by the value in the primitive type of the
+ * data type of the variable.
+ */
+public class AccessionVariableMatrixBinaryDataFileWriter extends
+    AbstractDataFileWriter<Matrix<Integer, Object, Accession, Variable>>
+    implements DataWriter<Matrix<Integer, Object, Accession, Variable>>
+{
+	public AccessionVariableMatrixBinaryDataFileWriter(File file)
+	{
+		super(file);
+	}
+
+	@Override
+	public void writeData(Matrix<Integer, Object, Accession, Variable> dataset)
+	    throws CoreHunterException
+	{
+		DataOutputStream out = null;
+
+		try
+		{
+			ByteArrayOutputStream metadata = new ByteArrayOutputStream();
+
+			writeMetadata(new DataOutputStream(metadata), dataset);
+
+			out = new DataOutputStream(new BufferedOutputStream(
+			    new FileOutputStream(getFile())));
+
+			writeHeader(out, VARIABLE_DATA, metadata.size());
+			metadata.writeTo(out);
+
+			List<Integer> accessionIndices = dataset.getRowHeaders().getIndices();
+			EntityIndexedDataset<Integer, Variable> variables = dataset
+			    .getColumnHeaders();
+
+			for (Integer variableIndex : variables.getIndices())
+			{
+				Variable variable = variables.getElement(variableIndex);
+
+				for (Integer accessionIndex : accessionIndices)
+				{
+					writeValue(out, variable,
+					    dataset.getElement(accessionIndex, variableIndex));
+				}
+			}
+
+			out.close();
+			out = null;
+		}
+		catch (IOException e)
+		{
+			throw new CoreHunterException(e);
+		}
+		finally
+		{
+			close(out);
+		}
+	}
+
+	private void writeMetadata(DataOutputStream out,
+	    Matrix<Integer, Object, Accession, Variable> dataset) throws IOException,
+	    CoreHunterException
+	{
+		writeString(out, dataset.getUniqueIdentifier());
+		writeString(out, dataset.getName());
+
+		EntityIndexedDataset<Integer, Accession> accessions = dataset
+		    .getRowHeaders();
+
+		out.writeInt(accessions.getSize());
+
+		for (Integer index : accessions.getIndices())
+		{
+			writeEntity(out, accessions.getElement(index));
+		}
+
+		EntityIndexedDataset<Integer, Variable> variables = dataset
+		    .getColumnHeaders();
+
+		out.writeInt(variables.getSize());
+
+		for (Integer index : variables.getIndices())
+		{
+			Variable variable = variables.getElement(index);
+
+			writeEntity(out, variable);
+			writeString(out, variable.getDescription());
+			writeString(out, variable.getType().getCode());
+			writeString(out, variable.getDataType().getCode());
+
+			if (variable instanceof RangedVariable)
+			{
+				Number minimumValue = ((RangedVariable<?>) variable).getMinimumValue();
+				Number maximumValue = ((RangedVariable<?>) variable).getMaximumValue();
+
+				writeString(out,
+				    minimumValue != null ? String.valueOf(minimumValue) : null);
+				writeString(out,
+				    maximumValue != null ? String.valueOf(maximumValue) : null);
+			}
+			else
+			{
+				writeString(out, null);
+				writeString(out, null);
+			}
+		}
+
+		out.close();
+	}
+
+	private void writeValue(DataOutputStream out, Variable variable, Object value)
+	    throws IOException
+	{
+		out.writeBoolean(value != null);
+
+		if (value != null)
+		{
+			switch (variable.getDataType())
+			{
+				case BOOLEAN:
+					out.writeBoolean((Boolean) value);
+					break;
+				case SHORT:
+					out.writeShort(((Number) value).shortValue());
+					break;
+				case INTEGER:
+					out.writeInt(((Number) value).intValue());
+					break;
+				case LONG:
+					out.writeLong(((Number) value).longValue());
+					break;
+				case FLOAT:
+					out.writeFloat(((Number) value).floatValue());
+					break;
+				case DOUBLE:
+					out.writeDouble(((Number) value).doubleValue());
+					break;
+				case STRING:
+				default:
+					out.writeUTF(value.toString());
+			}
+		}
+	}
+}
@@ -0,0 +1,428 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.model.variable.impl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.EntityIndexedDataset;
+import org.corehunter.model.UnknownIndexException;
+import org.corehunter.model.accession.Accession;
+import org.corehunter.model.impl.AbstractEntityMatrix;
+import org.corehunter.model.variable.CategoricalVariable;
+import org.corehunter.model.variable.ColumnarAccessionVariableMatrix;
+import org.corehunter.model.variable.Variable;
+import org.corehunter.model.variable.VariableDataType;
+import org.corehunter.model.variable.VariableType;
+
+/**
+ * Variable matrix that stores the values of each variable in a primitive
+ * array of its own, see {@link ColumnarAccessionVariableMatrix}. Missing values
+ * are recorded in a bitmap per variable, interval and ratio columns also
+ * contain {@link Double#NaN} for missing values. The codes of nominal and
+ * ordinal values are those of the dictionary kept by the
+ * {@link CategoricalVariable}, values that are not yet in the dictionary are
+ * added to it.
+ *
+ * Values are boxed again when accessed through the {@link #getElement} and
+ * {@link #getRowElements} methods, using the data type of the variable.
+ * Long values are stored as doubles and so lose precision beyond 2^53.
+ */
+public class AccessionVariableMatrixColumnarImpl extends
+    AbstractEntityMatrix<Integer, Object, Accession, Variable> implements
+    ColumnarAccessionVariableMatrix
+{
+	private int	               rowCount;
+	private Variable[]	       variables;
+	private long[][]	         missingColumns;
+	private double[][]	       numericColumns;
+	private int[][]	           codeColumns;
+	@SuppressWarnings("rawtypes")
+	private CategoricalVariable[]	categoricalVariables;
+	private double[][]	       codeLevels;
+	private long[][]	         binaryColumns;
+
+	/**
+	 * Creates a matrix from nested lists as used by {@link
+	 * org.corehunter.model.impl.EntityMatrixListImpl}. <code>null</code> values
+	 * are stored as missing values.
+	 *
+	 * @param name the name of the matrix
+	 * @param rowHeaders the accessions
+	 * @param columnHeaders the variables
+	 * @param elements the values
+	 */
+	public AccessionVariableMatrixColumnarImpl(String name,
+	    EntityIndexedDataset<Integer, Accession> rowHeaders,
+	    EntityIndexedDataset<Integer, Variable> columnHeaders,
+	    List<List<Object>> elements)
+	{
+		super(name, rowHeaders, columnHeaders);
+
+		initialise(elements);
+	}
+
+	/**
+	 * Creates a matrix from nested lists as used by {@link
+	 * org.corehunter.model.impl.EntityMatrixListImpl}. <code>null</code> values
+	 * are stored as missing values.
+	 *
+	 * @param uniqueIdentifier the unique identifier of the matrix
+	 * @param name the name of the matrix
+	 * @param rowHeaders the accessions
+	 * @param columnHeaders the variables
+	 * @param elements the values
+	 */
+	public AccessionVariableMatrixColumnarImpl(String uniqueIdentifier,
+	    String name, EntityIndexedDataset<Integer, Accession> rowHeaders,
+	    EntityIndexedDataset<Integer, Variable> columnHeaders,
+	    List<List<Object>> elements)
+	{
+		super(uniqueIdentifier, name, rowHeaders, columnHeaders);
+
+		initialise(elements);
+	}
+
+	/**
+	 * Creates a matrix from the typed columns of a data file reader. The
+	 * values of the categorical variables must already be encoded in their
+	 * dictionaries.
+	 *
+	 * @param name the name of the matrix
+	 * @param rowHeaders the accessions
+	 * @param columnHeaders the variables
+	 * @param columns the values of each variable
+	 */
+	AccessionVariableMatrixColumnarImpl(String name,
+	    EntityIndexedDataset<Integer, Accession> rowHeaders,
+	    EntityIndexedDataset<Integer, Variable> columnHeaders,
+	    VariableColumn[] columns)
+	{
+		super(name, rowHeaders, columnHeaders);
+
+		initialise(columns);
+	}
+
+	@Override
+	public void validate() throws CoreHunterException
+	{
+		super.validate();
+
+		if (rowCount != getRowHeaders().getSize())
+		{
+			throw new CoreHunterException(
+			    "Number of rows does not match number of row headers!");
+		}
+
+		if (variables.length != getColumnHeaders().getSize())
+		{
+			throw new CoreHunterException(
+			    "Number of columns does not match number of column headers!");
+		}
+	}
+
+	@Override
+	public List<Integer> getIndices()
+	{
+		return getRowHeaders().getIndices();
+	}
+
+	@Override
+	public int getSize()
+	{
+		return getRowHeaders().getSize();
+	}
+
+	@Override
+	public Object getElement(Integer rowIndex, Integer columnIndex)
+	    throws UnknownIndexException
+	{
+		if (rowIndex == null || rowIndex < 0 || rowIndex >= rowCount)
+		{
+			throw new UnknownIndexException("Unknown row index : " + rowIndex);
+		}
+
+		if (columnIndex == null || columnIndex < 0
+		    || columnIndex >= variables.length)
+		{
+			throw new UnknownIndexException("Unknown column index " + columnIndex);
+		}
+
+		return getValue(rowIndex, columnIndex);
+	}
+
+	@Override
+	public List<Object> getRowElements(Integer index)
+	    throws UnknownIndexException
+	{
+		if (index == null || index < 0 || index >= rowCount)
+		{
+			throw new UnknownIndexException("Unknown row index : " + index);
+		}
+
+		List<Object> row = new ArrayList<Object>(variables.length);
+
+		for (int i = 0; i < variables.length; ++i)
+		{
+			row.add(getValue(index, i));
+		}
+
+		return row;
+	}
+
+	@Override
+	public final boolean isMissing(int accessionIndex, int variableIndex)
+	{
+		return (missingColumns[variableIndex][accessionIndex >>> 6] & (1L << accessionIndex)) != 0;
+	}
+
+	@Override
+	public final double getNumericValue(int accessionIndex, int variableIndex)
+	{
+		double[] values = numericColumns[variableIndex];
+
+		if (values != null)
+		{
+			return values[accessionIndex];
+		}
+		else
+		{
+			int code = codeColumns[variableIndex][accessionIndex];
+
+			return code >= 0 ? codeLevels[variableIndex][code] : Double.NaN;
+		}
+	}
+
+	@Override
+	public final int getCode(int accessionIndex, int variableIndex)
+	{
+		return codeColumns[variableIndex][accessionIndex];
+	}
+
+	@Override
+	public final boolean getBinaryValue(int accessionIndex, int variableIndex)
+	{
+		return (binaryColumns[variableIndex][accessionIndex >>> 6] & (1L << accessionIndex)) != 0;
+	}
+
+	@Override
+	public final int getCodeCount(int variableIndex)
+	{
+		return categoricalVariables[variableIndex].getValues().size();
+	}
+
+	@Override
+	public final Object getCodeValue(int variableIndex, int code)
+	{
+		return categoricalVariables[variableIndex].getValue(code);
+	}
+
+	private void initialise(List<List<Object>> elements)
+	{
+		allocate(elements.size());
+
+		Iterator<List<Object>> rows = elements.iterator();
+		int rowIndex = 0;
+
+		while (rows.hasNext())
+		{
+			Iterator<Object> values = rows.next().iterator();
+			int columnIndex = 0;
+
+			while (values.hasNext())
+			{
+				setValue(rowIndex, columnIndex, values.next());
+				++columnIndex;
+			}
+
+			++rowIndex;
+		}
+
+		createCodeLevels();
+	}
+
+	private void initialise(VariableColumn[] columns)
+	{
+		allocate(getRowHeaders().getSize());
+
+		int wordCount = (rowCount + 63) >>> 6;
+
+		for (int i = 0; i < columns.length; ++i)
+		{
+			VariableColumn column = columns[i];
+
+			missingColumns[i] = column.getMissingBitmap(wordCount);
+
+			if (binaryColumns[i] != null)
+			{
+				binaryColumns[i] = column.getBooleanBitmap(wordCount);
+			}
+			else
+			{
+				if (numericColumns[i] != null)
+				{
+					for (int r = 0; r < rowCount; ++r)
+					{
+						numericColumns[i][r] = column.getNumericValue(r);
+					}
+				}
+				else
+				{
+					for (int r = 0; r < rowCount; ++r)
+					{
+						codeColumns[i][r] = column.getCode(r);
+					}
+				}
+			}
+		}
+
+		createCodeLevels();
+	}
+
+	@SuppressWarnings("rawtypes")
+	private void allocate(int rowCount)
+	{
+		this.rowCount = rowCount;
+
+		variables = getColumnHeaders().getElements().toArray(
+		    new Variable[getColumnHeaders().getSize()]);
+
+		int wordCount = (rowCount + 63) >>> 6;
+
+		missingColumns = new long[variables.length][wordCount];
+		numericColumns = new double[variables.length][];
+		codeColumns = new int[variables.length][];
+		categoricalVariables = new CategoricalVariable[variables.length];
+		codeLevels = new double[variables.length][];
+		binaryColumns = new long[variables.length][];
+
+		for (int i = 0; i < variables.length; ++i)
+		{
+			switch (variables[i].getType())
+			{
+				case BINARY:
+					binaryColumns[i] = new long[wordCount];
+					break;
+				case INTERVAL:
+				case RATIO:
+					numericColumns[i] = new double[rowCount];
+					break;
+				case NOMINAL:
+				case ORDINAL:
+				default:
+					codeColumns[i] = new int[rowCount];
+					categoricalVariables[i] = (CategoricalVariable) variables[i];
+					break;
+			}
+		}
+	}
+
+	private void createCodeLevels()
+	{
+		for (int i = 0; i < variables.length; ++i)
+		{
+			if (VariableType.ORDINAL.equals(variables[i].getType()))
+			{
+				createCodeLevels(i);
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void setValue(int rowIndex, int columnIndex, Object value)
+	{
+		if (value == null)
+		{
+			missingColumns[columnIndex][rowIndex >>> 6] |= 1L << rowIndex;
+		}
+
+		if (binaryColumns[columnIndex] != null)
+		{
+			if (value != null && (Boolean) value)
+			{
+				binaryColumns[columnIndex][rowIndex >>> 6] |= 1L << rowIndex;
+			}
+		}
+		else
+		{
+			if (numericColumns[columnIndex] != null)
+			{
+				numericColumns[columnIndex][rowIndex] = value != null ? ((Number) value)
+				    .doubleValue() : Double.NaN;
+			}
+			else
+			{
+				codeColumns[columnIndex][rowIndex] = value != null ? categoricalVariables[columnIndex]
+				    .encodeValue(value) : -1;
+			}
+		}
+	}
+
+	// codes added to the dictionary later on are not used by this matrix
+	private void createCodeLevels(int columnIndex)
+	{
+		double[] levels = new double[getCodeCount(columnIndex)];
+
+		for (int i = 0; i < levels.length; ++i)
+		{
+			Object value = getCodeValue(columnIndex, i);
+
+			levels[i] = value instanceof Number ? ((Number) value).doubleValue()
+			    : Double.NaN;
+		}
+
+		codeLevels[columnIndex] = levels;
+	}
+
+	private Object getValue(int rowIndex, int columnIndex)
+	{
+		if (isMissing(rowIndex, columnIndex))
+		{
+			return null;
+		}
+
+		if (binaryColumns[columnIndex] != null)
+		{
+			return getBinaryValue(rowIndex, columnIndex);
+		}
+
+		if (numericColumns[columnIndex] != null)
+		{
+			return box(numericColumns[columnIndex][rowIndex],
+			    variables[columnIndex].getDataType());
+		}
+
+		return getCodeValue(columnIndex, codeColumns[columnIndex][rowIndex]);
+	}
+
+	private Object box(double value, VariableDataType dataType)
+	{
+		switch (dataType)
+		{
+			case SHORT:
+				return (short) value;
+			case INTEGER:
+				return (int) value;
+			case LONG:
+				return (long) value;
+			case FLOAT:
+				return (float) value;
+			case DOUBLE:
+			default:
+				return value;
+		}
+	}
+}
@@ -14,10 +14,9 @@
 package org.corehunter.model.variable.impl;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.List;
 
 import org.corehunter.CoreHunterException;
@@ -27,12 +26,15 @@ import org.corehunter.model.Matrix;
 import org.corehunter.model.accession.Accession;
 import org.corehunter.model.accession.impl.AccessionImpl;
 import org.corehunter.model.impl.AbstractDataFileReader;
+import org.corehunter.model.impl.DataFileTokenizer;
 import org.corehunter.model.impl.EntityMatrixListImpl;
 import org.corehunter.model.impl.OrderedEntityDatasetListImpl;
+import org.corehunter.model.impl.ParallelDataFileParser;
 import org.corehunter.model.variable.CategoricalVariable;
 import org.corehunter.model.variable.RangedVariable;
 import org.corehunter.model.variable.Variable;
 import org.corehunter.model.variable.VariableDataType;
+import org.corehunter.model.variable.VariableStorageType;
 import org.corehunter.model.variable.VariableType;
 import org.corehunter.model.variable.interval.DoubleIntervalVariable;
 import org.corehunter.model.variable.interval.FloatIntervalVariable;
@@ -53,12 +55,15 @@ import org.corehunter.model.variable.ordinal.ShortOrdinalVariable;
 import org.corehunter.model.variable.ratio.DoubleRatioVariable;
 import org.corehunter.model.variable.ratio.FloatRatioVariable;
 
-import au.com.bytecode.opencsv.CSVReader;
-
 /**
  * SSRAccessionMatrixDataset reader that reads the complete matrix into memory before
  * creating the Dataset. Accessions and Marker are indexed from 0 to n-1.
- * Not suitable for big datasets.
+ * Not suitable for big datasets. The values of each variable are parsed
+ * straight into a primitive column of its data type, ranges and categorical
+ * dictionaries are then updated column by column. The accession lines of large
+ * files can be parsed in parallel, see {@link #setThreadCount(int)}.By default the dataset is stored as nested
+ * lists, use {@link #setStorageType(VariableStorageType)} to select another
+ * storage type.
  *  
  * @author daveneti
  *
@@ -75,8 +80,8 @@ public class AccessionVariableMatrixListImplDataFileReader
 	private static final String DESCRIPTION = "description";
 	private static final String TYPE = "type";
 	private static final String DATA_TYPE = "dataType";
-	private static final List<String> TRUE = new ArrayList<String>(4);
-	private static final List<String> FALSE = new ArrayList<String>(4);
+	static final List<String> TRUE = new ArrayList<String>(4);
+	static final List<String> FALSE = new ArrayList<String>(4);
 	private static final String EMPTY_STRING = "";
 	private static final String MINIMUM_VALUE = "min";
 	private static final String MAXIMUM_VALUE = "max";
@@ -96,6 +101,8 @@ public class AccessionVariableMatrixListImplDataFileReader
 	}
 	
 	private char delimiter;
+	private VariableStorageType storageType = VariableStorageType.LIST ;
+	private int threadCount = 1 ;
 
 	public AccessionVariableMatrixListImplDataFileReader(File file)
   {
@@ -135,32 +142,69 @@ public class AccessionVariableMatrixListImplDataFileReader
   	this.delimiter = delimiter;
   }
 
-	@SuppressWarnings("rawtypes")
+	public final VariableStorageType getStorageType()
+  {
+  	return storageType;
+  }
+
+	public final void setStorageType(VariableStorageType storageType)
+  {
+  	this.storageType = storageType;
+  }
+
+	/**
+	 * Gets the number of threads used to parse the accession lines of the file
+	 * 
+	 * @return the number of threads, <code>0</code> if as many threads as there
+	 *         are available processors are used
+	 */
+	public final int getThreadCount()
+  {
+  	return threadCount;
+  }
+
+	/**
+	 * Sets the number of threads used to parse the accession lines of the file.
+	 * With more than one thread, large files are split into chunks of whole
+	 * lines that are parsed in parallel, see {@link ParallelDataFileParser}.
+	 * The parsed values are then added to the variables in the order of the
+	 * file, so the result does not depend on the number of threads. By default
+	 * the file is parsed on the calling thread.
+	 * 
+	 * @param threadCount the number of threads, or <code>0</code> to use as
+	 *          many threads as there are available processors
+	 */
+	public final void setThreadCount(int threadCount)
+  {
+  	this.threadCount = threadCount;
+  }
+
   @Override
   public Matrix<Integer, Object, Accession, Variable> readData()
       throws CoreHunterException
   {
 			Matrix<Integer, Object, Accession, Variable> dataset = null;
 			List<Accession> accessions = new ArrayList<Accession>();
-			List<Variable> variables = new ArrayList<Variable>();
+			final List<Variable> variables = new ArrayList<Variable>();
 
 			String line[] = null ;
+			
+			boolean names = false ;
+			boolean ranges = false ;
+			
+			final boolean uniqueIdentifiers ;
+			final int firstColumn ;
+			
+			int lineNumber = 0;
 
+			DataFileTokenizer reader = null ;
+			
 			try
 			{
-				// TODO allow for other delimiters
-				CSVReader reader = new CSVReader(new FileReader(getFile()), delimiter);
-
-				// TODO general this for excel, excelx and text
-				List lines = reader.readAll();
-				reader.close();
+				// only the header lines are read here, the accession lines are
+				// parsed afterwards, possibly in parallel
+				reader = new DataFileTokenizer(openReader(), delimiter);
 
-				Iterator iterator = lines.iterator();
-				
-				boolean names = false ;
-				boolean uniqueIdentifiers = false ;
-				boolean ranges = false ;
-				
 				String[] variableNames = null ;
 				String[] variableUniqueIdentifiers = null ;
 				String[] variableDescription = null ;
@@ -169,24 +213,21 @@ public class AccessionVariableMatrixListImplDataFileReader
 				String[] variableMinimums = null ;
 				String[] variableMaximums = null ;
 				
-				int firstColumn = 0 ;
-				int lineNumber = 0;
+				line = reader.readNext() ;
 				
-				List<List<Object>> elements = new ArrayList<List<Object>>() ; // TODO find better List structure
-				
-				if (iterator.hasNext())
+				if (line != null)
 				{
-					line = (String[]) iterator.next();
 					lineNumber = 1;
 					
 					if (line[0].equalsIgnoreCase(NAME))
 					{
 						names = true ;
+						uniqueIdentifiers = false ;
 						firstColumn = 1 ;
 					}
 					else
 					{
-						if (line[0].equalsIgnoreCase(UNIQUE_IDENTIFIER) && line[1].equalsIgnoreCase(NAME))
+						if (line.length > 1 && line[0].equalsIgnoreCase(UNIQUE_IDENTIFIER) && line[1].equalsIgnoreCase(NAME))
 						{
 							uniqueIdentifiers = true ;
 							names = true ;
@@ -201,18 +242,24 @@ public class AccessionVariableMatrixListImplDataFileReader
 					
 					variableNames = line ;
 					variableUniqueIdentifiers = line ;
+					
+					line = reader.readNext() ;
+				}
+				else
+				{
+					uniqueIdentifiers = false ;
+					firstColumn = 0 ;
 				}
 				
-				if (firstColumn > 0 && iterator.hasNext())
+				if (firstColumn > 0 && line != null)
 				{
-					line = (String[]) iterator.next();
 					++lineNumber ;
 					
 					if (line[0].equalsIgnoreCase(UNIQUE_IDENTIFIER))
 					{
 						variableUniqueIdentifiers =  line ;
 						
-						line = (String[]) iterator.next();
+						line = readHeaderLine(reader) ;
 						++lineNumber ;
 					}
 					
@@ -220,7 +267,7 @@ public class AccessionVariableMatrixListImplDataFileReader
 					{
 						variableDescription =  line ;
 						
-						line = (String[]) iterator.next();
+						line = readHeaderLine(reader) ;
 						++lineNumber ;
 					}
 
@@ -228,14 +275,14 @@ public class AccessionVariableMatrixListImplDataFileReader
 					{
 						variableTypes =  line ;
 						
-						line = (String[]) iterator.next();
+						line = readHeaderLine(reader) ;
 						++lineNumber ;
 						
 						if (line[0].equalsIgnoreCase(DATA_TYPE))
 						{
 							variableDataTypes =  line ;
 							
-							line = (String[]) iterator.next();
+							line = readHeaderLine(reader) ;
 							++lineNumber ;
 						}
 						
@@ -243,14 +290,14 @@ public class AccessionVariableMatrixListImplDataFileReader
 						{
 							variableMinimums =  line ;
 							
-							line = (String[]) iterator.next();
+							line = readHeaderLine(reader) ;
 							++lineNumber ;
 
 							if (line[0].equalsIgnoreCase(MAXIMUM_VALUE))
 							{
 								variableMaximums =  line ;
 								
-								line = (String[]) iterator.next();
+								line = readHeaderLine(reader) ;
 								++lineNumber ;
 								
 								ranges = true ;
@@ -275,41 +322,70 @@ public class AccessionVariableMatrixListImplDataFileReader
 									variableMaximums != null ? variableMaximums[i] : null, i -firstColumn));
 					}
 				}
-				
-				if (variables.isEmpty())
+			}
+			catch (IOException e)
+			{
+				throw new CoreHunterException(e) ;
+			}
+			finally
+			{
+				if (reader != null)
 				{
-					throw new CoreHunterException("Dataset must contain at least 1 variable");
+					try
+					{
+						reader.close();
+					}
+					catch (IOException e)
+					{
+						// ignore
+					}
 				}
-				
-				parseAccession(accessions, uniqueIdentifiers ? line[0] : null, names ? uniqueIdentifiers ? line[1] : line[0] : null, lineNumber) ;
-				
-				parseLine(elements, accessions, variables, line, ranges, false, lineNumber, firstColumn) ;
+			}
+			
+			if (variables.isEmpty())
+			{
+				throw new CoreHunterException("Dataset must contain at least 1 variable");
+			}
+			
+			// lineNumber is now the number of the first accession line
+			List<VariableChunk> chunks = new ParallelDataFileParser<VariableChunk>(getFile(), delimiter, threadCount).parse(lineNumber - 1, 
+					new ParallelDataFileParser.ChunkParser<VariableChunk>()
+					{
+						@Override
+						public VariableChunk createResult()
+						{
+							return new VariableChunk(variables) ;
+						}
 
-				while (iterator.hasNext())
-				{
-					
-					line = (String[]) iterator.next();
-					lineNumber++;
-					
-					parseAccession(accessions, uniqueIdentifiers ? line[0] : null, names ? uniqueIdentifiers ? line[1] : line[0] : null, lineNumber) ;
-					
-					parseLine(elements, accessions, variables, line, ranges, false, lineNumber, firstColumn) ;
-				}
+						@Override
+						public void parseLine(VariableChunk chunk, DataFileTokenizer line, int lineNumber) throws CoreHunterException
+						{
+							AccessionVariableMatrixListImplDataFileReader.this.parseLine(chunk, line, uniqueIdentifiers, lineNumber, firstColumn) ;
+						}
+					}) ;
 
-				if (accessions.size() < 1)
-				{
-					throw new CoreHunterException("Dataset must contain at least 1 accession");
-				}				
-				
-				// create the SSRDataset object
-				dataset = createAccessionVariableMatrixDataset(createDataName(), createAccessionDataset(createAccessionDatasetName(), accessions), createVariableDataset(createVariableDatasetName(), variables), elements);
+			VariableChunk data = mergeChunks(chunks, variables) ;
 
+			for (int i = 0 ; i < data.size ; ++i)
+			{
+				parseAccession(accessions, data.uniqueIdentifiers.get(i), names ? data.names.get(i) : null, data.lineNumbers[i]) ;
 			}
-			catch (IOException e)
+
+			if (accessions.size() < 1)
 			{
-				throw new CoreHunterException(e) ;
+				throw new CoreHunterException("Dataset must contain at least 1 accession");
+			}
+
+			// the ranges and dictionaries of the variables are updated column by
+			// column, once all values are parsed
+			for (int i = 0 ; i < data.columns.length ; ++i)
+			{
+				updateVariable(data.columns[i], ranges, data.lineNumbers, firstColumn + i) ;
 			}
 
+			// create the SSRDataset object
+			dataset = createAccessionVariableMatrixDataset(createDataName(), createAccessionDataset(createAccessionDatasetName(), accessions), createVariableDataset(createVariableDatasetName(), variables), data.columns);
+
 			return dataset;
   }
 	
@@ -324,14 +400,79 @@ public class AccessionVariableMatrixListImplDataFileReader
 			accessions.add(createAccession(lineNumber)) ;
   }
 
-	protected void parseLine(List<List<Object>> elements, List<Accession> accessions, List<Variable> variables, String[] line, boolean validateRanges, boolean validateValues, int lineNumber, int firstColumn) throws CoreHunterException
+	/**
+	 * Parses the values of an accession line into the typed columns of a chunk
+	 * without changing the variables, so that lines can be parsed in parallel
+	 */
+	private void parseLine(VariableChunk chunk, DataFileTokenizer line, boolean uniqueIdentifiers, int lineNumber, int firstColumn) throws CoreHunterException
+  {
+		if (line.getFieldCount() < firstColumn + chunk.columns.length)
+		{
+			throw new CoreHunterException("Dataset is not properly formatted on line "
+			    + lineNumber + " Please refer to the CoreHunter manual. "
+			        + "Expected " + (firstColumn + chunk.columns.length) + " columns but found " + line.getFieldCount());
+		}
+
+		for (int i = 0 ; i < chunk.columns.length ; ++i)
+		{
+			chunk.columns[i].parse(line, firstColumn + i, this, lineNumber, firstColumn + i) ;
+		}
+
+		chunk.addLine(uniqueIdentifiers ? line.getString(0) : null, line.getString(uniqueIdentifiers ? 1 : 0), lineNumber) ;
+  }
+
+	private VariableChunk mergeChunks(List<VariableChunk> chunks, List<Variable> variables)
+  {
+		if (chunks.size() == 1)
+			return chunks.get(0) ;
+
+		VariableChunk data = new VariableChunk(variables) ;
+
+		for (VariableChunk chunk : chunks)
+			data.addAll(chunk) ;
+
+	  return data ;
+  }
+
+	/**
+	 * Validates or updates the range of a ranged variable and adds the values
+	 * of a categorical variable to its dictionary, in a single pass over the
+	 * column for each
+	 */
+	private void updateVariable(VariableColumn column, boolean validateRanges, int[] lineNumbers, int columnNumber) throws CoreHunterException
+  {
+		if (column.getVariable() instanceof RangedVariable)
+		{
+			if (validateRanges)
+				column.checkRange(lineNumbers, columnNumber) ;
+			else
+				column.updateRange() ;
+		}
+
+		if (column.getVariable() instanceof CategoricalVariable)
+			column.encode() ;
+  }
+
+	private String[] readHeaderLine(DataFileTokenizer reader) throws IOException, CoreHunterException
+  {
+		String[] line = reader.readNext() ;
+		
+		if (line == null)
+		{
+			throw new CoreHunterException("Dataset must contain at least 1 accession");
+		}
+		
+		return line ;
+  }
+
+	protected void updateVariables(List<List<Object>> elements, List<Variable> variables, Object[] values, boolean validateRanges, boolean validateValues, int lineNumber, int firstColumn) throws CoreHunterException
   {
 		List<Object> row = new ArrayList<Object>(variables.size()) ;
 		elements.add(row) ;
 		
 		for (int i = 0 ; i < variables.size() ; ++i)
 		{
-			row.add(updateVariable(variables.get(i), parseElement(line[firstColumn + i], variables.get(i), lineNumber, firstColumn + i), validateRanges, validateValues, lineNumber, firstColumn + i)) ;
+			row.add(updateVariable(variables.get(i), values[i], validateRanges, validateValues, lineNumber, firstColumn + i)) ;
 		}
   }
 
@@ -365,7 +506,7 @@ public class AccessionVariableMatrixListImplDataFileReader
 	  return new AccessionImpl(String.valueOf(lineNumber - 3)) ; 
   }
 	
-	private Variable createVariable(String name, String uniqueIdentifier, String description,
+	protected Variable createVariable(String name, String uniqueIdentifier, String description,
       VariableType type, VariableDataType dataType,
       String minimumStringValue, String maximumStringValue, int columnNumber) throws CoreHunterException
   {
@@ -650,7 +791,7 @@ public class AccessionVariableMatrixListImplDataFileReader
 	@SuppressWarnings({ "unchecked", "rawtypes" })
   protected Object updateVariable(Variable variable, Object value, boolean validateRanges, boolean validateValues, int lineNumber, int columnNumber) throws CoreHunterException
   {
-		if (variable instanceof RangedVariable)
+		if (variable instanceof RangedVariable && value != null)
 		{
 			if (validateRanges) 
 			{
@@ -745,22 +886,24 @@ public class AccessionVariableMatrixListImplDataFileReader
 			}
 		}
 		
-		if (variable instanceof CategoricalVariable)
+		if (variable instanceof CategoricalVariable && value != null)
 		{
+			// the value is replaced by the value in the dictionary of the variable,
+			// so that repeated values share a single instance
 			if (validateValues) 
 			{
-				if (variable instanceof CategoricalVariable)
-				{
-					if (!((CategoricalVariable)variable).getValues().contains(value))
-						throw new CoreHunterException("Dataset is not properly formatted on line "
-						    + lineNumber + " Please refer to the CoreHunter manual. "
-						        + "value " + value + " not valid value at column " + columnNumber);
-				}
+				int code = ((CategoricalVariable)variable).getCode(value) ;
+
+				if (code < 0)
+					throw new CoreHunterException("Dataset is not properly formatted on line "
+					    + lineNumber + " Please refer to the CoreHunter manual. "
+					        + "value " + value + " not valid value at column " + columnNumber);
+
+				value = ((CategoricalVariable)variable).getValue(code) ;
 			}
 			else
 			{
-				if (!((CategoricalVariable)variable).getValues().contains(value))
-					((CategoricalVariable)variable).addValue(value) ;
+				value = ((CategoricalVariable)variable).getValue(((CategoricalVariable)variable).encodeValue(value)) ;
 			}
 		}
 
@@ -798,9 +941,44 @@ public class AccessionVariableMatrixListImplDataFileReader
 			EntityIndexedDataset<Integer, Variable> variableDataset,
       List<List<Object>> elements)
   {
-	  return new EntityMatrixListImpl<Object, Accession, Variable>(name, accessionDataset, variableDataset, elements) ;
+		switch (storageType)
+		{
+			case COLUMNAR:
+				return new AccessionVariableMatrixColumnarImpl(name, accessionDataset, variableDataset, elements) ;
+			case LIST:
+			default:
+				return new EntityMatrixListImpl<Object, Accession, Variable>(name, accessionDataset, variableDataset, elements) ;
+		}
   }
 	
+	private Matrix<Integer, Object, Accession, Variable> createAccessionVariableMatrixDataset(
+			String name,
+			EntityIndexedDataset<Integer, Accession> accessionDataset,
+			EntityIndexedDataset<Integer, Variable> variableDataset,
+      VariableColumn[] columns)
+  {
+		switch (storageType)
+		{
+			case COLUMNAR:
+				return new AccessionVariableMatrixColumnarImpl(name, accessionDataset, variableDataset, columns) ;
+			case LIST:
+			default:
+				List<List<Object>> elements = new ArrayList<List<Object>>(accessionDataset.getSize()) ;
+
+				for (int i = 0 ; i < accessionDataset.getSize() ; ++i)
+				{
+					List<Object> row = new ArrayList<Object>(columns.length) ;
+
+					for (VariableColumn column : columns)
+						row.add(column.getValue(i)) ;
+
+					elements.add(row) ;
+				}
+
+				return createAccessionVariableMatrixDataset(name, accessionDataset, variableDataset, elements) ;
+		}
+  }
+
 	protected EntityIndexedDataset<Integer, Accession> createAccessionDataset(String name, List<Accession> accessions)
   {
 	  return new OrderedEntityDatasetListImpl<Accession>(name, accessions) ;
@@ -836,4 +1014,40 @@ public class AccessionVariableMatrixListImplDataFileReader
   }
 
 	
+
+	private static class VariableChunk
+	{
+		private int size ;
+		private int[] lineNumbers = new int[16] ;
+		private List<String> uniqueIdentifiers = new ArrayList<String>() ;
+		private List<String> names = new ArrayList<String>() ;
+		private VariableColumn[] columns ;
+
+		private VariableChunk(List<Variable> variables)
+		{
+			columns = new VariableColumn[variables.size()] ;
+
+			for (int i = 0 ; i < columns.length ; ++i)
+				columns[i] = new VariableColumn(variables.get(i), 0) ;
+		}
+
+		private void addLine(String uniqueIdentifier, String name, int lineNumber)
+		{
+			if (size == lineNumbers.length)
+				lineNumbers = Arrays.copyOf(lineNumbers, size * 2) ;
+
+			lineNumbers[size++] = lineNumber ;
+			uniqueIdentifiers.add(uniqueIdentifier) ;
+			names.add(name) ;
+		}
+
+		private void addAll(VariableChunk chunk)
+		{
+			for (int i = 0 ; i < chunk.size ; ++i)
+				addLine(chunk.uniqueIdentifiers.get(i), chunk.names.get(i), chunk.lineNumbers[i]) ;
+
+			for (int i = 0 ; i < columns.length ; ++i)
+				columns[i].addAll(chunk.columns[i]) ;
+		}
+	}
 }
@@ -1,7 +1,10 @@
 package org.corehunter.model.variable.impl;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.corehunter.model.variable.CategoricalVariable;
 
@@ -9,12 +12,14 @@ public abstract class CategoricalVariableImpl<DataType extends Object> extends V
     CategoricalVariable<DataType>
 {
 	private List<DataType> values;
+	private Map<DataType, Integer> codes;
 
 	public CategoricalVariableImpl(String name)
   {
 	  super(name);
 	  
 	  this.values = createDefaultValues() ;
+	  this.codes = new HashMap<DataType, Integer>() ;
   }
 	
 	public CategoricalVariableImpl(String name, List<DataType> values)
@@ -22,8 +27,9 @@ public abstract class CategoricalVariableImpl<DataType extends Object> extends V
 	  super(name);
 	  
 	  this.values = createDefaultValues() ;
+	  this.codes = new HashMap<DataType, Integer>() ;
 	  
-	  this.values.addAll(values) ;
+	  addValues(values) ;
   }
 	
 	public CategoricalVariableImpl(String uniqueIdentifier, String name)
@@ -31,6 +37,7 @@ public abstract class CategoricalVariableImpl<DataType extends Object> extends V
 	  super(uniqueIdentifier, name);
 	  
 	  this.values = createDefaultValues() ;
+	  this.codes = new HashMap<DataType, Integer>() ;
   }
 	
 	public CategoricalVariableImpl(String uniqueIdentifier, String name, List<DataType> values)
@@ -38,8 +45,9 @@ public abstract class CategoricalVariableImpl<DataType extends Object> extends V
 	  super(uniqueIdentifier, name);
 	  
 	  this.values = createDefaultValues() ;
+	  this.codes = new HashMap<DataType, Integer>() ;
 	  
-	  this.values.addAll(values) ;
+	  addValues(values) ;
   }
 
 	protected CategoricalVariableImpl(CategoricalVariable<DataType> variable)
@@ -47,23 +55,58 @@ public abstract class CategoricalVariableImpl<DataType extends Object> extends V
 	  super(variable);
 	  
 	  this.values = createDefaultValues() ;
+	  this.codes = new HashMap<DataType, Integer>() ;
 	  
-	  this.values.addAll(variable.getValues()) ;
+	  addValues(variable.getValues()) ;
   }
 
 	@Override
   public List<DataType> getValues()
   {
-	  return values ;
+	  return Collections.unmodifiableList(values) ;
   }
 
+	@Override
   public boolean addValue(DataType value)
   {
-		if (!values.contains(value))
+		if (!codes.containsKey(value))
+		{
+			codes.put(value, values.size()) ;
+
 			return values.add(value) ;
+		}
 		else
 			return false ;
   }
+
+	@Override
+  public int getCode(DataType value)
+  {
+		Integer code = codes.get(value) ;
+
+		return code != null ? code : -1 ;
+  }
+
+	@Override
+  public DataType getValue(int code)
+  {
+	  return values.get(code) ;
+  }
+
+	@Override
+  public int encodeValue(DataType value)
+  {
+		Integer code = codes.get(value) ;
+
+		if (code == null)
+		{
+			code = values.size() ;
+			codes.put(value, code) ;
+			values.add(value) ;
+		}
+
+		return code ;
+  }
   
 	@Override
   public int hashCode()
@@ -99,5 +142,11 @@ public abstract class CategoricalVariableImpl<DataType extends Object> extends V
 	protected List<DataType> createDefaultValues()
   {
 	  return new ArrayList<DataType>() ;
+  }
+
+	private void addValues(List<DataType> values)
+  {
+		for (DataType value : values)
+			addValue(value) ;
   }
 }
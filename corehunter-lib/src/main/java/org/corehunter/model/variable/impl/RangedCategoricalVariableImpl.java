@@ -1,7 +1,10 @@
 package org.corehunter.model.variable.impl;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.corehunter.model.variable.CategoricalVariable;
 import org.corehunter.model.variable.RangedCategoricalVariable;
@@ -10,12 +13,14 @@ public abstract class RangedCategoricalVariableImpl<DataType extends Number> ext
     RangedVariableImpl<DataType> implements RangedCategoricalVariable<DataType>
 {
 	private List<DataType> values;
+	private Map<DataType, Integer> codes;
 	
 	public RangedCategoricalVariableImpl(String name)
   {
 	  super(name);
 	  
 	  this.values = createDefaultValues() ;
+	  this.codes = new HashMap<DataType, Integer>() ;
   }
 	
 	public RangedCategoricalVariableImpl(String uniqueIdentifier, String name)
@@ -23,6 +28,7 @@ public abstract class RangedCategoricalVariableImpl<DataType extends Number> ext
 	  super(uniqueIdentifier, name);
 	  
 	  this.values = createDefaultValues() ;
+	  this.codes = new HashMap<DataType, Integer>() ;
   }
 
 	public RangedCategoricalVariableImpl(String name, DataType minimumValue,
@@ -31,6 +37,7 @@ public abstract class RangedCategoricalVariableImpl<DataType extends Number> ext
 	  super(name, minimumValue, maximumValue);
 	  
 	  this.values = createDefaultValues() ;
+	  this.codes = new HashMap<DataType, Integer>() ;
   }
 
 	public RangedCategoricalVariableImpl(String uniqueIdentifier, String name,
@@ -39,6 +46,7 @@ public abstract class RangedCategoricalVariableImpl<DataType extends Number> ext
 	  super(uniqueIdentifier, name, minimumValue, maximumValue);
 	  
 	  this.values = createDefaultValues() ;
+	  this.codes = new HashMap<DataType, Integer>() ;
   }
 	
 	public RangedCategoricalVariableImpl(String name, List<DataType> values)
@@ -46,8 +54,9 @@ public abstract class RangedCategoricalVariableImpl<DataType extends Number> ext
 	  super(name);
 	  
 	  this.values = createDefaultValues() ;
+	  this.codes = new HashMap<DataType, Integer>() ;
 	  
-	  values.addAll(values) ;
+	  addValues(values) ;
   }
 	
 	public RangedCategoricalVariableImpl(String uniqueIdentifier, String name, List<DataType> values)
@@ -55,8 +64,9 @@ public abstract class RangedCategoricalVariableImpl<DataType extends Number> ext
 	  super(uniqueIdentifier, name);
 	  
 	  this.values = createDefaultValues() ;
+	  this.codes = new HashMap<DataType, Integer>() ;
 	  
-	  this.values.addAll(values) ;
+	  addValues(values) ;
   }
 	
 	public RangedCategoricalVariableImpl(String name, DataType minimumValue,
@@ -65,8 +75,9 @@ public abstract class RangedCategoricalVariableImpl<DataType extends Number> ext
 	  super(name, minimumValue, maximumValue);
 	  
 	  this.values = createDefaultValues() ;
+	  this.codes = new HashMap<DataType, Integer>() ;
 	  
-	  this.values.addAll(values) ;
+	  addValues(values) ;
   }
 
 	public RangedCategoricalVariableImpl(String uniqueIdentifier, String name,
@@ -75,8 +86,9 @@ public abstract class RangedCategoricalVariableImpl<DataType extends Number> ext
 	  super(uniqueIdentifier, name, minimumValue, maximumValue);
 	  
 	  this.values = createDefaultValues() ;
+	  this.codes = new HashMap<DataType, Integer>() ;
 	  
-	  this.values.addAll(values) ;
+	  addValues(values) ;
   }
 
 	protected RangedCategoricalVariableImpl(RangedCategoricalVariable<DataType> variable)
@@ -84,24 +96,58 @@ public abstract class RangedCategoricalVariableImpl<DataType extends Number> ext
 	  super(variable);
 	  
 	  this.values = createDefaultValues() ;
+	  this.codes = new HashMap<DataType, Integer>() ;
 	  
-	  this.values.addAll(variable.getValues()) ;
+	  addValues(variable.getValues()) ;
   }
 
 	@Override
   public List<DataType> getValues()
   {
-	  return values ;
+	  return Collections.unmodifiableList(values) ;
   }
 
 	@Override
   public boolean addValue(DataType value)
   {
-		if (!values.contains(value))
+		if (!codes.containsKey(value))
+		{
+			codes.put(value, values.size()) ;
+
 			return values.add(value) ;
+		}
 		else
 			return false ;
   }
+
+	@Override
+  public int getCode(DataType value)
+  {
+		Integer code = codes.get(value) ;
+
+		return code != null ? code : -1 ;
+  }
+
+	@Override
+  public DataType getValue(int code)
+  {
+	  return values.get(code) ;
+  }
+
+	@Override
+  public int encodeValue(DataType value)
+  {
+		Integer code = codes.get(value) ;
+
+		if (code == null)
+		{
+			code = values.size() ;
+			codes.put(value, code) ;
+			values.add(value) ;
+		}
+
+		return code ;
+  }
 	
 	@Override
   public boolean equals(Object obj)
@@ -128,5 +174,11 @@ public abstract class RangedCategoricalVariableImpl<DataType extends Number> ext
 	protected List<DataType> createDefaultValues()
   {
 	  return new ArrayList<DataType>() ;
+  }
+
+	private void addValues(List<DataType> values)
+  {
+		for (DataType value : values)
+			addValue(value) ;
   }
 }
@@ -0,0 +1,641 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.model.variable.impl;
+
+import java.util.Arrays;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.impl.DataFileTokenizer;
+import org.corehunter.model.variable.CategoricalVariable;
+import org.corehunter.model.variable.RangedVariable;
+import org.corehunter.model.variable.Variable;
+import org.corehunter.model.variable.VariableDataType;
+
+/**
+ * The values of a single variable read from a data file, held in a primitive
+ * array that matches the data type of the variable. Short, integer and long
+ * values are stored as longs, float and double values as doubles, boolean
+ * values in a bitmap and strings as objects. Missing values are recorded in
+ * a bitmap of their own.
+ *
+ * Values are boxed only when they are added to a categorical dictionary, used
+ * in an error message or requested by {@link #getValue(int)}.
+ */
+final class VariableColumn
+{
+	private static final int	  INITIAL_CAPACITY	= 16;
+
+	private final Variable	    variable;
+	private final VariableDataType	dataType;
+	private int	                size;
+	private long[]	            missing;
+	private long[]	            integerValues;
+	private double[]	          realValues;
+	private long[]	            booleanValues;
+	private Object[]	          objectValues;
+	private int[]	              codes;
+
+	/**
+	 * Creates an empty column
+	 *
+	 * @param variable the variable of the column
+	 * @param capacity the expected number of values
+	 */
+	VariableColumn(Variable variable, int capacity)
+	{
+		this.variable = variable;
+		this.dataType = variable.getDataType() != null ? variable.getDataType()
+		    : VariableDataType.STRING;
+
+		capacity = Math.max(capacity, INITIAL_CAPACITY);
+
+		missing = new long[getWordCount(capacity)];
+
+		switch (dataType)
+		{
+			case SHORT:
+			case INTEGER:
+			case LONG:
+				integerValues = new long[capacity];
+				break;
+			case FLOAT:
+			case DOUBLE:
+				realValues = new double[capacity];
+				break;
+			case BOOLEAN:
+				booleanValues = new long[missing.length];
+				break;
+			case STRING:
+			default:
+				objectValues = new Object[capacity];
+				break;
+		}
+	}
+
+	/**
+	 * Gets the number of values in the column
+	 *
+	 * @return the number of values
+	 */
+	int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Gets the variable of the column
+	 *
+	 * @return the variable
+	 */
+	Variable getVariable()
+	{
+		return variable;
+	}
+
+	/**
+	 * Parses a field of the current line of a tokenizer and adds its value to
+	 * the column. Numeric and boolean fields are converted straight from the
+	 * line, without creating a string first. Malformed fields are passed to
+	 * {@link AccessionVariableMatrixListImplDataFileReader#parseElement(String, Variable, int, int)}
+	 * so that they are reported with the same messages as before.
+	 *
+	 * @param line the tokenizer positioned on the line
+	 * @param field the index of the field
+	 * @param reader the reader reporting malformed fields
+	 * @param lineNumber the line number, used in error messages
+	 * @param columnNumber the column number, used in error messages
+	 * @throws CoreHunterException if the field can not be parsed
+	 */
+	void parse(DataFileTokenizer line, int field,
+	    AccessionVariableMatrixListImplDataFileReader reader, int lineNumber,
+	    int columnNumber) throws CoreHunterException
+	{
+		if (line.isBlank(field))
+		{
+			addMissing();
+			return;
+		}
+
+		try
+		{
+			switch (dataType)
+			{
+				case SHORT:
+					addLong(line.parseShort(field));
+					return;
+				case INTEGER:
+					addLong(line.parseInt(field));
+					return;
+				case LONG:
+					addLong(line.parseLong(field));
+					return;
+				case DOUBLE:
+					addDouble(line.parseDouble(field));
+					return;
+				case BOOLEAN:
+					if (matches(line, field,
+					    AccessionVariableMatrixListImplDataFileReader.TRUE))
+					{
+						addBoolean(true);
+						return;
+					}
+
+					if (matches(line, field,
+					    AccessionVariableMatrixListImplDataFileReader.FALSE))
+					{
+						addBoolean(false);
+						return;
+					}
+					break;
+				case FLOAT:
+					// parsed from the string, rounding a double to a float may differ
+					// from parsing the float directly
+				case STRING:
+				default:
+					break;
+			}
+		}
+		catch (NumberFormatException e)
+		{
+			// let the string parser report the error, so the message is the same
+		}
+
+		add(reader.parseElement(line.getString(field), variable, lineNumber,
+		    columnNumber));
+	}
+
+	/**
+	 * Adds a boxed value to the column
+	 *
+	 * @param value the value, or <code>null</code> for a missing value
+	 */
+	void add(Object value)
+	{
+		if (value == null)
+		{
+			addMissing();
+		}
+		else
+		{
+			switch (dataType)
+			{
+				case SHORT:
+				case INTEGER:
+				case LONG:
+					addLong(((Number) value).longValue());
+					break;
+				case FLOAT:
+				case DOUBLE:
+					addDouble(((Number) value).doubleValue());
+					break;
+				case BOOLEAN:
+					addBoolean((Boolean) value);
+					break;
+				case STRING:
+				default:
+					ensureCapacity(size + 1);
+					objectValues[size++] = value;
+					break;
+			}
+		}
+	}
+
+	/**
+	 * Adds all values of another column of the same variable to this column
+	 *
+	 * @param column the other column
+	 */
+	void addAll(VariableColumn column)
+	{
+		ensureCapacity(size + column.size);
+
+		for (int i = 0; i < column.size; ++i)
+		{
+			if (isSet(column.missing, i))
+			{
+				set(missing, size);
+			}
+			else
+			{
+				if (booleanValues != null && isSet(column.booleanValues, i))
+				{
+					set(booleanValues, size);
+				}
+			}
+
+			++size;
+		}
+
+		int from = size - column.size;
+
+		if (integerValues != null)
+		{
+			System.arraycopy(column.integerValues, 0, integerValues, from,
+			    column.size);
+		}
+
+		if (realValues != null)
+		{
+			System.arraycopy(column.realValues, 0, realValues, from, column.size);
+		}
+
+		if (objectValues != null)
+		{
+			System.arraycopy(column.objectValues, 0, objectValues, from,
+			    column.size);
+		}
+	}
+
+	/**
+	 * Indicates if a value is missing
+	 *
+	 * @param row the index of the value
+	 * @return <code>true</code> if the value is missing
+	 */
+	boolean isMissing(int row)
+	{
+		return isSet(missing, row);
+	}
+
+	/**
+	 * Gets a numeric value as a double
+	 *
+	 * @param row the index of the value
+	 * @return the value, or {@link Double#NaN} if the value is missing or not
+	 *         numeric
+	 */
+	double getNumericValue(int row)
+	{
+		if (isMissing(row))
+		{
+			return Double.NaN;
+		}
+
+		if (integerValues != null)
+		{
+			return integerValues[row];
+		}
+
+		return realValues != null ? realValues[row] : Double.NaN;
+	}
+
+	/**
+	 * Gets the code of a value in the dictionary of the variable, see
+	 * {@link #encode()}
+	 *
+	 * @param row the index of the value
+	 * @return the code, or <code>-1</code> if the value is missing
+	 */
+	int getCode(int row)
+	{
+		return codes[row];
+	}
+
+	/**
+	 * Gets the missing value bitmap
+	 *
+	 * @param wordCount the number of words of the bitmap
+	 * @return a copy of the bitmap
+	 */
+	long[] getMissingBitmap(int wordCount)
+	{
+		return Arrays.copyOf(missing, wordCount);
+	}
+
+	/**
+	 * Gets the boolean value bitmap, in which missing values are
+	 * <code>false</code>
+	 *
+	 * @param wordCount the number of words of the bitmap
+	 * @return a copy of the bitmap
+	 */
+	long[] getBooleanBitmap(int wordCount)
+	{
+		return booleanValues != null ? Arrays.copyOf(booleanValues, wordCount)
+		    : new long[wordCount];
+	}
+
+	/**
+	 * Gets a value, boxed with the data type of the variable. The values of
+	 * categorical variables are the instances in the dictionary of the
+	 * variable once the column is encoded.
+	 *
+	 * @param row the index of the value
+	 * @return the value, or <code>null</code> if the value is missing
+	 */
+	Object getValue(int row)
+	{
+		if (isMissing(row))
+		{
+			return null;
+		}
+
+		if (codes != null)
+		{
+			return ((CategoricalVariable<?>) variable).getValue(codes[row]);
+		}
+
+		return box(row);
+	}
+
+	/**
+	 * Checks that all values that are not missing lie within the range of a
+	 * ranged variable
+	 *
+	 * @param lineNumbers the line number of each value, used in error messages
+	 * @param columnNumber the column number, used in error messages
+	 * @throws CoreHunterException if a value is out of range
+	 */
+	void checkRange(int[] lineNumbers, int columnNumber)
+	    throws CoreHunterException
+	{
+		RangedVariable<?> rangedVariable = (RangedVariable<?>) variable;
+
+		if (integerValues != null)
+		{
+			long minimum = rangedVariable.getMinimumValue().longValue();
+			long maximum = rangedVariable.getMaximumValue().longValue();
+
+			for (int i = 0; i < size; ++i)
+			{
+				if ((integerValues[i] < minimum || integerValues[i] > maximum)
+				    && !isMissing(i))
+				{
+					throw createRangeException(i, lineNumbers[i], columnNumber);
+				}
+			}
+		}
+		else
+		{
+			if (realValues != null)
+			{
+				double minimum = rangedVariable.getMinimumValue().doubleValue();
+				double maximum = rangedVariable.getMaximumValue().doubleValue();
+
+				for (int i = 0; i < size; ++i)
+				{
+					if (!(realValues[i] >= minimum && realValues[i] <= maximum)
+					    && !isMissing(i))
+					{
+						throw createRangeException(i, lineNumbers[i], columnNumber);
+					}
+				}
+			}
+			else
+			{
+				if (objectValues != null)
+				{
+					for (int i = 0; i < size; ++i)
+					{
+						if (!isMissing(i))
+						{
+							throw createRangeException(i, lineNumbers[i], columnNumber);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sets the range of a ranged variable to the smallest and largest values
+	 * that are not missing. The range is left unchanged if all values are
+	 * missing or not numeric.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	void updateRange()
+	{
+		RangedVariable rangedVariable = (RangedVariable) variable;
+
+		if (integerValues != null)
+		{
+			long minimum = Long.MAX_VALUE;
+			long maximum = Long.MIN_VALUE;
+			boolean found = false;
+
+			for (int i = 0; i < size; ++i)
+			{
+				if (!isMissing(i))
+				{
+					minimum = Math.min(minimum, integerValues[i]);
+					maximum = Math.max(maximum, integerValues[i]);
+					found = true;
+				}
+			}
+
+			if (found)
+			{
+				rangedVariable.setMinimumValue(boxLong(minimum));
+				rangedVariable.setMaximumValue(boxLong(maximum));
+			}
+		}
+		else
+		{
+			if (realValues != null)
+			{
+				double minimum = Double.POSITIVE_INFINITY;
+				double maximum = Double.NEGATIVE_INFINITY;
+				boolean found = false;
+
+				for (int i = 0; i < size; ++i)
+				{
+					if (!isMissing(i))
+					{
+						minimum = Math.min(minimum, realValues[i]);
+						maximum = Math.max(maximum, realValues[i]);
+						found = true;
+					}
+				}
+
+				if (found)
+				{
+					rangedVariable.setMinimumValue(boxDouble(minimum));
+					rangedVariable.setMaximumValue(boxDouble(maximum));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the values of a categorical variable to its dictionary, in the order
+	 * of the column, and records their codes. Repeated values then share the
+	 * instance in the dictionary.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	void encode()
+	{
+		CategoricalVariable categoricalVariable = (CategoricalVariable) variable;
+
+		codes = new int[size];
+
+		for (int i = 0; i < size; ++i)
+		{
+			codes[i] = isMissing(i) ? -1 : categoricalVariable.encodeValue(box(i));
+		}
+	}
+
+	private CoreHunterException createRangeException(int row, int lineNumber,
+	    int columnNumber)
+	{
+		return new CoreHunterException("Dataset is not properly formatted on line "
+		    + lineNumber + " Please refer to the CoreHunter manual. " + "value "
+		    + box(row) + " not in range at column " + columnNumber);
+	}
+
+	private Object box(int row)
+	{
+		if (integerValues != null)
+		{
+			return boxLong(integerValues[row]);
+		}
+
+		if (realValues != null)
+		{
+			return boxDouble(realValues[row]);
+		}
+
+		if (booleanValues != null)
+		{
+			return isSet(booleanValues, row);
+		}
+
+		return objectValues[row];
+	}
+
+	private Number boxLong(long value)
+	{
+		switch (dataType)
+		{
+			case SHORT:
+				return (short) value;
+			case INTEGER:
+				return (int) value;
+			case LONG:
+			default:
+				return value;
+		}
+	}
+
+	private Number boxDouble(double value)
+	{
+		switch (dataType)
+		{
+			case FLOAT:
+				return (float) value;
+			case DOUBLE:
+			default:
+				return value;
+		}
+	}
+
+	private static boolean matches(DataFileTokenizer line, int field,
+	    Iterable<String> strings)
+	{
+		for (String string : strings)
+		{
+			if (line.equalsIgnoreCase(field, string))
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private void addMissing()
+	{
+		ensureCapacity(size + 1);
+		set(missing, size);
+
+		if (realValues != null)
+		{
+			realValues[size] = Double.NaN;
+		}
+
+		++size;
+	}
+
+	private void addLong(long value)
+	{
+		ensureCapacity(size + 1);
+		integerValues[size++] = value;
+	}
+
+	private void addDouble(double value)
+	{
+		ensureCapacity(size + 1);
+		realValues[size++] = value;
+	}
+
+	private void addBoolean(boolean value)
+	{
+		ensureCapacity(size + 1);
+
+		if (value)
+		{
+			set(booleanValues, size);
+		}
+
+		++size;
+	}
+
+	private void ensureCapacity(int capacity)
+	{
+		if (capacity > missing.length << 6)
+		{
+			int newCapacity = Math.max(capacity, (missing.length << 6) * 2);
+			int wordCount = getWordCount(newCapacity);
+
+			missing = Arrays.copyOf(missing, wordCount);
+
+			if (booleanValues != null)
+			{
+				booleanValues = Arrays.copyOf(booleanValues, wordCount);
+			}
+		}
+
+		if (integerValues != null && capacity > integerValues.length)
+		{
+			integerValues = Arrays.copyOf(integerValues,
+			    Math.max(capacity, integerValues.length * 2));
+		}
+
+		if (realValues != null && capacity > realValues.length)
+		{
+			realValues = Arrays.copyOf(realValues,
+			    Math.max(capacity, realValues.length * 2));
+		}
+
+		if (objectValues != null && capacity > objectValues.length)
+		{
+			objectValues = Arrays.copyOf(objectValues,
+			    Math.max(capacity, objectValues.length * 2));
+		}
+	}
+
+	private static int getWordCount(int size)
+	{
+		return (size + 63) >>> 6;
+	}
+
+	private static boolean isSet(long[] bits, int index)
+	{
+		return (bits[index >>> 6] & (1L << index)) != 0;
+	}
+
+	private static void set(long[] bits, int index)
+	{
+		bits[index >>> 6] |= 1L << index;
+	}
+}
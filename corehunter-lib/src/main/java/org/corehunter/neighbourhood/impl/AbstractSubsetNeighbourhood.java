@@ -19,6 +19,7 @@ import java.util.Random;
 import org.corehunter.CoreHunterException;
 import org.corehunter.neighbourhood.IndexedMove;
 import org.corehunter.neighbourhood.SubsetNeighbourhood;
+import org.corehunter.objectivefunction.MoveEvaluatingObjectiveFunction;
 import org.corehunter.objectivefunction.ObjectiveFunction;
 import org.corehunter.search.PreferredSize;
 import org.corehunter.search.solution.SubsetSolution;
@@ -127,6 +128,27 @@ public abstract class AbstractSubsetNeighbourhood<IndexType, SolutionType extend
         }
     }
 
+    /**
+     * Gets the objective function as a {@link MoveEvaluatingObjectiveFunction},
+     * after evaluating the current solution, so that moves can be evaluated
+     * without applying them to the solution.
+     * 
+     * @param solution the current solution
+     * @param objectiveFunction the objective function
+     * @return the objective function or <code>null</code> if it can not evaluate moves
+     * @throws CoreHunterException if the current solution can not be evaluated
+     */
+    @SuppressWarnings("unchecked")
+    protected MoveEvaluatingObjectiveFunction<IndexType> getMoveEvaluator(SolutionType solution,
+            ObjectiveFunction<SolutionType> objectiveFunction) throws CoreHunterException {
+        if (objectiveFunction instanceof MoveEvaluatingObjectiveFunction) {
+            objectiveFunction.calculate(solution);
+            return (MoveEvaluatingObjectiveFunction<IndexType>) objectiveFunction;
+        } else {
+            return null;
+        }
+    }
+
     protected double getDeltaScore(boolean isMinimizing, double neighbourEvaluation, double curBestNeighbourEvaluation){
         return isMinimizing ? curBestNeighbourEvaluation - neighbourEvaluation : neighbourEvaluation - curBestNeighbourEvaluation;
     }
@@ -21,6 +21,7 @@ import java.util.Iterator;
 import org.corehunter.CoreHunterException;
 import org.corehunter.neighbourhood.EvaluatedIndexedMove;
 import org.corehunter.neighbourhood.IndexedMove;
+import org.corehunter.objectivefunction.MoveEvaluatingObjectiveFunction;
 import org.corehunter.objectivefunction.ObjectiveFunction;
 import org.corehunter.search.solution.SubsetSolution;
 
@@ -85,7 +86,7 @@ public class ExactSingleNeighbourhood<IndexType, SolutionType extends SubsetSolu
         {
         	EvaluatedIndexedMove<IndexType, SolutionType> bestDeletionMove = findBestDeletionMove(solution, objectiveFunction, tabuManager, currentBestEvaluation, selected) ;
         	
-        	if (isBetterNeighbour(objectiveFunction.isMinimizing(), bestDeletionMove.getEvaluation(), bestNeighbourEvaluation, bestNeighbourSize -1, bestNeighbourSize)) 
+        	if (bestDeletionMove != null && isBetterNeighbour(objectiveFunction.isMinimizing(), bestDeletionMove.getEvaluation(), bestNeighbourEvaluation, bestNeighbourSize -1, bestNeighbourSize)) 
         		bestMove = bestDeletionMove ;
         }
         
@@ -96,16 +97,17 @@ public class ExactSingleNeighbourhood<IndexType, SolutionType extends SubsetSolu
         {
         	EvaluatedIndexedMove<IndexType, SolutionType> bestAdditionMove = findBestAdditionMove(solution, objectiveFunction, tabuManager, currentBestEvaluation, unselected) ;
         	
-        	if (isBetterNeighbour(objectiveFunction.isMinimizing(), bestAdditionMove.getEvaluation(), bestNeighbourEvaluation, bestNeighbourSize +1, bestNeighbourSize)) 
+        	if (bestAdditionMove != null && isBetterNeighbour(objectiveFunction.isMinimizing(), bestAdditionMove.getEvaluation(), bestNeighbourEvaluation, bestNeighbourSize +1, bestNeighbourSize)) 
         		bestMove = bestAdditionMove ;
         }
         
         /**********************/
         /* Try all swap moves */
         /**********************/
+        // all swap moves may be tabu if the tabu history is large
         EvaluatedIndexedMove<IndexType, SolutionType> bestSwapMove = findBestSwapMove(solution, objectiveFunction, tabuManager, currentBestEvaluation, selected, unselected) ;
         
-      	if (isBetterNeighbour(objectiveFunction.isMinimizing(), bestSwapMove.getEvaluation(), bestNeighbourEvaluation, bestNeighbourSize, bestNeighbourSize)) 
+      	if (bestSwapMove != null && isBetterNeighbour(objectiveFunction.isMinimizing(), bestSwapMove.getEvaluation(), bestNeighbourEvaluation, bestNeighbourSize, bestNeighbourSize)) 
       		bestMove = bestSwapMove ;
         
         /***********************/
@@ -143,6 +145,7 @@ public class ExactSingleNeighbourhood<IndexType, SolutionType extends SubsetSolu
         double bestNeighbourEvaluation = getWorstEvaluation(objectiveFunction.isMinimizing()), neighbourEvaluation;
         int bestNeighbourSize = getWorstSize(), neighbourSize;
         DeletionEvaluatedMove<IndexType, SolutionType> bestMove = null, move;
+        MoveEvaluatingObjectiveFunction<IndexType> moveEvaluator = getMoveEvaluator(solution, objectiveFunction);
   
         /*******************************************************/
         /* Try all deletion moves, if minimum size not reached */
@@ -154,11 +157,17 @@ public class ExactSingleNeighbourhood<IndexType, SolutionType extends SubsetSolu
         	index = selectedIterator.next();
         	// create deletion move
         	move = new DeletionEvaluatedMove<IndexType, SolutionType>(index);
-        	// apply move
-        	move.apply(solution);
-        	// compute new score and size
-        	neighbourEvaluation = objectiveFunction.calculate(solution);
-        	neighbourSize = solution.getSubsetSize();
+        	if (moveEvaluator != null) {
+        		// compute new score and size without applying the move
+        		neighbourEvaluation = moveEvaluator.calculateMove(solution, null, index);
+        		neighbourSize = solution.getSubsetSize() - 1;
+        	} else {
+        		// apply move
+        		move.apply(solution);
+        		// compute new score and size
+        		neighbourEvaluation = objectiveFunction.calculate(solution);
+        		neighbourSize = solution.getSubsetSize();
+        	}
         	// check score improvement and tabu
         	if (isBetterNeighbour(objectiveFunction.isMinimizing(), neighbourEvaluation, bestNeighbourEvaluation, neighbourSize, bestNeighbourSize)
         			&& (tabuManager == null || tabuManager.moveAllowed(move, neighbourEvaluation, currentBestEvaluation, objectiveFunction.isMinimizing()))) {
@@ -168,7 +177,9 @@ public class ExactSingleNeighbourhood<IndexType, SolutionType extends SubsetSolu
             bestMove.setEvaluation(bestNeighbourEvaluation);
         	}
         	// undo move
-        	move.undo(solution);
+        	if (moveEvaluator == null) {
+        		move.undo(solution);
+        	}
         }
        
         // return best move
@@ -197,6 +208,7 @@ public class ExactSingleNeighbourhood<IndexType, SolutionType extends SubsetSolu
         double bestNeighbourEvaluation = getWorstEvaluation(objectiveFunction.isMinimizing()), neighbourEvaluation;
         int bestNeighbourSize = getWorstSize(), neighbourSize;
         AdditionEvaluatedMove<IndexType, SolutionType> bestMove = null, move;
+        MoveEvaluatingObjectiveFunction<IndexType> moveEvaluator = getMoveEvaluator(solution, objectiveFunction);
         
         /*******************************************************/
         /* Try all addition moves, if maximum size not reached */
@@ -208,11 +220,17 @@ public class ExactSingleNeighbourhood<IndexType, SolutionType extends SubsetSolu
         	index = unselectedIterator.next();
         	// create addition move
         	move = new AdditionEvaluatedMove<IndexType, SolutionType>(index);
-        	// apply move
-        	move.apply(solution);
-        	// compute new score and size
-        	neighbourEvaluation = objectiveFunction.calculate(solution);
-        	neighbourSize = solution.getSubsetSize();
+        	if (moveEvaluator != null) {
+        		// compute new score and size without applying the move
+        		neighbourEvaluation = moveEvaluator.calculateMove(solution, index, null);
+        		neighbourSize = solution.getSubsetSize() + 1;
+        	} else {
+        		// apply move
+        		move.apply(solution);
+        		// compute new score and size
+        		neighbourEvaluation = objectiveFunction.calculate(solution);
+        		neighbourSize = solution.getSubsetSize();
+        	}
         	// check score improvement and tabu
         	if (isBetterNeighbour(objectiveFunction.isMinimizing(), neighbourEvaluation, bestNeighbourEvaluation, neighbourSize, bestNeighbourSize)
         			&& (tabuManager == null || tabuManager.moveAllowed(move, neighbourEvaluation, currentBestEvaluation, objectiveFunction.isMinimizing()))) {
@@ -222,7 +240,9 @@ public class ExactSingleNeighbourhood<IndexType, SolutionType extends SubsetSolu
             bestMove.setEvaluation(bestNeighbourEvaluation);
         	}
         	// undo move
-        	move.undo(solution);
+        	if (moveEvaluator == null) {
+        		move.undo(solution);
+        	}
         }
        
         // return best move
@@ -250,6 +270,7 @@ public class ExactSingleNeighbourhood<IndexType, SolutionType extends SubsetSolu
         double bestNeighbourEvaluation = getWorstEvaluation(objectiveFunction.isMinimizing()), neighbourEvaluation;
         int bestNeighbourSize = getWorstSize(), neighbourSize;
         SwapEvaluatedMove<IndexType, SolutionType> bestMove = null, move;
+        MoveEvaluatingObjectiveFunction<IndexType> moveEvaluator = getMoveEvaluator(solution, objectiveFunction);
         
         
         /**********************/
@@ -271,11 +292,17 @@ public class ExactSingleNeighbourhood<IndexType, SolutionType extends SubsetSolu
                 indexToRemove = selectedIterator.next();
                 // create swap move
                 move = new SwapEvaluatedMove<IndexType, SolutionType>(indexToAdd, indexToRemove);
-                // apply move
-                move.apply(solution);
-                // compute new score and size
-                neighbourEvaluation = objectiveFunction.calculate(solution);
-                neighbourSize = solution.getSubsetSize();
+                if (moveEvaluator != null) {
+                    // compute new score and size without applying the move
+                    neighbourEvaluation = moveEvaluator.calculateMove(solution, indexToAdd, indexToRemove);
+                    neighbourSize = solution.getSubsetSize();
+                } else {
+                    // apply move
+                    move.apply(solution);
+                    // compute new score and size
+                    neighbourEvaluation = objectiveFunction.calculate(solution);
+                    neighbourSize = solution.getSubsetSize();
+                }
                 // check score improvement and tabu
                 if (isBetterNeighbour(objectiveFunction.isMinimizing(), neighbourEvaluation, bestNeighbourEvaluation, neighbourSize, bestNeighbourSize)
                         && (tabuManager == null || tabuManager.moveAllowed(move, neighbourEvaluation, currentBestEvaluation, objectiveFunction.isMinimizing()))) {
@@ -285,7 +312,9 @@ public class ExactSingleNeighbourhood<IndexType, SolutionType extends SubsetSolu
                     bestMove.setEvaluation(bestNeighbourEvaluation);
                 }
                 // undo swap
-                move.undo(solution);
+                if (moveEvaluator == null) {
+                    move.undo(solution);
+                }
             }
         }
         
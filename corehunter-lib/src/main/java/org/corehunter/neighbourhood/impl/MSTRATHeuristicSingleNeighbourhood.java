@@ -20,6 +20,7 @@ import java.util.Iterator;
 
 import org.corehunter.CoreHunterException;
 import org.corehunter.neighbourhood.IndexedMove;
+import org.corehunter.objectivefunction.MoveEvaluatingObjectiveFunction;
 import org.corehunter.objectivefunction.ObjectiveFunction;
 import org.corehunter.search.solution.SubsetSolution;
 
@@ -66,6 +67,10 @@ public class MSTRATHeuristicSingleNeighbourhood<IndexType, SolutionType extends
         Collection<IndexType> unselected = new HashSet<IndexType>(solution.getRemainingIndices());
         Collection<IndexType> selected = new HashSet<IndexType>(solution.getSubsetIndices());
         
+        // if the objective function can evaluate moves, none of the moves below
+        // are applied until the final move is chosen
+        MoveEvaluatingObjectiveFunction<IndexType> moveEvaluator = getMoveEvaluator(solution, objectiveFunction);
+        
         /**************************/
         /* Look for best addition */
         /**************************/
@@ -89,11 +94,17 @@ public class MSTRATHeuristicSingleNeighbourhood<IndexType, SolutionType extends
             index = iterator.next();
             // create addition move
             additionMove = new AdditionMove<IndexType, SolutionType>(index);
-            // apply move
-            additionMove.apply(solution);
-            // compute new score and size
-            neighbourEvaluation = objectiveFunction.calculate(solution);
-            neighbourSize = solution.getSubsetSize();
+            if (moveEvaluator != null) {
+                // compute new score and size without applying the move
+                neighbourEvaluation = moveEvaluator.calculateMove(solution, index, null);
+                neighbourSize = solution.getSubsetSize() + 1;
+            } else {
+                // apply move
+                additionMove.apply(solution);
+                // compute new score and size
+                neighbourEvaluation = objectiveFunction.calculate(solution);
+                neighbourSize = solution.getSubsetSize();
+            }
             // check score improvement and tabu
             if (isBetterNeighbour(objectiveFunction.isMinimizing(), neighbourEvaluation, bestNeighbourEvaluation, neighbourSize, bestNeighbourSize)
                     && (tabuManager == null || tabuManager.moveAllowed(additionMove, neighbourEvaluation, currentBestEvaluation, objectiveFunction.isMinimizing()))) {
@@ -102,12 +113,20 @@ public class MSTRATHeuristicSingleNeighbourhood<IndexType, SolutionType extends
                 bestAdditionMove = additionMove;
             }
             // undo move
-            additionMove.undo(solution);
+            if (moveEvaluator == null) {
+                additionMove.undo(solution);
+            }
         }
         
         // apply best addition move (if not null)
+        IndexType addedIndex = null;
+        int subsetSize = solution.getSubsetSize();
         if(bestAdditionMove != null){
-            bestAdditionMove.apply(solution);
+            addedIndex = bestAdditionMove.getAddedIndex();
+            ++subsetSize;
+            if (moveEvaluator == null) {
+                bestAdditionMove.apply(solution);
+            }
         }
 
         /****************************************/
@@ -119,15 +138,19 @@ public class MSTRATHeuristicSingleNeighbourhood<IndexType, SolutionType extends
         bestNeighbourSize = getWorstSize();
         DeletionMove<IndexType, SolutionType> bestDeletionMove = null;
 
-        if(bestAdditionMove != null && solution.getSubsetSize() <= getSubsetMaximumSize()){
+        if(bestAdditionMove != null && subsetSize <= getSubsetMaximumSize()){
             // an index was added and we did not exceed the maximum size, so it is not
             // necessarily required to delete something now as well (consider pure addition)
-            bestNeighbourEvaluation = objectiveFunction.calculate(solution);
-            bestNeighbourSize = solution.getSubsetSize();
+            if (moveEvaluator != null) {
+                bestNeighbourEvaluation = moveEvaluator.calculateMove(solution, addedIndex, null);
+            } else {
+                bestNeighbourEvaluation = objectiveFunction.calculate(solution);
+            }
+            bestNeighbourSize = subsetSize;
         }
         
         // evaluate each deletion move
-        if(solution.getSubsetSize() > getSubsetMinimumSize()){
+        if(subsetSize > getSubsetMinimumSize()){
             // iterate over indices that were selected in the ORIGINAL solution,
             // before possibly having added a new index in the first stage, as it
             // is not allowed to again remove this added index because this would
@@ -139,11 +162,18 @@ public class MSTRATHeuristicSingleNeighbourhood<IndexType, SolutionType extends
                 index = iterator.next();
                 // create deletion move
                 deletionMove = new DeletionMove<IndexType, SolutionType>(index);
-                // apply move
-                deletionMove.apply(solution);
-                // compute new score and size
-                neighbourEvaluation = objectiveFunction.calculate(solution);
-                neighbourSize = solution.getSubsetSize();
+                if (moveEvaluator != null) {
+                    // evaluate the deletion following the best addition as a single
+                    // move, without applying either
+                    neighbourEvaluation = moveEvaluator.calculateMove(solution, addedIndex, index);
+                    neighbourSize = subsetSize - 1;
+                } else {
+                    // apply move
+                    deletionMove.apply(solution);
+                    // compute new score and size
+                    neighbourEvaluation = objectiveFunction.calculate(solution);
+                    neighbourSize = solution.getSubsetSize();
+                }
                 // check score improvement and tabu
                 if (isBetterNeighbour(objectiveFunction.isMinimizing(), neighbourEvaluation, bestNeighbourEvaluation, neighbourSize, bestNeighbourSize)
                         && (tabuManager == null || tabuManager.moveAllowed(deletionMove, neighbourEvaluation, currentBestEvaluation, objectiveFunction.isMinimizing()))) {
@@ -152,13 +182,15 @@ public class MSTRATHeuristicSingleNeighbourhood<IndexType, SolutionType extends
                     bestDeletionMove = deletionMove;
                 }
                 // undo move
-                deletionMove.undo(solution);
+                if (moveEvaluator == null) {
+                    deletionMove.undo(solution);
+                }
             }
         }
         
         // undo the previously performed addition (if any)
         // to restore the original solution
-        if(bestAdditionMove != null){
+        if(bestAdditionMove != null && moveEvaluator == null){
             bestAdditionMove.undo(solution);
         }
         
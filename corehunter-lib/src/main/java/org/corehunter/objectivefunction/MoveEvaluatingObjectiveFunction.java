@@ -0,0 +1,47 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.objectivefunction;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.search.solution.SubsetSolution;
+
+/**
+ * Objective function that can evaluate the addition, deletion or swap of a
+ * single index without the move being applied to the solution. The move is
+ * evaluated from the results cached for the subset last evaluated by
+ * {@link ObjectiveFunction#calculate(org.corehunter.search.solution.Solution)},
+ * so a neighbourhood first evaluates the current solution and then each of
+ * its moves, without any changes to the solution or the cached results.
+ * 
+ * @param <IndexType> the type of the indices of the subsets
+ */
+public interface MoveEvaluatingObjectiveFunction<IndexType>
+{
+	/**
+	 * Calculates the evaluation the solution would have after adding and/or
+	 * removing an index. The solution must be the last one evaluated by this
+	 * function and must not have changed since, and neither the solution nor
+	 * the cached results of this function are changed.
+	 * 
+	 * @param solution the current solution
+	 * @param addedIndex the index that is added, or <code>null</code> for a
+	 *          deletion
+	 * @param removedIndex the index that is removed, or <code>null</code> for
+	 *          an addition
+	 * @return the evaluation of the solution after the move
+	 * @throws CoreHunterException if the move can not be evaluated
+	 */
+	public double calculateMove(SubsetSolution<IndexType> solution,
+	    IndexType addedIndex, IndexType removedIndex) throws CoreHunterException;
+}
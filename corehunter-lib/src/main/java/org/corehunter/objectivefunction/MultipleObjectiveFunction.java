@@ -24,6 +24,7 @@ import org.corehunter.CoreHunterException;
 import org.corehunter.model.Data;
 import org.corehunter.model.impl.EntityWithDescriptionImpl;
 import org.corehunter.search.solution.Solution;
+import org.corehunter.search.solution.SubsetSolution;
 
 /**
  * <<Class summary>>
@@ -32,7 +33,8 @@ import org.corehunter.search.solution.Solution;
  * @version $Rev$
  */
 public class MultipleObjectiveFunction<SolutionType extends Solution, DatasetType extends Data> 
-	extends EntityWithDescriptionImpl implements ObjectiveFunction<SolutionType>
+	extends EntityWithDescriptionImpl implements ObjectiveFunction<SolutionType>, PrecomputableDistanceMeasure,
+	MoveEvaluatingObjectiveFunction<Object>
 {
 	private List<ObjectiveFunction<SolutionType>> objectiveFunctions;
 	private Map<String, Integer>	objectiveFunctionIndices;
@@ -56,12 +58,18 @@ public class MultipleObjectiveFunction<SolutionType extends Solution, DatasetTyp
 	{
 		super(objectiveFunction.getName(), objectiveFunction.getDescription()) ;
 		
+		this.objectiveFunctions = new ArrayList<ObjectiveFunction<SolutionType>>();
+		objectiveFunctionIndices = new HashMap<String, Integer>();
+		objectiveFunctionWeights = new ArrayList<Double>();
+		
 		Iterator<ObjectiveFunction<SolutionType>> objectiveFunctions = objectiveFunction.getObjectiveFunctions().iterator() ;
 		Iterator<Double> weights = objectiveFunction.getObjectiveFunctionWeights().iterator() ;
 		
+		// each copy keeps its own evaluation state, while the components share
+		// their memoized distances with the components of the original
 		while (objectiveFunctions.hasNext() && weights.hasNext())
 		{
-			addObjectiveFunction(objectiveFunctions.next(), weights.next()) ;
+			addObjectiveFunction(objectiveFunctions.next().copy(), weights.next()) ;
 		}
 	}
 
@@ -99,6 +107,93 @@ public class MultipleObjectiveFunction<SolutionType extends Solution, DatasetTyp
 		return score;
 	}
 
+	/**
+	 * Combines the evaluations of the move by the objective functions that are
+	 * {@link MoveEvaluatingObjectiveFunction}s with the evaluations of the other
+	 * objective functions, for which the move is applied to the solution and
+	 * undone again
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Override
+	public final double calculateMove(SubsetSolution<Object> solution,
+	    Object addedIndex, Object removedIndex) throws CoreHunterException
+	{
+		double[] scores = new double[objectiveFunctions.size()];
+		boolean evaluated = true;
+
+		for (int i = 0; i < objectiveFunctions.size(); i++)
+		{
+			ObjectiveFunction<SolutionType> m = objectiveFunctions.get(i);
+
+			if (m instanceof MoveEvaluatingObjectiveFunction)
+			{
+				scores[i] = ((MoveEvaluatingObjectiveFunction) m).calculateMove(
+				    solution, addedIndex, removedIndex);
+			}
+			else
+			{
+				evaluated = false;
+			}
+		}
+
+		if (!evaluated)
+		{
+			applyMove(solution, addedIndex, removedIndex);
+
+			try
+			{
+				for (int i = 0; i < objectiveFunctions.size(); i++)
+				{
+					ObjectiveFunction<SolutionType> m = objectiveFunctions.get(i);
+
+					if (!(m instanceof MoveEvaluatingObjectiveFunction))
+					{
+						scores[i] = m.calculate((SolutionType) solution);
+					}
+				}
+			}
+			finally
+			{
+				// swapping back also undoes a swap
+				applyMove(solution, removedIndex, addedIndex);
+			}
+		}
+
+		double score = 0.0;
+
+		for (int i = 0; i < objectiveFunctions.size(); i++)
+		{
+			double s = scores[i];
+
+			if (objectiveFunctions.get(i).isMinimizing())
+			{
+				s = -s;
+			}
+
+			score += s * objectiveFunctionWeights.get(i).doubleValue();
+		}
+
+		return score;
+	}
+
+	private void applyMove(SubsetSolution<Object> solution, Object addedIndex,
+	    Object removedIndex)
+	{
+		if (addedIndex == null)
+		{
+			solution.removeIndex(removedIndex);
+		}
+		else
+			if (removedIndex == null)
+			{
+				solution.addIndex(addedIndex);
+			}
+			else
+			{
+				solution.swapIndices(addedIndex, removedIndex);
+			}
+	}
+
 	public final Map<String, Double> componentScores(SolutionType solution) throws CoreHunterException
 	{
 		return componentScores(solution, null);
@@ -146,6 +241,62 @@ public class MultipleObjectiveFunction<SolutionType extends Solution, DatasetTyp
 	  	iterator.next().validate() ;
   }
 
+	/**
+	 * Indicates if the distances of all objective functions that are
+	 * {@link PrecomputableDistanceMeasure}s are available
+	 */
+	@Override
+	public boolean isDistancesPrecomputed()
+	{
+		for (ObjectiveFunction<SolutionType> objectiveFunction : objectiveFunctions)
+		{
+			if (objectiveFunction instanceof PrecomputableDistanceMeasure
+			    && !((PrecomputableDistanceMeasure) objectiveFunction).isDistancesPrecomputed())
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Precomputes the distances of the objective functions that are
+	 * {@link PrecomputableDistanceMeasure}s, one after the other. The progress
+	 * is reported over all of them.
+	 */
+	@Override
+	public void precomputeDistances(int threadCount, final ProgressListener listener)
+	    throws CoreHunterException
+	{
+		List<PrecomputableDistanceMeasure> measures = new ArrayList<PrecomputableDistanceMeasure>();
+
+		for (ObjectiveFunction<SolutionType> objectiveFunction : objectiveFunctions)
+		{
+			if (objectiveFunction instanceof PrecomputableDistanceMeasure
+			    && !((PrecomputableDistanceMeasure) objectiveFunction).isDistancesPrecomputed())
+			{
+				measures.add((PrecomputableDistanceMeasure) objectiveFunction);
+			}
+		}
+
+		for (int i = 0; i < measures.size(); ++i)
+		{
+			final int measure = i;
+			final int measureCount = measures.size();
+
+			measures.get(i).precomputeDistances(threadCount,
+			    listener == null ? null : new ProgressListener()
+			    {
+				    @Override
+				    public void progress(double progress)
+				    {
+					    listener.progress((measure + progress) / measureCount);
+				    }
+			    });
+		}
+	}
+
 	public final List<ObjectiveFunction<SolutionType>> getObjectiveFunctions()
 	{
 		return objectiveFunctions;
@@ -0,0 +1,60 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.objectivefunction;
+
+import org.corehunter.CoreHunterException;
+
+/**
+ * Distance measure that can calculate the distances between all pairs of
+ * indices of its data up front, on several threads, instead of calculating
+ * each distance when a search first needs it
+ */
+public interface PrecomputableDistanceMeasure
+{
+	/**
+	 * Receives the progress of a precomputation
+	 */
+	public interface ProgressListener
+	{
+		/**
+		 * Reports the progress of a precomputation
+		 * 
+		 * @param progress the fraction of the distances calculated so far
+		 */
+		public void progress(double progress);
+	}
+
+	/**
+	 * Indicates if the distances between all pairs of indices of the data are
+	 * available without being calculated, because they were precomputed or
+	 * read from a file
+	 * 
+	 * @return <code>true</code> if all distances are available
+	 */
+	public boolean isDistancesPrecomputed();
+
+	/**
+	 * Calculates the distances between all pairs of indices of the data, if
+	 * they are not available yet. The distances are then shared by all copies
+	 * of the measure made afterwards.
+	 * 
+	 * @param threadCount the number of threads, or <code>0</code> to use as
+	 *          many threads as there are available processors
+	 * @param listener the listener to which the progress is reported on the
+	 *          calling thread, or <code>null</code>
+	 * @throws CoreHunterException if a distance can not be calculated
+	 */
+	public void precomputeDistances(int threadCount, ProgressListener listener)
+	    throws CoreHunterException;
+}
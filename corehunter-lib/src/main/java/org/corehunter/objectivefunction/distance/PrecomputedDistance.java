@@ -0,0 +1,93 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.objectivefunction.distance;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.UnknownIndexException;
+import org.corehunter.model.distance.AccessionDistanceMatrix;
+import org.corehunter.objectivefunction.DistanceMeasureType;
+import org.corehunter.objectivefunction.ObjectiveFunction;
+import org.corehunter.objectivefunction.impl.AbstractDistanceMeasure;
+import org.corehunter.search.solution.SubsetSolution;
+
+/**
+ * Mean or minimum distance between the accessions of a subset, using the
+ * distances of a precomputed distance matrix, so that cores can be selected
+ * without any marker data. Each distance is a single lookup in the matrix, so
+ * the pairwise distances are not memoized.
+ */
+public final class PrecomputedDistance extends
+    AbstractDistanceMeasure<Integer, AccessionDistanceMatrix>
+{
+	public PrecomputedDistance()
+	{
+		this(DistanceMeasureType.MEAN_DISTANCE);
+	}
+
+	public PrecomputedDistance(DistanceMeasureType type)
+	{
+		this("PD" + type.getNameSuffix(), "Precomputed Distance"
+		    + type.getDescriptionSuffix(), type);
+	}
+
+	public PrecomputedDistance(String name, String description,
+	    DistanceMeasureType type)
+	{
+		super(name, description, type);
+	}
+
+	protected PrecomputedDistance(PrecomputedDistance objectiveFunction)
+	    throws CoreHunterException
+	{
+		super(objectiveFunction);
+	}
+
+	@Override
+	public ObjectiveFunction<SubsetSolution<Integer>> copy()
+	    throws CoreHunterException
+	{
+		return new PrecomputedDistance(this);
+	}
+
+	/**
+	 * The distances of the matrix are always available, so they are never
+	 * precomputed
+	 */
+	@Override
+	public boolean isDistancesPrecomputed()
+	{
+		return true;
+	}
+
+	@Override
+	public double calculate(Integer index1, Integer index2)
+	    throws UnknownIndexException
+	{
+		AccessionDistanceMatrix data = getData();
+
+		checkIndex(data, index1);
+		checkIndex(data, index2);
+
+		return data.getDistance(index1, index2);
+	}
+
+	private static void checkIndex(AccessionDistanceMatrix data, Integer index)
+	    throws UnknownIndexException
+	{
+		if (index == null || index < 0 || index >= data.getSize())
+		{
+			throw new UnknownIndexException("Unknown index : " + index);
+		}
+	}
+}
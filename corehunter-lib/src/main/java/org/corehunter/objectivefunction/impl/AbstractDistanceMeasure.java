@@ -0,0 +1,899 @@
+// Copyright 2008,2011 Chris Thachuk, Herman De Beukelaer, Guy Davenport
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.objectivefunction.impl;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.ContentDigest;
+import org.corehunter.model.IndexedData;
+import org.corehunter.model.Matrix;
+import org.corehunter.model.UnknownIndexException;
+import org.corehunter.model.distance.DistanceStorageType;
+import org.corehunter.objectivefunction.DistanceMeasureType;
+import org.corehunter.objectivefunction.MoveEvaluatingObjectiveFunction;
+import org.corehunter.objectivefunction.PrecomputableDistanceMeasure;
+import org.corehunter.search.solution.SubsetSolution;
+
+/**
+ * Base class for objective functions that evaluate a subset by the mean or
+ * minimum distance between its members. The score of a subset is updated
+ * from the score of the previously evaluated subset, so that only the
+ * distances involving added and removed indices are calculated. Sub-classes
+ * only need to provide the distance between a pair of indices.
+ * 
+ * Sub-classes can memoize pairwise distances with
+ * {@link #getMemoizedValue(Object, Object)} and
+ * {@link #setMemoizedValue(Object, Object, double)}. The distances are kept
+ * by the positions of the indices in the dataset in a dense
+ * {@link TriangularDistanceCache}, which is created on first use if it does
+ * not need more than {@link #getMaximumDistanceCacheSize()} bytes. Larger
+ * datasets use a {@link BoundedDistanceCache} of that size instead, which
+ * evicts distances once full. If the indices are not the positions
+ * <code>0..n-1</code> themselves, they are looked up in a map to their
+ * positions. The dense cache can also be filled up front on several threads,
+ * see {@link #precomputeDistances(int, ProgressListener)}.
+ * 
+ * The memoized distances are thread-safe and shared by all copies of a
+ * measure for the same dataset, such as the replicas of a search, so each
+ * distance is calculated and stored only once however many copies are used.
+ * The score of the previously evaluated subset is kept by each copy.
+ * 
+ * Moves are evaluated from the score of the previously evaluated subset, see
+ * {@link #calculateMove(SubsetSolution, Object, Object)}.
+ * 
+ * @author Chris Thachuk <chris.thachuk@gmail.com>
+ * @version $Rev$
+ */
+// TODO separate into two sub-classes; one for MEAN_DISTANCE and one for MIN_DISTANCE
+public abstract class AbstractDistanceMeasure<
+	IndexType, 
+	DatasetType extends IndexedData<IndexType>> 
+	extends AbstractSubsetObjectiveFunction<IndexType, DatasetType>
+	implements PrecomputableDistanceMeasure, MoveEvaluatingObjectiveFunction<IndexType>
+{
+	private DistanceCachedResult        cachedResult; // cached solution distance score     -- NOT synchronized
+	private ContentDigest               distanceCacheDigest; // digest of the dataset of the pairwise distance cache
+	private volatile DistanceStore<IndexType> distanceStore; // pairwise distance cache, shared between copies
+	private DistanceStorageType         distanceCacheStorageType = DistanceStorageType.DOUBLE;
+	private long                        maximumDistanceCacheSize = Runtime.getRuntime().maxMemory() / 4;
+
+	protected static final double	MISSING_VAL	= -1.0;
+
+	// below this many slots a bounded cache would mostly evict
+	private static final int	MINIMUM_BOUNDED_DISTANCE_CACHE_SLOTS	= 1024;
+
+	protected DistanceMeasureType	type;	            // minimum/mean distance
+																																// whether mean
+																																// or min
+																																// distance
+
+	// should be computed
+
+	public AbstractDistanceMeasure(String name, String description,
+	    DistanceMeasureType type)
+	{
+		super(name, description);
+		this.type = type;
+	}
+
+	protected AbstractDistanceMeasure(
+			AbstractDistanceMeasure<IndexType, DatasetType> objectiveFuncton) throws CoreHunterException
+  {
+                super(objectiveFuncton);
+		setType(objectiveFuncton.getType()) ;
+
+		// the dense cache is created on first use, so these settings still apply
+		distanceCacheStorageType = objectiveFuncton.distanceCacheStorageType ;
+		maximumDistanceCacheSize = objectiveFuncton.maximumDistanceCacheSize ;
+
+		// the copy has the same dataset, so it uses the same distances
+		if (getData() != null)
+		{
+			distanceStore = objectiveFuncton.getDistanceStore() ;
+		}
+  }
+        
+	/**
+	 * Keeps the pairwise distance cache if the new dataset has the same
+	 * contents as the dataset the cache was built for. The digest of those
+	 * contents is kept rather than the dataset itself, so that changes made to
+	 * the dataset in the meantime are detected.
+	 */
+	@Override
+	protected void handleDataSet() throws CoreHunterException
+	{
+		ContentDigest digest = getData() instanceof Matrix ? ((Matrix<?, ?, ?, ?>) getData()).getContentDigest() : null ;
+		
+		if (digest != null && digest.isExact() && digest.equals(distanceCacheDigest))
+		{
+			cachedResult = new DistanceCachedResult();
+		}
+		else
+		{
+			super.handleDataSet();
+		}
+
+		distanceCacheDigest = digest;
+	}
+
+        @Override
+        public void flushCachedResults(){
+            cachedResult = new DistanceCachedResult();
+            // copies keep using the previous distances
+            distanceStore = null;
+        }
+
+	/**
+	 * Gets the storage type of the dense distance cache
+	 * 
+	 * @return {@link DistanceStorageType#DOUBLE} or
+	 *         {@link DistanceStorageType#FLOAT}
+	 */
+	public final DistanceStorageType getDistanceCacheStorageType()
+	{
+		return distanceCacheStorageType;
+	}
+
+	/**
+	 * Sets the storage type of the dense distance cache. Storing the distances
+	 * as <code>float</code> halves the memory needed, at the cost of precision.
+	 * Flushes the cached distances.
+	 * 
+	 * @param distanceCacheStorageType {@link DistanceStorageType#DOUBLE} or
+	 *          {@link DistanceStorageType#FLOAT}
+	 */
+	public final void setDistanceCacheStorageType(
+	    DistanceStorageType distanceCacheStorageType)
+	{
+		if (distanceCacheStorageType != DistanceStorageType.DOUBLE
+		    && distanceCacheStorageType != DistanceStorageType.FLOAT)
+		{
+			throw new IllegalArgumentException("Storage type not supported : "
+			    + distanceCacheStorageType);
+		}
+
+		this.distanceCacheStorageType = distanceCacheStorageType;
+
+		flushCachedResults();
+	}
+
+	/**
+	 * Gets the maximum number of bytes of the dense or bounded distance cache.
+	 * The default is a quarter of the maximum heap size.
+	 * 
+	 * @return the maximum number of bytes of the distance cache
+	 */
+	public final long getMaximumDistanceCacheSize()
+	{
+		return maximumDistanceCacheSize;
+	}
+
+	/**
+	 * Sets the maximum number of bytes of the dense distance cache. If the cache
+	 * of the dataset would need more, a bounded cache of this size is used,
+	 * unless it is too small to hold any distances, in which case distances are
+	 * not memoized. Use 0 to disable memoization. Flushes the cached distances.
+	 * 
+	 * @param maximumDistanceCacheSize the maximum number of bytes
+	 */
+	public final void setMaximumDistanceCacheSize(long maximumDistanceCacheSize)
+	{
+		this.maximumDistanceCacheSize = maximumDistanceCacheSize;
+
+		flushCachedResults();
+	}
+
+	/**
+	 * Gets the dense distance cache
+	 * 
+	 * @return the dense distance cache or <code>null</code> if it is not
+	 *         created yet, or would exceed the maximum size
+	 */
+	public final TriangularDistanceCache getDistanceCache()
+	{
+		DistanceStore<IndexType> store = distanceStore;
+
+		return store != null ? store.dense : null;
+	}
+
+	/**
+	 * Gets the bounded distance cache, used when the dense cache would exceed
+	 * the maximum size. Its counters tell how well the cache fits the search.
+	 * 
+	 * @return the bounded distance cache or <code>null</code> if it is not
+	 *         created yet, or not needed for the current dataset
+	 */
+	public final BoundedDistanceCache getBoundedDistanceCache()
+	{
+		DistanceStore<IndexType> store = distanceStore;
+
+		return store != null ? store.bounded : null;
+	}
+
+	/**
+	 * Calculates and memoizes the distances between all pairs of indices of the
+	 * dataset on the calling thread, instead of calculating them on first use
+	 * 
+	 * @throws CoreHunterException if a distance can not be calculated
+	 */
+	public final void precomputeDistances() throws CoreHunterException
+	{
+		precomputeDistances(1, null);
+	}
+
+	/**
+	 * Calculates and memoizes the distances between all pairs of indices of the
+	 * dataset, instead of calculating them on first use. If the dense cache can
+	 * be used, the distances are calculated by a
+	 * {@link ParallelDistanceCalculator}, each thread using its own function
+	 * created by {@link #createDistanceFunction()}. The distances of datasets
+	 * whose dense cache would exceed the maximum size are not calculated, as
+	 * they can not all be memoized.
+	 */
+	@Override
+	public void precomputeDistances(int threadCount, ProgressListener listener)
+	    throws CoreHunterException
+	{
+		if (isDistancesPrecomputed())
+		{
+			return;
+		}
+
+		DistanceStore<IndexType> store = getDistanceStore();
+
+		if (store.dense != null)
+		{
+			new ParallelDistanceCalculator(threadCount).calculate(store.dense,
+			    new ParallelDistanceCalculator.DistanceFunctionFactory()
+			    {
+				    @Override
+				    public DistanceMatrixFile.DistanceFunction createDistanceFunction()
+				        throws CoreHunterException
+				    {
+					    return AbstractDistanceMeasure.this.createDistanceFunction();
+				    }
+			    }, listener);
+		}
+	}
+
+	@Override
+	public boolean isDistancesPrecomputed()
+	{
+		return isDistanceCacheComplete();
+	}
+
+	/**
+	 * Creates a function that calculates the distances between the indices at
+	 * given positions of the dataset without memoizing them, used by a single
+	 * thread of a precomputation. By default the function uses a copy of this
+	 * measure whose memoization is disabled, so copies must not share any
+	 * other state that is changed while calculating a distance.
+	 * 
+	 * @return the new distance function
+	 * @throws CoreHunterException if the measure can not be copied
+	 */
+	@SuppressWarnings("unchecked")
+	protected DistanceMatrixFile.DistanceFunction createDistanceFunction()
+	    throws CoreHunterException
+	{
+		final AbstractDistanceMeasure<IndexType, DatasetType> measure = (AbstractDistanceMeasure<IndexType, DatasetType>) copy();
+		final List<IndexType> indices = getData().getIndices();
+
+		measure.setMaximumDistanceCacheSize(0);
+
+		return new DistanceMatrixFile.DistanceFunction()
+		{
+			@Override
+			public double calculate(int index1, int index2)
+			    throws CoreHunterException
+			{
+				return measure.calculate(indices.get(index1), indices.get(index2));
+			}
+		};
+	}
+
+        /**
+         * Calculate distance measure score for given integer subset solution. If
+         * no solution is given (null), score is computed for entire dataset.
+         * 
+         * @param solution
+         * @return
+         * @throws CoreHunterException 
+         */
+	@Override
+	public final double calculate(SubsetSolution<IndexType> solution) throws CoreHunterException
+	{
+                
+                Collection<IndexType> indices;
+                // if solution is null, compute for entire dataset
+                if(solution == null){
+                    indices = getData().getIndices();
+                } else {
+                    indices = solution.getSubsetIndices();
+                }
+		
+		List<IndexType> aIndices = cachedResult.getAddedIndices(indices);
+		List<IndexType> rIndices = cachedResult.getRemovedIndices(indices);
+		List<IndexType> cIndices = cachedResult.getCommonIndices(indices);
+
+		double dist;
+
+		if (type == DistanceMeasureType.MEAN_DISTANCE)
+		{
+
+			double total = cachedResult.getTotal();
+			double count = cachedResult.getCount();
+
+			for (IndexType a : aIndices)
+			{
+				for (IndexType b : cIndices)
+				{
+					dist = calculate(a, b);
+					total += dist;
+					count++;
+				}
+			}
+
+			int size = aIndices.size();
+			for (int i = 0; i < size - 1; i++)
+			{
+				for (int j = i + 1; j < size; j++)
+				{
+					dist = calculate(aIndices.get(i), aIndices.get(j));
+					total += dist;
+					count++;
+				}
+			}
+
+			for (IndexType a : rIndices)
+			{
+				for (IndexType b : cIndices)
+				{
+					dist = calculate(a, b);
+					total -= dist;
+					count--;
+				}
+			}
+
+			size = rIndices.size();
+			for (int i = 0; i < size - 1; i++)
+			{
+				for (int j = i + 1; j < size; j++)
+				{
+					dist = calculate(rIndices.get(i), rIndices.get(j));
+					total -= dist;
+					count--;
+				}
+			}
+
+			// recache our results under this id
+			cachedResult.setTotal(total);
+			cachedResult.setCount(count);
+			cachedResult.setIndices(indices);
+
+                        // return 0.0 if no distances left (< 2 items)
+                        if(count == 0){
+                            return 0.0;
+                        } else {
+                            return total / count;
+                        }
+
+		}
+		else
+			if (type == DistanceMeasureType.MIN_DISTANCE)
+			{
+
+				TreeMap<Double, Integer> minFreqTable = cachedResult.getMinFreqTable();
+
+				// add new distances
+
+				for (IndexType a : aIndices)
+				{
+					for (IndexType b : cIndices)
+					{
+						dist = calculate(a, b);
+						Integer freq = minFreqTable.get(dist);
+						if (freq == null)
+						{
+							minFreqTable.put(dist, 1);
+						}
+						else
+						{
+							minFreqTable.put(dist, freq + 1);
+						}
+					}
+				}
+
+				int size = aIndices.size();
+				for (int i = 0; i < size - 1; i++)
+				{
+					for (int j = i + 1; j < size; j++)
+					{
+						dist = calculate(aIndices.get(i), aIndices.get(j));
+						Integer freq = minFreqTable.get(dist);
+						if (freq == null)
+						{
+							minFreqTable.put(dist, 1);
+						}
+						else
+						{
+							minFreqTable.put(dist, freq + 1);
+						}
+					}
+				}
+
+				// remove old distances
+
+				for (IndexType a : rIndices)
+				{
+					for (IndexType b : cIndices)
+					{
+						dist = calculate(a, b);
+						Integer freq = minFreqTable.get(dist);
+						freq--;
+						if (freq == 0)
+						{
+							minFreqTable.remove(dist);
+						}
+						else
+							if (freq > 0)
+							{
+								minFreqTable.put(dist, freq);
+							}
+							else
+							{
+								System.err.println("Error in minimum distance cacheing scheme!"
+								    + "\nThis is a bug, please contact authors!");
+							}
+					}
+				}
+
+				size = rIndices.size();
+				for (int i = 0; i < size - 1; i++)
+				{
+					for (int j = i + 1; j < size; j++)
+					{
+						dist = calculate(rIndices.get(i), rIndices.get(j));
+						Integer freq = minFreqTable.get(dist);
+						freq--;
+						if (freq == 0)
+						{
+							minFreqTable.remove(dist);
+						}
+						else
+							if (freq > 0)
+							{
+								minFreqTable.put(dist, freq);
+							}
+							else
+							{
+								System.err.println("Error in minimum distance cacheing scheme!"
+								    + "\nThis is a bug, please contact authors!");
+							}
+					}
+				}
+
+				// recache results
+				cachedResult.setIndices(indices);
+
+				// System.out.println("Min cache size: " + minFreqTable.size());
+                                if(!minFreqTable.isEmpty()){
+                                    return minFreqTable.firstKey();
+                                } else {
+                                    return 0.0;
+                                }
+
+				/*
+				 * //implementation without cache double minDist = Double.MAX_VALUE; int
+				 * size = Indices.size(); for(int i=0; i<size-1; i++) { for(int
+				 * j=i+1; j<size; j++) { dist = calculate(Indices.get(i),
+				 * Indices.get(j)); if(dist<minDist){ minDist = dist; } } } return
+				 * minDist;
+				 */
+
+			}
+			else
+			{
+				// THIS SHOULD NOT HAPPEN
+				System.err
+				    .println("Unkown distance measure type -- this is a bug! Please contact authors.");
+				System.exit(1);
+				return -1;
+			}
+
+	}
+
+	/**
+	 * Evaluates a move from the total or the frequencies of the distances of
+	 * the subset last evaluated, so only the distances between the moved
+	 * indices and the other members of that subset are needed
+	 */
+	@Override
+	public final double calculateMove(SubsetSolution<IndexType> solution,
+	    IndexType addedIndex, IndexType removedIndex) throws CoreHunterException
+	{
+		Collection<IndexType> indices = cachedResult.getIndices();
+
+		if (type == DistanceMeasureType.MEAN_DISTANCE)
+		{
+			double total = cachedResult.getTotal();
+			double count = cachedResult.getCount();
+
+			for (IndexType index : indices)
+			{
+				if (!index.equals(removedIndex))
+				{
+					if (addedIndex != null)
+					{
+						total += calculate(addedIndex, index);
+						count++;
+					}
+
+					if (removedIndex != null)
+					{
+						total -= calculate(removedIndex, index);
+						count--;
+					}
+				}
+			}
+
+			// 0.0 if no distances left (< 2 items), as for calculate
+			return count == 0 ? 0.0 : total / count;
+		}
+		else
+			if (type == DistanceMeasureType.MIN_DISTANCE)
+			{
+				TreeMap<Double, Integer> minFreqTable = cachedResult.getMinFreqTable();
+				double minDist = Double.POSITIVE_INFINITY;
+
+				if (removedIndex != null)
+				{
+					// the smallest distance whose frequency exceeds the number of
+					// removed distances with the same value
+					double[] removed = new double[indices.size()];
+					int removedCount = 0;
+
+					for (IndexType index : indices)
+					{
+						if (!index.equals(removedIndex))
+						{
+							removed[removedCount++] = calculate(removedIndex, index);
+						}
+					}
+
+					Arrays.sort(removed, 0, removedCount);
+
+					int r = 0;
+
+					for (Map.Entry<Double, Integer> entry : minFreqTable.entrySet())
+					{
+						int freq = entry.getValue();
+
+						while (r < removedCount
+						    && Double.compare(removed[r], entry.getKey()) <= 0)
+						{
+							if (Double.compare(removed[r], entry.getKey()) == 0)
+							{
+								freq--;
+							}
+
+							r++;
+						}
+
+						if (freq > 0)
+						{
+							minDist = entry.getKey();
+							break;
+						}
+					}
+				}
+				else
+					if (!minFreqTable.isEmpty())
+					{
+						minDist = minFreqTable.firstKey();
+					}
+
+				if (addedIndex != null)
+				{
+					for (IndexType index : indices)
+					{
+						if (!index.equals(removedIndex))
+						{
+							double dist = calculate(addedIndex, index);
+
+							// ordered as the keys of the frequency table
+							if (Double.compare(dist, minDist) < 0)
+							{
+								minDist = dist;
+							}
+						}
+					}
+				}
+
+				return minDist == Double.POSITIVE_INFINITY ? 0.0 : minDist;
+			}
+			else
+			{
+				throw new CoreHunterException("Unknown distance measure type : "
+				    + type);
+			}
+	}
+
+	public abstract double calculate(IndexType index1, IndexType index2) throws UnknownIndexException;
+
+
+	public final DistanceMeasureType getType()
+	{
+		return type;
+	}
+
+	public final void setType(DistanceMeasureType type)
+	{
+		this.type = type;
+	}
+
+	protected double getMemoizedValue(IndexType id1, IndexType id2)
+	{
+                DistanceStore<IndexType> store = distanceStore;
+
+                if(store == null){
+                    return MISSING_VAL;
+                }
+
+                return store.getDistance(id1, id2);
+	}
+
+	protected void setMemoizedValue(IndexType id1, IndexType id2, double v)
+	{
+                getDistanceStore().setDistance(id1, id2, v);
+	}
+
+	private boolean isDistanceCacheComplete()
+	{
+		TriangularDistanceCache distanceCache = getDistanceCache();
+
+		return distanceCache != null
+		    && distanceCache.getComputedCount() == distanceCache.getDistanceCount();
+	}
+
+	/**
+	 * Gets the distance store of the current dataset, creating it on first use.
+	 * A copy made while the store is created by another thread may get its own
+	 * store, which is harmless.
+	 */
+	private DistanceStore<IndexType> getDistanceStore()
+	{
+		DistanceStore<IndexType> store = distanceStore;
+
+		if (store == null)
+		{
+			synchronized (this)
+			{
+				store = distanceStore;
+
+				if (store == null)
+				{
+					store = createDistanceStore();
+					distanceStore = store;
+				}
+			}
+		}
+
+		return store;
+	}
+
+	/**
+	 * Creates a store with a dense distance cache if the cache fits in the
+	 * maximum size, or else with a bounded cache of the maximum size, unless
+	 * that is too small to be of use. Indices that are not the positions
+	 * <code>0..n-1</code> are looked up in a map to their positions.
+	 */
+	private DistanceStore<IndexType> createDistanceStore()
+	{
+		List<IndexType> indices = getData().getIndices();
+
+		int size = indices.size();
+
+		Map<IndexType, Integer> positions = createPositions(indices);
+
+		if (TriangularDistanceCache.getMemorySize(size, distanceCacheStorageType) > maximumDistanceCacheSize)
+		{
+			if (maximumDistanceCacheSize < BoundedDistanceCache.SLOT_SIZE
+			    * MINIMUM_BOUNDED_DISTANCE_CACHE_SLOTS)
+			{
+				return new DistanceStore<IndexType>(null, null, positions);
+			}
+
+			return new DistanceStore<IndexType>(null, new BoundedDistanceCache(
+			    maximumDistanceCacheSize), positions);
+		}
+
+		return new DistanceStore<IndexType>(new TriangularDistanceCache(size,
+		    distanceCacheStorageType), null, positions);
+	}
+
+	/**
+	 * Maps indices to their positions, by which distances are stored
+	 * 
+	 * @param indices the indices of a dataset
+	 * @return the positions of the indices, or <code>null</code> if the indices
+	 *         are the positions <code>0..n-1</code>
+	 */
+	protected static <IndexType> Map<IndexType, Integer> createPositions(
+	    List<IndexType> indices)
+	{
+		int size = indices.size();
+
+		for (int i = 0; i < size; ++i)
+		{
+			Object index = indices.get(i);
+
+			if (!(index instanceof Integer) || (Integer) index != i)
+			{
+				Map<IndexType, Integer> positions = new HashMap<IndexType, Integer>(
+				    size * 2);
+
+				for (int j = 0; j < size; ++j)
+				{
+					positions.put(indices.get(j), j);
+				}
+
+				return positions;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Gets the position of an index
+	 * 
+	 * @param positions the positions created by {@link #createPositions(List)}
+	 * @param id the index
+	 * @return the position or <code>-1</code> if it is not an index of the
+	 *         dataset
+	 */
+	protected static <IndexType> int getPosition(
+	    Map<IndexType, Integer> positions, IndexType id)
+	{
+		if (positions == null)
+		{
+			return (Integer) id;
+		}
+
+		Integer position = positions.get(id);
+
+		return position != null ? position : -1;
+	}
+
+	/**
+	 * The memoized distances of a dataset, either in a dense cache or a bounded
+	 * cache, which can be read and written by several threads at once. The
+	 * positions of the indices are only read once the store is created.
+	 */
+	private static final class DistanceStore<IndexType>
+	{
+		private final TriangularDistanceCache	dense;
+		private final BoundedDistanceCache	  bounded;
+		private final Map<IndexType, Integer>	positions;
+
+		private DistanceStore(TriangularDistanceCache dense,
+		    BoundedDistanceCache bounded, Map<IndexType, Integer> positions)
+		{
+			this.dense = dense;
+			this.bounded = bounded;
+			this.positions = positions;
+		}
+
+		private double getDistance(IndexType id1, IndexType id2)
+		{
+			if (dense == null && bounded == null)
+			{
+				return MISSING_VAL;
+			}
+
+			int position1 = getPosition(positions, id1);
+			int position2 = getPosition(positions, id2);
+
+			if (position1 < 0 || position2 < 0)
+			{
+				return MISSING_VAL;
+			}
+
+			if (dense != null)
+			{
+				return dense.getDistance(position1, position2, MISSING_VAL);
+			}
+			else
+			{
+				return bounded.getDistance(position1, position2, MISSING_VAL);
+			}
+		}
+
+		private void setDistance(IndexType id1, IndexType id2, double distance)
+		{
+			if (dense == null && bounded == null)
+			{
+				return;
+			}
+
+			int position1 = getPosition(positions, id1);
+			int position2 = getPosition(positions, id2);
+
+			if (position1 < 0 || position2 < 0)
+			{
+				return;
+			}
+
+			if (dense != null)
+			{
+				dense.setDistance(position1, position2, distance);
+			}
+			else
+			{
+				bounded.setDistance(position1, position2, distance);
+			}
+		}
+	}
+
+	private class DistanceCachedResult extends CachedResult<IndexType>
+	{
+		private double		               pTotal;
+		private double		               pCnt;
+
+		private TreeMap<Double, Integer>	minFreqTable;
+
+		public DistanceCachedResult()
+		{
+			super();
+			pTotal = 0.0;
+			pCnt = 0.0;
+
+			minFreqTable = new TreeMap<Double, Integer>();
+		}
+
+		public double getTotal()
+		{
+			return pTotal;
+		}
+
+		public double getCount()
+		{
+			return pCnt;
+		}
+
+		public TreeMap<Double, Integer> getMinFreqTable()
+		{
+			return minFreqTable;
+		}
+
+		public void setTotal(double total)
+		{
+			pTotal = total;
+		}
+
+		public void setCount(double count)
+		{
+			pCnt = count;
+		}
+
+	}
+
+}
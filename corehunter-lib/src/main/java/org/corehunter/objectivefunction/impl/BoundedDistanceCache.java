@@ -0,0 +1,503 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.objectivefunction.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Cache of the distances between pairs of different indices that holds at
+ * most as many distances as fit in a given number of bytes, for datasets
+ * whose {@link TriangularDistanceCache} would be too large. Once full, the
+ * least recently used distances are approximately evicted with the CLOCK
+ * algorithm.
+ *
+ * A pair is identified by a <code>long</code> packing the larger index in the
+ * high and the smaller index in the low 32 bits, see
+ * {@link #getPairId(int, int)}. Pairs are spread over a power of two number
+ * of segments, each an open addressing hash table with its own lock, so
+ * threads using different segments do not wait on each other. Every slot
+ * needs {@link #SLOT_SIZE} bytes and at most three quarters of the slots of
+ * a segment are used. Lookups do not allocate.
+ *
+ * Only adding and evicting distances take the lock of a segment. Lookups read
+ * the slots without it and check a version of the segment, that writers
+ * change before and after each modification, to be sure the pair id and the
+ * distance they read belong together. A lookup that overlaps a modification
+ * of its segment is counted and reported as a miss.
+ *
+ * The numbers of hits, misses and evictions are counted per segment and
+ * summed when read.
+ */
+public final class BoundedDistanceCache
+{
+	/**
+	 * The number of bytes of a slot : the pair id, the distance and the
+	 * reference bit of the CLOCK algorithm
+	 */
+	public static final int	SLOT_SIZE	        = 17;
+
+	private static final int	MINIMUM_SEGMENT_SLOTS	= 16;
+	private static final int	MAXIMUM_SEGMENT_SLOTS	= 1 << 30;
+
+	private final Segment[]	 segments;
+	private final int	       segmentMask;
+
+	/**
+	 * Creates an empty cache with four segments per available processor, or
+	 * less if the segments would become very small
+	 *
+	 * @param maximumSize the maximum number of bytes of the cache
+	 * @throws IllegalArgumentException if the maximum size is too small for a
+	 *           single segment
+	 */
+	public BoundedDistanceCache(long maximumSize)
+	{
+		this(maximumSize, 4 * Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates an empty cache
+	 *
+	 * @param maximumSize the maximum number of bytes of the cache
+	 * @param segmentCount the preferred number of segments, rounded up to a
+	 *          power of two and reduced if the segments would become very small
+	 * @throws IllegalArgumentException if the maximum size is too small for a
+	 *           single segment
+	 */
+	public BoundedDistanceCache(long maximumSize, int segmentCount)
+	{
+		long slotCount = maximumSize / SLOT_SIZE;
+
+		if (slotCount < MINIMUM_SEGMENT_SLOTS)
+		{
+			throw new IllegalArgumentException("Maximum size too small : "
+			    + maximumSize);
+		}
+
+		int segmentBits = 32 - Integer.numberOfLeadingZeros(Math.max(1,
+		    segmentCount) - 1);
+
+		while (segmentBits > 0
+		    && (slotCount >>> segmentBits) < MINIMUM_SEGMENT_SLOTS)
+		{
+			--segmentBits;
+		}
+
+		// the largest power of two that fits in the share of a segment
+		long segmentSlots = Math.min(MAXIMUM_SEGMENT_SLOTS,
+		    Long.highestOneBit(slotCount >>> segmentBits));
+
+		segments = new Segment[1 << segmentBits];
+		segmentMask = segments.length - 1;
+
+		for (int i = 0; i < segments.length; ++i)
+		{
+			segments[i] = new Segment((int) segmentSlots);
+		}
+	}
+
+	/**
+	 * Gets the id of a pair of indices, which does not depend on their order
+	 *
+	 * @param index1 the first index
+	 * @param index2 the second index
+	 * @return the larger index in the high and the smaller index in the low
+	 *         32 bits
+	 */
+	public static long getPairId(int index1, int index2)
+	{
+		return index1 > index2 ? ((long) index1 << 32) | index2
+		    : ((long) index2 << 32) | index1;
+	}
+
+	/**
+	 * Gets the number of segments
+	 *
+	 * @return the number of segments
+	 */
+	public int getSegmentCount()
+	{
+		return segments.length;
+	}
+
+	/**
+	 * Gets the maximum number of distances that can be cached
+	 *
+	 * @return the maximum number of distances
+	 */
+	public long getCapacity()
+	{
+		return (long) segments.length * segments[0].maximumEntryCount;
+	}
+
+	/**
+	 * Gets the number of bytes used by the cache
+	 *
+	 * @return the number of bytes of all slots
+	 */
+	public long getMemorySize()
+	{
+		return (long) segments.length * segments[0].keys.length() * SLOT_SIZE;
+	}
+
+	/**
+	 * Gets the number of distances that are cached
+	 *
+	 * @return the number of distances that are cached
+	 */
+	public long getEntryCount()
+	{
+		long count = 0;
+
+		for (Segment segment : segments)
+		{
+			synchronized (segment)
+			{
+				count += segment.entryCount;
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Gets the number of lookups that found a distance
+	 *
+	 * @return the number of hits
+	 */
+	public long getHitCount()
+	{
+		long count = 0;
+
+		for (Segment segment : segments)
+		{
+			count += segment.hitCount.get();
+		}
+
+		return count;
+	}
+
+	/**
+	 * Gets the number of lookups that did not find a distance
+	 *
+	 * @return the number of misses
+	 */
+	public long getMissCount()
+	{
+		long count = 0;
+
+		for (Segment segment : segments)
+		{
+			count += segment.missCount.get();
+		}
+
+		return count;
+	}
+
+	/**
+	 * Gets the number of distances that were evicted to make room for others
+	 *
+	 * @return the number of evictions
+	 */
+	public long getEvictionCount()
+	{
+		long count = 0;
+
+		for (Segment segment : segments)
+		{
+			synchronized (segment)
+			{
+				count += segment.evictionCount;
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Gets the distance between two indices
+	 *
+	 * @param index1 the first index
+	 * @param index2 the second index
+	 * @param missingValue the value returned if the distance is not cached
+	 * @return the distance or <code>missingValue</code>
+	 */
+	public double getDistance(int index1, int index2, double missingValue)
+	{
+		if (index1 == index2)
+		{
+			return missingValue;
+		}
+
+		long pairId = getPairId(index1, index2);
+		long hash = hash(pairId);
+
+		return segments[(int) (hash >>> 32) & segmentMask].get(pairId, (int) hash,
+		    missingValue);
+	}
+
+	/**
+	 * Sets the distance between two indices, evicting another distance if the
+	 * segment of the pair is full. The distance between an index and itself is
+	 * not cached.
+	 *
+	 * @param index1 the first index
+	 * @param index2 the second index
+	 * @param distance the distance
+	 */
+	public void setDistance(int index1, int index2, double distance)
+	{
+		if (index1 == index2)
+		{
+			return;
+		}
+
+		long pairId = getPairId(index1, index2);
+		long hash = hash(pairId);
+
+		segments[(int) (hash >>> 32) & segmentMask].put(pairId, (int) hash,
+		    distance);
+	}
+
+	/**
+	 * Removes all distances and resets the counters
+	 */
+	public void clear()
+	{
+		for (Segment segment : segments)
+		{
+			synchronized (segment)
+			{
+				segment.clear();
+			}
+		}
+	}
+
+	/**
+	 * Mixes the bits of a pair id, the high 32 bits select the segment and the
+	 * low 32 bits the first slot in the segment
+	 */
+	private static long hash(long pairId)
+	{
+		long hash = (pairId ^ (pairId >>> 33)) * 0xFF51AFD7ED558CCDL;
+
+		hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+
+		return hash ^ (hash >>> 33);
+	}
+
+	/**
+	 * Open addressing hash table with linear probing. Empty slots have the pair
+	 * id 0, which is never used as the indices of a pair are different. The
+	 * pair ids and the bits of the distances are volatile so that a lookup
+	 * without the lock sees them in the order they were written, the reference
+	 * bits are only a hint for the eviction and may be written racily.
+	 */
+	private static final class Segment
+	{
+		private static final long	EMPTY	= 0L;
+
+		private final AtomicLongArray	keys;
+		private final AtomicLongArray	values;
+		private final boolean[]	      referenced;
+		private final int	            mask;
+		private final int	            maximumEntryCount;
+		private final AtomicLong	    hitCount	= new AtomicLong();
+		private final AtomicLong	    missCount	= new AtomicLong();
+		// odd while a writer modifies the slots
+		private volatile int	        version;
+		private int	                  entryCount;
+		private int	                  hand;
+		private long	                evictionCount;
+
+		private Segment(int slotCount)
+		{
+			keys = new AtomicLongArray(slotCount);
+			values = new AtomicLongArray(slotCount);
+			referenced = new boolean[slotCount];
+			mask = slotCount - 1;
+			maximumEntryCount = slotCount - slotCount / 4;
+		}
+
+		private double get(long pairId, int hash, double missingValue)
+		{
+			int startVersion = version;
+
+			if ((startVersion & 1) == 0)
+			{
+				int slot = hash & mask;
+				long key = keys.get(slot);
+
+				// the probe is bounded as the slots may change while it runs
+				for (int probes = 0; key != pairId && key != EMPTY
+				    && probes <= mask; ++probes)
+				{
+					slot = (slot + 1) & mask;
+					key = keys.get(slot);
+				}
+
+				if (key == pairId)
+				{
+					long bits = values.get(slot);
+
+					// no writer moved or replaced the entry while it was read
+					if (version == startVersion)
+					{
+						hitCount.incrementAndGet();
+						referenced[slot] = true;
+
+						return Double.longBitsToDouble(bits);
+					}
+				}
+			}
+
+			missCount.incrementAndGet();
+
+			return missingValue;
+		}
+
+		private synchronized void put(long pairId, int hash, double distance)
+		{
+			++version;
+
+			int slot = find(pairId, hash);
+
+			if (keys.get(slot) != pairId)
+			{
+				if (entryCount == maximumEntryCount)
+				{
+					evict();
+
+					// removing an entry can move others, including into this slot
+					slot = find(pairId, hash);
+				}
+
+				keys.set(slot, pairId);
+				referenced[slot] = false;
+				++entryCount;
+			}
+
+			values.set(slot, Double.doubleToRawLongBits(distance));
+
+			++version;
+		}
+
+		/**
+		 * Finds the slot of a pair, or the empty slot where it would be added
+		 */
+		private int find(long pairId, int hash)
+		{
+			int slot = hash & mask;
+			long key = keys.get(slot);
+
+			while (key != pairId && key != EMPTY)
+			{
+				slot = (slot + 1) & mask;
+				key = keys.get(slot);
+			}
+
+			return slot;
+		}
+
+		/**
+		 * Removes the first entry found by the hand that was not referenced
+		 * since the hand last passed, clearing the reference bits on its way
+		 */
+		private void evict()
+		{
+			while (true)
+			{
+				int slot = hand;
+
+				hand = (hand + 1) & mask;
+
+				if (keys.get(slot) != EMPTY)
+				{
+					if (referenced[slot])
+					{
+						referenced[slot] = false;
+					}
+					else
+					{
+						remove(slot);
+						++evictionCount;
+
+						return;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Removes the entry of a slot, moving back the following entries of the
+		 * probe sequence so that no lookup stops at the freed slot too early
+		 */
+		private void remove(int slot)
+		{
+			int gap = slot;
+			int next = slot;
+
+			while (true)
+			{
+				next = (next + 1) & mask;
+
+				long key = keys.get(next);
+
+				if (key == EMPTY)
+				{
+					break;
+				}
+
+				int home = (int) hash(key) & mask;
+
+				// the entry can move to the gap unless its home slot lies
+				// cyclically after the gap, up to its current slot
+				boolean between = gap <= next ? gap < home && home <= next
+				    : gap < home || home <= next;
+
+				if (!between)
+				{
+					keys.set(gap, key);
+					values.set(gap, values.get(next));
+					referenced[gap] = referenced[next];
+					gap = next;
+				}
+			}
+
+			keys.set(gap, EMPTY);
+			referenced[gap] = false;
+			--entryCount;
+		}
+
+		private void clear()
+		{
+			++version;
+
+			for (int slot = 0; slot <= mask; ++slot)
+			{
+				keys.set(slot, EMPTY);
+				referenced[slot] = false;
+			}
+
+			entryCount = 0;
+			hand = 0;
+			hitCount.set(0);
+			missCount.set(0);
+			evictionCount = 0;
+
+			++version;
+		}
+	}
+}
@@ -0,0 +1,324 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.objectivefunction.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+
+import org.corehunter.CoreHunterException;
+
+/**
+ * Binary file of the distances between all pairs of accessions of a dataset,
+ * so that distances computed by one run can be reused by later runs on the
+ * same dataset. The file starts with a header containing the name of the
+ * distance measure, a digest of the contents of the dataset and the number
+ * of accessions, followed by the upper triangle of the distance matrix as 8
+ * byte big-endian doubles, row by row. The distance between accessions
+ * <code>i &lt; j</code> is found at position
+ * <code>i * (2n - i - 1) / 2 + j - i - 1</code>.
+ * 
+ * Files are opened memory-mapped and read-only, so the distances are paged in
+ * by the operating system and shared by all processes and objective functions
+ * using the same file. A file whose header does not match the measure or the
+ * digest of the dataset is stale, and is not opened.
+ */
+public final class DistanceMatrixFile
+{
+	/**
+	 * The extension of distance matrix files
+	 */
+	public static final String	FILE_EXTENSION	= ".chdm";
+
+	private static final int	  MAGIC	        = 0x4348444D;	 // "CHDM"
+	private static final int	  VERSION	      = 1;
+	private static final int	  VALUE_SIZE	  = 8;
+	// each segment maps 2^27 values, that is 1GB
+	private static final int	  SEGMENT_SHIFT	= 27;
+	private static final int	  SEGMENT_MASK	= (1 << SEGMENT_SHIFT) - 1;
+
+	private File	              file;
+	private String	            measureName;
+	private String	            digest;
+	private int	                size;
+	private DoubleBuffer[]	    segments;
+
+	/**
+	 * Calculates the distance between two accessions, used to create a file
+	 */
+	public interface DistanceFunction
+	{
+		/**
+		 * Calculates the distance between two accessions
+		 * 
+		 * @param index1 the position of the first accession
+		 * @param index2 the position of the second accession, greater than the
+		 *          first
+		 * @return the distance
+		 * @throws CoreHunterException if the distance can not be calculated
+		 */
+		public double calculate(int index1, int index2) throws CoreHunterException;
+	}
+
+	private DistanceMatrixFile(File file, String measureName, String digest,
+	    int size)
+	{
+		this.file = file;
+		this.measureName = measureName;
+		this.digest = digest;
+		this.size = size;
+	}
+
+	/**
+	 * Opens an existing file if it matches a measure and dataset
+	 * 
+	 * @param file the file
+	 * @param measureName the name of the distance measure
+	 * @param digest the digest of the contents of the dataset
+	 * @param size the number of accessions in the dataset
+	 * @return the opened file, or <code>null</code> if the file does not exist,
+	 *         is not a distance matrix file or is stale
+	 * @throws CoreHunterException if the file can not be read
+	 */
+	public static DistanceMatrixFile open(File file, String measureName,
+	    String digest, int size) throws CoreHunterException
+	{
+		if (!file.isFile())
+		{
+			return null;
+		}
+
+		RandomAccessFile randomAccessFile = null;
+
+		try
+		{
+			randomAccessFile = new RandomAccessFile(file, "r");
+
+			if (randomAccessFile.length() < 12 || randomAccessFile.readInt() != MAGIC
+			    || randomAccessFile.readInt() != VERSION
+			    || !measureName.equals(randomAccessFile.readUTF())
+			    || !digest.equals(randomAccessFile.readUTF())
+			    || randomAccessFile.readInt() != size)
+			{
+				return null;
+			}
+
+			long offset = randomAccessFile.getFilePointer();
+			long count = getValueCount(size);
+
+			if (randomAccessFile.length() != offset + count * VALUE_SIZE)
+			{
+				// truncated, for example by an interrupted run
+				return null;
+			}
+
+			DistanceMatrixFile distanceMatrixFile = new DistanceMatrixFile(file,
+			    measureName, digest, size);
+
+			distanceMatrixFile.map(randomAccessFile.getChannel(), offset, count);
+
+			return distanceMatrixFile;
+		}
+		catch (IOException e)
+		{
+			// a header that can not be read does not match either
+			return null;
+		}
+		finally
+		{
+			// the mappings stay valid after the file is closed
+			close(randomAccessFile);
+		}
+	}
+
+	/**
+	 * Calculates the distances between all pairs of accessions and writes them
+	 * to a file, which is then opened. The distances are written to a
+	 * temporary file that replaces the file once it is complete, so other
+	 * processes never see a partial file.
+	 * 
+	 * @param file the file
+	 * @param measureName the name of the distance measure
+	 * @param digest the digest of the contents of the dataset
+	 * @param size the number of accessions in the dataset
+	 * @param function the distance function
+	 * @return the opened file
+	 * @throws CoreHunterException if a distance can not be calculated or the
+	 *           file can not be written
+	 */
+	public static DistanceMatrixFile create(File file, String measureName,
+	    String digest, int size, DistanceFunction function)
+	    throws CoreHunterException
+	{
+		File temporaryFile = new File(file.getPath() + ".tmp");
+		DataOutputStream output = null;
+
+		try
+		{
+			output = new DataOutputStream(new BufferedOutputStream(
+			    new FileOutputStream(temporaryFile), 1 << 16));
+
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			output.writeUTF(measureName);
+			output.writeUTF(digest);
+			output.writeInt(size);
+
+			for (int i = 0; i < size; ++i)
+			{
+				for (int j = i + 1; j < size; ++j)
+				{
+					output.writeDouble(function.calculate(i, j));
+				}
+			}
+
+			output.close();
+			output = null;
+
+			if ((file.exists() && !file.delete()) || !temporaryFile.renameTo(file))
+			{
+				throw new CoreHunterException("Can not replace file : "
+				    + file.getAbsolutePath());
+			}
+		}
+		catch (IOException e)
+		{
+			throw new CoreHunterException(e);
+		}
+		finally
+		{
+			if (output != null)
+			{
+				close(output);
+				temporaryFile.delete();
+			}
+		}
+
+		DistanceMatrixFile distanceMatrixFile = open(file, measureName, digest,
+		    size);
+
+		if (distanceMatrixFile == null)
+		{
+			throw new CoreHunterException("Can not open file : "
+			    + file.getAbsolutePath());
+		}
+
+		return distanceMatrixFile;
+	}
+
+	/**
+	 * Gets the distance between two accessions
+	 * 
+	 * @param index1 the position of the first accession
+	 * @param index2 the position of the second accession
+	 * @return the distance, <code>0</code> if the positions are equal
+	 */
+	public double getDistance(int index1, int index2)
+	{
+		if (index1 == index2)
+		{
+			return 0;
+		}
+
+		int i = Math.min(index1, index2);
+		int j = Math.max(index1, index2);
+
+		long k = (long) i * (2L * size - i - 1) / 2 + j - i - 1;
+
+		return segments[(int) (k >>> SEGMENT_SHIFT)].get((int) (k & SEGMENT_MASK));
+	}
+
+	/**
+	 * Gets the file
+	 * 
+	 * @return the file
+	 */
+	public File getFile()
+	{
+		return file;
+	}
+
+	/**
+	 * Gets the name of the distance measure
+	 * 
+	 * @return the name of the distance measure
+	 */
+	public String getMeasureName()
+	{
+		return measureName;
+	}
+
+	/**
+	 * Gets the digest of the contents of the dataset
+	 * 
+	 * @return the digest of the contents of the dataset
+	 */
+	public String getDigest()
+	{
+		return digest;
+	}
+
+	/**
+	 * Gets the number of accessions in the dataset
+	 * 
+	 * @return the number of accessions in the dataset
+	 */
+	public int getSize()
+	{
+		return size;
+	}
+
+	private static long getValueCount(int size)
+	{
+		return (long) size * (size - 1) / 2;
+	}
+
+	private void map(FileChannel channel, long offset, long count)
+	    throws IOException
+	{
+		int segmentCount = (int) ((count + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+
+		segments = new DoubleBuffer[segmentCount];
+
+		for (int s = 0; s < segmentCount; ++s)
+		{
+			long first = (long) s << SEGMENT_SHIFT;
+			long length = Math.min(count - first, 1L << SEGMENT_SHIFT);
+
+			segments[s] = channel.map(FileChannel.MapMode.READ_ONLY,
+			    offset + first * VALUE_SIZE, length * VALUE_SIZE).asDoubleBuffer();
+		}
+	}
+
+	private static void close(Closeable closeable)
+	{
+		if (closeable != null)
+		{
+			try
+			{
+				closeable.close();
+			}
+			catch (IOException e)
+			{
+				// ignore
+			}
+		}
+	}
+}
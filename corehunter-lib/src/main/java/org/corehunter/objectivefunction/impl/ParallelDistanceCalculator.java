@@ -0,0 +1,255 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.objectivefunction.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.objectivefunction.PrecomputableDistanceMeasure.ProgressListener;
+
+/**
+ * Calculates the distances between all pairs of indices into a
+ * {@link TriangularDistanceCache} on a pool of threads. The upper triangle of
+ * the distance matrix is split into square tiles of {@link #TILE_SIZE} rows
+ * and columns, so that the data of the accessions of a tile stays in the
+ * processor caches while the distances of the tile are calculated. Each
+ * thread takes the next block of rows and calculates its tiles from left to
+ * right, the largest blocks being taken first.
+ * 
+ * Each thread uses its own distance function, so distance functions do not
+ * need to be thread-safe. The progress is reported on the calling thread,
+ * after each block of rows if no other threads are used.
+ */
+public class ParallelDistanceCalculator
+{
+	/**
+	 * The number of rows and columns of a tile
+	 */
+	public static final int	  TILE_SIZE	        = 128;
+
+	private static final long	PROGRESS_INTERVAL	= 500;	// milliseconds
+
+	private int	              threadCount;
+
+	/**
+	 * Creates the distance functions used by the threads
+	 */
+	public interface DistanceFunctionFactory
+	{
+		/**
+		 * Creates a distance function for a single thread
+		 * 
+		 * @return the new distance function
+		 * @throws CoreHunterException if the function can not be created
+		 */
+		public DistanceMatrixFile.DistanceFunction createDistanceFunction()
+		    throws CoreHunterException;
+	}
+
+	/**
+	 * Creates a calculator
+	 * 
+	 * @param threadCount the number of threads, or <code>0</code> to use as
+	 *          many threads as there are available processors
+	 */
+	public ParallelDistanceCalculator(int threadCount)
+	{
+		this.threadCount = threadCount > 0 ? threadCount : Runtime.getRuntime()
+		    .availableProcessors();
+	}
+
+	public final int getThreadCount()
+	{
+		return threadCount;
+	}
+
+	/**
+	 * Calculates the distances between all pairs of indices of a cache and
+	 * marks them as computed
+	 * 
+	 * @param cache the cache
+	 * @param factory the factory of the distance functions
+	 * @param listener the listener of the progress or <code>null</code>
+	 * @throws CoreHunterException if a distance can not be calculated, in which
+	 *           case the error of the first thread that failed is thrown
+	 */
+	public void calculate(final TriangularDistanceCache cache,
+	    final DistanceFunctionFactory factory, ProgressListener listener)
+	    throws CoreHunterException
+	{
+		final int blockCount = (cache.getSize() + TILE_SIZE - 1) / TILE_SIZE;
+		final AtomicInteger nextBlock = new AtomicInteger();
+		final AtomicLong calculatedCount = new AtomicLong();
+
+		int workerCount = Math.min(threadCount, blockCount);
+
+		if (workerCount <= 1)
+		{
+			calculateBlocks(cache, factory.createDistanceFunction(), nextBlock,
+			    blockCount, calculatedCount, listener);
+		}
+		else
+		{
+			ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+
+			try
+			{
+				List<Future<Object>> futures = new ArrayList<Future<Object>>(
+				    workerCount);
+
+				for (int i = 0; i < workerCount; ++i)
+				{
+					futures.add(executor.submit(new Callable<Object>()
+					{
+						@Override
+						public Object call() throws CoreHunterException
+						{
+							try
+							{
+								calculateBlocks(cache, factory.createDistanceFunction(),
+								    nextBlock, blockCount, calculatedCount, null);
+							}
+							catch (CoreHunterException e)
+							{
+								// stops the other threads after their current block
+								nextBlock.set(blockCount);
+
+								throw e;
+							}
+
+							return null;
+						}
+					}));
+				}
+
+				executor.shutdown();
+
+				while (!executor.awaitTermination(PROGRESS_INTERVAL,
+				    TimeUnit.MILLISECONDS))
+				{
+					if (listener != null)
+					{
+						listener.progress((double) calculatedCount.get()
+						    / cache.getDistanceCount());
+					}
+				}
+
+				for (Future<Object> future : futures)
+				{
+					get(future);
+				}
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new CoreHunterException(e);
+			}
+			finally
+			{
+				executor.shutdownNow();
+			}
+		}
+
+		// all threads are terminated, so their distances are visible here
+		cache.setAllComputed();
+
+		if (listener != null)
+		{
+			listener.progress(1.0);
+		}
+	}
+
+	/**
+	 * Calculates the blocks of rows that are not taken by other threads,
+	 * reporting the progress after each block if a listener is given
+	 */
+	private static void calculateBlocks(TriangularDistanceCache cache,
+	    DistanceMatrixFile.DistanceFunction function, AtomicInteger nextBlock,
+	    int blockCount, AtomicLong calculatedCount, ProgressListener listener)
+	    throws CoreHunterException
+	{
+		int size = cache.getSize();
+		double[] distances = new double[TILE_SIZE];
+		int block;
+
+		while ((block = nextBlock.getAndIncrement()) < blockCount)
+		{
+			int firstRow = block * TILE_SIZE;
+			int lastRow = Math.min(firstRow + TILE_SIZE, size);
+
+			for (int firstColumn = firstRow; firstColumn < size; firstColumn += TILE_SIZE)
+			{
+				int lastColumn = Math.min(firstColumn + TILE_SIZE, size);
+				long count = 0;
+
+				for (int i = firstRow; i < lastRow; ++i)
+				{
+					int j = Math.max(firstColumn, i + 1);
+
+					for (int k = 0; j + k < lastColumn; ++k)
+					{
+						distances[k] = function.calculate(i, j + k);
+					}
+
+					if (j < lastColumn)
+					{
+						cache.storeDistances(i, j, distances, lastColumn - j);
+						count += lastColumn - j;
+					}
+				}
+
+				calculatedCount.addAndGet(count);
+			}
+
+			if (listener != null)
+			{
+				listener.progress((double) calculatedCount.get()
+				    / cache.getDistanceCount());
+			}
+		}
+	}
+
+	private static <T> T get(Future<T> future) throws CoreHunterException
+	{
+		try
+		{
+			return future.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new CoreHunterException(e);
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof CoreHunterException)
+			{
+				throw (CoreHunterException) e.getCause();
+			}
+			else
+			{
+				throw new CoreHunterException(e.getCause());
+			}
+		}
+	}
+}
@@ -0,0 +1,322 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.objectivefunction.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.corehunter.model.distance.DistanceStorageType;
+import org.corehunter.model.distance.impl.AbstractAccessionDistanceMatrix;
+
+/**
+ * Dense cache of the distances between all pairs of different indices
+ * <code>0..n-1</code>, stored in the upper triangle order of
+ * {@link AbstractAccessionDistanceMatrix#getPosition(int, int, int)} as
+ * <code>double</code> or <code>float</code> values. A bitmap records which
+ * distances are computed, so any value, including {@link Double#NaN}, can be
+ * cached. The values are split into segments of 2^27 entries, so the number
+ * of distances is not limited by the maximum size of an array.
+ *
+ * The cache needs {@link #getMemorySize(int, DistanceStorageType)} bytes,
+ * which are allocated when it is created. Lookups do not allocate. All
+ * distances can be calculated on several threads with a
+ * {@link ParallelDistanceCalculator}.
+ *
+ * Distances can be read and set by several threads at once, without locking.
+ * The bit of a distance is set atomically after its value is stored, so a
+ * thread that finds a distance computed also finds its value. Threads that
+ * set the same distance at the same time must set the same value.
+ */
+public final class TriangularDistanceCache
+{
+	private static final int	SEGMENT_SHIFT	= 27;
+	private static final int	SEGMENT_MASK	= (1 << SEGMENT_SHIFT) - 1;
+
+	private final int	       size;
+	private final long	     distanceCount;
+	private double[][]	     doubleSegments;
+	private float[][]	       floatSegments;
+	private final AtomicLongArray	computed;
+	private final AtomicLong	   computedCount	= new AtomicLong();
+
+	/**
+	 * Creates an empty cache
+	 *
+	 * @param size the number of indices
+	 * @param storageType {@link DistanceStorageType#DOUBLE} or
+	 *          {@link DistanceStorageType#FLOAT}
+	 * @throws IllegalArgumentException if the storage type is not supported
+	 */
+	public TriangularDistanceCache(int size, DistanceStorageType storageType)
+	{
+		this.size = size;
+
+		distanceCount = AbstractAccessionDistanceMatrix.getDistanceCount(size);
+
+		int segmentCount = (int) ((distanceCount + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+
+		switch (storageType)
+		{
+			case DOUBLE:
+				doubleSegments = new double[segmentCount][];
+
+				for (int i = 0; i < segmentCount; ++i)
+				{
+					doubleSegments[i] = new double[getSegmentSize(i)];
+				}
+				break;
+			case FLOAT:
+				floatSegments = new float[segmentCount][];
+
+				for (int i = 0; i < segmentCount; ++i)
+				{
+					floatSegments[i] = new float[getSegmentSize(i)];
+				}
+				break;
+			default:
+				throw new IllegalArgumentException("Storage type not supported : "
+				    + storageType);
+		}
+
+		computed = new AtomicLongArray((int) ((distanceCount + 63) >>> 6));
+	}
+
+	/**
+	 * Gets the number of bytes needed by a cache
+	 *
+	 * @param size the number of indices
+	 * @param storageType {@link DistanceStorageType#DOUBLE} or
+	 *          {@link DistanceStorageType#FLOAT}
+	 * @return the number of bytes needed by the values and the bitmap
+	 */
+	public static long getMemorySize(int size, DistanceStorageType storageType)
+	{
+		long distanceCount = AbstractAccessionDistanceMatrix.getDistanceCount(size);
+
+		return distanceCount * (storageType == DistanceStorageType.FLOAT ? 4 : 8)
+		    + ((distanceCount + 63) >>> 6) * 8;
+	}
+
+	/**
+	 * Gets the number of indices
+	 *
+	 * @return the number of indices
+	 */
+	public int getSize()
+	{
+		return size;
+	}
+
+	/**
+	 * Gets the number of distances that can be cached, that is
+	 * <code>n(n-1)/2</code>
+	 *
+	 * @return the number of distances that can be cached
+	 */
+	public long getDistanceCount()
+	{
+		return distanceCount;
+	}
+
+	/**
+	 * Gets the number of distances that are computed
+	 *
+	 * @return the number of distances that are computed
+	 */
+	public long getComputedCount()
+	{
+		return computedCount.get();
+	}
+
+	/**
+	 * Gets the storage type of the values
+	 *
+	 * @return the storage type of the values
+	 */
+	public DistanceStorageType getStorageType()
+	{
+		return doubleSegments != null ? DistanceStorageType.DOUBLE
+		    : DistanceStorageType.FLOAT;
+	}
+
+	/**
+	 * Indicates if the distance between two indices is computed. The distance
+	 * between an index and itself is never computed.
+	 *
+	 * @param index1 the first index
+	 * @param index2 the second index
+	 * @return <code>true</code> if the distance is computed
+	 */
+	public boolean isComputed(int index1, int index2)
+	{
+		return index1 != index2
+		    && isComputed(AbstractAccessionDistanceMatrix.getPosition(size, index1,
+		        index2));
+	}
+
+	/**
+	 * Gets the distance between two indices
+	 *
+	 * @param index1 the first index
+	 * @param index2 the second index
+	 * @param missingValue the value returned if the distance is not computed
+	 * @return the distance or <code>missingValue</code>
+	 */
+	public double getDistance(int index1, int index2, double missingValue)
+	{
+		if (index1 == index2)
+		{
+			return missingValue;
+		}
+
+		long position = AbstractAccessionDistanceMatrix.getPosition(size, index1,
+		    index2);
+
+		if (!isComputed(position))
+		{
+			return missingValue;
+		}
+
+		int segment = (int) (position >>> SEGMENT_SHIFT);
+		int offset = (int) (position & SEGMENT_MASK);
+
+		return doubleSegments != null ? doubleSegments[segment][offset]
+		    : floatSegments[segment][offset];
+	}
+
+	/**
+	 * Sets the distance between two indices. The distance between an index and
+	 * itself is not cached.
+	 *
+	 * @param index1 the first index
+	 * @param index2 the second index
+	 * @param distance the distance
+	 */
+	public void setDistance(int index1, int index2, double distance)
+	{
+		if (index1 == index2)
+		{
+			return;
+		}
+
+		long position = AbstractAccessionDistanceMatrix.getPosition(size, index1,
+		    index2);
+
+		int segment = (int) (position >>> SEGMENT_SHIFT);
+		int offset = (int) (position & SEGMENT_MASK);
+
+		if (doubleSegments != null)
+		{
+			doubleSegments[segment][offset] = distance;
+		}
+		else
+		{
+			floatSegments[segment][offset] = (float) distance;
+		}
+
+		int word = (int) (position >>> 6);
+		long bit = 1L << position;
+		long bits;
+
+		while (((bits = computed.get(word)) & bit) == 0)
+		{
+			if (computed.compareAndSet(word, bits, bits | bit))
+			{
+				computedCount.incrementAndGet();
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Stores consecutive distances of an index without marking them as
+	 * computed, so that distances of different pairs can be stored by several
+	 * threads at once
+	 *
+	 * @param index the index
+	 * @param firstIndex the index of the first distance, greater than
+	 *          <code>index</code>
+	 * @param distances the distances to <code>firstIndex</code> and the
+	 *          following indices
+	 * @param count the number of distances
+	 */
+	void storeDistances(int index, int firstIndex, double[] distances, int count)
+	{
+		long position = AbstractAccessionDistanceMatrix.getPosition(size, index,
+		    firstIndex);
+
+		for (int k = 0; k < count; ++k, ++position)
+		{
+			int segment = (int) (position >>> SEGMENT_SHIFT);
+			int offset = (int) (position & SEGMENT_MASK);
+
+			if (doubleSegments != null)
+			{
+				doubleSegments[segment][offset] = distances[k];
+			}
+			else
+			{
+				floatSegments[segment][offset] = (float) distances[k];
+			}
+		}
+	}
+
+	/**
+	 * Marks all distances as computed, once all of them are stored
+	 */
+	void setAllComputed()
+	{
+		int wordCount = computed.length();
+
+		for (int w = 0; w < wordCount; ++w)
+		{
+			computed.set(w, -1L);
+		}
+
+		// clears the unused bits of the last word
+		int unused = (int) (wordCount * 64L - distanceCount);
+
+		if (unused > 0)
+		{
+			computed.set(wordCount - 1, -1L >>> unused);
+		}
+
+		computedCount.set(distanceCount);
+	}
+
+	/**
+	 * Marks all distances as not computed. Must not be called while other
+	 * threads use the cache.
+	 */
+	public void clear()
+	{
+		for (int w = 0; w < computed.length(); ++w)
+		{
+			computed.set(w, 0L);
+		}
+
+		computedCount.set(0);
+	}
+
+	private boolean isComputed(long position)
+	{
+		return (computed.get((int) (position >>> 6)) & (1L << position)) != 0;
+	}
+
+	private int getSegmentSize(int segment)
+	{
+		return (int) Math.min(1L << SEGMENT_SHIFT, distanceCount
+		    - ((long) segment << SEGMENT_SHIFT));
+	}
+}
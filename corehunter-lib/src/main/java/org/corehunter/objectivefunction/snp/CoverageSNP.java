@@ -0,0 +1,134 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.objectivefunction.snp;
+
+import java.util.Arrays;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.snp.AccessionSNPMarkerMatrix;
+import org.corehunter.objectivefunction.ObjectiveFunction;
+import org.corehunter.objectivefunction.impl.AbstractSubsetObjectiveFunction;
+import org.corehunter.search.solution.SubsetSolution;
+
+/**
+ * Proportion of the alleles present in a SNP matrix that are also present in
+ * a subset. The reference allele of a marker is present in an accession if
+ * its genotype is 0 or 1, the alternative allele if it is 1 or 2.
+ * 
+ * The presence of both alleles of 32 markers is derived from a packed word
+ * with a few bitwise operations, combined over the subset and counted with
+ * {@link Long#bitCount(long)}, so the coverage is calculated from scratch in
+ * time proportional to the subset size times the number of words.
+ */
+public final class CoverageSNP extends
+    AbstractSubsetObjectiveFunction<Integer, AccessionSNPMarkerMatrix>
+{
+	private static final long	LOW_BITS	= AccessionSNPMarkerMatrix.LOW_BITS;
+
+	private int	              presentAlleleCount;
+	private long[]	          referencePresence;              // reusable buffers -- NOT synchronized
+	private long[]	          alternativePresence;
+
+	public CoverageSNP()
+	{
+		this("CV", "Trait coverage relative to collection");
+	}
+
+	public CoverageSNP(String name, String description)
+	{
+		super(name, description);
+	}
+
+	protected CoverageSNP(CoverageSNP objectiveFunction)
+	    throws CoreHunterException
+	{
+		super(objectiveFunction);
+	}
+
+	@Override
+	public ObjectiveFunction<SubsetSolution<Integer>> copy()
+	    throws CoreHunterException
+	{
+		return new CoverageSNP(this);
+	}
+
+	@Override
+	protected void handleDataSet() throws CoreHunterException
+	{
+		AccessionSNPMarkerMatrix data = getData();
+
+		if (data != null)
+		{
+			referencePresence = new long[data.getWordCount()];
+			alternativePresence = new long[data.getWordCount()];
+
+			presentAlleleCount = countPresentAlleles(data.getIndices());
+		}
+
+		super.handleDataSet();
+	}
+
+	@Override
+	public void flushCachedResults() throws CoreHunterException
+	{
+		// nothing is cached between evaluations
+	}
+
+	@Override
+	public double calculate(SubsetSolution<Integer> solution)
+	    throws CoreHunterException
+	{
+		if (presentAlleleCount == 0)
+		{
+			return 0.0;
+		}
+
+		return countPresentAlleles(solution.getSubsetIndices())
+		    / (double) presentAlleleCount;
+	}
+
+	private int countPresentAlleles(Iterable<Integer> indices)
+	{
+		AccessionSNPMarkerMatrix data = getData();
+		int wordCount = data.getWordCount();
+
+		Arrays.fill(referencePresence, 0L);
+		Arrays.fill(alternativePresence, 0L);
+
+		for (Integer index : indices)
+		{
+			for (int w = 0; w < wordCount; ++w)
+			{
+				long word = data.getWord(index, w);
+				long low = word & LOW_BITS;
+				long high = (word >>> 1) & LOW_BITS;
+
+				// 00 and 01 carry the reference allele, 01 and 10 the alternative
+				// allele, missing genotypes (11) carry neither
+				referencePresence[w] |= ~high & LOW_BITS;
+				alternativePresence[w] |= low ^ high;
+			}
+		}
+
+		int count = 0;
+
+		for (int w = 0; w < wordCount; ++w)
+		{
+			count += Long.bitCount(referencePresence[w])
+			    + Long.bitCount(alternativePresence[w]);
+		}
+
+		return count;
+	}
+}
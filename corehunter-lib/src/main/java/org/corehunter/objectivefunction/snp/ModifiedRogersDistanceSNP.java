@@ -0,0 +1,126 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.objectivefunction.snp;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.UnknownIndexException;
+import org.corehunter.model.snp.AccessionSNPMarkerMatrix;
+import org.corehunter.objectivefunction.DistanceMeasureType;
+import org.corehunter.objectivefunction.ObjectiveFunction;
+import org.corehunter.objectivefunction.impl.AbstractDistanceMeasure;
+import org.corehunter.search.solution.SubsetSolution;
+
+/**
+ * Modified Rogers distance between accessions of a SNP matrix. The allele
+ * frequencies of an accession are <code>1 - g / 2</code> for the reference
+ * allele and <code>g / 2</code> for the alternative allele, where
+ * <code>g</code> is the genotype, so the distance is the same as that of
+ * the equivalent SSR matrix. Markers for which either accession has a missing
+ * genotype do not contribute to the distance.
+ * 
+ * The distance is calculated on the packed words, 32 markers at a time. Two
+ * genotypes differ by one if exactly one of them is heterozygous, and by two
+ * if both are homozygous for different alleles, so the sum of the squared
+ * differences is found by counting bits. This is cheap enough that the
+ * pairwise distances are not memoized.
+ */
+public final class ModifiedRogersDistanceSNP extends
+    AbstractDistanceMeasure<Integer, AccessionSNPMarkerMatrix>
+{
+	private static final long	LOW_BITS	= AccessionSNPMarkerMatrix.LOW_BITS;
+
+	public ModifiedRogersDistanceSNP()
+	{
+		this(DistanceMeasureType.MEAN_DISTANCE);
+	}
+
+	public ModifiedRogersDistanceSNP(DistanceMeasureType type)
+	{
+		this("MR" + type.getNameSuffix(), "Modified Rogers Distance"
+		    + type.getDescriptionSuffix(), type);
+	}
+
+	public ModifiedRogersDistanceSNP(String name, String description,
+	    DistanceMeasureType type)
+	{
+		super(name, description, type);
+	}
+
+	protected ModifiedRogersDistanceSNP(
+	    ModifiedRogersDistanceSNP objectiveFunction) throws CoreHunterException
+	{
+		super(objectiveFunction);
+	}
+
+	@Override
+	public ObjectiveFunction<SubsetSolution<Integer>> copy()
+	    throws CoreHunterException
+	{
+		return new ModifiedRogersDistanceSNP(this);
+	}
+
+	/**
+	 * The distances are not memoized, so they are never precomputed
+	 */
+	@Override
+	public boolean isDistancesPrecomputed()
+	{
+		return true;
+	}
+
+	@Override
+	public double calculate(Integer index1, Integer index2)
+	    throws UnknownIndexException
+	{
+		AccessionSNPMarkerMatrix data = getData();
+
+		checkIndex(data, index1);
+		checkIndex(data, index2);
+
+		int wordCount = data.getWordCount();
+		long sum = 0;
+
+		for (int w = 0; w < wordCount; ++w)
+		{
+			long word1 = data.getWord(index1, w);
+			long word2 = data.getWord(index2, w);
+
+			long low1 = word1 & LOW_BITS;
+			long high1 = (word1 >>> 1) & LOW_BITS;
+			long low2 = word2 & LOW_BITS;
+			long high2 = (word2 >>> 1) & LOW_BITS;
+
+			// missing genotypes have both bits set, including the unused ones
+			long valid = ~((low1 & high1) | (low2 & high2)) & LOW_BITS;
+
+			long differByOne = (low1 ^ low2) & valid;
+			long differByTwo = (high1 ^ high2) & ~(low1 | low2) & valid;
+
+			sum += Long.bitCount(differByOne) + 4 * Long.bitCount(differByTwo);
+		}
+
+		// each marker contributes 2 * (d / 2)^2 to the sum over both alleles,
+		// which is divided by twice the number of markers
+		return Math.sqrt(sum / (4.0 * data.getColumnCount()));
+	}
+
+	private static void checkIndex(AccessionSNPMarkerMatrix data, Integer index)
+	    throws UnknownIndexException
+	{
+		if (index == null || index < 0 || index >= data.getSize())
+		{
+			throw new UnknownIndexException("Unknown index : " + index);
+		}
+	}
+}
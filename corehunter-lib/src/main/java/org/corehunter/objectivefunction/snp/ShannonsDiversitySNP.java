@@ -0,0 +1,191 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.objectivefunction.snp;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.snp.AccessionSNPMarkerMatrix;
+import org.corehunter.objectivefunction.ObjectiveFunction;
+import org.corehunter.objectivefunction.impl.AbstractSubsetObjectiveFunction;
+import org.corehunter.objectivefunction.impl.CachedResult;
+import org.corehunter.search.solution.SubsetSolution;
+
+/**
+ * Shannon's diversity index of the alleles of a subset of a SNP matrix,
+ * using the allele frequencies <code>1 - g / 2</code> and <code>g / 2</code>
+ * of each accession, so the index is the same as that of the equivalent SSR
+ * matrix.
+ * 
+ * The number of alternative alleles and missing genotypes of each marker are
+ * updated for the accessions added to or removed from the previously
+ * evaluated subset. Only the bits of heterozygous, homozygous alternative and
+ * missing genotypes are visited, so accessions that mostly carry the
+ * reference allele are cheap to add and remove.
+ */
+public final class ShannonsDiversitySNP extends
+    AbstractSubsetObjectiveFunction<Integer, AccessionSNPMarkerMatrix>
+{
+	private static final long	LOW_BITS	= AccessionSNPMarkerMatrix.LOW_BITS;
+
+	private SNPCachedResult	  cachedResult;
+
+	public ShannonsDiversitySNP()
+	{
+		this("SH", "Shannons Diversity Index");
+	}
+
+	public ShannonsDiversitySNP(String name, String description)
+	{
+		super(name, description);
+	}
+
+	protected ShannonsDiversitySNP(ShannonsDiversitySNP objectiveFunction)
+	    throws CoreHunterException
+	{
+		super(objectiveFunction);
+	}
+
+	@Override
+	public void flushCachedResults() throws CoreHunterException
+	{
+		cachedResult = null;
+	}
+
+	@Override
+	public ObjectiveFunction<SubsetSolution<Integer>> copy()
+	    throws CoreHunterException
+	{
+		return new ShannonsDiversitySNP(this);
+	}
+
+	@Override
+	public double calculate(SubsetSolution<Integer> solution)
+	    throws CoreHunterException
+	{
+		AccessionSNPMarkerMatrix data = getData();
+
+		if (cachedResult == null)
+		{
+			cachedResult = new SNPCachedResult(data.getWordCount());
+		}
+
+		Collection<Integer> indices = solution.getSubsetIndices();
+		List<Integer> aIndices = cachedResult.getAddedIndices(indices);
+		List<Integer> rIndices = cachedResult.getRemovedIndices(indices);
+
+		int[] alternativeCounts = cachedResult.getAlternativeCounts();
+		int[] missingCounts = cachedResult.getMissingCounts();
+
+		for (Integer index : aIndices)
+		{
+			addGenotypes(data, index, alternativeCounts, missingCounts, 1);
+		}
+
+		for (Integer index : rIndices)
+		{
+			addGenotypes(data, index, alternativeCounts, missingCounts, -1);
+		}
+
+		cachedResult.setIndices(indices);
+
+		// -sum(x / t * ln(x / t)) = ln(t) - sum(x * ln(x)) / t, where t is the sum
+		// of the allele totals x
+		int size = indices.size();
+		int markerCount = data.getColumnCount();
+		double total = 0.0;
+		double sum = 0.0;
+
+		for (int m = 0; m < markerCount; ++m)
+		{
+			int called = size - missingCounts[m];
+
+			if (called > 0)
+			{
+				double alternative = alternativeCounts[m] / 2.0;
+				double reference = called - alternative;
+
+				if (alternative > 0)
+				{
+					sum += alternative * Math.log(alternative);
+				}
+				if (reference > 0)
+				{
+					sum += reference * Math.log(reference);
+				}
+
+				total += called;
+			}
+		}
+
+		return total > 0 ? Math.log(total) - sum / total : 0.0;
+	}
+
+	private static void addGenotypes(AccessionSNPMarkerMatrix data,
+	    int accessionIndex, int[] alternativeCounts, int[] missingCounts,
+	    int delta)
+	{
+		int wordCount = data.getWordCount();
+
+		for (int w = 0; w < wordCount; ++w)
+		{
+			long word = data.getWord(accessionIndex, w);
+			long low = word & LOW_BITS;
+			long high = (word >>> 1) & LOW_BITS;
+
+			int offset = w * AccessionSNPMarkerMatrix.GENOTYPES_PER_WORD;
+
+			// the counts have room for the unused genotypes of the last word
+			add(low & high, offset, missingCounts, delta);
+			add(low & ~high, offset, alternativeCounts, delta);
+			add(high & ~low, offset, alternativeCounts, 2 * delta);
+		}
+	}
+
+	private static void add(long bits, int offset, int[] counts, int delta)
+	{
+		while (bits != 0)
+		{
+			counts[offset + (Long.numberOfTrailingZeros(bits) >>> 1)] += delta;
+			bits &= bits - 1;
+		}
+	}
+
+	private class SNPCachedResult extends CachedResult<Integer>
+	{
+		private int[]	alternativeCounts;
+		private int[]	missingCounts;
+
+		public SNPCachedResult(int wordCount)
+		{
+			super();
+
+			alternativeCounts = new int[wordCount
+			    * AccessionSNPMarkerMatrix.GENOTYPES_PER_WORD];
+			missingCounts = new int[wordCount
+			    * AccessionSNPMarkerMatrix.GENOTYPES_PER_WORD];
+		}
+
+		public int[] getAlternativeCounts()
+		{
+			return alternativeCounts;
+		}
+
+		public int[] getMissingCounts()
+		{
+			return missingCounts;
+		}
+	}
+}
@@ -14,19 +14,19 @@
 
 package org.corehunter.objectivefunction.ssr;
 
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.List;
+import java.io.File;
 import java.util.Map;
-import java.util.TreeMap;
 
 import org.corehunter.CoreHunterException;
-import org.corehunter.model.UnknownIndexException;
+import org.corehunter.model.distance.DistanceStorageType;
 import org.corehunter.model.ssr.AccessionSSRMarkerMatrix;
+import org.corehunter.model.ssr.PrimitiveAccessionSSRMarkerMatrix;
+import org.corehunter.model.ssr.QuantizedAccessionSSRMarkerMatrix;
 import org.corehunter.objectivefunction.DistanceMeasureType;
-import org.corehunter.objectivefunction.impl.AbstractSubsetObjectiveFunction;
-import org.corehunter.objectivefunction.impl.CachedResult;
-import org.corehunter.search.solution.SubsetSolution;
+import org.corehunter.objectivefunction.impl.AbstractDistanceMeasure;
+import org.corehunter.objectivefunction.impl.DistanceMatrixFile;
+import org.corehunter.objectivefunction.impl.ParallelDistanceCalculator;
+import org.corehunter.objectivefunction.impl.TriangularDistanceCache;
 
 /**
  * <<Class summary>>
@@ -34,21 +34,22 @@ import org.corehunter.search.solution.SubsetSolution;
  * @author Chris Thachuk <chris.thachuk@gmail.com>
  * @version $Rev$
  */
-// TODO separate into two sub-classes; one for MEAN_DISTANCE and one for MIN_DISTANCE
 public abstract class AbstractAccessionSSRDistanceMeasure<IndexType> extends 
-	AbstractSubsetObjectiveFunction<IndexType, AccessionSSRMarkerMatrix<IndexType>> implements SSROjectiveFunction<IndexType>
+	AbstractDistanceMeasure<IndexType, AccessionSSRMarkerMatrix<IndexType>> implements SSROjectiveFunction<IndexType>
 {
-	private Map<IndexType, Map<IndexType, Double>> M; // pairwise distance cache            -- NOT synchronized
-	private DistanceCachedResult        cachedResult; // cached solution distance score     -- NOT synchronized
-
-	protected static final double	MISSING_VAL	= -1.0;
-
-	protected DistanceMeasureType	type;	            // minimum/mean distance
-																																// whether mean
-																																// or min
-																																// distance
-
-	// should be computed
+	private PrimitiveAccessionSSRMarkerMatrix primitiveData ;
+	private double[] alleleValues1 ;                    // reusable allele value buffers   -- NOT synchronized
+	private double[] alleleValues2 ;
+	private QuantizedAccessionSSRMarkerMatrix quantizedData ;
+	private File distanceMatrixFile ;
+	private DistanceMatrixFile storedDistances ;            // shared between copies, read-only
+	private Map<IndexType, Integer> storedPositions ;       // null if the indices are the positions
+
+	/**
+	 * The maximum number of levels of a quantized matrix for which sub-classes 
+	 * should use a table of per allele terms indexed by pairs of codes
+	 */
+	protected static final int MAXIMUM_LEVEL_TABLE_LEVELS = 256 ;
 
 	public AbstractAccessionSSRDistanceMeasure()
 	{
@@ -59,308 +60,199 @@ public abstract class AbstractAccessionSSRDistanceMeasure<IndexType> extends
 	public AbstractAccessionSSRDistanceMeasure(String name, String description,
 	    DistanceMeasureType type)
 	{
-		super(name, description);
-		this.type = type;
+		super(name, description, type);
 	}
 
 	protected AbstractAccessionSSRDistanceMeasure(
 			AbstractAccessionSSRDistanceMeasure<IndexType> objectiveFuncton) throws CoreHunterException
   {
                 super(objectiveFuncton);
-		setType(objectiveFuncton.getType()) ;
+                
+                distanceMatrixFile = objectiveFuncton.distanceMatrixFile ;
+                storedDistances = objectiveFuncton.storedDistances ;
+                storedPositions = objectiveFuncton.storedPositions ;
   }
-        
-        @Override
-        public void flushCachedResults(){
-            cachedResult = new DistanceCachedResult();
-            M = new HashMap<IndexType, Map<IndexType, Double>>();
-        }
 
-        /**
-         * Calculate distance measure score for given integer subset solution. If
-         * no solution is given (null), score is computed for entire dataset.
-         * 
-         * @param solution
-         * @return
-         * @throws CoreHunterException 
-         */
 	@Override
-	public final double calculate(SubsetSolution<IndexType> solution) throws CoreHunterException
+	protected void handleDataSet() throws CoreHunterException
 	{
-                
-                Collection<IndexType> indices;
-                // if solution is null, compute for entire dataset
-                if(solution == null){
-                    indices = getData().getIndices();
-                } else {
-                    indices = solution.getSubsetIndices();
-                }
-		
-		List<IndexType> aIndices = cachedResult.getAddedIndices(indices);
-		List<IndexType> rIndices = cachedResult.getRemovedIndices(indices);
-		List<IndexType> cIndices = cachedResult.getCommonIndices(indices);
+		primitiveData = getData() instanceof PrimitiveAccessionSSRMarkerMatrix ? (PrimitiveAccessionSSRMarkerMatrix) getData() : null ;
+
+		if (primitiveData != null)
+		{
+			alleleValues1 = new double[primitiveData.getTotalAlleleCount()] ;
+			alleleValues2 = new double[primitiveData.getTotalAlleleCount()] ;
+		}
+		else
+		{
+			alleleValues1 = null ;
+			alleleValues2 = null ;
+		}
 
-		double dist;
+		quantizedData = getData() instanceof QuantizedAccessionSSRMarkerMatrix ? (QuantizedAccessionSSRMarkerMatrix) getData() : null ;
 
-		if (type == DistanceMeasureType.MEAN_DISTANCE)
+		if (quantizedData != null && quantizedData.getLevelCount() > MAXIMUM_LEVEL_TABLE_LEVELS)
 		{
+			quantizedData = null ;
+		}
 
-			double total = cachedResult.getTotal();
-			double count = cachedResult.getCount();
+		super.handleDataSet() ;
+		
+		loadDistanceMatrix() ;
+	}
 
-			for (IndexType a : aIndices)
-			{
-				for (IndexType b : cIndices)
-				{
-					dist = calculate(a, b);
-					total += dist;
-					count++;
-				}
-			}
+	/**
+	 * Gets the file in which the distances between all pairs of accessions are
+	 * stored
+	 * 
+	 * @return the file or <code>null</code> if the distances are not stored
+	 */
+	public final File getDistanceMatrixFile()
+	{
+		return distanceMatrixFile ;
+	}
 
-			int size = aIndices.size();
-			for (int i = 0; i < size - 1; i++)
-			{
-				for (int j = i + 1; j < size; j++)
-				{
-					dist = calculate(aIndices.get(i), aIndices.get(j));
-					total += dist;
-					count++;
-				}
-			}
+	/**
+	 * Sets the file in which the distances between all pairs of accessions are
+	 * stored, see {@link DistanceMatrixFile}. When the data is set, the 
+	 * distances are read from the file if it was written for the same measure
+	 * and the same dataset contents, otherwise all distances are calculated 
+	 * on several threads and the file is replaced. The distances are then 
+	 * never calculated again.
+	 * 
+	 * The distances are stored by the positions of the accessions, indices 
+	 * that are not those positions are looked up to them.
+	 * 
+	 * @param distanceMatrixFile the file or <code>null</code> to calculate
+	 * distances when needed
+	 * @throws CoreHunterException if the file can not be read or written
+	 */
+	public final void setDistanceMatrixFile(File distanceMatrixFile) throws CoreHunterException
+	{
+		this.distanceMatrixFile = distanceMatrixFile ;
+		
+		loadDistanceMatrix() ;
+	}
 
-			for (IndexType a : rIndices)
-			{
-				for (IndexType b : cIndices)
-				{
-					dist = calculate(a, b);
-					total -= dist;
-					count--;
-				}
-			}
+	/**
+	 * The distances are also available if they are read from a distance matrix
+	 * file
+	 */
+	@Override
+	public boolean isDistancesPrecomputed()
+	{
+		return storedDistances != null || super.isDistancesPrecomputed() ;
+	}
 
-			size = rIndices.size();
-			for (int i = 0; i < size - 1; i++)
+	@Override
+	protected double getMemoizedValue(IndexType id1, IndexType id2)
+	{
+		if (storedDistances != null)
+		{
+			int position1 = getPosition(storedPositions, id1) ;
+			int position2 = getPosition(storedPositions, id2) ;
+			
+			if (position1 < 0 || position2 < 0)
 			{
-				for (int j = i + 1; j < size; j++)
-				{
-					dist = calculate(rIndices.get(i), rIndices.get(j));
-					total -= dist;
-					count--;
-				}
+				return MISSING_VAL ;
 			}
-
-			// recache our results under this id
-			cachedResult.setTotal(total);
-			cachedResult.setCount(count);
-			cachedResult.setIndices(indices);
-
-                        // return 0.0 if no distances left (< 2 items)
-                        if(count == 0){
-                            return 0.0;
-                        } else {
-                            return total / count;
-                        }
-
+			
+			return storedDistances.getDistance(position1, position2) ;
 		}
-		else
-			if (type == DistanceMeasureType.MIN_DISTANCE)
-			{
-
-				TreeMap<Double, Integer> minFreqTable = cachedResult.getMinFreqTable();
-
-				// add new distances
-
-				for (IndexType a : aIndices)
-				{
-					for (IndexType b : cIndices)
-					{
-						dist = calculate(a, b);
-						Integer freq = minFreqTable.get(dist);
-						if (freq == null)
-						{
-							minFreqTable.put(dist, 1);
-						}
-						else
-						{
-							minFreqTable.put(dist, freq + 1);
-						}
-					}
-				}
-
-				int size = aIndices.size();
-				for (int i = 0; i < size - 1; i++)
-				{
-					for (int j = i + 1; j < size; j++)
-					{
-						dist = calculate(aIndices.get(i), aIndices.get(j));
-						Integer freq = minFreqTable.get(dist);
-						if (freq == null)
-						{
-							minFreqTable.put(dist, 1);
-						}
-						else
-						{
-							minFreqTable.put(dist, freq + 1);
-						}
-					}
-				}
-
-				// remove old distances
+		
+		return super.getMemoizedValue(id1, id2) ;
+	}
 
-				for (IndexType a : rIndices)
-				{
-					for (IndexType b : cIndices)
-					{
-						dist = calculate(a, b);
-						Integer freq = minFreqTable.get(dist);
-						freq--;
-						if (freq == 0)
+	private void loadDistanceMatrix() throws CoreHunterException
+	{
+		storedDistances = null ;
+		
+		// inexact digests can not identify the dataset the file was written for
+		if (distanceMatrixFile != null && getData() != null && getData().getContentDigest().isExact())
+		{
+			// the mean and minimum variants of a measure share the same distances
+			String measureName = getClass().getSimpleName() ;
+			String digest = getData().getContentDigest().toString() ;
+			int size = getData().getSize() ;
+			
+			DistanceMatrixFile distances = DistanceMatrixFile.open(distanceMatrixFile, measureName, digest, size) ;
+			
+			if (distances == null)
+			{
+				// the distances are calculated on all processors before being written
+				final TriangularDistanceCache calculated = new TriangularDistanceCache(size, DistanceStorageType.DOUBLE) ;
+				
+				new ParallelDistanceCalculator(0).calculate(calculated, 
+						new ParallelDistanceCalculator.DistanceFunctionFactory()
 						{
-							minFreqTable.remove(dist);
-						}
-						else
-							if (freq > 0)
-							{
-								minFreqTable.put(dist, freq);
-							}
-							else
+							@Override
+							public DistanceMatrixFile.DistanceFunction createDistanceFunction() throws CoreHunterException
 							{
-								System.err.println("Error in minimum distance cacheing scheme!"
-								    + "\nThis is a bug, please contact authors!");
+								return AbstractAccessionSSRDistanceMeasure.this.createDistanceFunction() ;
 							}
-					}
-				}
-
-				size = rIndices.size();
-				for (int i = 0; i < size - 1; i++)
-				{
-					for (int j = i + 1; j < size; j++)
-					{
-						dist = calculate(rIndices.get(i), rIndices.get(j));
-						Integer freq = minFreqTable.get(dist);
-						freq--;
-						if (freq == 0)
+						}, null) ;
+				
+				distances = DistanceMatrixFile.create(distanceMatrixFile, measureName, digest, size, 
+						new DistanceMatrixFile.DistanceFunction()
 						{
-							minFreqTable.remove(dist);
-						}
-						else
-							if (freq > 0)
-							{
-								minFreqTable.put(dist, freq);
-							}
-							else
+							@Override
+							public double calculate(int index1, int index2)
 							{
-								System.err.println("Error in minimum distance cacheing scheme!"
-								    + "\nThis is a bug, please contact authors!");
+								return calculated.getDistance(index1, index2, MISSING_VAL) ;
 							}
-					}
-				}
-
-				// recache results
-				cachedResult.setIndices(indices);
-
-				// System.out.println("Min cache size: " + minFreqTable.size());
-                                if(!minFreqTable.isEmpty()){
-                                    return minFreqTable.firstKey();
-                                } else {
-                                    return 0.0;
-                                }
-
-				/*
-				 * //implementation without cache double minDist = Double.MAX_VALUE; int
-				 * size = Indices.size(); for(int i=0; i<size-1; i++) { for(int
-				 * j=i+1; j<size; j++) { dist = calculate(Indices.get(i),
-				 * Indices.get(j)); if(dist<minDist){ minDist = dist; } } } return
-				 * minDist;
-				 */
-
-			}
-			else
-			{
-				// THIS SHOULD NOT HAPPEN
-				System.err
-				    .println("Unkown distance measure type -- this is a bug! Please contact authors.");
-				System.exit(1);
-				return -1;
+						}) ;
 			}
-
+			
+			storedPositions = createPositions(getData().getIndices()) ;
+			storedDistances = distances ;
+		}
 	}
 
-	public abstract double calculate(IndexType index1, IndexType index2) throws UnknownIndexException;
 	
-	public final DistanceMeasureType getType()
-	{
-		return type;
-	}
-
-	public final void setType(DistanceMeasureType type)
+	/**
+	 * Gets the data as a primitive matrix, allowing sub-classes to use index
+	 * based access instead of the list based methods
+	 * 
+	 * @return the data as a primitive matrix or <code>null</code> if the data
+	 * is not a primitive matrix
+	 */
+	protected final PrimitiveAccessionSSRMarkerMatrix getPrimitiveData()
 	{
-		this.type = type;
+		return primitiveData ;
 	}
 
-	protected double getMemoizedValue(IndexType id1, IndexType id2)
+	/**
+	 * Gets a buffer for the allele values of the first accession of a pair, 
+	 * only available if the data is a primitive matrix
+	 * 
+	 * @return a buffer with the length of the total number of alleles
+	 */
+	protected final double[] getAlleleValues1()
 	{
-                if(M.containsKey(id1) && M.get(id1).containsKey(id2)){
-                    return M.get(id1).get(id2);
-                } else if(M.containsKey(id2) && M.get(id2).containsKey(id1)){
-                    return M.get(id2).get(id1);
-                } else {
-                    return MISSING_VAL;
-                }
+		return alleleValues1 ;
 	}
 
-	protected void setMemoizedValue(IndexType id1, IndexType id2, double v)
+	/**
+	 * Gets a buffer for the allele values of the second accession of a pair, 
+	 * only available if the data is a primitive matrix
+	 * 
+	 * @return a buffer with the length of the total number of alleles
+	 */
+	protected final double[] getAlleleValues2()
 	{
-                if(getMemoizedValue(id1, id2) != MISSING_VAL){
-                    if(!M.containsKey(id1)){
-                        M.put(id1, new HashMap<IndexType, Double>());
-                    }
-                    M.get(id1).put(id2, v);
-                }
+		return alleleValues2 ;
 	}
 
-	private class DistanceCachedResult extends CachedResult<IndexType>
+	/**
+	 * Gets the data as a quantized matrix, if it has few enough levels to use 
+	 * a table of per allele terms indexed by pairs of codes
+	 * 
+	 * @return the data as a quantized matrix or <code>null</code> if the data
+	 * is not a quantized matrix or has more than {@link #MAXIMUM_LEVEL_TABLE_LEVELS}
+	 * levels
+	 */
+	protected final QuantizedAccessionSSRMarkerMatrix getQuantizedData()
 	{
-		private double		               pTotal;
-		private double		               pCnt;
-
-		private TreeMap<Double, Integer>	minFreqTable;
-
-		public DistanceCachedResult()
-		{
-			super();
-			pTotal = 0.0;
-			pCnt = 0.0;
-
-			minFreqTable = new TreeMap<Double, Integer>();
-		}
-
-		public double getTotal()
-		{
-			return pTotal;
-		}
-
-		public double getCount()
-		{
-			return pCnt;
-		}
-
-		public TreeMap<Double, Integer> getMinFreqTable()
-		{
-			return minFreqTable;
-		}
-
-		public void setTotal(double total)
-		{
-			pTotal = total;
-		}
-
-		public void setCount(double count)
-		{
-			pCnt = count;
-		}
-
+		return quantizedData ;
 	}
-
 }
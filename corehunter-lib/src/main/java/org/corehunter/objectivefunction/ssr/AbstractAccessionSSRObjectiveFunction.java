@@ -16,6 +16,7 @@ package org.corehunter.objectivefunction.ssr;
 
 import org.corehunter.CoreHunterException;
 import org.corehunter.model.ssr.AccessionSSRMarkerMatrix;
+import org.corehunter.model.ssr.PrimitiveAccessionSSRMarkerMatrix;
 import org.corehunter.objectivefunction.impl.AbstractSubsetObjectiveFunction;
 
 /**
@@ -28,6 +29,8 @@ public abstract class AbstractAccessionSSRObjectiveFunction<IndexType>
 	extends AbstractSubsetObjectiveFunction<IndexType, AccessionSSRMarkerMatrix<IndexType>> 
 	implements SSROjectiveFunction<IndexType>
 {
+	private PrimitiveAccessionSSRMarkerMatrix primitiveData ;
+
 	public AbstractAccessionSSRObjectiveFunction(String name, String description)
 	{
 		super (name, description) ;
@@ -38,4 +41,24 @@ public abstract class AbstractAccessionSSRObjectiveFunction<IndexType>
   {
 	  super(objectiveFuncton);
   }
-}
\ No newline at end of file
+
+	@Override
+	protected void handleDataSet() throws CoreHunterException
+	{
+		primitiveData = getData() instanceof PrimitiveAccessionSSRMarkerMatrix ? (PrimitiveAccessionSSRMarkerMatrix) getData() : null ;
+
+		super.handleDataSet() ;
+	}
+
+	/**
+	 * Gets the data as a primitive matrix, allowing sub-classes to use index
+	 * based access instead of the list based methods
+	 * 
+	 * @return the data as a primitive matrix or <code>null</code> if the data
+	 * is not a primitive matrix
+	 */
+	protected final PrimitiveAccessionSSRMarkerMatrix getPrimitiveData()
+	{
+		return primitiveData ;
+	}
+}
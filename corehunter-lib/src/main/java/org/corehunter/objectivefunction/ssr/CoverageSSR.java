@@ -16,6 +16,7 @@ package org.corehunter.objectivefunction.ssr;
 
 
 import org.corehunter.CoreHunterException;
+import org.corehunter.objectivefunction.MoveEvaluatingObjectiveFunction;
 import org.corehunter.objectivefunction.ObjectiveFunction;
 import org.corehunter.search.solution.SubsetSolution;
 
@@ -26,6 +27,7 @@ import org.corehunter.search.solution.SubsetSolution;
  * @version $Rev$
  */
 public final class CoverageSSR<IndexType> extends AbstractAccessionSSRObjectiveFunction<IndexType>
+	implements MoveEvaluatingObjectiveFunction<IndexType>
 {
 	private ProportionNonInformativeAllelesSSR<IndexType>	pn;
 
@@ -51,14 +53,34 @@ public final class CoverageSSR<IndexType> extends AbstractAccessionSSRObjectiveF
 	  return new CoverageSSR<IndexType>(this);
   }
 
+	@Override
+	protected void handleDataSet() throws CoreHunterException
+	{
+		// the copy constructor calls this method before any fields are set
+		if (pn == null)
+			pn = new ProportionNonInformativeAllelesSSR<IndexType>();
+
+		pn.setData(getData());
+
+		super.handleDataSet();
+	}
+
 	@Override
 	public final double calculate(SubsetSolution<IndexType> solution) throws CoreHunterException
 	{
 		return 1.0 - pn.calculate(solution);
 	}
+
+	@Override
+	public final double calculateMove(SubsetSolution<IndexType> solution,
+	    IndexType addedIndex, IndexType removedIndex) throws CoreHunterException
+	{
+		return 1.0 - pn.calculateMove(solution, addedIndex, removedIndex);
+	}
         
         @Override
         public void flushCachedResults() throws CoreHunterException {
-            pn.flushCachedResults();
+            if (pn != null)
+                pn.flushCachedResults();
         }
 }
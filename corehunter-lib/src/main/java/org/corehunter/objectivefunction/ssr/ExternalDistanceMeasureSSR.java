@@ -15,6 +15,7 @@
 package org.corehunter.objectivefunction.ssr;
 
 import org.corehunter.CoreHunterException;
+import org.corehunter.objectivefunction.MoveEvaluatingObjectiveFunction;
 import org.corehunter.objectivefunction.ObjectiveFunction;
 import org.corehunter.search.solution.SubsetSolution;
 
@@ -22,6 +23,7 @@ import org.corehunter.search.solution.SubsetSolution;
  * @author hermandebeukelaer
  */
 public class ExternalDistanceMeasureSSR<IndexType> extends AbstractAccessionSSRObjectiveFunction<IndexType>
+	implements MoveEvaluatingObjectiveFunction<IndexType>
 {
 
 	public ExternalDistanceMeasureSSR()
@@ -47,15 +49,37 @@ public class ExternalDistanceMeasureSSR<IndexType> extends AbstractAccessionSSRO
 	
 	@Override
 	public final double calculate(SubsetSolution<IndexType> solution)
+	{
+		return calculateMove(solution, null, null);
+	}
+
+	/**
+	 * Evaluates a move by adjusting the sum of the external distances of the
+	 * current subset, which is not cached
+	 */
+	@Override
+	public final double calculateMove(SubsetSolution<IndexType> solution,
+	    IndexType addedIndex, IndexType removedIndex)
 	{
 		try
 		{
 			double sum = 0.0;
-			for (IndexType index : solution.getIndices())
+			int size = solution.getSubsetSize();
+			for (IndexType index : solution.getSubsetIndices())
 			{
 				sum += getData().getExternalDistance(index);
 			}
-			sum = sum / solution.getSize();
+			if (addedIndex != null)
+			{
+				sum += getData().getExternalDistance(addedIndex);
+				++size;
+			}
+			if (removedIndex != null)
+			{
+				sum -= getData().getExternalDistance(removedIndex);
+				--size;
+			}
+			sum = sum / size;
 			return sum;
 		}
 		catch (NullPointerException ne)
@@ -69,6 +93,6 @@ public class ExternalDistanceMeasureSSR<IndexType> extends AbstractAccessionSSRO
         
         @Override
         public void flushCachedResults() throws CoreHunterException {
-            throw new UnsupportedOperationException("Not yet implemented.");
+            // no cached results
         }
 }
@@ -14,10 +14,13 @@
 
 package org.corehunter.objectivefunction.ssr;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.ListIterator;
 
 import org.corehunter.CoreHunterException;
+import org.corehunter.model.ssr.PrimitiveAccessionSSRMarkerMatrix;
+import org.corehunter.objectivefunction.MoveEvaluatingObjectiveFunction;
 import org.corehunter.objectivefunction.ObjectiveFunction;
 import org.corehunter.objectivefunction.impl.CachedResult;
 import org.corehunter.search.solution.SubsetSolution;
@@ -29,6 +32,7 @@ import org.corehunter.search.solution.SubsetSolution;
  * @version $Rev$
  */
 public final class HeterozygousLociDiversitySSR<IndexType> extends AbstractAccessionSSRObjectiveFunction<IndexType>
+	implements MoveEvaluatingObjectiveFunction<IndexType>
 {
 	private HECachedResult<IndexType>	cachedResults;
 
@@ -49,7 +53,7 @@ public final class HeterozygousLociDiversitySSR<IndexType> extends AbstractAcces
         
         @Override
         public void flushCachedResults() throws CoreHunterException {
-            throw new UnsupportedOperationException("Not yet implemented.");
+            cachedResults = null;
         }
 	
 	@Override
@@ -64,30 +68,104 @@ public final class HeterozygousLociDiversitySSR<IndexType> extends AbstractAcces
 		if (cachedResults == null)
 			cachedResults = new HECachedResult<IndexType>(solution) ;
 		
-		List<IndexType> aIndices = cachedResults.getAddedIndices(solution.getIndices());
-		List<IndexType> rIndices = cachedResults.getRemovedIndices(solution.getIndices());
+		List<IndexType> aIndices = cachedResults.getAddedIndices(solution.getSubsetIndices());
+		List<IndexType> rIndices = cachedResults.getRemovedIndices(solution.getSubsetIndices());
 
 		double markerAlleleTotals[][] = cachedResults.getMarkerAlleleTotals();
-		double addTotals[][] = getData().getMarkerAlleleTotals(aIndices);
-		double remTotals[][] = getData().getMarkerAlleleTotals(rIndices);
+		PrimitiveAccessionSSRMarkerMatrix primitiveData = getPrimitiveData();
 
-		for (int i = 0; i < markerAlleleTotals.length; i++)
+		if (primitiveData != null)
 		{
-			for (int j = 0; j < markerAlleleTotals[i].length; j++)
+			for (IndexType index : aIndices)
+			{
+				primitiveData.addMarkerAlleleValues((Integer) index, markerAlleleTotals, 1.0);
+			}
+			for (IndexType index : rIndices)
+			{
+				primitiveData.addMarkerAlleleValues((Integer) index, markerAlleleTotals, -1.0);
+			}
+		}
+		else
+		{
+			double addTotals[][] = getData().getMarkerAlleleTotals(aIndices);
+			double remTotals[][] = getData().getMarkerAlleleTotals(rIndices);
+
+			for (int i = 0; i < markerAlleleTotals.length; i++)
 			{
-				double diff = 0.0;
-				if (addTotals != null)
+				for (int j = 0; j < markerAlleleTotals[i].length; j++)
 				{
-					diff += addTotals[i][j];
+					double diff = 0.0;
+					if (addTotals != null)
+					{
+						diff += addTotals[i][j];
+					}
+					if (remTotals != null)
+					{
+						diff -= remTotals[i][j];
+					}
+					markerAlleleTotals[i][j] += diff;
 				}
-				if (remTotals != null)
+			}
+		}
+
+		// recache our results
+		cachedResults.setIndices(solution.getSubsetIndices());
+
+		return calculate(markerAlleleTotals);
+	}
+
+	/**
+	 * Evaluates a move on a copy of the marker allele totals of the subset last
+	 * evaluated
+	 */
+	@Override
+	public double calculateMove(SubsetSolution<IndexType> solution,
+	    IndexType addedIndex, IndexType removedIndex) throws CoreHunterException
+	{
+		if (cachedResults == null)
+			cachedResults = new HECachedResult<IndexType>(solution) ;
+
+		double markerAlleleTotals[][] = cachedResults.getMarkerAlleleTotals();
+		double moveMarkerAlleleTotals[][] = cachedResults.getMoveMarkerAlleleTotals();
+
+		for (int i = 0; i < markerAlleleTotals.length; i++)
+		{
+			System.arraycopy(markerAlleleTotals[i], 0, moveMarkerAlleleTotals[i], 0, markerAlleleTotals[i].length);
+		}
+
+		addMarkerAlleleTotals(addedIndex, moveMarkerAlleleTotals, 1.0);
+		addMarkerAlleleTotals(removedIndex, moveMarkerAlleleTotals, -1.0);
+
+		return calculate(moveMarkerAlleleTotals);
+	}
+
+	private void addMarkerAlleleTotals(IndexType index, double markerAlleleTotals[][], double factor) throws CoreHunterException
+	{
+		if (index == null)
+			return;
+
+		PrimitiveAccessionSSRMarkerMatrix primitiveData = getPrimitiveData();
+
+		if (primitiveData != null)
+		{
+			primitiveData.addMarkerAlleleValues((Integer) index, markerAlleleTotals, factor);
+		}
+		else
+		{
+			double totals[][] = getData().getMarkerAlleleTotals(Collections.singletonList(index));
+
+			for (int i = 0; i < markerAlleleTotals.length; i++)
+			{
+				for (int j = 0; j < markerAlleleTotals[i].length; j++)
 				{
-					diff -= remTotals[i][j];
+					markerAlleleTotals[i][j] += factor * totals[i][j];
 				}
-				markerAlleleTotals[i][j] += diff;
 			}
 		}
+	}
 
+	private double calculate(double markerAlleleTotals[][])
+	{
 		double diversityTotal = 0.0;
 		for (int i = 0; i < markerAlleleTotals.length; i++)
 		{
@@ -101,16 +179,13 @@ public final class HeterozygousLociDiversitySSR<IndexType> extends AbstractAcces
 			diversityTotal += (1.0 - (lociTerm / Math.pow(lociTotal, 2)));
 		}
 
-		double score = (1.0 / (double) markerAlleleTotals.length) * diversityTotal;
-		// recache our results
-		cachedResults.setIndices(solution.getIndices());
-
-		return score;
+		return (1.0 / (double) markerAlleleTotals.length) * diversityTotal;
 	}
 
 	private class HECachedResult<IndexType2> extends CachedResult<IndexType2> 
 	{
 		private double	pMarkerAlleleTotals[][];
+		private double	pMoveMarkerAlleleTotals[][];
 
 		public HECachedResult(SubsetSolution<IndexType2> solution) throws CoreHunterException 
 		{
@@ -137,11 +212,22 @@ public final class HeterozygousLociDiversitySSR<IndexType> extends AbstractAcces
 				i++;
 			}
 			pMarkerAlleleTotals = markerAlleleTotals;
+			pMoveMarkerAlleleTotals = new double[markerCnt][];
+
+			for (i = 0; i < markerCnt; i++)
+			{
+				pMoveMarkerAlleleTotals[i] = new double[markerAlleleTotals[i].length];
+			}
 		}
 
 		public double[][] getMarkerAlleleTotals()
 		{
 			return pMarkerAlleleTotals;
 		}
+
+		public double[][] getMoveMarkerAlleleTotals()
+		{
+			return pMoveMarkerAlleleTotals;
+		}
 	}
 }
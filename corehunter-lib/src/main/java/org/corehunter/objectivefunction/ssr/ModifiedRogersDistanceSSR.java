@@ -19,6 +19,8 @@ import java.util.ListIterator;
 
 import org.corehunter.CoreHunterException;
 import org.corehunter.model.UnknownIndexException;
+import org.corehunter.model.ssr.PrimitiveAccessionSSRMarkerMatrix;
+import org.corehunter.model.ssr.QuantizedAccessionSSRMarkerMatrix;
 import org.corehunter.objectivefunction.DistanceMeasureType;
 import org.corehunter.objectivefunction.ObjectiveFunction;
 import org.corehunter.search.solution.SubsetSolution;
@@ -31,6 +33,8 @@ import org.corehunter.search.solution.SubsetSolution;
  */
 public final class ModifiedRogersDistanceSSR<IndexType> extends AbstractAccessionSSRDistanceMeasure<IndexType>
 {
+	private double[] levelTerms; // per allele terms by pair of codes -- NOT synchronized
+	private QuantizedAccessionSSRMarkerMatrix levelTermsData;
 
 	public ModifiedRogersDistanceSSR()
 	{
@@ -69,6 +73,45 @@ public final class ModifiedRogersDistanceSSR<IndexType> extends AbstractAccessio
 			return value;
 		}
 
+		QuantizedAccessionSSRMarkerMatrix quantizedData = getQuantizedData();
+
+		if (quantizedData != null)
+		{
+			double sumMarkerSqDiff = quantizedData.sumLevelTerms((Integer) index1, (Integer) index2,
+					getLevelTerms(quantizedData));
+
+			value = 1.0 / (Math.sqrt(2.0 * quantizedData.getColumnCount())) * Math.sqrt(sumMarkerSqDiff);
+			setMemoizedValue(index1, index2, value);
+			return value;
+		}
+
+		PrimitiveAccessionSSRMarkerMatrix primitiveData = getPrimitiveData();
+
+		if (primitiveData != null)
+		{
+			double[] values1 = getAlleleValues1();
+			double[] values2 = getAlleleValues2();
+
+			primitiveData.getAlleleValues((Integer) index1, values1);
+			primitiveData.getAlleleValues((Integer) index2, values2);
+
+			double sumMarkerSqDiff = 0;
+			for (int i = 0; i < values1.length; i++)
+			{
+				// missing values are NaN, so their differences are NaN as well
+				double diff = values1[i] - values2[i];
+
+				if (!Double.isNaN(diff))
+				{
+					sumMarkerSqDiff += diff * diff;
+				}
+			}
+
+			value = 1.0 / (Math.sqrt(2.0 * primitiveData.getColumnCount())) * Math.sqrt(sumMarkerSqDiff);
+			setMemoizedValue(index1, index2, value);
+			return value;
+		}
+
 		ListIterator<List<Double>> m1Itr = getData().getRowElements(index1).listIterator();
 		ListIterator<List<Double>> m2Itr = getData().getRowElements(index2).listIterator();
 
@@ -100,4 +143,32 @@ public final class ModifiedRogersDistanceSSR<IndexType> extends AbstractAccessio
 		return value;
 	}
 
+	/**
+	 * Gets the table of the squared differences for each pair of level
+	 * codes, with zero for pairs involving a missing value. The table is
+	 * rebuilt when the data changes.
+	 */
+	private double[] getLevelTerms(QuantizedAccessionSSRMarkerMatrix quantizedData)
+	{
+		if (levelTermsData != quantizedData)
+		{
+			int levelCount = quantizedData.getLevelCount();
+
+			levelTerms = new double[levelCount * levelCount];
+
+			for (int i = 0; i < levelCount; i++)
+			{
+				for (int j = 0; j < levelCount; j++)
+				{
+					double diff = quantizedData.getLevel(i) - quantizedData.getLevel(j);
+
+					levelTerms[i * levelCount + j] = Double.isNaN(diff) ? 0 : diff * diff;
+				}
+			}
+
+			levelTermsData = quantizedData;
+		}
+
+		return levelTerms;
+	}
 }
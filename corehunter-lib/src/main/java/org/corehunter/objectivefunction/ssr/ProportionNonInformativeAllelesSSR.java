@@ -13,10 +13,14 @@
 // limitations under the License.
 package org.corehunter.objectivefunction.ssr;
 
+import java.util.Collections;
 import java.util.List;
 
 import org.corehunter.CoreHunterException;
 import org.corehunter.model.UnknownIndexException;
+import org.corehunter.model.ssr.AllelePresenceBitmap;
+import org.corehunter.model.ssr.PrimitiveAccessionSSRMarkerMatrix;
+import org.corehunter.objectivefunction.MoveEvaluatingObjectiveFunction;
 import org.corehunter.objectivefunction.ObjectiveFunction;
 import org.corehunter.objectivefunction.impl.CachedResult;
 import org.corehunter.search.solution.SubsetSolution;
@@ -27,7 +31,8 @@ import org.corehunter.search.solution.SubsetSolution;
  * @author Chris Thachuk <chris.thachuk@gmail.com>
  * @version $Rev$
  */
-public final class ProportionNonInformativeAllelesSSR<IndexType> extends AbstractAccessionSSRObjectiveFunction<IndexType> {
+public final class ProportionNonInformativeAllelesSSR<IndexType> extends AbstractAccessionSSRObjectiveFunction<IndexType>
+        implements MoveEvaluatingObjectiveFunction<IndexType> {
 
     private PNCachedResult cachedResult;
 
@@ -60,30 +65,105 @@ public final class ProportionNonInformativeAllelesSSR<IndexType> extends Abstrac
 
     @Override
     public double calculate(SubsetSolution<IndexType> solution) throws CoreHunterException, CoreHunterException {
-        List<IndexType> aIndices = cachedResult.getAddedIndices(solution.getIndices());
-        List<IndexType> rIndices = cachedResult.getRemovedIndices(solution.getIndices());
+        List<IndexType> aIndices = cachedResult.getAddedIndices(solution.getSubsetIndices());
+        List<IndexType> rIndices = cachedResult.getRemovedIndices(solution.getSubsetIndices());
 
         int alleleCounts[] = cachedResult.getAlleleCounts();
-
-        int addTotals[] = getData().getAlleleCounts(aIndices);
-        int remTotals[] = getData().getAlleleCounts(rIndices);
+        PrimitiveAccessionSSRMarkerMatrix primitiveData = getPrimitiveData();
 
         int alleleCnt = 0;
-        for (int i = 0; i < alleleCounts.length; i++) {
-            int diff = 0;
-            if (addTotals != null) {
-                diff += addTotals[i];
+        if (primitiveData != null) {
+            // maintain the bitmap of covered alleles word by word, the alleles
+            // that are not covered are the non-informative ones
+            AllelePresenceBitmap allelePresence = primitiveData.getAllelePresence();
+            long covered[] = cachedResult.getCovered(allelePresence.getWordCount());
+
+            for (IndexType index : aIndices) {
+                allelePresence.add((Integer) index, alleleCounts, covered);
             }
-            if (remTotals != null) {
-                diff -= remTotals[i];
+            for (IndexType index : rIndices) {
+                allelePresence.remove((Integer) index, alleleCounts, covered);
             }
-            alleleCounts[i] += diff;
-            if (alleleCounts[i] <= 0) {
-                alleleCnt += 1;
+
+            alleleCnt = alleleCounts.length - AllelePresenceBitmap.countBits(covered);
+        } else {
+            int addTotals[] = getData().getAlleleCounts(aIndices);
+            int remTotals[] = getData().getAlleleCounts(rIndices);
+
+            for (int i = 0; i < alleleCounts.length; i++) {
+                int diff = 0;
+                if (addTotals != null) {
+                    diff += addTotals[i];
+                }
+                if (remTotals != null) {
+                    diff -= remTotals[i];
+                }
+                alleleCounts[i] += diff;
+                if (alleleCounts[i] <= 0) {
+                    alleleCnt += 1;
+                }
             }
         }
 
-        cachedResult.setIndices(solution.getIndices());
+        cachedResult.setIndices(solution.getSubsetIndices());
+
+        return (double) alleleCnt / (double) alleleCounts.length;
+    }
+
+    /**
+     * Evaluates a move from the allele counts of the subset last evaluated. An
+     * allele is no longer covered after removing an accession if the accession
+     * is the only one of the subset in which it is present.
+     */
+    @Override
+    public double calculateMove(SubsetSolution<IndexType> solution,
+            IndexType addedIndex, IndexType removedIndex) throws CoreHunterException {
+        int alleleCounts[] = cachedResult.getAlleleCounts();
+        PrimitiveAccessionSSRMarkerMatrix primitiveData = getPrimitiveData();
+
+        int alleleCnt = 0;
+        if (primitiveData != null) {
+            AllelePresenceBitmap allelePresence = primitiveData.getAllelePresence();
+            long covered[] = cachedResult.getCovered(allelePresence.getWordCount());
+
+            int coveredCnt = 0;
+            for (int w = 0; w < covered.length; w++) {
+                long added = addedIndex != null ? allelePresence.getWord((Integer) addedIndex, w) : 0L;
+                long word = covered[w];
+
+                if (removedIndex != null) {
+                    long removed = allelePresence.getWord((Integer) removedIndex, w) & ~added;
+
+                    while (removed != 0) {
+                        int bit = Long.numberOfTrailingZeros(removed);
+                        if (alleleCounts[(w << 6) + bit] == 1) {
+                            word &= ~(1L << bit);
+                        }
+                        removed &= removed - 1;
+                    }
+                }
+
+                coveredCnt += Long.bitCount(word | added);
+            }
+
+            alleleCnt = alleleCounts.length - coveredCnt;
+        } else {
+            int addTotals[] = addedIndex != null ? getData().getAlleleCounts(Collections.singletonList(addedIndex)) : null;
+            int remTotals[] = removedIndex != null ? getData().getAlleleCounts(Collections.singletonList(removedIndex)) : null;
+
+            for (int i = 0; i < alleleCounts.length; i++) {
+                int count = alleleCounts[i];
+                if (addTotals != null) {
+                    count += addTotals[i];
+                }
+                if (remTotals != null) {
+                    count -= remTotals[i];
+                }
+                if (count <= 0) {
+                    alleleCnt += 1;
+                }
+            }
+        }
 
         return (double) alleleCnt / (double) alleleCounts.length;
     }
@@ -91,6 +171,7 @@ public final class ProportionNonInformativeAllelesSSR<IndexType> extends Abstrac
     private class PNCachedResult extends CachedResult<IndexType> {
 
         private int pAlleleCounts[];
+        private long pCovered[];
 
         public PNCachedResult() throws UnknownIndexException {
             super();
@@ -105,5 +186,12 @@ public final class ProportionNonInformativeAllelesSSR<IndexType> extends Abstrac
         public int[] getAlleleCounts() {
             return pAlleleCounts;
         }
+
+        public long[] getCovered(int wordCount) {
+            if (pCovered == null) {
+                pCovered = new long[wordCount];
+            }
+            return pCovered;
+        }
     }
 }
@@ -14,10 +14,13 @@
 
 package org.corehunter.objectivefunction.ssr;
 
+import java.util.Collections;
 import java.util.List;
 
 import org.corehunter.CoreHunterException;
 import org.corehunter.model.UnknownIndexException;
+import org.corehunter.model.ssr.PrimitiveAccessionSSRMarkerMatrix;
+import org.corehunter.objectivefunction.MoveEvaluatingObjectiveFunction;
 import org.corehunter.objectivefunction.ObjectiveFunction;
 import org.corehunter.objectivefunction.impl.CachedResult;
 import org.corehunter.search.solution.SubsetSolution;
@@ -29,6 +32,7 @@ import org.corehunter.search.solution.SubsetSolution;
  * @version $Rev$
  */
 public final class ShannonsDiversitySSR<IndexType> extends AbstractAccessionSSRObjectiveFunction<IndexType>
+	implements MoveEvaluatingObjectiveFunction<IndexType>
 {
 	private SHCachedResult<IndexType>	cachedResults;
 
@@ -49,7 +53,7 @@ public final class ShannonsDiversitySSR<IndexType> extends AbstractAccessionSSRO
         
         @Override
         public void flushCachedResults() throws CoreHunterException {
-            throw new UnsupportedOperationException("Not yet implemented.");
+            cachedResults = null;
         }
 	
 	@Override
@@ -64,29 +68,100 @@ public final class ShannonsDiversitySSR<IndexType> extends AbstractAccessionSSRO
 		if (cachedResults == null)
 			cachedResults = new SHCachedResult<IndexType>(solution) ;
 		
-		List<IndexType> aIndices = cachedResults.getAddedIndices(solution.getIndices());
-		List<IndexType> rIndices = cachedResults.getRemovedIndices(solution.getIndices());
+		List<IndexType> aIndices = cachedResults.getAddedIndices(solution.getSubsetIndices());
+		List<IndexType> rIndices = cachedResults.getRemovedIndices(solution.getSubsetIndices());
 
 		double total = cachedResults.getTotal();
 		double alleleTotals[] = cachedResults.getAlleleTotals();
-		double addTotals[] = getData().getAlleleTotals(aIndices);
-		double remTotals[] = getData().getAlleleTotals(rIndices);
+		PrimitiveAccessionSSRMarkerMatrix primitiveData = getPrimitiveData();
 
-		for (int i = 0; i < alleleTotals.length; i++)
+		if (primitiveData != null)
 		{
-			double diff = 0.0;
-			if (addTotals != null)
+			// update the totals directly from the primitive matrix, avoiding the
+			// temporary total arrays
+			for (IndexType index : aIndices)
+			{
+				total += primitiveData.addAlleleValues((Integer) index, alleleTotals, 1.0);
+			}
+			for (IndexType index : rIndices)
 			{
-				diff += addTotals[i];
+				total += primitiveData.addAlleleValues((Integer) index, alleleTotals, -1.0);
 			}
-			if (remTotals != null)
+		}
+		else
+		{
+			double addTotals[] = getData().getAlleleTotals(aIndices);
+			double remTotals[] = getData().getAlleleTotals(rIndices);
+
+			for (int i = 0; i < alleleTotals.length; i++)
 			{
-				diff -= remTotals[i];
+				double diff = 0.0;
+				if (addTotals != null)
+				{
+					diff += addTotals[i];
+				}
+				if (remTotals != null)
+				{
+					diff -= remTotals[i];
+				}
+				alleleTotals[i] += diff;
+				total += diff;
 			}
-			alleleTotals[i] += diff;
-			total += diff;
 		}
 
+		// recache our results
+		cachedResults.setTotal(total);
+		cachedResults.setIndices(solution.getSubsetIndices());
+
+		return calculate(alleleTotals, total);
+	}
+
+	/**
+	 * Evaluates a move on a copy of the allele totals of the subset last
+	 * evaluated
+	 */
+	@Override
+	public double calculateMove(SubsetSolution<IndexType> solution,
+	    IndexType addedIndex, IndexType removedIndex) throws CoreHunterException
+	{
+		if (cachedResults == null)
+			cachedResults = new SHCachedResult<IndexType>(solution) ;
+
+		double alleleTotals[] = cachedResults.getMoveAlleleTotals();
+		double total = cachedResults.getTotal();
+
+		System.arraycopy(cachedResults.getAlleleTotals(), 0, alleleTotals, 0, alleleTotals.length);
+
+		total += addAlleleTotals(addedIndex, alleleTotals, 1.0);
+		total += addAlleleTotals(removedIndex, alleleTotals, -1.0);
+
+		return calculate(alleleTotals, total);
+	}
+
+	private double addAlleleTotals(IndexType index, double alleleTotals[], double factor) throws CoreHunterException
+	{
+		if (index == null)
+			return 0.0;
+
+		PrimitiveAccessionSSRMarkerMatrix primitiveData = getPrimitiveData();
+
+		if (primitiveData != null)
+			return primitiveData.addAlleleValues((Integer) index, alleleTotals, factor);
+
+		double totals[] = getData().getAlleleTotals(Collections.singletonList(index));
+		double sum = 0.0;
+
+		for (int i = 0; i < alleleTotals.length; i++)
+		{
+			alleleTotals[i] += factor * totals[i];
+			sum += factor * totals[i];
+		}
+
+		return sum;
+	}
+
+	private double calculate(double alleleTotals[], double total)
+	{
 		double sum = 0.0;
 		for (int i = 0; i < alleleTotals.length; i++)
 		{
@@ -103,10 +178,6 @@ public final class ShannonsDiversitySSR<IndexType> extends AbstractAccessionSSRO
 			}
 		}
 
-		// recache our results
-		cachedResults.setTotal(total);
-		cachedResults.setIndices(solution.getIndices());
-
 		return -sum;
 	}
 
@@ -114,6 +185,7 @@ public final class ShannonsDiversitySSR<IndexType> extends AbstractAccessionSSRO
 	{
 		private double	pTotal;
 		private double	pAlleleTotals[];
+		private double	pMoveAlleleTotals[];
 
 		public SHCachedResult(SubsetSolution<IndexType2> solution) throws UnknownIndexException
 		{
@@ -129,6 +201,7 @@ public final class ShannonsDiversitySSR<IndexType> extends AbstractAccessionSSRO
 			}
 
 			pTotal = 0.0;
+			pMoveAlleleTotals = new double[alleleCount];
 		}
 
 		public double getTotal()
@@ -141,6 +214,11 @@ public final class ShannonsDiversitySSR<IndexType> extends AbstractAccessionSSRO
 			return pAlleleTotals;
 		}
 
+		public double[] getMoveAlleleTotals()
+		{
+			return pMoveAlleleTotals;
+		}
+
 		public void setTotal(double total)
 		{
 			pTotal = total;
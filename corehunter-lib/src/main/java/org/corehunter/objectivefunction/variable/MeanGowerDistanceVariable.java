@@ -1,32 +1,54 @@
 package org.corehunter.objectivefunction.variable;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
-import java.util.ListIterator;
 
 import org.apache.commons.lang3.ObjectUtils;
 import org.corehunter.CoreHunterException;
+import org.corehunter.model.ContentDigest;
 import org.corehunter.model.Matrix;
 import org.corehunter.model.UnknownIndexException;
 import org.corehunter.model.accession.Accession;
+import org.corehunter.model.distance.DistanceStorageType;
 import org.corehunter.model.variable.CategoricalVariable;
+import org.corehunter.model.variable.ColumnarAccessionVariableMatrix;
 import org.corehunter.model.variable.RangedVariable;
 import org.corehunter.model.variable.Variable;
+import org.corehunter.objectivefunction.MoveEvaluatingObjectiveFunction;
 import org.corehunter.objectivefunction.ObjectiveFunction;
+import org.corehunter.objectivefunction.PrecomputableDistanceMeasure;
 import org.corehunter.objectivefunction.impl.AbstractSubsetObjectiveFunction;
+import org.corehunter.objectivefunction.impl.CachedResult;
+import org.corehunter.objectivefunction.impl.DistanceMatrixFile;
+import org.corehunter.objectivefunction.impl.ParallelDistanceCalculator;
+import org.corehunter.objectivefunction.impl.TriangularDistanceCache;
 import org.corehunter.search.solution.SubsetSolution;
 
 public class MeanGowerDistanceVariable
     extends
     AbstractSubsetObjectiveFunction<Integer, Matrix<Integer, Object, Accession, Variable>>
+    implements PrecomputableDistanceMeasure,
+    MoveEvaluatingObjectiveFunction<Integer>
 {
 	private static final String	NAME	      = "GW";
 	private static final String	DESCRIPTION	= "Mean Gower's Distance";
-	private Double[][]	        distanceMatrix;
+	private static final double	MISSING_VAL	= -1.0;
+	private volatile TriangularDistanceCache	distances;	// created on first use, shared between copies
 	private ArrayList<Variable>	discriminateVariables;
+	private int[]	              discriminateColumns;
 	private int	                variableCount;
 	private int	                nonDiscriminateVariableCount;
+	private ColumnarAccessionVariableMatrix	columnarData;
+	private int[]	              binaryColumns;
+	private int[]	              nominalColumns;
+	private int[]	              rangedColumns;
+	private double[]	          rangeWidths;
+	private File	              distanceMatrixFile;
+	private DistanceMatrixFile	storedDistances;
+	private GWCachedResult	    cachedResult	= new GWCachedResult();
 
 	public MeanGowerDistanceVariable()
 	{
@@ -38,39 +60,288 @@ public class MeanGowerDistanceVariable
 	{
 		super.handleDataSet();
 
-		int size = getData().getIndices().size();
+		distances = null;
 
-		distanceMatrix = new Double[size][];
-
-		for (int i = 0; i < size; ++i)
-		{
-			distanceMatrix[i] = new Double[i];
-		}
-
-		discriminateVariables = new ArrayList<Variable>(getData()
+		List<Variable> variables = new ArrayList<Variable>(getData()
 		    .getColumnHeaders().getElements());
 
+		discriminateVariables = new ArrayList<Variable>(variables.size());
+		discriminateColumns = new int[variables.size()];
+
 		// checks if any variables can not be used in the distance
 		// those not valid are assume to have a distance of 1
-		ListIterator<Variable> iterator = discriminateVariables.listIterator();
-
-		variableCount = discriminateVariables.size();
+		variableCount = variables.size();
 		nonDiscriminateVariableCount = 0;
 
-		while (iterator.hasNext())
+		for (int i = 0; i < variableCount; ++i)
 		{
-			if (!isDiscriminateVariable(iterator.next()))
+			if (isDiscriminateVariable(variables.get(i)))
+			{
+				discriminateColumns[discriminateVariables.size()] = i;
+				discriminateVariables.add(variables.get(i));
+			}
+			else
 			{
 				++nonDiscriminateVariableCount;
-				iterator.remove();
+			}
+		}
+
+		if (getData() instanceof ColumnarAccessionVariableMatrix)
+		{
+			columnarData = (ColumnarAccessionVariableMatrix) getData();
+
+			createColumnGroups();
+		}
+		else
+		{
+			columnarData = null;
+		}
+
+		loadDistanceMatrix();
+	}
+
+	/**
+	 * Gets the file in which the distances between all pairs of accessions are
+	 * stored
+	 * 
+	 * @return the file or <code>null</code> if the distances are not stored
+	 */
+	public final File getDistanceMatrixFile()
+	{
+		return distanceMatrixFile;
+	}
+
+	/**
+	 * Sets the file in which the distances between all pairs of accessions are
+	 * stored, see {@link DistanceMatrixFile}. When the data is set, the
+	 * distances are read from the file if it was written for the same dataset
+	 * contents, otherwise all distances are calculated and the file is
+	 * replaced.
+	 * 
+	 * @param distanceMatrixFile the file or <code>null</code> to calculate
+	 *          distances when needed
+	 * @throws CoreHunterException if the file can not be read or written
+	 */
+	public final void setDistanceMatrixFile(File distanceMatrixFile)
+	    throws CoreHunterException
+	{
+		this.distanceMatrixFile = distanceMatrixFile;
+
+		loadDistanceMatrix();
+	}
+
+	/**
+	 * Gets the digest under which the distances for the current data are
+	 * stored in the distance matrix file. Besides the values, it covers the
+	 * types, ranges and categorical values of the variables, which determine
+	 * the distances as well.
+	 * 
+	 * @return the digest or <code>null</code> if no data is set
+	 */
+	@SuppressWarnings("rawtypes")
+	public final ContentDigest getDistanceMatrixDigest()
+	{
+		if (getData() == null)
+		{
+			return null;
+		}
+
+		ContentDigest.Builder builder = new ContentDigest.Builder();
+
+		builder.addDigest(getData().getContentDigest());
+
+		for (Variable variable : getData().getColumnHeaders().getElements())
+		{
+			builder.addString(String.valueOf(variable.getType()));
+			builder.addString(String.valueOf(variable.getDataType()));
+
+			if (variable instanceof RangedVariable)
+			{
+				builder.add(((RangedVariable) variable).getMinimumValue());
+				builder.add(((RangedVariable) variable).getMaximumValue());
+			}
+
+			if (variable instanceof CategoricalVariable)
+			{
+				builder.add(((CategoricalVariable) variable).getValues());
+			}
+		}
+
+		return builder.build();
+	}
+
+	private void loadDistanceMatrix() throws CoreHunterException
+	{
+		storedDistances = null;
+
+		ContentDigest digest = getDistanceMatrixDigest();
+
+		// inexact digests can not identify the dataset the file was written for
+		if (distanceMatrixFile != null && digest != null && digest.isExact())
+		{
+			int size = getData().getIndices().size();
+
+			DistanceMatrixFile distances = DistanceMatrixFile.open(
+			    distanceMatrixFile, NAME, digest.toString(), size);
+
+			if (distances == null)
+			{
+				distances = DistanceMatrixFile.create(distanceMatrixFile, NAME,
+				    digest.toString(), size, new DistanceMatrixFile.DistanceFunction()
+				    {
+					    @Override
+					    public double calculate(int index1, int index2)
+					        throws CoreHunterException
+					    {
+						    return MeanGowerDistanceVariable.this.calculate(index1, index2);
+					    }
+				    });
+			}
+
+			storedDistances = distances;
+		}
+	}
+
+	// groups the discriminate columns by type, so that the columnar data can
+	// be compared one group at a time without dispatching on the type of each
+	// value
+	@SuppressWarnings("rawtypes")
+	private void createColumnGroups()
+	{
+		int binaryCount = 0;
+		int nominalCount = 0;
+		int rangedCount = 0;
+
+		for (Variable variable : discriminateVariables)
+		{
+			switch (variable.getType())
+			{
+				case BINARY:
+					++binaryCount;
+					break;
+				case NOMINAL:
+					++nominalCount;
+					break;
+				case INTERVAL:
+				case ORDINAL:
+				case RATIO:
+					++rangedCount;
+					break;
+				default:
+					break;
+			}
+		}
+
+		binaryColumns = new int[binaryCount];
+		nominalColumns = new int[nominalCount];
+		rangedColumns = new int[rangedCount];
+		rangeWidths = new double[rangedCount];
+
+		binaryCount = 0;
+		nominalCount = 0;
+		rangedCount = 0;
+
+		for (int i = 0; i < discriminateVariables.size(); ++i)
+		{
+			Variable variable = discriminateVariables.get(i);
+
+			switch (variable.getType())
+			{
+				case BINARY:
+					binaryColumns[binaryCount++] = discriminateColumns[i];
+					break;
+				case NOMINAL:
+					nominalColumns[nominalCount++] = discriminateColumns[i];
+					break;
+				case INTERVAL:
+				case ORDINAL:
+				case RATIO:
+					rangeWidths[rangedCount] = ((RangedVariable) variable)
+					    .getMaximumValue().doubleValue()
+					    - ((RangedVariable) variable).getMinimumValue().doubleValue();
+					rangedColumns[rangedCount++] = discriminateColumns[i];
+					break;
+				default:
+					break;
 			}
 		}
 	}
 
 	@Override
-	public void flushCachedResults() throws CoreHunterException
+	public boolean isDistancesPrecomputed()
+	{
+		TriangularDistanceCache distances = this.distances;
+
+		return storedDistances != null
+		    || (distances != null && distances.getComputedCount() == distances
+		        .getDistanceCount());
+	}
+
+	/**
+	 * Calculates the distances between all pairs of accessions with a
+	 * {@link ParallelDistanceCalculator}. The threads share a single distance
+	 * function, as calculating a distance only reads the data.
+	 */
+	@Override
+	public void precomputeDistances(int threadCount, ProgressListener listener)
+	    throws CoreHunterException
+	{
+		if (isDistancesPrecomputed())
+		{
+			return;
+		}
+
+		final DistanceMatrixFile.DistanceFunction function = new DistanceMatrixFile.DistanceFunction()
+		{
+			@Override
+			public double calculate(int index1, int index2)
+			    throws CoreHunterException
+			{
+				return MeanGowerDistanceVariable.this.calculate(index1, index2);
+			}
+		};
+
+		new ParallelDistanceCalculator(threadCount).calculate(getDistances(),
+		    new ParallelDistanceCalculator.DistanceFunctionFactory()
+		    {
+			    @Override
+			    public DistanceMatrixFile.DistanceFunction createDistanceFunction()
+			    {
+				    return function;
+			    }
+		    }, listener);
+	}
+
+	/**
+	 * Gets the memoized distances, creating them on first use. The cache is
+	 * thread-safe and shared by all copies for the same dataset.
+	 */
+	private TriangularDistanceCache getDistances()
 	{
+		TriangularDistanceCache distances = this.distances;
+
+		if (distances == null)
+		{
+			synchronized (this)
+			{
+				distances = this.distances;
+
+				if (distances == null)
+				{
+					distances = new TriangularDistanceCache(getData().getIndices()
+					    .size(), DistanceStorageType.DOUBLE);
+					this.distances = distances;
+				}
+			}
+		}
 
+		return distances;
+	}
+
+	@Override
+	public void flushCachedResults() throws CoreHunterException
+	{
+		cachedResult = new GWCachedResult();
 	}
 
 	@SuppressWarnings("rawtypes")
@@ -113,35 +384,122 @@ public class MeanGowerDistanceVariable
 	    throws CoreHunterException
 	{
 		super(objectiveFuncton);
+
+		distanceMatrixFile = objectiveFuncton.distanceMatrixFile;
+		storedDistances = objectiveFuncton.storedDistances;
+
+		// the copy has the same dataset, so it uses the same distances
+		if (getData() != null)
+		{
+			distances = objectiveFuncton.getDistances();
+		}
 	}
 
+	/**
+	 * Updates the total of the distances of the subset last evaluated with the
+	 * distances of the added and removed accessions only
+	 */
 	@Override
 	public double calculate(SubsetSolution<Integer> solution)
 	    throws CoreHunterException
 	{
-		List<Integer> subsetIndices = new ArrayList<Integer>(
-		    solution.getSubsetIndices());
+		Collection<Integer> indices = solution.getSubsetIndices();
 
-		double evaluation = 0;
-		int count = 0;
+		List<Integer> aIndices = cachedResult.getAddedIndices(indices);
+		List<Integer> rIndices = cachedResult.getRemovedIndices(indices);
+		List<Integer> cIndices = cachedResult.getCommonIndices(indices);
+
+		double evaluation = cachedResult.total;
+		int count = cachedResult.count;
 
-		for (int i = 0; i < subsetIndices.size(); ++i)
+		for (int i = 0; i < aIndices.size(); ++i)
 		{
+			for (Integer index : cIndices)
+			{
+				evaluation = evaluation + getDistance(aIndices.get(i), index);
+				++count;
+			}
+
 			for (int j = 0; j < i; ++j)
 			{
-				if (distanceMatrix[i][j] == null)
-					distanceMatrix[i][j] = calculate(subsetIndices.get(i),
-					    subsetIndices.get(j));
+				evaluation = evaluation + getDistance(aIndices.get(i), aIndices.get(j));
+				++count;
+			}
+		}
 
-				evaluation = evaluation + distanceMatrix[i][j];
+		for (int i = 0; i < rIndices.size(); ++i)
+		{
+			for (Integer index : cIndices)
+			{
+				evaluation = evaluation - getDistance(rIndices.get(i), index);
+				--count;
+			}
 
-				++count;
+			for (int j = 0; j < i; ++j)
+			{
+				evaluation = evaluation - getDistance(rIndices.get(i), rIndices.get(j));
+				--count;
 			}
 		}
 
+		cachedResult.total = evaluation;
+		cachedResult.count = count;
+		cachedResult.setIndices(indices);
+
 		return evaluation / count;
 	}
 
+	@Override
+	public double calculateMove(SubsetSolution<Integer> solution,
+	    Integer addedIndex, Integer removedIndex) throws CoreHunterException
+	{
+		double evaluation = cachedResult.total;
+		int count = cachedResult.count;
+
+		for (Integer index : cachedResult.getIndices())
+		{
+			if (!index.equals(removedIndex))
+			{
+				if (addedIndex != null)
+				{
+					evaluation = evaluation + getDistance(addedIndex, index);
+					++count;
+				}
+
+				if (removedIndex != null)
+				{
+					evaluation = evaluation - getDistance(removedIndex, index);
+					--count;
+				}
+			}
+		}
+
+		return evaluation / count;
+	}
+
+	private double getDistance(int index1, int index2) throws CoreHunterException
+	{
+		int indexA = Math.max(index1, index2);
+		int indexB = Math.min(index1, index2);
+
+		if (storedDistances != null)
+		{
+			return storedDistances.getDistance(indexA, indexB);
+		}
+
+		TriangularDistanceCache distances = getDistances();
+
+		double distance = distances.getDistance(indexA, indexB, MISSING_VAL);
+
+		if (distance == MISSING_VAL)
+		{
+			distance = calculate(indexA, indexB);
+			distances.setDistance(indexA, indexB, distance);
+		}
+
+		return distance;
+	}
+
 	@Override
 	public ObjectiveFunction<SubsetSolution<Integer>> copy()
 	    throws CoreHunterException
@@ -151,19 +509,24 @@ public class MeanGowerDistanceVariable
 
 	private double calculate(int indexA, int indexB) throws UnknownIndexException
 	{
+		if (columnarData != null)
+		{
+			return calculateColumnar(indexA, indexB);
+		}
+
 		double evaluation = 0;
 
 		Iterator<Variable> iterator = discriminateVariables.iterator();
-		int columnIndex = 0;
+		int i = 0;
 
 		while (iterator.hasNext())
 		{
 			evaluation = evaluation
-			    + calculate(iterator.next(), getData()
-			        .getElement(indexA, columnIndex),
-			        getData().getElement(indexB, columnIndex));
+			    + calculate(iterator.next(),
+			        getData().getElement(indexA, discriminateColumns[i]), getData()
+			            .getElement(indexB, discriminateColumns[i]));
 
-			++columnIndex;
+			++i;
 		}
 
 		evaluation = evaluation + nonDiscriminateVariableCount; // assume
@@ -174,6 +537,42 @@ public class MeanGowerDistanceVariable
 		return evaluation / variableCount;
 	}
 
+	// same as calculate for a list based matrix, missing binary values are read
+	// as false, missing codes as -1 and missing numeric values as NaN
+	private double calculateColumnar(int indexA, int indexB)
+	{
+		double evaluation = 0;
+
+		for (int k = 0; k < binaryColumns.length; ++k)
+		{
+			if (columnarData.getBinaryValue(indexA, binaryColumns[k])
+			    && columnarData.getBinaryValue(indexB, binaryColumns[k]))
+				++evaluation;
+		}
+
+		for (int k = 0; k < nominalColumns.length; ++k)
+		{
+			int code = columnarData.getCode(indexA, nominalColumns[k]);
+
+			if (code >= 0 && code == columnarData.getCode(indexB, nominalColumns[k]))
+				++evaluation;
+		}
+
+		for (int k = 0; k < rangedColumns.length; ++k)
+		{
+			double valueA = columnarData.getNumericValue(indexA, rangedColumns[k]);
+			double valueB = columnarData.getNumericValue(indexB, rangedColumns[k]);
+
+			if (!Double.isNaN(valueA) && !Double.isNaN(valueB))
+				evaluation = evaluation + 1
+				    - (Math.abs(valueA - valueB) / rangeWidths[k]);
+		}
+
+		evaluation = evaluation + nonDiscriminateVariableCount;
+
+		return evaluation / variableCount;
+	}
+
 	@SuppressWarnings("rawtypes")
 	private double calculate(Variable variable, Object elementA, Object elementB)
 	{
@@ -200,6 +599,12 @@ public class MeanGowerDistanceVariable
 		return 0;
 	}
 
+	private class GWCachedResult extends CachedResult<Integer>
+	{
+		private double	total;
+		private int		  count;
+	}
+
 	private double calculateBooleanVariable(Boolean elementA, Boolean elementB)
 	{
 		if (elementA && elementB)
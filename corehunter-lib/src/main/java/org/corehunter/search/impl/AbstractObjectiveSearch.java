@@ -16,6 +16,7 @@ package org.corehunter.search.impl;
 
 import org.corehunter.CoreHunterException;
 import org.corehunter.objectivefunction.ObjectiveFunction;
+import org.corehunter.objectivefunction.PrecomputableDistanceMeasure;
 import org.corehunter.search.ObjectiveSearch;
 import org.corehunter.search.SearchStatus;
 import org.corehunter.search.solution.Solution;
@@ -25,6 +26,8 @@ public abstract class AbstractObjectiveSearch<SolutionType extends Solution>
         implements ObjectiveSearch<SolutionType> {
 
     private ObjectiveFunction<SolutionType> objectiveFunction;    
+    private boolean precomputeDistances;
+    private int precomputationThreadCount;
 
     public AbstractObjectiveSearch() {
         super();
@@ -33,6 +36,8 @@ public abstract class AbstractObjectiveSearch<SolutionType extends Solution>
     protected AbstractObjectiveSearch(AbstractObjectiveSearch<SolutionType> search) throws CoreHunterException {
         super(search);
         setObjectiveFunction(search.getObjectiveFunction().copy());        
+        precomputeDistances = search.precomputeDistances;
+        precomputationThreadCount = search.precomputationThreadCount;
     }
     
     @Override
@@ -51,6 +56,60 @@ public abstract class AbstractObjectiveSearch<SolutionType extends Solution>
         }
     }
     
+    public final boolean isPrecomputeDistances() {
+        return precomputeDistances;
+    }
+
+    /**
+     * Sets whether the distances of an objective function that is a
+     * {@link PrecomputableDistanceMeasure} are precomputed when the search is
+     * started, before it is run. The progress of the precomputation is reported
+     * to the search listeners. Copies of the objective function made by the
+     * search afterwards, such as those of replicas, share the distances.
+     * 
+     * @param precomputeDistances <code>true</code> to precompute the distances
+     */
+    public final void setPrecomputeDistances(boolean precomputeDistances) {
+        this.precomputeDistances = precomputeDistances;
+    }
+
+    public final int getPrecomputationThreadCount() {
+        return precomputationThreadCount;
+    }
+
+    /**
+     * Sets the number of threads used to precompute the distances
+     * 
+     * @param precomputationThreadCount the number of threads, or <code>0</code>
+     *          to use as many threads as there are available processors
+     */
+    public final void setPrecomputationThreadCount(int precomputationThreadCount) {
+        this.precomputationThreadCount = precomputationThreadCount;
+    }
+
+    @Override
+    protected void prepareSearch() throws CoreHunterException {
+        super.prepareSearch();
+
+        if (precomputeDistances && objectiveFunction instanceof PrecomputableDistanceMeasure) {
+            PrecomputableDistanceMeasure measure = (PrecomputableDistanceMeasure) objectiveFunction;
+
+            if (!measure.isDistancesPrecomputed()) {
+                fireSearchMessage("Precomputing distances...");
+
+                measure.precomputeDistances(precomputationThreadCount,
+                        new PrecomputableDistanceMeasure.ProgressListener() {
+                            @Override
+                            public void progress(double progress) {
+                                fireSearchProgress(progress);
+                            }
+                        });
+
+                fireSearchMessage("Distances precomputed.");
+            }
+        }
+    }
+
     /**
      * Positive delta for a better solution, negative for a worse solution.
      */
@@ -86,6 +86,12 @@ public abstract class AbstractSearch<SolutionType extends Solution>
 				validate();
 				fireSearchStarted();
 
+				prepareSearch();
+
+				// the preparation does not count towards the search time
+				startTime = System.nanoTime();
+				bestSolutionTime = startTime;
+
 				runSearch();
 
 				endTime = System.nanoTime();
@@ -259,6 +265,18 @@ public abstract class AbstractSearch<SolutionType extends Solution>
 		getCurrentSolution().validate();
 	}
 
+	/**
+	 * Prepares the search once it is started and before it is run, for example
+	 * by precomputing data used by the search. The time needed does not count
+	 * towards the search time. Does nothing by default.
+	 * 
+	 * @throws CoreHunterException if the search can not be prepared
+	 */
+	protected void prepareSearch() throws CoreHunterException
+	{
+
+	}
+
 	protected abstract void runSearch() throws CoreHunterException;
 
 	@SuppressWarnings("unchecked")
@@ -17,8 +17,12 @@ package org.corehunter.search.impl;
 import java.util.Collection;
 
 import org.corehunter.CoreHunterException;
+import org.corehunter.neighbourhood.AddedIndexMove;
+import org.corehunter.neighbourhood.EvaluatedMove;
 import org.corehunter.neighbourhood.IndexedMove;
+import org.corehunter.neighbourhood.RemovedIndexMove;
 import org.corehunter.neighbourhood.SubsetNeighbourhood;
+import org.corehunter.objectivefunction.MoveEvaluatingObjectiveFunction;
 import org.corehunter.search.PreferredSize;
 import org.corehunter.search.SearchStatus;
 import org.corehunter.search.SubsetSearch;
@@ -99,6 +103,72 @@ public abstract class AbstractSubsetNeighbourhoodSearch<
         }
     }
     
+    /**
+     * Evaluates a move that was applied to the current solution. If the
+     * objective function can evaluate moves, the move is undone and evaluated
+     * from the results cached for the current solution, which are left
+     * unchanged in case the move is rejected, and then applied again. Searches
+     * that accept the move must then calculate the current solution, to update
+     * the cached results for the next move.
+     * 
+     * @param move the move that was applied to the current solution
+     * @param moveEvaluator the objective function if it can evaluate moves, see
+     *          {@link #getMoveEvaluator()}, or <code>null</code>
+     * @return the evaluation of the current solution
+     * @throws CoreHunterException if the solution can not be evaluated
+     */
+    protected final double calculateMove(IndexedMove<IndexType, SolutionType> move,
+            MoveEvaluatingObjectiveFunction<IndexType> moveEvaluator) throws CoreHunterException {
+        
+        if (moveEvaluator == null) {
+            return getObjectiveFunction().calculate(getCurrentSolution());
+        }
+        
+        IndexType addedIndex = move instanceof AddedIndexMove ? ((AddedIndexMove<IndexType, SolutionType>) move).getAddedIndex() : null;
+        IndexType removedIndex = move instanceof RemovedIndexMove ? ((RemovedIndexMove<IndexType, SolutionType>) move).getRemovedIndex() : null;
+        
+        move.undo(getCurrentSolution());
+        
+        double evaluation = moveEvaluator.calculateMove(getCurrentSolution(), addedIndex, removedIndex);
+        
+        move.apply(getCurrentSolution());
+        
+        return evaluation;
+    }
+    
+    /**
+     * Gets the evaluation of the current solution after the neighbourhood
+     * applied its best move. Neighbourhoods that evaluated the move while
+     * looking for it return it with its evaluation, which is not calculated
+     * again, the current solution is only calculated for other moves.
+     * 
+     * @param move the best move that was applied to the current solution
+     * @return the evaluation of the current solution
+     * @throws CoreHunterException if the solution can not be evaluated
+     */
+    protected final double getBestMoveEvaluation(IndexedMove<IndexType, SolutionType> move) throws CoreHunterException {
+        if (move instanceof EvaluatedMove && ((EvaluatedMove<SolutionType>) move).isEvaluationSet()) {
+            return ((EvaluatedMove<SolutionType>) move).getEvaluation();
+        } else {
+            return getObjectiveFunction().calculate(getCurrentSolution());
+        }
+    }
+    
+    /**
+     * Gets the objective function if it can evaluate moves
+     * 
+     * @return the objective function, or <code>null</code> if it can not
+     *         evaluate moves
+     */
+    @SuppressWarnings("unchecked")
+    protected final MoveEvaluatingObjectiveFunction<IndexType> getMoveEvaluator() {
+        if (getObjectiveFunction() instanceof MoveEvaluatingObjectiveFunction) {
+            return (MoveEvaluatingObjectiveFunction<IndexType>) getObjectiveFunction();
+        } else {
+            return null;
+        }
+    }
+    
     private boolean isBetterSize(int newSize, int oldSize){
         int sizeDelta = newSize - oldSize;
         if(getSubsetPreferredSize() == PreferredSize.LARGEST && sizeDelta > 0
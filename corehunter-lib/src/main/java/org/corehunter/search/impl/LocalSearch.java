@@ -17,6 +17,7 @@ package org.corehunter.search.impl;
 import org.corehunter.CoreHunterException;
 import org.corehunter.neighbourhood.IndexedMove;
 import org.corehunter.neighbourhood.SubsetNeighbourhood;
+import org.corehunter.objectivefunction.MoveEvaluatingObjectiveFunction;
 import org.corehunter.search.Search;
 import org.corehunter.search.solution.SubsetSolution;
 
@@ -62,6 +63,7 @@ public class LocalSearch<IndexType, SolutionType extends SubsetSolution<IndexTyp
 
 		double newEvaluation, evaluation;
 		int newSize, size;
+		MoveEvaluatingObjectiveFunction<IndexType> moveEvaluator = getMoveEvaluator();
 
 		// accept current solution
 		setCurrentSolutionEvaluation(getObjectiveFunction().calculate(
@@ -89,13 +91,19 @@ public class LocalSearch<IndexType, SolutionType extends SubsetSolution<IndexTyp
 			
 			if (move != null)
 			{
-				newEvaluation = getObjectiveFunction().calculate(getCurrentSolution());
+				newEvaluation = calculateMove(move, moveEvaluator);
 				newSize = getCurrentSolution().getSubsetSize();
 				// check if improvement
 				if (isBetterSolution(newEvaluation, evaluation, newSize, size))
 				{
 					// accept new solution
 					setCurrentSolutionEvaluation(newEvaluation);
+					// the move was only evaluated, so the cached results of the
+					// objective function are updated for the next move
+					if (moveEvaluator != null)
+					{
+						getObjectiveFunction().calculate(getCurrentSolution());
+					}
 					// check if new best solution
 					if (isNewBestSolution(newEvaluation, newSize))
 					{
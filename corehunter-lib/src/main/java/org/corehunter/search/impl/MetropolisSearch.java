@@ -19,6 +19,7 @@ import java.text.DecimalFormat;
 import org.corehunter.CoreHunterException;
 import org.corehunter.neighbourhood.IndexedMove;
 import org.corehunter.neighbourhood.SubsetNeighbourhood;
+import org.corehunter.objectivefunction.MoveEvaluatingObjectiveFunction;
 import org.corehunter.search.Search;
 import org.corehunter.search.SearchStatus;
 import org.corehunter.search.solution.SubsetSolution;
@@ -89,6 +90,7 @@ public class MetropolisSearch<
         int size, newSize;
         IndexedMove<IndexType, SolutionType> move;
         boolean acceptMove;
+        MoveEvaluatingObjectiveFunction<IndexType> moveEvaluator = getMoveEvaluator();
         
         // accept current solution
         setCurrentSolutionEvaluation(getObjectiveFunction().calculate(getCurrentSolution()));
@@ -106,7 +108,7 @@ public class MetropolisSearch<
             move = getNeighbourhood().performRandomMove(getCurrentSolution());
             if(move != null){
                 // compute new evaluation and size
-                newEvaluation = getObjectiveFunction().calculate(getCurrentSolution());
+                newEvaluation = calculateMove(move, moveEvaluator);
                 newSize = getCurrentSolution().getSubsetSize();
 
                 // check for improvement w.r.t current solution
@@ -124,6 +126,11 @@ public class MetropolisSearch<
                 if (acceptMove) {
                     // accept solution
                     setCurrentSolutionEvaluation(newEvaluation);
+                    // the move was only evaluated, so the cached results of the
+                    // objective function are updated for the next move
+                    if (moveEvaluator != null) {
+                        getObjectiveFunction().calculate(getCurrentSolution());
+                    }
                     // check for improvement w.r.t *best* solution
                     if (isNewBestSolution(newEvaluation, newSize)) {
                         // new best solution!
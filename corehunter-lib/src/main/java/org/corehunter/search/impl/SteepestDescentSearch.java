@@ -14,7 +14,7 @@
 package org.corehunter.search.impl;
 
 import org.corehunter.CoreHunterException;
-import org.corehunter.neighbourhood.Move;
+import org.corehunter.neighbourhood.IndexedMove;
 import org.corehunter.neighbourhood.SubsetNeighbourhood;
 import org.corehunter.search.Search;
 import org.corehunter.search.solution.SubsetSolution;
@@ -61,14 +61,23 @@ public class SteepestDescentSearch<IndexType, SolutionType extends SubsetSolutio
 
 		handleNewBestSolution(getCurrentSolution(), evalution);
 
-		Move<SolutionType> move;
+		IndexedMove<IndexType, SolutionType> move;
 
 		while (canContinue())
 		{
 			// run Steepest Descent search step
 			move = getNeighbourhood().performBestMove(getCurrentSolution(),
 			    getObjectiveFunction(), evalution);
-			newScore = getObjectiveFunction().calculate(getCurrentSolution());
+
+			if (move == null)
+			{
+				// no neighbours, so stop search
+				stop();
+				continue;
+			}
+
+			// evaluation of new core, as the neighbourhood evaluated it
+			newScore = getBestMoveEvaluation(move);
 			newSize = getCurrentSolution().getSubsetSize();
 
 			if (newScore > evalution || (newScore == evalution && newSize < size))
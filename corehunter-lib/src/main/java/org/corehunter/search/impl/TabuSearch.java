@@ -97,8 +97,8 @@ public class TabuSearch<
 
             move = getNeighbourhood().performBestMove(getCurrentSolution(), getObjectiveFunction(), tabuManager, getBestSolutionEvaluation());
             if(move != null){
-                // evaluate new solution
-                newEvaluation = getObjectiveFunction().calculate(getCurrentSolution());
+                // evaluation of new solution, as the neighbourhood evaluated it
+                newEvaluation = getBestMoveEvaluation(move);
                 newSize = getCurrentSolution().getSubsetSize();
                 // ALWAYS accept new solution, even it is not an improvement
                 setCurrentSolutionEvaluation(newEvaluation);
@@ -0,0 +1,309 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.test.model.distance.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.distance.AccessionDistanceMatrix;
+import org.corehunter.model.distance.DistanceStorageType;
+import org.corehunter.model.distance.impl.AccessionDistanceMatrixArrayImpl;
+import org.corehunter.model.distance.impl.AccessionDistanceMatrixDataFileReader;
+import org.corehunter.model.distance.impl.AccessionDistanceMatrixFloatImpl;
+import org.corehunter.model.distance.impl.AccessionDistanceMatrixMappedImpl;
+import org.corehunter.model.impl.AbstractFileUtility;
+import org.corehunter.objectivefunction.DistanceMeasureType;
+import org.corehunter.objectivefunction.distance.PrecomputedDistance;
+import org.corehunter.search.solution.impl.IntegerSubsetSolution;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AccessionDistanceMatrixDataFileReaderTest
+{
+	private static final String	DISTANCE_DATA_NAME	     = "distancedata.txt";
+	private static final String	LOWER_DISTANCE_DATA_NAME	= "distancedata-lower.txt";
+	private static final double	PRECISION	              = 0.0000001;
+	private static final double	FLOAT_PRECISION	        = 0.000001;
+
+	private AccessionDistanceMatrix	data;
+	private double[][]	            distances;
+
+	@Before
+	public void setUp() throws CoreHunterException, IOException
+	{
+		File file = getResource(DISTANCE_DATA_NAME);
+
+		data = new AccessionDistanceMatrixDataFileReader(file,
+		    AbstractFileUtility.TAB_DELIMITER).readData();
+		distances = readDistances(file);
+	}
+
+	@Test
+	public void testReadData()
+	{
+		try
+		{
+			data.validate();
+
+			assertTrue("Wrong storage!",
+			    data instanceof AccessionDistanceMatrixArrayImpl);
+			assertEquals("Number of accessions not correct!", distances.length,
+			    data.getSize());
+			assertEquals("Number of columns not correct!", distances.length,
+			    data.getColumnCount());
+
+			for (int i = 0; i < distances.length; ++i)
+			{
+				for (int j = 0; j < distances.length; ++j)
+				{
+					assertEquals("Distance not correct for " + i + " and " + j,
+					    distances[i][j], data.getDistance(i, j), PRECISION);
+					assertEquals("Element not correct for " + i + " and " + j,
+					    distances[i][j], data.getElement(i, j), PRECISION);
+				}
+			}
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testReadLowerTriangle()
+	{
+		try
+		{
+			assertEquals("Datasets not equal!", data,
+			    new AccessionDistanceMatrixDataFileReader(
+			        getResource(LOWER_DISTANCE_DATA_NAME),
+			        AbstractFileUtility.TAB_DELIMITER).readData());
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testStorageTypes() throws IOException
+	{
+		try
+		{
+			AccessionDistanceMatrixDataFileReader reader = new AccessionDistanceMatrixDataFileReader(
+			    getResource(DISTANCE_DATA_NAME), AbstractFileUtility.TAB_DELIMITER);
+
+			reader.setStorageType(DistanceStorageType.MAPPED);
+
+			AccessionDistanceMatrix mappedData = reader.readData();
+
+			assertTrue("Not mapped!",
+			    mappedData instanceof AccessionDistanceMatrixMappedImpl);
+			assertEquals("Datasets not equal!", data, mappedData);
+
+			reader.setStorageType(DistanceStorageType.FLOAT);
+
+			AccessionDistanceMatrix floatData = reader.readData();
+
+			assertTrue("Not float!",
+			    floatData instanceof AccessionDistanceMatrixFloatImpl);
+
+			for (int i = 0; i < distances.length; ++i)
+			{
+				for (int j = 0; j < distances.length; ++j)
+				{
+					assertEquals("Distance not correct for " + i + " and " + j,
+					    distances[i][j], floatData.getDistance(i, j), FLOAT_PRECISION);
+				}
+			}
+
+			// the mapped file can be mapped again, read-only
+			File file = File.createTempFile("distances", ".dist");
+			file.deleteOnExit();
+
+			reader.setStorageType(DistanceStorageType.MAPPED);
+			reader.setMappedFile(file);
+			reader.readData();
+
+			assertEquals("Datasets not equal!", data,
+			    new AccessionDistanceMatrixMappedImpl("mapped", "mapped",
+			        data.getRowHeaders(), file));
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testInvalidData() throws IOException
+	{
+		assertInvalid("accession\ta1\ta2\na1\t0\t0.5\na2\t0.4\t0\n");
+		assertInvalid("accession\ta1\ta2\na1\t0\t0.5\na2\t0.5\t0.1\n");
+		assertInvalid("accession\ta1\ta2\na1\ta2\t0.5\n");
+		assertInvalid("accession\ta1\ta2\na1\na3\t0.5\n");
+		assertInvalid("accession\ta1\ta2\na1\na2\t-0.5\n");
+		assertInvalid("accession\ta1\ta2\na1\na2\tNA\n");
+		assertInvalid("accession\ta1\ta2\na1\na2\t0.5\t0\t1\n");
+		assertInvalid("accession\ta1\ta2\na1\n");
+	}
+
+	@Test
+	public void testPrecomputedDistance()
+	{
+		try
+		{
+			for (DistanceMeasureType type : DistanceMeasureType.values())
+			{
+				PrecomputedDistance distanceMeasure = new PrecomputedDistance(type);
+
+				distanceMeasure.setData(data);
+
+				// successive subsets with added and removed accessions, to exercise
+				// the cached results
+				for (List<Integer> subset : createSubsets())
+				{
+					IntegerSubsetSolution solution = new IntegerSubsetSolution(
+					    data.getIndices(), subset);
+
+					assertEquals(distanceMeasure.getName() + " not correct for "
+					    + subset, calculate(subset, type),
+					    distanceMeasure.calculate(solution), PRECISION);
+				}
+			}
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	private void assertInvalid(String contents) throws IOException
+	{
+		File file = File.createTempFile("distances", ".txt");
+		file.deleteOnExit();
+
+		Writer writer = new FileWriter(file);
+
+		try
+		{
+			writer.write(contents);
+		}
+		finally
+		{
+			writer.close();
+		}
+
+		try
+		{
+			new AccessionDistanceMatrixDataFileReader(file,
+			    AbstractFileUtility.TAB_DELIMITER).readData();
+
+			fail("Invalid data not detected : " + contents);
+		}
+		catch (CoreHunterException e)
+		{
+			// expected
+		}
+	}
+
+	private double calculate(List<Integer> subset, DistanceMeasureType type)
+	{
+		double total = 0;
+		double minimum = Double.MAX_VALUE;
+		int count = 0;
+
+		for (int i = 0; i < subset.size(); ++i)
+		{
+			for (int j = i + 1; j < subset.size(); ++j)
+			{
+				double distance = distances[subset.get(i)][subset.get(j)];
+
+				total += distance;
+				minimum = Math.min(minimum, distance);
+				++count;
+			}
+		}
+
+		return type == DistanceMeasureType.MEAN_DISTANCE ? total / count
+		    : minimum;
+	}
+
+	private List<List<Integer>> createSubsets()
+	{
+		List<List<Integer>> subsets = new ArrayList<List<Integer>>();
+
+		subsets.add(Arrays.asList(0, 1));
+		subsets.add(Arrays.asList(0, 1, 2, 3));
+		subsets.add(Arrays.asList(1, 3, 5));
+		subsets.add(Arrays.asList(0, 2, 4, 5));
+		subsets.add(Arrays.asList(0, 1, 2, 3, 4, 5));
+		subsets.add(Arrays.asList(2, 5));
+
+		return subsets;
+	}
+
+	private File getResource(String name)
+	{
+		return new File(getClass().getResource("/" + name).getFile());
+	}
+
+	private static double[][] readDistances(File file) throws IOException
+	{
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		List<double[]> rows = new ArrayList<double[]>();
+
+		try
+		{
+			reader.readLine();
+
+			String line;
+
+			while ((line = reader.readLine()) != null)
+			{
+				String[] values = line.split("\t", -1);
+				double[] row = new double[values.length - 1];
+
+				for (int i = 1; i < values.length; ++i)
+				{
+					row[i - 1] = Double.parseDouble(values[i]);
+				}
+
+				rows.add(row);
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+
+		return rows.toArray(new double[rows.size()][]);
+	}
+}
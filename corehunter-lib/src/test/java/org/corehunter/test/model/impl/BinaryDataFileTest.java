@@ -0,0 +1,185 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.test.model.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.Matrix;
+import org.corehunter.model.accession.Accession;
+import org.corehunter.model.impl.AbstractFileUtility;
+import org.corehunter.model.impl.BinaryDataFileFormat;
+import org.corehunter.model.ssr.AccessionSSRMarkerMatrix;
+import org.corehunter.model.ssr.SSRStorageType;
+import org.corehunter.model.ssr.impl.AccessionSSRMarkerMatrixBinaryDataFileReader;
+import org.corehunter.model.ssr.impl.AccessionSSRMarkerMatrixBinaryDataFileWriter;
+import org.corehunter.model.ssr.impl.AccessionSSRMarkerMatrixListImplDataFileReader;
+import org.corehunter.model.variable.CategoricalVariable;
+import org.corehunter.model.variable.Variable;
+import org.corehunter.model.variable.VariableStorageType;
+import org.corehunter.model.variable.impl.AccessionVariableMatrixBinaryDataFileReader;
+import org.corehunter.model.variable.impl.AccessionVariableMatrixBinaryDataFileWriter;
+import org.corehunter.model.variable.impl.AccessionVariableMatrixListImplDataFileReader;
+import org.junit.Test;
+
+public class BinaryDataFileTest
+{
+	private static final String	SSR_DATA_NAME	      = "ssrdata-dist.txt";
+	private static final String	VARIABLE_DATA_NAME	= "variabledata";
+	private static final String	VARIABLE_DATA_EXTN	= ".txt";
+	private static final int	  VARIABLE_DATA_COUNT	= 8;
+
+	@Test
+	public void testSSRData()
+	{
+		try
+		{
+			AccessionSSRMarkerMatrix<Integer> expected = new AccessionSSRMarkerMatrixListImplDataFileReader(
+			    getResource(SSR_DATA_NAME), AbstractFileUtility.COMMA_DELIMITER)
+			    .readData();
+
+			assertTrue("No external distances!",
+			    expected.externalDistancesSpecified());
+
+			File file = createTemporaryFile();
+
+			new AccessionSSRMarkerMatrixBinaryDataFileWriter(file)
+			    .writeData(expected);
+
+			assertEquals("Wrong data type!", BinaryDataFileFormat.SSR_DATA,
+			    BinaryDataFileFormat.getDataType(file));
+
+			for (SSRStorageType storageType : SSRStorageType.values())
+			{
+				AccessionSSRMarkerMatrixBinaryDataFileReader reader = new AccessionSSRMarkerMatrixBinaryDataFileReader(
+				    file);
+
+				reader.setStorageType(storageType);
+
+				AccessionSSRMarkerMatrix<Integer> actual = reader.readData();
+
+				assertEquals("Datasets not equal for " + storageType + "!", expected,
+				    actual);
+				assertEquals("Markers not equal for " + storageType + "!",
+				    expected.getColumnHeaders().getElements(), actual
+				        .getColumnHeaders().getElements());
+			}
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testVariableData()
+	{
+		try
+		{
+			for (int i = 0; i < VARIABLE_DATA_COUNT; ++i)
+			{
+				Matrix<Integer, Object, Accession, Variable> expected = new AccessionVariableMatrixListImplDataFileReader(
+				    getResource(VARIABLE_DATA_NAME + i + VARIABLE_DATA_EXTN),
+				    AbstractFileUtility.COMMA_DELIMITER).readData();
+
+				File file = createTemporaryFile();
+
+				new AccessionVariableMatrixBinaryDataFileWriter(file)
+				    .writeData(expected);
+
+				for (VariableStorageType storageType : VariableStorageType.values())
+				{
+					AccessionVariableMatrixBinaryDataFileReader reader = new AccessionVariableMatrixBinaryDataFileReader(
+					    file);
+
+					reader.setStorageType(storageType);
+
+					Matrix<Integer, Object, Accession, Variable> actual = reader
+					    .readData();
+
+					assertEquals("Datasets not equal for " + i + " " + storageType
+					    + "!", expected, actual);
+					assertEquals("Variables not equal for " + i + " " + storageType
+					    + "!", expected.getColumnHeaders().getElements(), actual
+					    .getColumnHeaders().getElements());
+
+					for (Integer index : expected.getColumnHeaders().getIndices())
+					{
+						Variable variable = expected.getColumnHeaders().getElement(index);
+
+						if (variable instanceof CategoricalVariable)
+						{
+							assertEquals("Dictionaries not equal for " + i + " "
+							    + storageType + "!",
+							    ((CategoricalVariable<?>) variable).getValues(),
+							    ((CategoricalVariable<?>) actual.getColumnHeaders()
+							        .getElement(index)).getValues());
+						}
+					}
+				}
+			}
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testTextFile()
+	{
+		try
+		{
+			File textFile = getResource(SSR_DATA_NAME);
+
+			assertEquals("Text file detected as binary data file!", -1,
+			    BinaryDataFileFormat.getDataType(textFile));
+
+			new AccessionSSRMarkerMatrixBinaryDataFileReader(textFile).readData();
+
+			fail("Text file read as binary data file!");
+		}
+		catch (CoreHunterException e)
+		{
+			assertEquals("Wrong message!", "Not a binary data file!",
+			    e.getMessage());
+		}
+	}
+
+	private File getResource(String name)
+	{
+		return new File(getClass().getResource("/" + name).getFile());
+	}
+
+	private File createTemporaryFile() throws CoreHunterException
+	{
+		try
+		{
+			File file = File.createTempFile("corehunter", ".chd");
+			file.deleteOnExit();
+			return file;
+		}
+		catch (IOException e)
+		{
+			throw new CoreHunterException(e);
+		}
+	}
+}
@@ -0,0 +1,237 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.test.model.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.Matrix;
+import org.corehunter.model.accession.Accession;
+import org.corehunter.model.impl.AbstractFileUtility;
+import org.corehunter.model.impl.AsynchronousGZIPInputStream;
+import org.corehunter.model.ssr.AccessionSSRMarkerMatrix;
+import org.corehunter.model.ssr.impl.AccessionSSRMarkerMatrixListImplDataFileReader;
+import org.corehunter.model.ssr.impl.AccessionSSRMarkerMatrixListImplDataFileWriter;
+import org.corehunter.model.variable.Variable;
+import org.corehunter.model.variable.impl.AccessionVariableMatrixListImplDataFileReader;
+import org.junit.Test;
+
+public class CompressedDataFileTest
+{
+	private static final String	SSR_DATA_NAME	      = "bul.csv";
+	private static final String	SSR_ROUND_TRIP_NAME	= "ssrdata.txt";
+	private static final String	VARIABLE_DATA_NAME	= "variabledata0.txt";
+
+	@Test
+	public void testSSRData() throws IOException
+	{
+		try
+		{
+			File file = getResource(SSR_DATA_NAME);
+			File compressedFile = compress(file);
+
+			assertFalse("Text file detected as compressed!",
+			    AbstractFileUtility.isCompressed(file));
+			assertTrue("Compressed file not detected!",
+			    AbstractFileUtility.isCompressed(compressedFile));
+
+			AccessionSSRMarkerMatrix<Integer> expected = new AccessionSSRMarkerMatrixListImplDataFileReader(
+			    SSR_DATA_NAME, file, AbstractFileUtility.COMMA_DELIMITER).readData();
+
+			AccessionSSRMarkerMatrixListImplDataFileReader reader = new AccessionSSRMarkerMatrixListImplDataFileReader(
+			    SSR_DATA_NAME, compressedFile, AbstractFileUtility.COMMA_DELIMITER);
+
+			// compressed files are parsed as a single chunk whatever the threads
+			reader.setThreadCount(4);
+
+			assertEquals("Datasets not equal!", expected, reader.readData());
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testVariableData() throws IOException
+	{
+		try
+		{
+			File file = getResource(VARIABLE_DATA_NAME);
+
+			Matrix<Integer, Object, Accession, Variable> expected = new AccessionVariableMatrixListImplDataFileReader(
+			    VARIABLE_DATA_NAME, file, AbstractFileUtility.COMMA_DELIMITER)
+			    .readData();
+
+			Matrix<Integer, Object, Accession, Variable> actual = new AccessionVariableMatrixListImplDataFileReader(
+			    VARIABLE_DATA_NAME, compress(file),
+			    AbstractFileUtility.COMMA_DELIMITER).readData();
+
+			assertEquals("Datasets not equal!", expected, actual);
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testWriteCompressed() throws IOException
+	{
+		try
+		{
+			AccessionSSRMarkerMatrix<Integer> expected = new AccessionSSRMarkerMatrixListImplDataFileReader(
+			    SSR_ROUND_TRIP_NAME, getResource(SSR_ROUND_TRIP_NAME),
+			    AbstractFileUtility.COMMA_DELIMITER).readData();
+
+			File file = createTemporaryFile(".csv.gz");
+
+			AccessionSSRMarkerMatrixListImplDataFileWriter writer = new AccessionSSRMarkerMatrixListImplDataFileWriter(
+			    file);
+
+			assertTrue("Not compressed!", writer.isCompressed());
+
+			writer.writeData(expected);
+
+			assertTrue("File not compressed!", AbstractFileUtility.isCompressed(file));
+
+			AccessionSSRMarkerMatrix<Integer> actual = new AccessionSSRMarkerMatrixListImplDataFileReader(
+			    SSR_ROUND_TRIP_NAME, file, AbstractFileUtility.COMMA_DELIMITER)
+			    .readData();
+
+			assertEquals("Datasets not equal!", expected, actual);
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testInflater() throws IOException
+	{
+		byte[] data = new byte[1000003];
+		Random random = new Random(42);
+
+		// compressible but not trivial data
+		for (int i = 0; i < data.length; ++i)
+		{
+			data[i] = (byte) ('0' + random.nextInt(10));
+		}
+
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		OutputStream output = new GZIPOutputStream(compressed);
+		output.write(data);
+		output.close();
+
+		InputStream input = new AsynchronousGZIPInputStream(
+		    new ByteArrayInputStream(compressed.toByteArray()), 1000, 2);
+
+		ByteArrayOutputStream inflated = new ByteArrayOutputStream();
+		byte[] buffer = new byte[777];
+		int length;
+
+		assertEquals("Wrong first byte!", data[0], input.read());
+		inflated.write(data[0]);
+
+		while ((length = input.read(buffer)) >= 0)
+		{
+			inflated.write(buffer, 0, length);
+		}
+
+		input.close();
+
+		assertTrue("Data not equal!", Arrays.equals(data, inflated.toByteArray()));
+
+		// a truncated stream fails once the data before the error is read
+		byte[] truncated = Arrays.copyOf(compressed.toByteArray(),
+		    compressed.size() / 2);
+
+		input = new AsynchronousGZIPInputStream(new ByteArrayInputStream(truncated));
+
+		try
+		{
+			while (input.read(buffer) >= 0)
+			{
+				// read
+			}
+
+			fail("Truncated stream not detected!");
+		}
+		catch (IOException e)
+		{
+			// expected
+		}
+		finally
+		{
+			input.close();
+		}
+	}
+
+	private File getResource(String name)
+	{
+		return new File(getClass().getResource("/" + name).getFile());
+	}
+
+	private File compress(File file) throws IOException
+	{
+		File compressedFile = createTemporaryFile(".gz");
+		InputStream input = new FileInputStream(file);
+		OutputStream output = new GZIPOutputStream(new FileOutputStream(
+		    compressedFile));
+
+		try
+		{
+			byte[] buffer = new byte[4096];
+			int length;
+
+			while ((length = input.read(buffer)) >= 0)
+			{
+				output.write(buffer, 0, length);
+			}
+		}
+		finally
+		{
+			input.close();
+			output.close();
+		}
+
+		return compressedFile;
+	}
+
+	private File createTemporaryFile(String suffix) throws IOException
+	{
+		File file = File.createTempFile("corehunter", suffix);
+		file.deleteOnExit();
+		return file;
+	}
+}
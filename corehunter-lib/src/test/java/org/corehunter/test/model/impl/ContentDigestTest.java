@@ -0,0 +1,295 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.test.model.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.ContentDigest;
+import org.corehunter.model.Entity;
+import org.corehunter.model.Matrix;
+import org.corehunter.model.distance.DistanceStorageType;
+import org.corehunter.model.distance.impl.AccessionDistanceMatrixDataFileReader;
+import org.corehunter.model.impl.AbstractEntityMatrix;
+import org.corehunter.model.impl.AbstractFileUtility;
+import org.corehunter.model.impl.EntityMatrixListImpl;
+import org.corehunter.model.snp.impl.AccessionSNPMarkerMatrixDataFileReader;
+import org.corehunter.model.ssr.AccessionSSRMarkerMatrix;
+import org.corehunter.model.ssr.PrimitiveAccessionSSRMarkerMatrix;
+import org.corehunter.model.ssr.SSRStorageType;
+import org.corehunter.model.ssr.impl.AccessionSSRMarkerMatrixListImplDataFileReader;
+import org.junit.Test;
+
+public class ContentDigestTest
+{
+	private static final String	SSR_DATA_NAME	           = "bul.csv";
+	private static final String	SNP_DATA_NAME	           = "snpdata.txt";
+	private static final String	DISTANCE_DATA_NAME	     = "distancedata.txt";
+	private static final String	LOWER_DISTANCE_DATA_NAME	= "distancedata-lower.txt";
+
+	@Test
+	public void testStorageTypes()
+	{
+		try
+		{
+			AbstractEntityMatrix<?, ?, ?, ?> listData = readData(SSRStorageType.LIST);
+
+			for (SSRStorageType storageType : new SSRStorageType[] {
+			    SSRStorageType.ARRAY, SSRStorageType.SPARSE })
+			{
+				AbstractEntityMatrix<?, ?, ?, ?> data = readData(storageType);
+
+				assertEquals("Digests not equal for " + storageType,
+				    listData.getContentDigest(), data.getContentDigest());
+				assertEquals("Datasets not equal for " + storageType, listData, data);
+				assertEquals("Hash codes not equal for " + storageType,
+				    listData.hashCode(), data.hashCode());
+			}
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testLoadedDigest()
+	{
+		try
+		{
+			for (SSRStorageType storageType : SSRStorageType.values())
+			{
+				assertDigestOfElements("Digest not equal for " + storageType,
+				    readMatrix(storageType));
+			}
+
+			assertDigestOfElements("Digest not equal for SNP data",
+			    new AccessionSNPMarkerMatrixDataFileReader(getResource(SNP_DATA_NAME),
+			        AbstractFileUtility.TAB_DELIMITER).readData());
+
+			for (String name : new String[] { DISTANCE_DATA_NAME,
+			    LOWER_DISTANCE_DATA_NAME })
+			{
+				for (DistanceStorageType storageType : DistanceStorageType.values())
+				{
+					AccessionDistanceMatrixDataFileReader reader = new AccessionDistanceMatrixDataFileReader(
+					    getResource(name), AbstractFileUtility.TAB_DELIMITER);
+
+					reader.setStorageType(storageType);
+
+					assertDigestOfElements("Digest not equal for " + name + " and "
+					    + storageType, reader.readData());
+				}
+			}
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testChangedValue()
+	{
+		try
+		{
+			AbstractEntityMatrix<?, ?, ?, ?> listData = readData(SSRStorageType.LIST);
+			AbstractEntityMatrix<?, ?, ?, ?> data = readData(SSRStorageType.ARRAY);
+
+			ContentDigest digest = data.getContentDigest();
+			PrimitiveAccessionSSRMarkerMatrix primitiveData = (PrimitiveAccessionSSRMarkerMatrix) data;
+			double value = primitiveData.getAlleleValue(0, 0);
+
+			primitiveData.setAlleleValue(0, 0, value + 1);
+
+			assertFalse("Digest not changed!",
+			    digest.equals(data.getContentDigest()));
+			assertFalse("Datasets equal!", listData.equals(data));
+
+			primitiveData.setAlleleValue(0, 0, value);
+
+			assertEquals("Digest not restored!", digest, data.getContentDigest());
+			assertEquals("Datasets not equal!", listData, data);
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testValueTypes()
+	{
+		List<Object> values = new ArrayList<Object>();
+
+		values.add(null);
+		values.add(Boolean.TRUE);
+		values.add((short) 1);
+		values.add(1);
+		values.add(1l);
+		values.add(1f);
+		values.add(1.0);
+		values.add("1");
+
+		List<ContentDigest> digests = new ArrayList<ContentDigest>();
+
+		for (Object value : values)
+		{
+			ContentDigest digest = new ContentDigest.Builder().add(value).build();
+
+			assertFalse("Digest of " + value + " not unique!",
+			    digests.contains(digest));
+
+			digests.add(digest);
+		}
+
+		assertEquals("Digests of double not equal!",
+		    new ContentDigest.Builder().add(1.0).build(),
+		    new ContentDigest.Builder().addDouble(1.0).build());
+		assertEquals("Digests of integer not equal!",
+		    new ContentDigest.Builder().add(1).build(),
+		    new ContentDigest.Builder().addInt(1).build());
+		assertTrue("Digest of list not equal to its size and elements!",
+		    new ContentDigest.Builder().add(values).build()
+		        .equals(addAll(new ContentDigest.Builder().startList(values.size()),
+		            values).build()));
+		assertFalse("Digest of list equal to its elements!",
+		    new ContentDigest.Builder().add(values).build()
+		        .equals(addAll(new ContentDigest.Builder(), values).build()));
+	}
+
+	@Test
+	public void testListShape()
+	{
+		List<Object> flat = new ArrayList<Object>();
+		List<Object> nested = new ArrayList<Object>();
+		List<Object> first = new ArrayList<Object>();
+		List<Object> second = new ArrayList<Object>();
+
+		flat.add(1.0);
+		flat.add(2.0);
+		flat.add(3.0);
+
+		first.add(1.0);
+		second.add(2.0);
+		second.add(3.0);
+		nested.add(first);
+		nested.add(second);
+
+		List<Object> shifted = new ArrayList<Object>();
+		List<Object> shiftedFirst = new ArrayList<Object>(flat.subList(0, 2));
+		List<Object> shiftedSecond = new ArrayList<Object>(flat.subList(2, 3));
+
+		shifted.add(shiftedFirst);
+		shifted.add(shiftedSecond);
+
+		ContentDigest flatDigest = new ContentDigest.Builder().add(flat).build();
+		ContentDigest nestedDigest = new ContentDigest.Builder().add(nested).build();
+		ContentDigest shiftedDigest = new ContentDigest.Builder().add(shifted)
+		    .build();
+
+		assertFalse("Digests of flat and nested list equal!",
+		    flatDigest.equals(nestedDigest));
+		assertFalse("Digests of differently nested lists equal!",
+		    nestedDigest.equals(shiftedDigest));
+		assertTrue("Digest of list not exact!", nestedDigest.isExact());
+	}
+
+	@Test
+	public void testUnknownType()
+	{
+		Object value = new Object()
+		{
+			@Override
+			public int hashCode()
+			{
+				return 1;
+			}
+		};
+
+		ContentDigest digest = new ContentDigest.Builder().add(1.0).add(value)
+		    .build();
+
+		assertFalse("Digest of unknown type exact!", digest.isExact());
+		assertFalse("Combined digest exact!", new ContentDigest.Builder()
+		    .addDigest(digest).build().isExact());
+		assertTrue("Digest of known types not exact!", new ContentDigest.Builder()
+		    .add(1.0).build().isExact());
+	}
+
+	private ContentDigest.Builder addAll(ContentDigest.Builder builder,
+	    List<Object> values)
+	{
+		for (Object value : values)
+		{
+			builder.add(value);
+		}
+
+		return builder;
+	}
+
+	/**
+	 * Checks the digest that a reader calculated against the digest of a list
+	 * matrix of the same elements, which is calculated from its rows
+	 */
+	private <DataType, RowHeaderType extends Entity, ColumnHeaderType extends Entity> void assertDigestOfElements(
+	    String message,
+	    Matrix<Integer, DataType, RowHeaderType, ColumnHeaderType> data)
+	    throws CoreHunterException
+	{
+		List<List<DataType>> elements = new ArrayList<List<DataType>>();
+
+		for (Integer index : data.getRowHeaders().getIndices())
+		{
+			elements.add(new ArrayList<DataType>(data.getRowElements(index)));
+		}
+
+		assertEquals(message,
+		    new EntityMatrixListImpl<DataType, RowHeaderType, ColumnHeaderType>(
+		        data.getName(), data.getRowHeaders(), data.getColumnHeaders(),
+		        elements).getContentDigest(), data.getContentDigest());
+	}
+
+	private File getResource(String name)
+	{
+		return new File(ContentDigestTest.class.getResource("/" + name).getFile());
+	}
+
+	private AbstractEntityMatrix<?, ?, ?, ?> readData(SSRStorageType storageType)
+	    throws CoreHunterException
+	{
+		return (AbstractEntityMatrix<?, ?, ?, ?>) readMatrix(storageType);
+	}
+
+	private AccessionSSRMarkerMatrix<Integer> readMatrix(
+	    SSRStorageType storageType) throws CoreHunterException
+	{
+		AccessionSSRMarkerMatrixListImplDataFileReader reader = new AccessionSSRMarkerMatrixListImplDataFileReader(
+		    getResource(SSR_DATA_NAME), AbstractFileUtility.COMMA_DELIMITER);
+
+		reader.setStorageType(storageType);
+
+		return reader.readData();
+	}
+}
@@ -0,0 +1,254 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.test.model.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+
+import org.corehunter.model.impl.DataFileTokenizer;
+import org.junit.Test;
+
+public class DataFileTokenizerTest
+{
+	private static final String[]	NUMBERS	  = { "0", "-0", "+0", "1", "-1",
+	    "0.5", ".5", "5.", "0.1", "0.3", "1.7976931348623157E308", "4.9E-324",
+	    "2.2250738585072014E-308", "123456789012345", "1234567890123456789",
+	    "9007199254740993", "1e22", "1e23", "1e-22", "1e-23", "3.14159",
+	    "0.000001", "1E5", "1e+5", "1e-5", "00012.500", " 1", "1 ", "NaN",
+	    "-Infinity", "0x1p3", "1d", "2f", "0.1234567890123456789" };
+
+	private static final String[]	MALFORMED	= { "", "-", "+", ".", "e5", "1e",
+	    "1e+", "1.2.3", "1;5", "abc", "--1", "1-", "1 2" };
+
+	@Test
+	public void testFields() throws IOException
+	{
+		DataFileTokenizer tokenizer = new DataFileTokenizer(new StringReader(
+		    "a,b,,c\r\n\n\"x,y\",\"say \"\"hi\"\"\", \"z\"\rlast"), ',');
+
+		assertArrayEquals(new String[] { "a", "b", "", "c" }, tokenizer.readNext());
+		assertArrayEquals(new String[] { "" }, tokenizer.readNext());
+		assertArrayEquals(new String[] { "x,y", "say \"hi\"", "z" },
+		    tokenizer.readNext());
+
+		assertTrue(tokenizer.nextLine());
+		assertEquals(1, tokenizer.getFieldCount());
+		assertEquals("last", tokenizer.getString(0));
+		assertTrue(tokenizer.equalsIgnoreCase(0, "LAST"));
+		assertFalse(tokenizer.equalsIgnoreCase(0, "las"));
+
+		assertFalse(tokenizer.nextLine());
+		assertNull(tokenizer.readNext());
+	}
+
+	@Test
+	public void testEmptyAndBlank() throws IOException
+	{
+		DataFileTokenizer tokenizer = new DataFileTokenizer(new StringReader(
+		    "\t; ;x"), ';');
+
+		assertTrue(tokenizer.nextLine());
+		assertTrue(tokenizer.isBlank(0));
+		assertFalse(tokenizer.isEmpty(0));
+		assertTrue(tokenizer.isBlank(1));
+		assertFalse(tokenizer.isBlank(2));
+	}
+
+	@Test
+	public void testLongLines() throws IOException
+	{
+		StringBuilder builder = new StringBuilder();
+
+		for (int i = 0; i < 100000; ++i)
+		{
+			builder.append(i).append('\t');
+		}
+
+		builder.append("\n1\n");
+
+		DataFileTokenizer tokenizer = new DataFileTokenizer(new StringReader(
+		    builder.toString()), '\t');
+
+		assertTrue(tokenizer.nextLine());
+		assertEquals(100001, tokenizer.getFieldCount());
+
+		for (int i = 0; i < 100000; ++i)
+		{
+			assertEquals(i, tokenizer.parseInt(i));
+		}
+
+		assertTrue(tokenizer.nextLine());
+		assertEquals(1, tokenizer.parseLong(0));
+		assertFalse(tokenizer.nextLine());
+	}
+
+	@Test
+	public void testParseDouble() throws IOException
+	{
+		for (String number : NUMBERS)
+		{
+			assertParseDouble(number);
+		}
+
+		Random random = new Random(42);
+
+		for (int i = 0; i < 20000; ++i)
+		{
+			double value = random.nextDouble() * Math.pow(10, random.nextInt(40) - 20);
+
+			assertParseDouble(Double.toString(value));
+			assertParseDouble(String.format("%.6f", value));
+			assertParseDouble(Long.toString(random.nextLong() % 100000000000L));
+		}
+	}
+
+	@Test
+	public void testParseIntegers() throws IOException
+	{
+		String[] numbers = { "0", "-0", "7", "-7", "32767", "-32768", "32768",
+		    "2147483647", "-2147483648", "2147483648", "9223372036854775807",
+		    "-9223372036854775808", "9223372036854775808", "+5", "1.0", "1e3", " 1",
+		    "" };
+
+		for (String number : numbers)
+		{
+			DataFileTokenizer tokenizer = tokenize(number);
+
+			assertEquals(number, parseShort(number), parseShort(tokenizer));
+			assertEquals(number, parseInt(number), parseInt(tokenizer));
+			assertEquals(number, parseLong(number), parseLong(tokenizer));
+		}
+	}
+
+	@Test
+	public void testMalformed() throws IOException
+	{
+		for (String number : MALFORMED)
+		{
+			try
+			{
+				tokenize(number).parseDouble(0);
+				fail("Malformed number parsed : '" + number + "'");
+			}
+			catch (NumberFormatException e)
+			{
+				try
+				{
+					Double.parseDouble(number);
+					fail("Malformed number not rejected : '" + number + "'");
+				}
+				catch (NumberFormatException expected)
+				{
+					assertEquals(expected.getMessage(), e.getMessage());
+				}
+			}
+		}
+	}
+
+	private static void assertParseDouble(String number) throws IOException
+	{
+		assertEquals(number, Double.doubleToLongBits(Double.parseDouble(number)),
+		    Double.doubleToLongBits(tokenize(number).parseDouble(0)));
+	}
+
+	private static DataFileTokenizer tokenize(String line) throws IOException
+	{
+		DataFileTokenizer tokenizer = new DataFileTokenizer(new StringReader(line
+		    + "\n"), ',');
+
+		assertTrue(tokenizer.nextLine());
+
+		return tokenizer;
+	}
+
+	private static String parseShort(String number)
+	{
+		try
+		{
+			return String.valueOf(Short.parseShort(number));
+		}
+		catch (NumberFormatException e)
+		{
+			return e.getMessage();
+		}
+	}
+
+	private static String parseShort(DataFileTokenizer tokenizer)
+	{
+		try
+		{
+			return String.valueOf(tokenizer.parseShort(0));
+		}
+		catch (NumberFormatException e)
+		{
+			return e.getMessage();
+		}
+	}
+
+	private static String parseInt(String number)
+	{
+		try
+		{
+			return String.valueOf(Integer.parseInt(number));
+		}
+		catch (NumberFormatException e)
+		{
+			return e.getMessage();
+		}
+	}
+
+	private static String parseInt(DataFileTokenizer tokenizer)
+	{
+		try
+		{
+			return String.valueOf(tokenizer.parseInt(0));
+		}
+		catch (NumberFormatException e)
+		{
+			return e.getMessage();
+		}
+	}
+
+	private static String parseLong(String number)
+	{
+		try
+		{
+			return String.valueOf(Long.parseLong(number));
+		}
+		catch (NumberFormatException e)
+		{
+			return e.getMessage();
+		}
+	}
+
+	private static String parseLong(DataFileTokenizer tokenizer)
+	{
+		try
+		{
+			return String.valueOf(tokenizer.parseLong(0));
+		}
+		catch (NumberFormatException e)
+		{
+			return e.getMessage();
+		}
+	}
+}
@@ -0,0 +1,112 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.test.model.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.corehunter.model.UnknownEntityException;
+import org.corehunter.model.accession.Accession;
+import org.corehunter.model.accession.impl.AccessionImpl;
+import org.corehunter.model.impl.OrderedEntityDatasetListImpl;
+import org.junit.Test;
+
+public class OrderedEntityDatasetListImplTest
+{
+	private static final int	SIZE	= 1000;
+
+	@Test
+	public void testGetIndex()
+	{
+		List<Accession> accessions = createAccessions();
+
+		OrderedEntityDatasetListImpl<Accession> dataset = new OrderedEntityDatasetListImpl<Accession>(
+		    "dataset", accessions);
+
+		try
+		{
+			for (int i = 0; i < SIZE; ++i)
+			{
+				Accession accession = accessions.get(i);
+
+				assertEquals("Index not equal!", i,
+				    (int) dataset.getIndex(accession));
+				assertEquals("Index of copy not equal!", i,
+				    (int) dataset.getIndex(new AccessionImpl(accession
+				        .getUniqueIdentifier(), accession.getName())));
+				assertEquals("Index by name not equal!", i,
+				    (int) dataset.getIndexByName(accession.getName()));
+				assertEquals("Index by unique identifier not equal!", i,
+				    (int) dataset.getIndexByUniqueIdentifier(accession
+				        .getUniqueIdentifier()));
+				assertSame("Element by name not equal!", accession,
+				    dataset.getElementByName(accession.getName()));
+				assertSame("Element by unique identifier not equal!", accession,
+				    dataset.getElementByUniqueIdentifier(accession
+				        .getUniqueIdentifier()));
+			}
+		}
+		catch (UnknownEntityException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+
+		assertEquals("Unknown accession found!", -1,
+		    (int) dataset.getIndex(new AccessionImpl("unknown")));
+		assertEquals("Accession with other name found!", -1,
+		    (int) dataset.getIndex(new AccessionImpl("u0", "other")));
+
+		try
+		{
+			dataset.getIndexByName("unknown");
+			fail("Unknown name found!");
+		}
+		catch (UnknownEntityException e)
+		{
+			// expected
+		}
+	}
+
+	@Test
+	public void testSharedUniqueIdentifier()
+	{
+		List<Accession> accessions = new ArrayList<Accession>();
+
+		accessions.add(new AccessionImpl("u", "a"));
+		accessions.add(new AccessionImpl("u", "b"));
+
+		OrderedEntityDatasetListImpl<Accession> dataset = new OrderedEntityDatasetListImpl<Accession>(
+		    "dataset", accessions);
+
+		assertEquals("Index not equal!", 0, (int) dataset.getIndex(accessions.get(0)));
+		assertEquals("Index not equal!", 1, (int) dataset.getIndex(accessions.get(1)));
+	}
+
+	private List<Accession> createAccessions()
+	{
+		List<Accession> accessions = new ArrayList<Accession>(SIZE);
+
+		for (int i = 0; i < SIZE; ++i)
+		{
+			accessions.add(new AccessionImpl("u" + i, "a" + i));
+		}
+
+		return accessions;
+	}
+}
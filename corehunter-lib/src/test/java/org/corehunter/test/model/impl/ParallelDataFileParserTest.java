@@ -0,0 +1,386 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.test.model.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.Matrix;
+import org.corehunter.model.accession.Accession;
+import org.corehunter.model.impl.AbstractFileUtility;
+import org.corehunter.model.impl.DataFileTokenizer;
+import org.corehunter.model.impl.ParallelDataFileParser;
+import org.corehunter.model.ssr.AccessionSSRMarkerMatrix;
+import org.corehunter.model.ssr.SSRStorageType;
+import org.corehunter.model.ssr.impl.AccessionSSRMarkerMatrixListImplDataFileReader;
+import org.corehunter.model.ssr.impl.AccessionSSRMarkerMatrixQuantizedImpl;
+import org.corehunter.model.variable.Variable;
+import org.corehunter.model.variable.impl.AccessionVariableMatrixListImplDataFileReader;
+import org.junit.Test;
+
+public class ParallelDataFileParserTest
+{
+	private static final int	THREAD_COUNT	= 4;
+
+	@Test
+	public void testLineNumbers()
+	{
+		try
+		{
+			File file = File.createTempFile("lines", ".txt");
+			file.deleteOnExit();
+
+			String[] terminators = new String[] { "\n", "\r\n", "\r" };
+			int lineCount = 0;
+
+			Writer writer = new FileWriter(file);
+
+			writer.write("header\n");
+
+			while (lineCount < 200000)
+			{
+				++lineCount;
+				writer.write((lineCount + 1) + ",value " + lineCount
+				    + terminators[lineCount % 3]);
+			}
+
+			writer.close();
+
+			List<List<int[]>> chunks = new ParallelDataFileParser<List<int[]>>(file,
+			    AbstractFileUtility.COMMA_DELIMITER, THREAD_COUNT).parse(1,
+			    new ParallelDataFileParser.ChunkParser<List<int[]>>()
+			    {
+				    @Override
+				    public List<int[]> createResult()
+				    {
+					    return new ArrayList<int[]>();
+				    }
+
+				    @Override
+				    public void parseLine(List<int[]> result, DataFileTokenizer line,
+				        int lineNumber)
+				    {
+					    result.add(new int[] { line.parseInt(0), lineNumber });
+				    }
+			    });
+
+			assertTrue("Not split into chunks!", chunks.size() > 1);
+
+			int expectedLineNumber = 2;
+
+			for (List<int[]> chunk : chunks)
+			{
+				for (int[] line : chunk)
+				{
+					assertEquals("Wrong line!", expectedLineNumber, line[0]);
+					assertEquals("Wrong line number!", expectedLineNumber, line[1]);
+					++expectedLineNumber;
+				}
+			}
+
+			assertEquals("Wrong number of lines!", lineCount + 2, expectedLineNumber);
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testSSRData()
+	{
+		try
+		{
+			File file = createSSRFile(-1);
+
+			AccessionSSRMarkerMatrix<Integer> expected = readSSRData(file, 1,
+			    SSRStorageType.LIST);
+
+			// each chunk adds its values to its own part of the builder
+			for (SSRStorageType storageType : SSRStorageType.values())
+			{
+				AccessionSSRMarkerMatrix<Integer> sequential = readSSRData(file, 1,
+				    storageType);
+				AccessionSSRMarkerMatrix<Integer> actual = readSSRData(file,
+				    THREAD_COUNT, storageType);
+
+				assertEquals("Datasets not equal for " + storageType, sequential,
+				    actual);
+
+				if (storageType != SSRStorageType.QUANTIZED_8
+				    && storageType != SSRStorageType.QUANTIZED_16)
+				{
+					assertEquals("Values not equal for " + storageType, expected,
+					    actual);
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testQuantizedSSRData()
+	{
+		try
+		{
+			// more distinct values than a part can code
+			File file = createSSRFile(-1, true);
+
+			AccessionSSRMarkerMatrix<Integer> values = readSSRData(file, 1,
+			    SSRStorageType.LIST);
+			List<List<List<Double>>> elements = new ArrayList<List<List<Double>>>();
+
+			for (int a = 0; a < values.getRowHeaders().getSize(); ++a)
+			{
+				elements.add(values.getRowElements(a));
+			}
+
+			AccessionSSRMarkerMatrix<Integer> expected = new AccessionSSRMarkerMatrixQuantizedImpl(
+			    values.getUniqueIdentifier(), values.getName(),
+			    values.getRowHeaders(), values.getColumnHeaders(), elements, null, 16);
+
+			assertEquals("Sequential dataset not equal!", expected, readSSRData(
+			    file, 1, SSRStorageType.QUANTIZED_16));
+			assertEquals("Parallel dataset not equal!", expected, readSSRData(file,
+			    THREAD_COUNT, SSRStorageType.QUANTIZED_16));
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testInvalidSSRData()
+	{
+		try
+		{
+			File file = createSSRFile(2500);
+
+			readSSRData(file, THREAD_COUNT);
+
+			fail("Invalid value not detected!");
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+		catch (CoreHunterException e)
+		{
+			assertTrue("Wrong line number : " + e.getMessage(), e.getMessage()
+			    .endsWith("on line 2502"));
+		}
+	}
+
+	@Test
+	public void testVariableData()
+	{
+		try
+		{
+			File file = createVariableFile(-1);
+
+			Matrix<Integer, Object, Accession, Variable> expected = readVariableData(
+			    file, 1);
+			Matrix<Integer, Object, Accession, Variable> actual = readVariableData(
+			    file, THREAD_COUNT);
+
+			assertEquals("Datasets not equal!", expected, actual);
+			assertEquals("Accessions not equal!", expected.getRowHeaders(),
+			    actual.getRowHeaders());
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testInvalidVariableData()
+	{
+		try
+		{
+			File file = createVariableFile(40000);
+
+			readVariableData(file, THREAD_COUNT);
+
+			fail("Invalid value not detected!");
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+		catch (CoreHunterException e)
+		{
+			assertTrue("Wrong line number : " + e.getMessage(), e.getMessage()
+			    .contains("on line 40006 "));
+		}
+	}
+
+	private AccessionSSRMarkerMatrix<Integer> readSSRData(File file,
+	    int threadCount) throws CoreHunterException
+	{
+		return readSSRData(file, threadCount, SSRStorageType.LIST);
+	}
+
+	private AccessionSSRMarkerMatrix<Integer> readSSRData(File file,
+	    int threadCount, SSRStorageType storageType) throws CoreHunterException
+	{
+		AccessionSSRMarkerMatrixListImplDataFileReader reader = new AccessionSSRMarkerMatrixListImplDataFileReader(
+		    file, AbstractFileUtility.COMMA_DELIMITER);
+
+		reader.setThreadCount(threadCount);
+		reader.setStorageType(storageType);
+
+		return reader.readData();
+	}
+
+	private Matrix<Integer, Object, Accession, Variable> readVariableData(
+	    File file, int threadCount) throws CoreHunterException
+	{
+		AccessionVariableMatrixListImplDataFileReader reader = new AccessionVariableMatrixListImplDataFileReader(
+		    file, AbstractFileUtility.COMMA_DELIMITER);
+
+		reader.setThreadCount(threadCount);
+
+		return reader.readData();
+	}
+
+	/**
+	 * Creates an SSR file of 100 accessions and 8000 alleles, with an invalid
+	 * value for the given allele, if any
+	 */
+	private File createSSRFile(int invalidAllele) throws IOException
+	{
+		return createSSRFile(invalidAllele, false);
+	}
+
+	/**
+	 * Creates an SSR file of 100 accessions and 8000 alleles, with an invalid
+	 * value for the given allele, if any, and with distinct values if requested
+	 */
+	private File createSSRFile(int invalidAllele, boolean distinctValues)
+	    throws IOException
+	{
+		File file = File.createTempFile("ssrdata", ".txt");
+		file.deleteOnExit();
+
+		Writer writer = new FileWriter(file);
+
+		writer.write("marker,allele");
+
+		for (int a = 0; a < 100; ++a)
+		{
+			writer.write(",g" + a);
+		}
+
+		writer.write("\n");
+
+		for (int i = 0; i < 8000; ++i)
+		{
+			writer.write("m" + (i / 4) + ",a" + i);
+
+			for (int a = 0; a < 100; ++a)
+			{
+				if (i == invalidAllele && a == 50)
+				{
+					writer.write(",x");
+				}
+				else
+					if (distinctValues)
+					{
+						writer.write((a + i) % 7 == 0 ? "," : "," + (i * 100 + a)
+						    / 1000000.0);
+					}
+					else
+					{
+						writer.write((a + i) % 7 == 0 ? "," : ((a + i) % 4 == 0 ? ",0.25"
+						    : ",0"));
+					}
+			}
+
+			writer.write("\n");
+		}
+
+		writer.close();
+
+		return file;
+	}
+
+	/**
+	 * Creates a variable file with 50000 accessions, with an invalid value for
+	 * the given accession, if any
+	 */
+	private File createVariableFile(int invalidAccession) throws IOException
+	{
+		File file = File.createTempFile("variabledata", ".txt");
+		file.deleteOnExit();
+
+		Writer writer = new FileWriter(file);
+
+		writer.write("uid,name,v1,v2,v3,v4,v5\n");
+		writer.write("uid,,vi1,vi2,vi3,vi4,vi5\n");
+		writer.write("description,,d1,d2,d3,d4,d5\n");
+		writer.write("type,,B,N,I,O,R\n");
+		writer.write("dataType,,B,S,I,L,D\n");
+
+		for (int i = 0; i < 50000; ++i)
+		{
+			writer.write("a" + i + ",accession " + i + "," + (i % 3 == 0 ? "t" : "f")
+			    + "," + (i % 11) + "," + (i % 17) + ","
+			    + (i == invalidAccession ? "x" : i % 5) + "," + (i * 0.5) + "\n");
+		}
+
+		writer.close();
+
+		return file;
+	}
+}
@@ -0,0 +1,374 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.test.model.snp.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.EntityIndexedDataset;
+import org.corehunter.model.impl.AbstractFileUtility;
+import org.corehunter.model.impl.OrderedEntityDatasetListImpl;
+import org.corehunter.model.snp.AccessionSNPMarkerMatrix;
+import org.corehunter.model.snp.SNPMarker;
+import org.corehunter.model.snp.impl.AccessionSNPMarkerMatrixDataFileReader;
+import org.corehunter.model.ssr.AccessionSSRMarkerMatrix;
+import org.corehunter.model.ssr.SSRMarker;
+import org.corehunter.model.ssr.impl.AccessionSSRMarkerMatrixListImpl;
+import org.corehunter.model.ssr.impl.SSRAlleleImpl;
+import org.corehunter.model.ssr.impl.SSRMarkerImpl;
+import org.corehunter.objectivefunction.DistanceMeasureType;
+import org.corehunter.objectivefunction.impl.AbstractSubsetObjectiveFunction;
+import org.corehunter.objectivefunction.snp.CoverageSNP;
+import org.corehunter.objectivefunction.snp.ModifiedRogersDistanceSNP;
+import org.corehunter.objectivefunction.snp.ShannonsDiversitySNP;
+import org.corehunter.objectivefunction.ssr.ModifiedRogersDistanceSSR;
+import org.corehunter.objectivefunction.ssr.ShannonsDiversitySSR;
+import org.corehunter.search.solution.impl.IntegerSubsetSolution;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AccessionSNPMarkerMatrixPackedImplTest
+{
+	private static final String	SNP_DATA_NAME	= "snpdata.txt";
+	private static final double	PRECISION	  = 0.0000001;
+
+	private AccessionSNPMarkerMatrix	          data;
+	private AccessionSSRMarkerMatrix<Integer>	ssrData;
+	private int[][]	                          genotypes;
+
+	@Before
+	public void setUp() throws CoreHunterException, IOException
+	{
+		File file = new File(getClass().getResource("/" + SNP_DATA_NAME)
+		    .getFile());
+
+		data = new AccessionSNPMarkerMatrixDataFileReader(file,
+		    AbstractFileUtility.TAB_DELIMITER).readData();
+		genotypes = readGenotypes(file);
+		ssrData = createSSRData();
+	}
+
+	@Test
+	public void testReadData()
+	{
+		try
+		{
+			data.validate();
+
+			assertEquals("Number of accessions not correct!", genotypes.length,
+			    data.getSize());
+			assertEquals("Number of markers not correct!", genotypes[0].length,
+			    data.getColumnCount());
+			assertEquals("Number of words not correct!", 2, data.getWordCount());
+
+			for (int a = 0; a < genotypes.length; ++a)
+			{
+				for (int m = 0; m < genotypes[a].length; ++m)
+				{
+					assertEquals("Genotype not correct for " + a + " and " + m,
+					    genotypes[a][m], data.getGenotype(a, m));
+
+					if (genotypes[a][m] == AccessionSNPMarkerMatrix.MISSING_GENOTYPE)
+					{
+						assertNull("Missing genotype not null!", data.getElement(a, m));
+					}
+					else
+					{
+						assertEquals("Element not correct for " + a + " and " + m,
+						    (Integer) genotypes[a][m], data.getElement(a, m));
+					}
+				}
+
+				// the unused genotypes of the last word are missing
+				assertEquals("Unused genotypes not missing!", -1L >>> 16,
+				    data.getWord(a, 1) >>> 16);
+			}
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testSetGenotype()
+	{
+		int markerIndex = 33;
+		int genotype = data.getGenotype(2, markerIndex);
+		int newGenotype = (genotype + 1) % 4;
+
+		data.setGenotype(2, markerIndex, newGenotype);
+
+		assertEquals("Genotype not set!", newGenotype,
+		    data.getGenotype(2, markerIndex));
+
+		for (int a = 0; a < genotypes.length; ++a)
+		{
+			for (int m = 0; m < genotypes[a].length; ++m)
+			{
+				if (a != 2 || m != markerIndex)
+				{
+					assertEquals("Other genotype changed for " + a + " and " + m,
+					    genotypes[a][m], data.getGenotype(a, m));
+				}
+			}
+		}
+
+		data.setGenotype(2, markerIndex, genotype);
+
+		assertEquals("Genotype not restored!", genotype,
+		    data.getGenotype(2, markerIndex));
+	}
+
+	@Test
+	public void testModifiedRogersDistance()
+	{
+		try
+		{
+			ModifiedRogersDistanceSNP distanceMeasure = new ModifiedRogersDistanceSNP();
+			ModifiedRogersDistanceSSR<Integer> ssrDistanceMeasure = new ModifiedRogersDistanceSSR<Integer>();
+
+			distanceMeasure.setData(data);
+			ssrDistanceMeasure.setData(ssrData);
+
+			// the distances are not memoized, so there is nothing to precompute
+			assertTrue("Distances not reported as precomputed!",
+			    distanceMeasure.isDistancesPrecomputed());
+
+			for (int i = 0; i < data.getSize(); ++i)
+			{
+				for (int j = 0; j < data.getSize(); ++j)
+				{
+					assertEquals("Distance not equal for " + i + " and " + j,
+					    ssrDistanceMeasure.calculate(i, j),
+					    distanceMeasure.calculate(i, j), PRECISION);
+				}
+			}
+
+			assertSameValues(new ModifiedRogersDistanceSNP(
+			    DistanceMeasureType.MEAN_DISTANCE),
+			    new ModifiedRogersDistanceSSR<Integer>(
+			        DistanceMeasureType.MEAN_DISTANCE));
+			assertSameValues(new ModifiedRogersDistanceSNP(
+			    DistanceMeasureType.MIN_DISTANCE),
+			    new ModifiedRogersDistanceSSR<Integer>(
+			        DistanceMeasureType.MIN_DISTANCE));
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testShannonsDiversity()
+	{
+		assertSameValues(new ShannonsDiversitySNP(),
+		    new ShannonsDiversitySSR<Integer>());
+	}
+
+	@Test
+	public void testCoverage()
+	{
+		try
+		{
+			CoverageSNP coverage = new CoverageSNP();
+
+			coverage.setData(data);
+
+			int presentAlleleCount = countPresentAlleles(data.getIndices());
+
+			for (List<Integer> subset : createSubsets())
+			{
+				assertEquals("Coverage not equal for " + subset,
+				    countPresentAlleles(subset) / (double) presentAlleleCount,
+				    coverage.calculate(new IntegerSubsetSolution(subset, subset)),
+				    PRECISION);
+			}
+
+			assertEquals("Coverage of all accessions not one!", 1.0,
+			    coverage.calculate(new IntegerSubsetSolution(data.getIndices(),
+			        data.getIndices())), PRECISION);
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	private void assertSameValues(
+	    AbstractSubsetObjectiveFunction<Integer, AccessionSNPMarkerMatrix> objectiveFunction,
+	    AbstractSubsetObjectiveFunction<Integer, AccessionSSRMarkerMatrix<Integer>> ssrObjectiveFunction)
+	{
+		try
+		{
+			objectiveFunction.setData(data);
+			ssrObjectiveFunction.setData(ssrData);
+
+			// successive subsets with added and removed accessions, to exercise the
+			// cached results
+			for (List<Integer> subset : createSubsets())
+			{
+				IntegerSubsetSolution solution = new IntegerSubsetSolution(subset,
+				    subset);
+
+				assertEquals(objectiveFunction.getName() + " not equal for "
+				    + subset, ssrObjectiveFunction.calculate(solution),
+				    objectiveFunction.calculate(solution), PRECISION);
+			}
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	private int countPresentAlleles(List<Integer> subset)
+	{
+		int count = 0;
+
+		for (int m = 0; m < genotypes[0].length; ++m)
+		{
+			boolean reference = false;
+			boolean alternative = false;
+
+			for (Integer a : subset)
+			{
+				int genotype = genotypes[a][m];
+
+				reference |= genotype == 0 || genotype == 1;
+				alternative |= genotype == 1 || genotype == 2;
+			}
+
+			count += (reference ? 1 : 0) + (alternative ? 1 : 0);
+		}
+
+		return count;
+	}
+
+	private List<List<Integer>> createSubsets()
+	{
+		List<List<Integer>> subsets = new ArrayList<List<Integer>>();
+
+		subsets.add(Arrays.asList(0, 1));
+		subsets.add(Arrays.asList(0, 1, 2, 3));
+		subsets.add(Arrays.asList(1, 3, 5, 7));
+		subsets.add(Arrays.asList(0, 2, 4, 5, 6, 7));
+		subsets.add(Arrays.asList(6, 7));
+		subsets.add(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7));
+		subsets.add(Arrays.asList(2, 5));
+
+		return subsets;
+	}
+
+	/**
+	 * Creates the equivalent SSR matrix, with a reference and an alternative
+	 * allele for each marker, with frequencies 1 - g / 2 and g / 2
+	 */
+	private AccessionSSRMarkerMatrix<Integer> createSSRData()
+	    throws CoreHunterException
+	{
+		EntityIndexedDataset<Integer, SNPMarker> snpMarkers = data
+		    .getColumnHeaders();
+		List<SSRMarker> markers = new ArrayList<SSRMarker>();
+
+		for (Integer index : snpMarkers.getIndices())
+		{
+			SSRMarker marker = new SSRMarkerImpl(snpMarkers.getElement(index)
+			    .getName());
+
+			marker.addAllele(new SSRAlleleImpl("ref", marker));
+			marker.addAllele(new SSRAlleleImpl("alt", marker));
+			markers.add(marker);
+		}
+
+		List<List<List<Double>>> elements = new ArrayList<List<List<Double>>>();
+
+		for (int a = 0; a < genotypes.length; ++a)
+		{
+			List<List<Double>> row = new ArrayList<List<Double>>();
+
+			for (int m = 0; m < genotypes[a].length; ++m)
+			{
+				int genotype = genotypes[a][m];
+
+				if (genotype == AccessionSNPMarkerMatrix.MISSING_GENOTYPE)
+				{
+					row.add(Arrays.asList((Double) null, (Double) null));
+				}
+				else
+				{
+					row.add(Arrays.asList(1.0 - genotype / 2.0, genotype / 2.0));
+				}
+			}
+
+			elements.add(row);
+		}
+
+		return new AccessionSSRMarkerMatrixListImpl("SSR", data.getRowHeaders(),
+		    new OrderedEntityDatasetListImpl<SSRMarker>("Markers", markers),
+		    elements);
+	}
+
+	private static int[][] readGenotypes(File file) throws IOException
+	{
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		List<int[]> rows = new ArrayList<int[]>();
+
+		try
+		{
+			reader.readLine();
+
+			String line;
+
+			while ((line = reader.readLine()) != null)
+			{
+				String[] values = line.split("\t", -1);
+				int[] row = new int[values.length - 1];
+
+				for (int i = 1; i < values.length; ++i)
+				{
+					String value = values[i];
+
+					row[i - 1] = value.equals("0") || value.equals("1")
+					    || value.equals("2") ? Integer.parseInt(value)
+					    : AccessionSNPMarkerMatrix.MISSING_GENOTYPE;
+				}
+
+				rows.add(row);
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+
+		return rows.toArray(new int[rows.size()][]);
+	}
+}
@@ -0,0 +1,219 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.test.model.ssr.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.impl.AbstractFileUtility;
+import org.corehunter.model.ssr.AccessionSSRMarkerMatrix;
+import org.corehunter.model.ssr.AllelePresenceBitmap;
+import org.corehunter.model.ssr.PrimitiveAccessionSSRMarkerMatrix;
+import org.corehunter.model.ssr.SSRStorageType;
+import org.corehunter.model.ssr.impl.AccessionSSRMarkerMatrixArrayImpl;
+import org.corehunter.model.ssr.impl.AccessionSSRMarkerMatrixListImplDataFileReader;
+import org.corehunter.objectivefunction.DistanceMeasureType;
+import org.corehunter.objectivefunction.impl.AbstractSubsetObjectiveFunction;
+import org.corehunter.objectivefunction.ssr.CavalliSforzaEdwardsDistanceSSR;
+import org.corehunter.objectivefunction.ssr.CoverageSSR;
+import org.corehunter.objectivefunction.ssr.HeterozygousLociDiversitySSR;
+import org.corehunter.objectivefunction.ssr.ModifiedRogersDistanceSSR;
+import org.corehunter.objectivefunction.ssr.NumberEffectiveAllelesSSR;
+import org.corehunter.objectivefunction.ssr.ProportionNonInformativeAllelesSSR;
+import org.corehunter.objectivefunction.ssr.ShannonsDiversitySSR;
+import org.corehunter.search.solution.impl.IntegerSubsetSolution;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AccessionSSRMarkerMatrixArrayImplTest
+{
+	private static final String	SSR_DATA_NAME	= "bul.csv";
+	private static final double	PRECISION	   = 0.0000001;
+
+	private AccessionSSRMarkerMatrix<Integer>	listData;
+	private AccessionSSRMarkerMatrix<Integer>	primitiveData;
+
+	@Before
+	public void setUpBefore()
+	{
+		try
+		{
+			File file = new File(AccessionSSRMarkerMatrixArrayImplTest.class
+			    .getResource("/" + SSR_DATA_NAME).getFile());
+
+			listData = new AccessionSSRMarkerMatrixListImplDataFileReader(file,
+			    AbstractFileUtility.COMMA_DELIMITER).readData();
+
+			primitiveData = readPrimitiveData(new AccessionSSRMarkerMatrixListImplDataFileReader(
+			    file, AbstractFileUtility.COMMA_DELIMITER));
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testReadData()
+	{
+		assertEquals("Wrong dataset class!", getExpectedDataClass(),
+		    primitiveData.getClass());
+
+		assertEquals("Datasets not equal!", listData, primitiveData);
+		assertEquals("Datasets not equal!", primitiveData, listData);
+	}
+
+	@Test
+	public void testAllelePresence()
+	{
+		PrimitiveAccessionSSRMarkerMatrix data = (PrimitiveAccessionSSRMarkerMatrix) primitiveData;
+		AllelePresenceBitmap allelePresence = data.getAllelePresence();
+
+		assertSame("Bitmap not shared!", allelePresence, data.getAllelePresence());
+
+		for (int a = 0; a < data.getSize(); ++a)
+		{
+			for (int i = 0; i < data.getTotalAlleleCount(); ++i)
+			{
+				assertEquals("Presence not equal for " + a + " and " + i,
+				    data.getAlleleValue(a, i) > 0, allelePresence.isPresent(a, i));
+			}
+		}
+
+		double value = data.getAlleleValue(0, 0);
+
+		data.setAlleleValue(0, 0, value > 0 ? 0.0 : 1.0);
+
+		assertNotSame("Bitmap not recreated!", allelePresence,
+		    data.getAllelePresence());
+		assertEquals("Presence not updated!", !(value > 0), data
+		    .getAllelePresence().isPresent(0, 0));
+	}
+
+	@Test
+	public void testDistanceMeasures()
+	{
+		assertSameValues(new ModifiedRogersDistanceSSR<Integer>(
+		    DistanceMeasureType.MEAN_DISTANCE));
+		assertSameValues(new ModifiedRogersDistanceSSR<Integer>(
+		    DistanceMeasureType.MIN_DISTANCE));
+		assertSameValues(new CavalliSforzaEdwardsDistanceSSR<Integer>(
+		    DistanceMeasureType.MEAN_DISTANCE));
+		assertSameValues(new CavalliSforzaEdwardsDistanceSSR<Integer>(
+		    DistanceMeasureType.MIN_DISTANCE));
+	}
+
+	@Test
+	public void testDiversityMeasures()
+	{
+		assertSameValues(new ShannonsDiversitySSR<Integer>());
+		assertSameValues(new HeterozygousLociDiversitySSR<Integer>());
+		assertSameValues(new NumberEffectiveAllelesSSR<Integer>());
+		assertSameValues(new ProportionNonInformativeAllelesSSR<Integer>());
+		assertSameValues(new CoverageSSR<Integer>());
+	}
+
+	@SuppressWarnings("unchecked")
+	private void assertSameValues(
+	    AbstractSubsetObjectiveFunction<Integer, AccessionSSRMarkerMatrix<Integer>> objectiveFunction)
+	{
+		try
+		{
+			AbstractSubsetObjectiveFunction<Integer, AccessionSSRMarkerMatrix<Integer>> listObjectiveFunction = objectiveFunction;
+			AbstractSubsetObjectiveFunction<Integer, AccessionSSRMarkerMatrix<Integer>> primitiveObjectiveFunction = (AbstractSubsetObjectiveFunction<Integer, AccessionSSRMarkerMatrix<Integer>>) objectiveFunction
+			    .copy();
+
+			listObjectiveFunction.setData(listData);
+			primitiveObjectiveFunction.setData(primitiveData);
+
+			// successive subsets with added and removed accessions, to exercise the
+			// cached results
+			for (List<Integer> subset : createSubsets())
+			{
+				IntegerSubsetSolution solution = new IntegerSubsetSolution(subset,
+				    subset);
+
+				assertEquals(objectiveFunction.getName() + " not equal for "
+				    + subset, listObjectiveFunction.calculate(solution),
+				    primitiveObjectiveFunction.calculate(solution), PRECISION);
+			}
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	protected AccessionSSRMarkerMatrix<Integer> readPrimitiveData(
+	    AccessionSSRMarkerMatrixListImplDataFileReader reader)
+	    throws CoreHunterException
+	{
+		reader.setStorageType(getStorageType());
+
+		return reader.readData();
+	}
+
+	protected SSRStorageType getStorageType()
+	{
+		return SSRStorageType.ARRAY;
+	}
+
+	protected Class<?> getExpectedDataClass()
+	{
+		return AccessionSSRMarkerMatrixArrayImpl.class;
+	}
+
+	protected final AccessionSSRMarkerMatrix<Integer> getListData()
+	{
+		return listData;
+	}
+
+	protected final AccessionSSRMarkerMatrix<Integer> getPrimitiveData()
+	{
+		return primitiveData;
+	}
+
+	private List<List<Integer>> createSubsets()
+	{
+		List<List<Integer>> subsets = new ArrayList<List<Integer>>();
+
+		subsets.add(createSubset(0, 20, 1));
+		subsets.add(createSubset(5, 30, 1));
+		subsets.add(createSubset(0, 60, 3));
+		subsets.add(createSubset(1, 61, 2));
+
+		return subsets;
+	}
+
+	private List<Integer> createSubset(int start, int end, int step)
+	{
+		List<Integer> subset = new ArrayList<Integer>();
+
+		for (int i = start; i < end && i < listData.getSize(); i += step)
+		{
+			subset.add(i);
+		}
+
+		return subset;
+	}
+}
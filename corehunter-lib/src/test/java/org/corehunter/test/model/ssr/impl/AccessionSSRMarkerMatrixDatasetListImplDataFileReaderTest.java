@@ -14,12 +14,16 @@
 package org.corehunter.test.model.ssr.impl;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
+import org.corehunter.CoreHunterException;
 import org.corehunter.model.DataReader;
 import org.corehunter.model.DuplicateEntityException;
 import org.corehunter.model.EntityIndexedDataset;
@@ -30,15 +34,19 @@ import org.corehunter.model.impl.AbstractFileUtility;
 import org.corehunter.model.impl.OrderedEntityDatasetListImpl;
 import org.corehunter.model.ssr.AccessionSSRMarkerMatrix;
 import org.corehunter.model.ssr.SSRMarker;
+import org.corehunter.model.ssr.SSRStorageType;
 import org.corehunter.model.ssr.impl.AccessionSSRMarkerMatrixListImpl;
 import org.corehunter.model.ssr.impl.AccessionSSRMarkerMatrixListImplDataFileReader;
 import org.corehunter.model.ssr.impl.SSRAlleleImpl;
 import org.corehunter.model.ssr.impl.SSRMarkerImpl;
 import org.corehunter.test.model.impl.DataReaderTest;
+import org.junit.Test;
 
 public class AccessionSSRMarkerMatrixDatasetListImplDataFileReaderTest extends DataReaderTest<AccessionSSRMarkerMatrix<Integer>>
 {
 	private static final String SSR_DATA_NAME = "ssrdata.txt";
+	private static final String SSR_DIST_DATA_NAME = "ssrdata-dist.txt";
+	private static final String SSR_INVALID_DATA_NAME = "ssrdata-invalid.txt";
 	private static final String ACCESSION_DATASET_NAME_PREFIX = "Accessions for " + SSR_DATA_NAME ;
 	private static final String MARKER_DATASET_NAME_PREFIX = "Markers for " + SSR_DATA_NAME ;
 	
@@ -178,4 +186,54 @@ public class AccessionSSRMarkerMatrixDatasetListImplDataFileReaderTest extends D
 			assertEquals("Rows " + index + " not equal!", expectedData.getRowElements(index), actualData.getRowElements(index)) ;
 		}
   }
+
+	@Test
+	public void testExternalDistancesAndMissingValues()
+	{
+		for (SSRStorageType storageType : SSRStorageType.values())
+		{
+			try
+			{
+				AccessionSSRMarkerMatrixListImplDataFileReader reader = createReader(SSR_DIST_DATA_NAME) ;
+				reader.setStorageType(storageType) ;
+
+				AccessionSSRMarkerMatrix<Integer> data = reader.readData() ;
+
+				assertEquals("Number of accessions not correct for " + storageType, 3, data.getSize()) ;
+				assertEquals("Number of markers not correct for " + storageType, 2, data.getColumnCount()) ;
+				assertTrue("External distances not specified for " + storageType, data.externalDistancesSpecified()) ;
+				assertEquals("External distance not correct for " + storageType, 0.75, data.getExternalDistance(2), 0.0) ;
+
+				// an empty value and a value missing at the end of a line
+				assertNull("Empty value not missing for " + storageType, data.getElement(1, 0).get(0)) ;
+				assertNull("Value at end of line not missing for " + storageType, data.getElement(2, 1).get(0)) ;
+				assertEquals("Value not correct for " + storageType, 1.0, data.getElement(2, 1).get(1), 0.0) ;
+			}
+			catch (CoreHunterException e)
+			{
+				e.printStackTrace();
+				fail(e.getLocalizedMessage()) ;
+			}
+		}
+	}
+
+	@Test
+	public void testInvalidValue()
+	{
+		try
+		{
+			createReader(SSR_INVALID_DATA_NAME).readData() ;
+
+			fail("Invalid value not detected!") ;
+		}
+		catch (CoreHunterException e)
+		{
+			assertTrue("Line number not reported : " + e.getMessage(), e.getMessage().endsWith("on line 3")) ;
+		}
+	}
+
+	private AccessionSSRMarkerMatrixListImplDataFileReader createReader(String dataName)
+	{
+		return new AccessionSSRMarkerMatrixListImplDataFileReader(new File(getClass().getResource("/" + dataName).getFile()), AbstractFileUtility.COMMA_DELIMITER) ;
+	}
 }
@@ -0,0 +1,94 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.test.model.ssr.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.impl.AbstractFileUtility;
+import org.corehunter.model.ssr.AccessionSSRMarkerMatrix;
+import org.corehunter.model.ssr.SSRStorageType;
+import org.corehunter.model.ssr.impl.AccessionSSRMarkerMatrixListImplDataFileReader;
+import org.corehunter.model.ssr.impl.AccessionSSRMarkerMatrixMappedImpl;
+import org.junit.Test;
+
+public class AccessionSSRMarkerMatrixMappedImplTest
+{
+	private static final String	SSR_DATA_NAME	= "bul.csv";
+
+	@Test
+	public void testReadData()
+	{
+		File mappedFile = null;
+
+		try
+		{
+			File file = new File(AccessionSSRMarkerMatrixMappedImplTest.class
+			    .getResource("/" + SSR_DATA_NAME).getFile());
+
+			mappedFile = File.createTempFile("corehunter", ".ssr");
+
+			AccessionSSRMarkerMatrix<Integer> listData = new AccessionSSRMarkerMatrixListImplDataFileReader(
+			    file, AbstractFileUtility.COMMA_DELIMITER).readData();
+
+			AccessionSSRMarkerMatrixListImplDataFileReader reader = new AccessionSSRMarkerMatrixListImplDataFileReader(
+			    file, AbstractFileUtility.COMMA_DELIMITER);
+			reader.setStorageType(SSRStorageType.MAPPED);
+			reader.setMappedFile(mappedFile);
+
+			AccessionSSRMarkerMatrix<Integer> mappedData = reader.readData();
+
+			assertTrue("Not a mapped dataset!",
+			    mappedData instanceof AccessionSSRMarkerMatrixMappedImpl);
+			assertTrue("Not writable!",
+			    ((AccessionSSRMarkerMatrixMappedImpl) mappedData).isWritable());
+			assertEquals("Datasets not equal!", listData, mappedData);
+
+			// map the same file again, as another process would
+			AccessionSSRMarkerMatrixMappedImpl remappedData = new AccessionSSRMarkerMatrixMappedImpl(
+			    mappedData.getUniqueIdentifier(), mappedData.getName(),
+			    mappedData.getRowHeaders(), mappedData.getColumnHeaders(),
+			    mappedFile, null);
+
+			remappedData.validate();
+
+			assertFalse("Writable!", remappedData.isWritable());
+			assertEquals("Datasets not equal!", listData, remappedData);
+			assertEquals("Datasets not equal!", remappedData, listData);
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+		finally
+		{
+			if (mappedFile != null)
+			{
+				mappedFile.deleteOnExit();
+			}
+		}
+	}
+}
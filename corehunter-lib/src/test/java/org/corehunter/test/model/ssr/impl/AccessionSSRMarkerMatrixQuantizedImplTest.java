@@ -0,0 +1,238 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.test.model.ssr.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.List;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.impl.AbstractFileUtility;
+import org.corehunter.model.ssr.AccessionSSRMarkerMatrix;
+import org.corehunter.model.ssr.SSRStorageType;
+import org.corehunter.model.ssr.impl.AccessionSSRMarkerMatrixListImplDataFileReader;
+import org.corehunter.model.ssr.impl.AccessionSSRMarkerMatrixQuantizedImpl;
+import org.corehunter.objectivefunction.ssr.AbstractAccessionSSRDistanceMeasure;
+import org.corehunter.objectivefunction.ssr.CavalliSforzaEdwardsDistanceSSR;
+import org.corehunter.objectivefunction.ssr.ModifiedRogersDistanceSSR;
+import org.junit.Test;
+
+public class AccessionSSRMarkerMatrixQuantizedImplTest
+{
+	private static final String	SSR_DATA_NAME	     = "ssrdata.txt";
+	private static final String	SSR_DATA_NAME_FULL	= "bul.csv";
+
+	@Test
+	public void testExact()
+	{
+		try
+		{
+			AccessionSSRMarkerMatrix<Integer> listData = readData(SSR_DATA_NAME,
+			    SSRStorageType.LIST);
+
+			AccessionSSRMarkerMatrixListImplDataFileReader reader = createReader(
+			    SSR_DATA_NAME, SSRStorageType.QUANTIZED_8);
+			AccessionSSRMarkerMatrix<Integer> quantizedData = reader.readData();
+
+			assertTrue("Not a quantized dataset!",
+			    quantizedData instanceof AccessionSSRMarkerMatrixQuantizedImpl);
+			assertTrue("Not exact!",
+			    ((AccessionSSRMarkerMatrixQuantizedImpl) quantizedData).isExact());
+			assertEquals("Maximum quantization error not zero!", 0.0,
+			    reader.getMaximumQuantizationError(), 0.0);
+			assertEquals("Datasets not equal!", listData, quantizedData);
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testSumLevelTerms()
+	{
+		try
+		{
+			for (SSRStorageType storageType : new SSRStorageType[] {
+			    SSRStorageType.QUANTIZED_8, SSRStorageType.QUANTIZED_16 })
+			{
+				AccessionSSRMarkerMatrixQuantizedImpl quantizedData = (AccessionSSRMarkerMatrixQuantizedImpl) readData(
+				    SSR_DATA_NAME, storageType);
+
+				int levelCount = quantizedData.getLevelCount();
+				double[] terms = new double[levelCount * levelCount];
+
+				// a different term for each ordered pair of codes
+				for (int i = 0; i < terms.length; ++i)
+				{
+					terms[i] = i;
+				}
+
+				for (int i = 0; i < quantizedData.getSize(); ++i)
+				{
+					for (int j = 0; j < quantizedData.getSize(); ++j)
+					{
+						double expected = 0;
+
+						for (int a = 0; a < quantizedData.getTotalAlleleCount(); ++a)
+						{
+							expected += terms[quantizedData.getAlleleCode(i, a) * levelCount
+							    + quantizedData.getAlleleCode(j, a)];
+						}
+
+						assertEquals("Sum not equal for " + i + " and " + j, expected,
+						    quantizedData.sumLevelTerms(i, j, terms), 0.0);
+					}
+				}
+			}
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void test8Bits()
+	{
+		assertQuantized(SSRStorageType.QUANTIZED_8, 8);
+	}
+
+	@Test
+	public void test16Bits()
+	{
+		assertQuantized(SSRStorageType.QUANTIZED_16, 16);
+	}
+
+	private void assertQuantized(SSRStorageType storageType, int bits)
+	{
+		try
+		{
+			AccessionSSRMarkerMatrix<Integer> listData = readData(
+			    SSR_DATA_NAME_FULL, SSRStorageType.LIST);
+
+			AccessionSSRMarkerMatrixListImplDataFileReader reader = createReader(
+			    SSR_DATA_NAME_FULL, storageType);
+			AccessionSSRMarkerMatrixQuantizedImpl quantizedData = (AccessionSSRMarkerMatrixQuantizedImpl) reader
+			    .readData();
+
+			double error = reader.getMaximumQuantizationError();
+
+			assertEquals("Wrong number of bits!", bits, quantizedData.getBits());
+			assertTrue("Too many levels!",
+			    quantizedData.getLevelCount() <= 1 << bits);
+			assertEquals("Maximum quantization error not equal!",
+			    quantizedData.getMaximumQuantizationError(), error, 0.0);
+
+			// values in allele frequency data are between 0 and 1
+			assertTrue("Maximum quantization error too large : " + error,
+			    error <= 0.5 / ((1 << bits) - 2));
+
+			for (Integer index : listData.getIndices())
+			{
+				Iterator<List<Double>> expectedRow = listData.getRowElements(index)
+				    .iterator();
+				Iterator<List<Double>> actualRow = quantizedData.getRowElements(index)
+				    .iterator();
+
+				while (expectedRow.hasNext())
+				{
+					Iterator<Double> expected = expectedRow.next().iterator();
+					Iterator<Double> actual = actualRow.next().iterator();
+
+					while (expected.hasNext())
+					{
+						Double expectedValue = expected.next();
+						Double actualValue = actual.next();
+
+						if (expectedValue == null)
+						{
+							assertNull("Missing value not missing!", actualValue);
+						}
+						else
+						{
+							assertEquals("Value not equal!", expectedValue, actualValue,
+							    error);
+						}
+					}
+				}
+			}
+
+			assertDistances(new ModifiedRogersDistanceSSR<Integer>(), listData,
+			    quantizedData, error);
+			assertDistances(new CavalliSforzaEdwardsDistanceSSR<Integer>(),
+			    listData, quantizedData, Math.sqrt(error));
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void assertDistances(
+	    AbstractAccessionSSRDistanceMeasure<Integer> distanceMeasure,
+	    AccessionSSRMarkerMatrix<Integer> listData,
+	    AccessionSSRMarkerMatrixQuantizedImpl quantizedData, double error)
+	    throws CoreHunterException
+	{
+		AbstractAccessionSSRDistanceMeasure<Integer> quantizedDistanceMeasure = (AbstractAccessionSSRDistanceMeasure<Integer>) distanceMeasure
+		    .copy();
+
+		distanceMeasure.setData(listData);
+		quantizedDistanceMeasure.setData(quantizedData);
+
+		// each allele difference changes at most by 2 * error, the distance is the
+		// norm of the differences divided by sqrt(2 * number of markers)
+		double tolerance = 2 * error
+		    * Math.sqrt(quantizedData.getTotalAlleleCount()
+		        / (2.0 * quantizedData.getColumnCount())) + 0.0000001;
+
+		for (int i = 0; i < 10; ++i)
+		{
+			for (int j = i + 1; j < 10; ++j)
+			{
+				assertEquals(distanceMeasure.getName() + " not equal for " + i
+				    + " and " + j, distanceMeasure.calculate(i, j),
+				    quantizedDistanceMeasure.calculate(i, j), tolerance);
+			}
+		}
+	}
+
+	private AccessionSSRMarkerMatrix<Integer> readData(String dataName,
+	    SSRStorageType storageType) throws CoreHunterException
+	{
+		return createReader(dataName, storageType).readData();
+	}
+
+	private AccessionSSRMarkerMatrixListImplDataFileReader createReader(
+	    String dataName, SSRStorageType storageType)
+	{
+		AccessionSSRMarkerMatrixListImplDataFileReader reader = new AccessionSSRMarkerMatrixListImplDataFileReader(
+		    new File(getClass().getResource("/" + dataName).getFile()),
+		    AbstractFileUtility.COMMA_DELIMITER);
+
+		reader.setStorageType(storageType);
+
+		return reader;
+	}
+}
@@ -0,0 +1,86 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.test.model.ssr.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.corehunter.model.ssr.SSRStorageType;
+import org.corehunter.model.ssr.impl.AccessionSSRMarkerMatrixSparseImpl;
+import org.junit.Test;
+
+public class AccessionSSRMarkerMatrixSparseImplTest extends
+    AccessionSSRMarkerMatrixArrayImplTest
+{
+	private static final double	PRECISION	= 0.0000001;
+
+	@Override
+	protected SSRStorageType getStorageType()
+	{
+		return SSRStorageType.SPARSE;
+	}
+
+	@Override
+	protected Class<?> getExpectedDataClass()
+	{
+		return AccessionSSRMarkerMatrixSparseImpl.class;
+	}
+
+	@Test
+	public void testSetAlleleValue()
+	{
+		AccessionSSRMarkerMatrixSparseImpl data = (AccessionSSRMarkerMatrixSparseImpl) getPrimitiveData();
+
+		int entryCount = data.getEntryCount();
+		int alleleCount = data.getTotalAlleleCount();
+
+		assertTrue("Not sparse!", entryCount < data.getSize() * alleleCount);
+
+		// find a zero value of the first accession
+		int alleleIndex = 0;
+		while (data.getAlleleValue(0, alleleIndex) != 0.0)
+		{
+			++alleleIndex;
+		}
+
+		data.setAlleleValue(0, alleleIndex, 0.5);
+
+		assertEquals("Entry not inserted!", entryCount + 1, data.getEntryCount());
+		assertEquals("Value not set!", 0.5, data.getAlleleValue(0, alleleIndex),
+		    PRECISION);
+
+		double[] values = new double[alleleCount];
+		data.getAlleleValues(1, values);
+
+		for (int i = 0; i < alleleCount; ++i)
+		{
+			double expected = data.getAlleleValue(1, i);
+
+			if (Double.isNaN(expected))
+			{
+				assertTrue("Value not missing!", Double.isNaN(values[i]));
+			}
+			else
+			{
+				assertEquals("Value of next accession changed!", expected, values[i],
+				    PRECISION);
+			}
+		}
+
+		data.setAlleleValue(0, alleleIndex, 0.0);
+
+		assertEquals("Entry not removed!", entryCount, data.getEntryCount());
+		assertEquals("Datasets not equal!", getListData(), data);
+	}
+}
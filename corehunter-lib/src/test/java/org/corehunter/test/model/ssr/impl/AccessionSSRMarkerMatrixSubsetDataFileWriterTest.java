@@ -0,0 +1,162 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.test.model.ssr.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.impl.AbstractFileUtility;
+import org.corehunter.model.ssr.AccessionSSRMarkerMatrix;
+import org.corehunter.model.ssr.SSRStorageType;
+import org.corehunter.model.ssr.impl.AccessionSSRMarkerMatrixListImplDataFileReader;
+import org.corehunter.model.ssr.impl.AccessionSSRMarkerMatrixSubsetDataFileWriter;
+import org.junit.Test;
+
+public class AccessionSSRMarkerMatrixSubsetDataFileWriterTest
+{
+	private static final String	       DATA_NAME	= "ssrdata-dist.txt";
+	private static final List<Integer>	SUBSET	  = Arrays.asList(2, 0);
+	private static final double	       PRECISION	= 0.0000001;
+
+	@Test
+	public void testWriteAll()
+	{
+		try
+		{
+			for (SSRStorageType storageType : new SSRStorageType[] {
+			    SSRStorageType.LIST, SSRStorageType.ARRAY })
+			{
+				AccessionSSRMarkerMatrix<Integer> dataset = read(
+				    getResource(DATA_NAME), storageType);
+
+				File file = createTemporaryFile();
+
+				new AccessionSSRMarkerMatrixSubsetDataFileWriter(file)
+				    .writeData(dataset);
+
+				assertEquals("Datasets not equal for " + storageType + "!", dataset,
+				    read(file, storageType));
+			}
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testWriteSubset()
+	{
+		try
+		{
+			for (SSRStorageType storageType : new SSRStorageType[] {
+			    SSRStorageType.LIST, SSRStorageType.ARRAY })
+			{
+				AccessionSSRMarkerMatrix<Integer> dataset = read(
+				    getResource(DATA_NAME), storageType);
+
+				File file = createTemporaryFile();
+
+				AccessionSSRMarkerMatrixSubsetDataFileWriter writer = new AccessionSSRMarkerMatrixSubsetDataFileWriter(
+				    file);
+
+				writer.setIndices(SUBSET);
+				writer.writeData(dataset);
+
+				AccessionSSRMarkerMatrix<Integer> core = read(file, storageType);
+
+				assertEquals("Wrong size!", SUBSET.size(), core.getRowHeaders()
+				    .getSize());
+				assertTrue("No external distances!", core.externalDistancesSpecified());
+
+				for (int i = 0; i < SUBSET.size(); ++i)
+				{
+					int index = SUBSET.get(i);
+
+					assertEquals("Wrong accession!", dataset.getRowHeaders()
+					    .getElement(index).getName(), core.getRowHeaders().getElement(i)
+					    .getName());
+					assertEquals("Wrong external distance!",
+					    dataset.getExternalDistance(index), core.getExternalDistance(i),
+					    PRECISION);
+
+					for (int m = 0; m < dataset.getColumnHeaders().getSize(); ++m)
+					{
+						assertEquals("Wrong values!", dataset.getElement(index, m),
+						    core.getElement(i, m));
+					}
+				}
+			}
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testUnknownIndex()
+	{
+		try
+		{
+			AccessionSSRMarkerMatrixSubsetDataFileWriter writer = new AccessionSSRMarkerMatrixSubsetDataFileWriter(
+			    createTemporaryFile());
+
+			writer.setIndices(Arrays.asList(0, 3));
+			writer.writeData(read(getResource(DATA_NAME), SSRStorageType.ARRAY));
+
+			fail("Unknown index not detected!");
+		}
+		catch (CoreHunterException e)
+		{
+			// expected
+		}
+		catch (IOException e)
+		{
+			fail(e.getMessage());
+		}
+	}
+
+	private AccessionSSRMarkerMatrix<Integer> read(File file,
+	    SSRStorageType storageType) throws CoreHunterException
+	{
+		AccessionSSRMarkerMatrixListImplDataFileReader reader = new AccessionSSRMarkerMatrixListImplDataFileReader(
+		    DATA_NAME, file, AbstractFileUtility.COMMA_DELIMITER);
+
+		reader.setStorageType(storageType);
+
+		return reader.readData();
+	}
+
+	private File getResource(String name)
+	{
+		return new File(getClass().getResource("/" + name).getFile());
+	}
+
+	private File createTemporaryFile() throws IOException
+	{
+		File file = File.createTempFile("corehunter", ".csv");
+		file.deleteOnExit();
+		return file;
+	}
+}
@@ -0,0 +1,183 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.test.model.ssr.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.ssr.AccessionSSRMarkerMatrix;
+import org.corehunter.model.ssr.PrimitiveAccessionSSRMarkerMatrix;
+import org.corehunter.model.ssr.SSRStorageType;
+import org.corehunter.model.ssr.impl.AccessionSSRMarkerMatrixListImplDataFileReader;
+import org.corehunter.model.ssr.impl.AccessionSSRMarkerMatrixViewImpl;
+import org.corehunter.objectivefunction.DistanceMeasureType;
+import org.corehunter.objectivefunction.impl.AbstractSubsetObjectiveFunction;
+import org.corehunter.objectivefunction.ssr.CoverageSSR;
+import org.corehunter.objectivefunction.ssr.ModifiedRogersDistanceSSR;
+import org.corehunter.objectivefunction.ssr.ShannonsDiversitySSR;
+import org.corehunter.search.solution.impl.IntegerSubsetSolution;
+import org.junit.Test;
+
+public class AccessionSSRMarkerMatrixViewImplTest extends
+    AccessionSSRMarkerMatrixArrayImplTest
+{
+	private static final double	PRECISION	= 0.0000001;
+
+	@Override
+	protected AccessionSSRMarkerMatrix<Integer> readPrimitiveData(
+	    AccessionSSRMarkerMatrixListImplDataFileReader reader)
+	    throws CoreHunterException
+	{
+		// a view of all accessions and markers of a sparse matrix
+		reader.setStorageType(SSRStorageType.SPARSE);
+
+		return new AccessionSSRMarkerMatrixViewImpl(
+		    (PrimitiveAccessionSSRMarkerMatrix) reader.readData(), null, null);
+	}
+
+	@Override
+	protected Class<?> getExpectedDataClass()
+	{
+		return AccessionSSRMarkerMatrixViewImpl.class;
+	}
+
+	@Test
+	public void testAccessionView()
+	{
+		try
+		{
+			PrimitiveAccessionSSRMarkerMatrix parent = getParent();
+
+			int[] accessionIndices = new int[] { 7, 3, 12, 0, 25, 14, 9 };
+
+			AccessionSSRMarkerMatrixViewImpl view = new AccessionSSRMarkerMatrixViewImpl(
+			    parent, accessionIndices);
+
+			view.validate();
+
+			assertEquals("Wrong size!", accessionIndices.length, view.getSize());
+			assertSame("Markers not shared!", parent.getColumnHeaders(),
+			    view.getColumnHeaders());
+
+			List<Integer> parentSubset = new ArrayList<Integer>();
+
+			for (int a = 0; a < accessionIndices.length; ++a)
+			{
+				assertSame("Accession not equal!", parent.getRowHeaders().getElement(
+				    accessionIndices[a]), view.getRowHeaders().getElement(a));
+				assertEquals("Values not equal!",
+				    parent.getRowElements(accessionIndices[a]),
+				    view.getRowElements(a));
+
+				parentSubset.add(accessionIndices[a]);
+			}
+
+			assertSameValues(new ModifiedRogersDistanceSSR<Integer>(
+			    DistanceMeasureType.MEAN_DISTANCE), parent, parentSubset, view);
+			assertSameValues(new ShannonsDiversitySSR<Integer>(), parent,
+			    parentSubset, view);
+			assertSameValues(new CoverageSSR<Integer>(), parent, parentSubset, view);
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testMarkerView()
+	{
+		try
+		{
+			PrimitiveAccessionSSRMarkerMatrix parent = getParent();
+
+			int[] markerIndices = new int[] { 2, 0, 5 };
+
+			AccessionSSRMarkerMatrixViewImpl view = new AccessionSSRMarkerMatrixViewImpl(
+			    parent, null, markerIndices);
+
+			assertEquals("Wrong number of markers!", markerIndices.length,
+			    view.getColumnCount());
+
+			for (int a = 0; a < parent.getSize(); ++a)
+			{
+				for (int m = 0; m < markerIndices.length; ++m)
+				{
+					assertEquals("Values not equal!",
+					    parent.getElement(a, markerIndices[m]), view.getElement(a, m));
+				}
+			}
+
+			// values set through the view are set in the parent
+			int alleleIndex = view.getAlleleOffset(1);
+
+			view.setAlleleValue(4, alleleIndex, 0.25);
+
+			assertEquals("Value not set in parent!", 0.25,
+			    parent.getAlleleValue(4, parent.getAlleleOffset(0)), PRECISION);
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testUnknownIndex()
+	{
+		try
+		{
+			new AccessionSSRMarkerMatrixViewImpl(getParent(), new int[] { 0,
+			    getParent().getSize() });
+
+			fail("Unknown index accepted!");
+		}
+		catch (CoreHunterException e)
+		{
+			assertTrue("Wrong exception!", e.getMessage().contains("index"));
+		}
+	}
+
+	private PrimitiveAccessionSSRMarkerMatrix getParent()
+	{
+		return ((AccessionSSRMarkerMatrixViewImpl) getPrimitiveData()).getParent();
+	}
+
+	@SuppressWarnings("unchecked")
+	private void assertSameValues(
+	    AbstractSubsetObjectiveFunction<Integer, AccessionSSRMarkerMatrix<Integer>> objectiveFunction,
+	    AccessionSSRMarkerMatrix<Integer> parent, List<Integer> parentSubset,
+	    AccessionSSRMarkerMatrix<Integer> view) throws CoreHunterException
+	{
+		AbstractSubsetObjectiveFunction<Integer, AccessionSSRMarkerMatrix<Integer>> viewObjectiveFunction = (AbstractSubsetObjectiveFunction<Integer, AccessionSSRMarkerMatrix<Integer>>) objectiveFunction
+		    .copy();
+
+		objectiveFunction.setData(parent);
+		viewObjectiveFunction.setData(view);
+
+		assertEquals(objectiveFunction.getName() + " not equal!",
+		    objectiveFunction.calculate(new IntegerSubsetSolution(parentSubset,
+		        parentSubset)),
+		    viewObjectiveFunction.calculate(new IntegerSubsetSolution(view
+		        .getIndices(), view.getIndices())), PRECISION);
+	}
+}
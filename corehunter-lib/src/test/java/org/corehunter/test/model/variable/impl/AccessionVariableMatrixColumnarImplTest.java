@@ -0,0 +1,340 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.test.model.variable.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.Matrix;
+import org.corehunter.model.accession.Accession;
+import org.corehunter.model.impl.AbstractFileUtility;
+import org.corehunter.model.impl.EntityMatrixListImpl;
+import org.corehunter.model.variable.CategoricalVariable;
+import org.corehunter.model.variable.ColumnarAccessionVariableMatrix;
+import org.corehunter.model.variable.Variable;
+import org.corehunter.model.variable.VariableStorageType;
+import org.corehunter.model.variable.impl.AccessionVariableMatrixColumnarImpl;
+import org.corehunter.model.variable.impl.AccessionVariableMatrixListImplDataFileReader;
+import org.corehunter.objectivefunction.variable.MeanGowerDistanceVariable;
+import org.corehunter.search.solution.impl.IntegerSubsetSolution;
+import org.junit.Test;
+
+public class AccessionVariableMatrixColumnarImplTest
+{
+	private static final String	VARIABLE_DATA_NAME	= "variabledata";
+	private static final String	VARIABLE_DATA_EXTN	= ".txt";
+	private static final int	  VARIABLE_DATA_COUNT	= 8;
+	private static final double	PRECISION	         = 0.000000001;
+
+	@Test
+	public void testReadData()
+	{
+		try
+		{
+			for (int i = 0; i < VARIABLE_DATA_COUNT; ++i)
+			{
+				Matrix<Integer, Object, Accession, Variable> listData = readData(i,
+				    VariableStorageType.LIST);
+				Matrix<Integer, Object, Accession, Variable> columnarData = readData(i,
+				    VariableStorageType.COLUMNAR);
+
+				assertTrue("Not a columnar dataset!",
+				    columnarData instanceof AccessionVariableMatrixColumnarImpl);
+
+				columnarData.validate();
+
+				assertEquals("Datasets not equal for " + i + "!", listData,
+				    columnarData);
+				assertEquals("Hash codes not equal for " + i + "!",
+				    listData.hashCode(), columnarData.hashCode());
+			}
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testDictionaryEncoding()
+	{
+		try
+		{
+			Matrix<Integer, Object, Accession, Variable> listData = readData(7,
+			    VariableStorageType.LIST);
+			ColumnarAccessionVariableMatrix columnarData = (ColumnarAccessionVariableMatrix) readData(
+			    7, VariableStorageType.COLUMNAR);
+
+			List<Variable> variables = new ArrayList<Variable>(listData
+			    .getColumnHeaders().getElements());
+
+			for (int column = 0; column < variables.size(); ++column)
+			{
+				if (variables.get(column) instanceof CategoricalVariable)
+				{
+					assertCodes((CategoricalVariable<?>) variables.get(column),
+					    listData, columnarData, column);
+				}
+			}
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testMeanGowerDistance()
+	{
+		try
+		{
+			assertMeanGowerDistances(readData(7, VariableStorageType.LIST),
+			    readData(7, VariableStorageType.COLUMNAR));
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testMissingValues()
+	{
+		try
+		{
+			Matrix<Integer, Object, Accession, Variable> data = readData(7,
+			    VariableStorageType.LIST);
+
+			List<List<Object>> elements = new ArrayList<List<Object>>();
+
+			for (Integer index : data.getIndices())
+			{
+				List<Object> row = new ArrayList<Object>(data.getRowElements(index));
+
+				// each accession misses the value of another variable
+				row.set(index % row.size(), null);
+
+				elements.add(row);
+			}
+
+			Matrix<Integer, Object, Accession, Variable> listData = new EntityMatrixListImpl<Object, Accession, Variable>(
+			    data.getName(), data.getRowHeaders(), data.getColumnHeaders(),
+			    elements);
+			ColumnarAccessionVariableMatrix columnarData = new AccessionVariableMatrixColumnarImpl(
+			    data.getName(), data.getRowHeaders(), data.getColumnHeaders(),
+			    elements);
+
+			assertEquals("Datasets not equal!", listData, columnarData);
+
+			for (Integer index : data.getIndices())
+			{
+				int column = index % data.getColumnCount();
+
+				assertTrue("Value not missing!", columnarData.isMissing(index, column));
+				assertFalse("Value missing!",
+				    columnarData.isMissing(index, (column + 1) % data.getColumnCount()));
+				assertNull("Value not null!", columnarData.getElement(index, column));
+			}
+
+			assertMeanGowerDistances(listData, columnarData);
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	private <DataType> void assertCodes(CategoricalVariable<DataType> variable,
+	    Matrix<Integer, Object, Accession, Variable> listData,
+	    ColumnarAccessionVariableMatrix columnarData, int column)
+	    throws CoreHunterException
+	{
+		assertEquals("Code count not equal!", variable.getValues().size(),
+		    columnarData.getCodeCount(column));
+
+		for (Integer index : listData.getIndices())
+		{
+			Object value = listData.getElement(index, column);
+			int code = columnarData.getCode(index, column);
+			DataType dictionaryValue = variable.getValue(code);
+
+			assertSame("Value not from dictionary!", dictionaryValue, value);
+			assertEquals("Code not equal!", variable.getCode(dictionaryValue), code);
+			assertEquals("Value not equal!", value,
+			    columnarData.getCodeValue(column, code));
+		}
+	}
+
+	private void assertMeanGowerDistances(
+	    Matrix<Integer, Object, Accession, Variable> listData,
+	    Matrix<Integer, Object, Accession, Variable> columnarData)
+	    throws CoreHunterException
+	{
+		MeanGowerDistanceVariable objectiveFunction = new MeanGowerDistanceVariable();
+		objectiveFunction.setData(listData);
+
+		MeanGowerDistanceVariable columnarObjectiveFunction = new MeanGowerDistanceVariable();
+		columnarObjectiveFunction.setData(columnarData);
+
+		int size = listData.getSize();
+
+		// all subsets of at least two accessions, evaluated by the same objective
+		// functions to exercise the cached distances
+		for (int mask = 0; mask < 1 << size; ++mask)
+		{
+			List<Integer> subset = new ArrayList<Integer>();
+
+			for (int i = 0; i < size; ++i)
+			{
+				if ((mask & (1 << i)) != 0)
+				{
+					subset.add(i);
+				}
+			}
+
+			if (subset.size() > 1)
+			{
+				IntegerSubsetSolution solution = new IntegerSubsetSolution(
+				    listData.getIndices(), subset);
+
+				assertEquals("Mean Gower's distance not equal for " + subset,
+				    objectiveFunction.calculate(solution),
+				    columnarObjectiveFunction.calculate(solution), PRECISION);
+			}
+		}
+	}
+
+	@Test
+	public void testMissingRangedValues()
+	{
+		try
+		{
+			File file = writeData("a1,a1,t,1,,,2.5", "a2,a2,,2,3,4,", "a3,a3,f,,7,,0.5");
+
+			Matrix<Integer, Object, Accession, Variable> listData = readData(file,
+			    VariableStorageType.LIST);
+			Matrix<Integer, Object, Accession, Variable> columnarData = readData(
+			    file, VariableStorageType.COLUMNAR);
+
+			assertEquals("Datasets not equal!", listData, columnarData);
+
+			assertNull("Value not null!", listData.getElement(0, 2));
+			assertNull("Value not null!", listData.getElement(1, 4));
+			assertNull("Value not null!", listData.getElement(2, 1));
+			assertEquals("Wrong value!", Boolean.FALSE, listData.getElement(2, 0));
+			assertEquals("Wrong value!", Short.valueOf((short) 2),
+			    listData.getElement(1, 1));
+			assertEquals("Wrong value!", Integer.valueOf(7),
+			    listData.getElement(2, 2));
+			assertEquals("Wrong value!", Long.valueOf(4), listData.getElement(1, 3));
+			assertEquals("Wrong value!", Double.valueOf(2.5),
+			    listData.getElement(0, 4));
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testValueNotInRange()
+	{
+		try
+		{
+			File file = writeData("a1,a1,t,1,1,1,1", "a2,a2,t,1,11,1,1");
+
+			readData(file, VariableStorageType.COLUMNAR);
+
+			fail("Value in range!");
+		}
+		catch (CoreHunterException e)
+		{
+			assertTrue("Wrong message : " + e.getMessage(), e.getMessage()
+			    .contains("on line 9 ")
+			    && e.getMessage().contains("value 11 not in range at column 4"));
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	private File writeData(String... lines) throws IOException
+	{
+		File file = File.createTempFile(VARIABLE_DATA_NAME, VARIABLE_DATA_EXTN);
+		file.deleteOnExit();
+
+		Writer writer = new FileWriter(file);
+
+		writer.write("uid,name,v1,v2,v3,v4,v5\n");
+		writer.write("uid,,vi1,vi2,vi3,vi4,vi5\n");
+		writer.write("description,,d1,d2,d3,d4,d5\n");
+		writer.write("type,,B,N,I,O,R\n");
+		writer.write("dataType,,B,S,I,L,D\n");
+		writer.write("min,,,,0,0,0\n");
+		writer.write("max,,,,10,10,10\n");
+
+		for (String line : lines)
+		{
+			writer.write(line + "\n");
+		}
+
+		writer.close();
+
+		return file;
+	}
+
+	private Matrix<Integer, Object, Accession, Variable> readData(int index,
+	    VariableStorageType storageType) throws CoreHunterException
+	{
+		return readData(
+		    new File(getClass().getResource(
+		        "/" + VARIABLE_DATA_NAME + index + VARIABLE_DATA_EXTN).getFile()),
+		    storageType);
+	}
+
+	private Matrix<Integer, Object, Accession, Variable> readData(File file,
+	    VariableStorageType storageType) throws CoreHunterException
+	{
+		AccessionVariableMatrixListImplDataFileReader reader = new AccessionVariableMatrixListImplDataFileReader(
+		    file, AbstractFileUtility.COMMA_DELIMITER);
+
+		reader.setStorageType(storageType);
+
+		return reader.readData();
+	}
+}
@@ -0,0 +1,270 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.test.objectivefunction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.impl.AbstractFileUtility;
+import org.corehunter.model.ssr.AccessionSSRMarkerMatrix;
+import org.corehunter.model.ssr.SSRStorageType;
+import org.corehunter.model.ssr.impl.AccessionSSRMarkerMatrixListImplDataFileReader;
+import org.corehunter.model.variable.impl.AccessionVariableMatrixListImplDataFileReader;
+import org.corehunter.objectivefunction.DistanceMeasureType;
+import org.corehunter.objectivefunction.MoveEvaluatingObjectiveFunction;
+import org.corehunter.objectivefunction.MultipleObjectiveFunction;
+import org.corehunter.objectivefunction.ObjectiveFunction;
+import org.corehunter.objectivefunction.impl.ObjectiveFunctionWithData;
+import org.corehunter.objectivefunction.ssr.CavalliSforzaEdwardsDistanceSSR;
+import org.corehunter.objectivefunction.ssr.CoverageSSR;
+import org.corehunter.objectivefunction.ssr.ExternalDistanceMeasureSSR;
+import org.corehunter.objectivefunction.ssr.HeterozygousLociDiversitySSR;
+import org.corehunter.objectivefunction.ssr.ModifiedRogersDistanceSSR;
+import org.corehunter.objectivefunction.ssr.NumberEffectiveAllelesSSR;
+import org.corehunter.objectivefunction.ssr.ProportionNonInformativeAllelesSSR;
+import org.corehunter.objectivefunction.ssr.ShannonsDiversitySSR;
+import org.corehunter.objectivefunction.variable.MeanGowerDistanceVariable;
+import org.corehunter.search.solution.SubsetSolution;
+import org.corehunter.search.solution.impl.IntegerSubsetSolution;
+import org.corehunter.test.UncachedModifiedRogersDistanceSSR;
+import org.junit.Test;
+
+public class MoveEvaluationTest
+{
+	private static final String	SSR_DATA_NAME	     = "bul.csv";
+	private static final String	SSR_DIST_DATA_NAME	= "ssrdata-dist.txt";
+	private static final String	VARIABLE_DATA_NAME	= "variabledata6.txt";
+	private static final int	  SUBSET_SIZE	       = 10;
+	private static final int	  MOVE_COUNT	       = 100;
+	private static final double	PRECISION	         = 0.0000001;
+
+	@Test
+	public void testSSRObjectiveFunctions()
+	{
+		try
+		{
+			for (SSRStorageType storageType : new SSRStorageType[] {
+			    SSRStorageType.LIST, SSRStorageType.ARRAY })
+			{
+				AccessionSSRMarkerMatrix<Integer> data = readSSRData(SSR_DATA_NAME,
+				    AbstractFileUtility.COMMA_DELIMITER, storageType);
+
+				for (ObjectiveFunctionWithData<SubsetSolution<Integer>, AccessionSSRMarkerMatrix<Integer>> objectiveFunction : createSSRObjectiveFunctions())
+				{
+					objectiveFunction.setData(data);
+
+					checkMoves(objectiveFunction, data.getIndices(), SUBSET_SIZE);
+				}
+			}
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testExternalDistance()
+	{
+		try
+		{
+			AccessionSSRMarkerMatrix<Integer> data = readSSRData(SSR_DIST_DATA_NAME,
+			    AbstractFileUtility.COMMA_DELIMITER, SSRStorageType.LIST);
+
+			ExternalDistanceMeasureSSR<Integer> objectiveFunction = new ExternalDistanceMeasureSSR<Integer>();
+			objectiveFunction.setData(data);
+
+			checkMoves(objectiveFunction, data.getIndices(), 2);
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testMeanGowerDistance()
+	{
+		try
+		{
+			MeanGowerDistanceVariable objectiveFunction = new MeanGowerDistanceVariable();
+			objectiveFunction.setData(new AccessionVariableMatrixListImplDataFileReader(
+			    getResource(VARIABLE_DATA_NAME), AbstractFileUtility.COMMA_DELIMITER)
+			    .readData());
+
+			checkMoves(objectiveFunction, objectiveFunction.getData().getIndices(), 3);
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testMultipleObjectiveFunction()
+	{
+		try
+		{
+			AccessionSSRMarkerMatrix<Integer> data = readSSRData(SSR_DATA_NAME,
+			    AbstractFileUtility.COMMA_DELIMITER, SSRStorageType.LIST);
+
+			ModifiedRogersDistanceSSR<Integer> modifiedRogers = new ModifiedRogersDistanceSSR<Integer>();
+			modifiedRogers.setData(data);
+
+			ShannonsDiversitySSR<Integer> shannons = new ShannonsDiversitySSR<Integer>();
+			shannons.setData(data);
+
+			// can not evaluate moves, so the moves are applied for this one
+			UncachedModifiedRogersDistanceSSR uncached = new UncachedModifiedRogersDistanceSSR(
+			    DistanceMeasureType.MIN_DISTANCE);
+			uncached.setData(data);
+
+			MultipleObjectiveFunction<SubsetSolution<Integer>, AccessionSSRMarkerMatrix<Integer>> objectiveFunction = new MultipleObjectiveFunction<SubsetSolution<Integer>, AccessionSSRMarkerMatrix<Integer>>();
+			objectiveFunction.addObjectiveFunction(modifiedRogers, 0.5);
+			objectiveFunction.addObjectiveFunction(shannons, 0.3);
+			objectiveFunction.addObjectiveFunction(uncached, 0.2);
+
+			checkMoves(objectiveFunction, data.getIndices(), SUBSET_SIZE);
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	private List<ObjectiveFunctionWithData<SubsetSolution<Integer>, AccessionSSRMarkerMatrix<Integer>>> createSSRObjectiveFunctions()
+	{
+		List<ObjectiveFunctionWithData<SubsetSolution<Integer>, AccessionSSRMarkerMatrix<Integer>>> objectiveFunctions = new ArrayList<ObjectiveFunctionWithData<SubsetSolution<Integer>, AccessionSSRMarkerMatrix<Integer>>>();
+
+		objectiveFunctions.add(new ModifiedRogersDistanceSSR<Integer>(
+		    DistanceMeasureType.MEAN_DISTANCE));
+		objectiveFunctions.add(new ModifiedRogersDistanceSSR<Integer>(
+		    DistanceMeasureType.MIN_DISTANCE));
+		objectiveFunctions.add(new CavalliSforzaEdwardsDistanceSSR<Integer>(
+		    DistanceMeasureType.MEAN_DISTANCE));
+		objectiveFunctions.add(new CavalliSforzaEdwardsDistanceSSR<Integer>(
+		    DistanceMeasureType.MIN_DISTANCE));
+		objectiveFunctions.add(new ShannonsDiversitySSR<Integer>());
+		objectiveFunctions.add(new HeterozygousLociDiversitySSR<Integer>());
+		objectiveFunctions.add(new NumberEffectiveAllelesSSR<Integer>());
+		objectiveFunctions.add(new ProportionNonInformativeAllelesSSR<Integer>());
+		objectiveFunctions.add(new CoverageSSR<Integer>());
+
+		return objectiveFunctions;
+	}
+
+	// performs a random walk of additions, deletions and swaps, checking the
+	// evaluation of each move against the evaluation after it is applied
+	@SuppressWarnings("unchecked")
+	private void checkMoves(ObjectiveFunction<SubsetSolution<Integer>> objectiveFunction,
+	    List<Integer> indices, int subsetSize) throws CoreHunterException
+	{
+		assertTrue(objectiveFunction.getName() + " can not evaluate moves!",
+		    objectiveFunction instanceof MoveEvaluatingObjectiveFunction);
+
+		MoveEvaluatingObjectiveFunction<Integer> moveEvaluator = (MoveEvaluatingObjectiveFunction<Integer>) objectiveFunction;
+
+		Random random = new Random(42);
+		List<Integer> subset = new ArrayList<Integer>(indices.subList(0,
+		    subsetSize));
+		SubsetSolution<Integer> solution = new IntegerSubsetSolution(indices,
+		    subset);
+
+		objectiveFunction.calculate(solution);
+
+		for (int i = 0; i < MOVE_COUNT; ++i)
+		{
+			List<Integer> selected = new ArrayList<Integer>(
+			    solution.getSubsetIndices());
+			List<Integer> unselected = new ArrayList<Integer>(
+			    solution.getRemainingIndices());
+
+			Integer addedIndex = null;
+			Integer removedIndex = null;
+
+			switch (random.nextInt(3))
+			{
+				case 0:
+					if (selected.size() < indices.size()
+					    && selected.size() < subsetSize + 1)
+					{
+						addedIndex = unselected.get(random.nextInt(unselected.size()));
+					}
+					break;
+				case 1:
+					if (selected.size() > subsetSize - 1 && selected.size() > 2)
+					{
+						removedIndex = selected.get(random.nextInt(selected.size()));
+					}
+					break;
+				default:
+					if (!unselected.isEmpty())
+					{
+						addedIndex = unselected.get(random.nextInt(unselected.size()));
+						removedIndex = selected.get(random.nextInt(selected.size()));
+					}
+					break;
+			}
+
+			if (addedIndex == null && removedIndex == null)
+			{
+				continue;
+			}
+
+			double evaluation = moveEvaluator.calculateMove(solution, addedIndex,
+			    removedIndex);
+
+			if (addedIndex != null)
+			{
+				solution.addIndex(addedIndex);
+			}
+
+			if (removedIndex != null)
+			{
+				solution.removeIndex(removedIndex);
+			}
+
+			assertEquals(objectiveFunction.getName() + " move " + addedIndex
+			    + "/" + removedIndex + " not evaluated correctly!",
+			    objectiveFunction.calculate(solution), evaluation, PRECISION);
+		}
+	}
+
+	private AccessionSSRMarkerMatrix<Integer> readSSRData(String name,
+	    char delimiter, SSRStorageType storageType) throws CoreHunterException
+	{
+		AccessionSSRMarkerMatrixListImplDataFileReader reader = new AccessionSSRMarkerMatrixListImplDataFileReader(
+		    name, getResource(name), delimiter);
+
+		reader.setStorageType(storageType);
+
+		return reader.readData();
+	}
+
+	private File getResource(String name)
+	{
+		return new File(getClass().getResource("/" + name).getFile());
+	}
+}
@@ -0,0 +1,282 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.test.objectivefunction.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.impl.AbstractFileUtility;
+import org.corehunter.model.ssr.AccessionSSRMarkerMatrix;
+import org.corehunter.model.ssr.impl.AccessionSSRMarkerMatrixListImplDataFileReader;
+import org.corehunter.objectivefunction.impl.BoundedDistanceCache;
+import org.corehunter.objectivefunction.ssr.ModifiedRogersDistanceSSR;
+import org.junit.Test;
+
+public class BoundedDistanceCacheTest
+{
+	private static final String	SSR_DATA_NAME	= "bul.csv";
+	private static final int	  THREAD_COUNT	= 4;
+	private static final double	MISSING	      = -1.0;
+	private static final double	PRECISION	    = 0.0000001;
+
+	@Test
+	public void testCache()
+	{
+		BoundedDistanceCache cache = new BoundedDistanceCache(
+		    BoundedDistanceCache.SLOT_SIZE * 1024, 4);
+
+		assertEquals("Wrong number of segments!", 4, cache.getSegmentCount());
+		assertEquals("Wrong capacity!", 768, cache.getCapacity());
+		assertEquals("Wrong pair id!", (5L << 32) | 3,
+		    BoundedDistanceCache.getPairId(3, 5));
+		assertEquals("Pair id depends on order!",
+		    BoundedDistanceCache.getPairId(3, 5),
+		    BoundedDistanceCache.getPairId(5, 3));
+
+		int size = 20;
+
+		for (int i = 0; i < size; ++i)
+		{
+			for (int j = 0; j < i; ++j)
+			{
+				assertEquals("Missing value not returned!", MISSING,
+				    cache.getDistance(i, j, MISSING), 0.0);
+
+				cache.setDistance(i, j, j + i / 1000.0);
+			}
+
+			// the distance between an index and itself is not cached
+			cache.setDistance(i, i, 0.0);
+		}
+
+		assertEquals("Wrong number of entries!", size * (size - 1) / 2,
+		    cache.getEntryCount());
+
+		for (int i = 0; i < size; ++i)
+		{
+			for (int j = i + 1; j < size; ++j)
+			{
+				assertEquals("Distance not equal!", i + j / 1000.0,
+				    cache.getDistance(i, j, MISSING), 0.0);
+			}
+		}
+
+		assertEquals("Wrong number of hits!", size * (size - 1) / 2,
+		    cache.getHitCount());
+		assertEquals("Wrong number of misses!", size * (size - 1) / 2,
+		    cache.getMissCount());
+		assertEquals("Distances evicted!", 0, cache.getEvictionCount());
+
+		cache.clear();
+
+		assertEquals("Cache not cleared!", 0, cache.getEntryCount());
+		assertEquals("Counters not reset!", 0, cache.getHitCount());
+		assertEquals("Distance not removed!", MISSING,
+		    cache.getDistance(1, 0, MISSING), 0.0);
+	}
+
+	@Test
+	public void testEviction()
+	{
+		// a single segment of 64 slots
+		BoundedDistanceCache cache = new BoundedDistanceCache(
+		    BoundedDistanceCache.SLOT_SIZE * 64, 1);
+
+		long capacity = cache.getCapacity();
+		int count = 0;
+
+		assertEquals("Wrong capacity!", 48, capacity);
+
+		// a distance used before each addition is never evicted
+		cache.setDistance(0, 1, 0.5);
+
+		for (int i = 2; i < 100; ++i)
+		{
+			for (int j = 0; j < i; j += 7)
+			{
+				assertEquals("Used distance evicted!", 0.5,
+				    cache.getDistance(1, 0, MISSING), 0.0);
+
+				cache.setDistance(i, j, j + i / 1000.0);
+				++count;
+			}
+		}
+
+		assertEquals("Wrong number of entries!", capacity, cache.getEntryCount());
+		assertEquals("Wrong number of evictions!", count + 1 - capacity,
+		    cache.getEvictionCount());
+
+		int found = 0;
+
+		for (int i = 2; i < 100; ++i)
+		{
+			for (int j = 0; j < i; j += 7)
+			{
+				double distance = cache.getDistance(i, j, MISSING);
+
+				if (distance != MISSING)
+				{
+					assertEquals("Distance not equal!", j + i / 1000.0, distance, 0.0);
+					++found;
+				}
+			}
+		}
+
+		assertEquals("Entries not found!", capacity - 1, found);
+	}
+
+	@Test
+	public void testConcurrentUse()
+	{
+		final BoundedDistanceCache cache = new BoundedDistanceCache(
+		    BoundedDistanceCache.SLOT_SIZE * 4096, 8);
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+
+		try
+		{
+			List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+
+			for (int t = 0; t < THREAD_COUNT; ++t)
+			{
+				final Random random = new Random(t);
+
+				results.add(executor.submit(new Callable<Integer>()
+				{
+					@Override
+					public Integer call()
+					{
+						int wrong = 0;
+
+						for (int k = 0; k < 100000; ++k)
+						{
+							int i = random.nextInt(500);
+							int j = (i + 1 + random.nextInt(499)) % 500;
+
+							double distance = cache.getDistance(i, j, MISSING);
+
+							if (distance == MISSING)
+							{
+								cache.setDistance(i, j, Math.min(i, j) + Math.max(i, j)
+								    / 1000.0);
+							}
+							else
+								if (distance != Math.min(i, j) + Math.max(i, j) / 1000.0)
+								{
+									++wrong;
+								}
+						}
+
+						return wrong;
+					}
+				}));
+			}
+
+			for (Future<Integer> result : results)
+			{
+				assertEquals("Wrong distances found!", 0, result.get().intValue());
+			}
+
+			assertTrue("Capacity exceeded!",
+			    cache.getEntryCount() <= cache.getCapacity());
+			assertTrue("No distances evicted!", cache.getEvictionCount() > 0);
+			assertEquals("Wrong number of lookups!", THREAD_COUNT * 100000L,
+			    cache.getHitCount() + cache.getMissCount());
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testSSRDistances()
+	{
+		try
+		{
+			AccessionSSRMarkerMatrix<Integer> data = new AccessionSSRMarkerMatrixListImplDataFileReader(
+			    SSR_DATA_NAME, getResource(SSR_DATA_NAME),
+			    AbstractFileUtility.COMMA_DELIMITER).readData();
+
+			ModifiedRogersDistanceSSR<Integer> uncached = new ModifiedRogersDistanceSSR<Integer>();
+			uncached.setMaximumDistanceCacheSize(0);
+			uncached.setData(data);
+
+			// too small for all distances
+			ModifiedRogersDistanceSSR<Integer> bounded = new ModifiedRogersDistanceSSR<Integer>();
+			bounded.setMaximumDistanceCacheSize(BoundedDistanceCache.SLOT_SIZE * 2048);
+			bounded.setData(data);
+
+			assertEquals("Mean distance not equal!", uncached.calculate(null),
+			    bounded.calculate(null), PRECISION);
+
+			BoundedDistanceCache cache = bounded.getBoundedDistanceCache();
+
+			assertNull("Dense cache created beyond maximum size!",
+			    bounded.getDistanceCache());
+			assertNotNull("Bounded cache not created!", cache);
+			assertNull("Bounded cache created when disabled!",
+			    uncached.getBoundedDistanceCache());
+			assertTrue("Maximum size exceeded!",
+			    cache.getMemorySize() <= BoundedDistanceCache.SLOT_SIZE * 2048);
+			assertTrue("No distances evicted!", cache.getEvictionCount() > 0);
+
+			// copies share the bounded cache
+			ModifiedRogersDistanceSSR<Integer> copy = (ModifiedRogersDistanceSSR<Integer>) bounded
+			    .copy();
+
+			assertEquals("Bounded cache not shared!", cache,
+			    copy.getBoundedDistanceCache());
+
+			int size = data.getSize();
+
+			for (int i = 0; i < size; ++i)
+			{
+				for (int j = i + 1; j < size; ++j)
+				{
+					assertEquals("Distance not equal!", uncached.calculate(i, j),
+					    copy.calculate(i, j), PRECISION);
+				}
+			}
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	private File getResource(String name)
+	{
+		return new File(getClass().getResource("/" + name).getFile());
+	}
+}
@@ -0,0 +1,209 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.test.objectivefunction.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.Matrix;
+import org.corehunter.model.accession.Accession;
+import org.corehunter.model.impl.AbstractFileUtility;
+import org.corehunter.model.ssr.AccessionSSRMarkerMatrix;
+import org.corehunter.model.ssr.SSRAllele;
+import org.corehunter.model.ssr.SSRMarker;
+import org.corehunter.model.ssr.impl.AccessionSSRMarkerMatrixListImplDataFileReader;
+import org.corehunter.model.variable.Variable;
+import org.corehunter.model.variable.impl.AccessionVariableMatrixListImplDataFileReader;
+import org.corehunter.objectivefunction.DistanceMeasureType;
+import org.corehunter.objectivefunction.impl.DistanceMatrixFile;
+import org.corehunter.objectivefunction.ssr.ModifiedRogersDistanceSSR;
+import org.corehunter.objectivefunction.variable.MeanGowerDistanceVariable;
+import org.corehunter.search.solution.impl.IntegerSubsetSolution;
+import org.junit.Test;
+
+public class DistanceMatrixFileTest
+{
+	private static final String	SSR_DATA_NAME	     = "bul.csv";
+	private static final String	VARIABLE_DATA_NAME	= "variabledata6.txt";
+	private static final String	GOWER_DISTANCE_NAME	= "GW";
+	private static final double	PRECISION	         = 0.0000001;
+
+	@Test
+	public void testSSRDistances() throws IOException
+	{
+		try
+		{
+			AccessionSSRMarkerMatrix<Integer> data = new AccessionSSRMarkerMatrixListImplDataFileReader(
+			    SSR_DATA_NAME, getResource(SSR_DATA_NAME),
+			    AbstractFileUtility.COMMA_DELIMITER).readData();
+
+			File file = createTemporaryFile();
+
+			ModifiedRogersDistanceSSR<Integer> expected = new ModifiedRogersDistanceSSR<Integer>();
+			expected.setData(data);
+
+			ModifiedRogersDistanceSSR<Integer> stored = new ModifiedRogersDistanceSSR<Integer>();
+			stored.setDistanceMatrixFile(file);
+			stored.setData(data);
+
+			assertTrue("File not written!", file.length() > 0);
+
+			int size = data.getSize();
+
+			for (int i = 0; i < size; ++i)
+			{
+				for (int j = i + 1; j < size; ++j)
+				{
+					assertEquals("Stored distance not equal!", expected.calculate(i, j),
+					    stored.calculate(i, j), PRECISION);
+				}
+			}
+
+			assertEquals("Mean distance not equal!", expected.calculate(null),
+			    stored.calculate(null), PRECISION);
+
+			// the minimum variant reuses the file written for the mean variant
+			long lastModified = file.lastModified();
+			File temporaryFile = new File(file.getPath() + ".tmp");
+
+			ModifiedRogersDistanceSSR<Integer> minimum = new ModifiedRogersDistanceSSR<Integer>(
+			    DistanceMeasureType.MIN_DISTANCE);
+			minimum.setDistanceMatrixFile(file);
+			minimum.setData(data);
+
+			assertEquals("File rewritten!", lastModified, file.lastModified());
+			assertTrue("Temporary file left!", !temporaryFile.exists());
+
+			ModifiedRogersDistanceSSR<Integer> expectedMinimum = new ModifiedRogersDistanceSSR<Integer>(
+			    DistanceMeasureType.MIN_DISTANCE);
+			expectedMinimum.setData(data);
+
+			assertEquals("Minimum distance not equal!",
+			    expectedMinimum.calculate(null), minimum.calculate(null), PRECISION);
+
+			// the file is stale for other data
+			String digest = data.getContentDigest().toString();
+
+			assertNotNull("File not opened!", DistanceMatrixFile.open(file,
+			    ModifiedRogersDistanceSSR.class.getSimpleName(), digest, size));
+			assertNull("Stale digest not detected!", DistanceMatrixFile.open(file,
+			    ModifiedRogersDistanceSSR.class.getSimpleName(), digest + "0", size));
+			assertNull("Other measure not detected!", DistanceMatrixFile.open(file,
+			    "CavalliSforzaEdwardsDistanceSSR", digest, size));
+			assertNull("Other size not detected!", DistanceMatrixFile.open(file,
+			    ModifiedRogersDistanceSSR.class.getSimpleName(), digest, size + 1));
+
+			Accession accession = data.getRowHeaders().getElement(0);
+			SSRMarker marker = data.getColumnHeaders().getElement(0);
+			SSRAllele allele = marker.getAlleles().get(0);
+			Double value = data.getValue(accession, marker, allele);
+
+			data.setValue(accession, marker, allele, value == null ? 0.5
+			    : value / 2.0 + 0.25);
+
+			assertNull("Changed data not detected!", DistanceMatrixFile.open(file,
+			    ModifiedRogersDistanceSSR.class.getSimpleName(),
+			    data.getContentDigest().toString(), size));
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testVariableDistances() throws IOException
+	{
+		try
+		{
+			Matrix<Integer, Object, Accession, Variable> data = new AccessionVariableMatrixListImplDataFileReader(
+			    VARIABLE_DATA_NAME, getResource(VARIABLE_DATA_NAME),
+			    AbstractFileUtility.COMMA_DELIMITER).readData();
+
+			File file = createTemporaryFile();
+
+			MeanGowerDistanceVariable expected = new MeanGowerDistanceVariable();
+			expected.setData(data);
+
+			MeanGowerDistanceVariable stored = new MeanGowerDistanceVariable();
+			stored.setData(data);
+			stored.setDistanceMatrixFile(file);
+
+			DistanceMatrixFile distances = DistanceMatrixFile.open(file,
+			    GOWER_DISTANCE_NAME, stored.getDistanceMatrixDigest().toString(),
+			    data.getRowCount());
+
+			assertNotNull("File not opened!", distances);
+
+			List<Integer> all = new ArrayList<Integer>();
+
+			for (int i = 0; i < data.getRowCount(); ++i)
+			{
+				all.add(i);
+
+				for (int j = i + 1; j < data.getRowCount(); ++j)
+				{
+					List<Integer> pair = new ArrayList<Integer>();
+					pair.add(i);
+					pair.add(j);
+
+					// the mean distance of a pair is the distance itself
+					assertEquals("Stored distance not equal!",
+					    expected.calculate(new IntegerSubsetSolution(data.getIndices(),
+					        pair)), distances.getDistance(i, j), PRECISION);
+					assertEquals("Distance not symmetric!", distances.getDistance(i, j),
+					    distances.getDistance(j, i), PRECISION);
+				}
+			}
+
+			IntegerSubsetSolution solution = new IntegerSubsetSolution(
+			    data.getIndices(), all);
+
+			assertEquals("Mean distance not equal!", expected.calculate(solution),
+			    stored.calculate(solution), PRECISION);
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	private File createTemporaryFile() throws IOException
+	{
+		File file = File.createTempFile("distances",
+		    DistanceMatrixFile.FILE_EXTENSION);
+
+		// the file is created when the data is set
+		file.delete();
+		file.deleteOnExit();
+
+		return file;
+	}
+
+	private File getResource(String name)
+	{
+		return new File(getClass().getResource("/" + name).getFile());
+	}
+}
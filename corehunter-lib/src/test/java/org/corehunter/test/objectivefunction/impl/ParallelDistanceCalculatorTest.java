@@ -0,0 +1,318 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.test.objectivefunction.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.Matrix;
+import org.corehunter.model.accession.Accession;
+import org.corehunter.model.distance.DistanceStorageType;
+import org.corehunter.model.impl.AbstractFileUtility;
+import org.corehunter.model.ssr.AccessionSSRMarkerMatrix;
+import org.corehunter.model.ssr.impl.AccessionSSRMarkerMatrixListImplDataFileReader;
+import org.corehunter.model.variable.Variable;
+import org.corehunter.model.variable.impl.AccessionVariableMatrixListImplDataFileReader;
+import org.corehunter.objectivefunction.PrecomputableDistanceMeasure;
+import org.corehunter.objectivefunction.impl.DistanceMatrixFile;
+import org.corehunter.objectivefunction.impl.ParallelDistanceCalculator;
+import org.corehunter.objectivefunction.impl.TriangularDistanceCache;
+import org.corehunter.objectivefunction.ssr.CavalliSforzaEdwardsDistanceSSR;
+import org.corehunter.objectivefunction.ssr.ModifiedRogersDistanceSSR;
+import org.corehunter.objectivefunction.variable.MeanGowerDistanceVariable;
+import org.corehunter.search.solution.impl.IntegerSubsetSolution;
+import org.junit.Test;
+
+public class ParallelDistanceCalculatorTest
+{
+	private static final String	SSR_DATA_NAME	     = "bul.csv";
+	private static final String	VARIABLE_DATA_NAME	= "variabledata6.txt";
+	private static final int	  THREAD_COUNT	     = 4;
+	private static final double	MISSING	           = -1.0;
+	private static final double	PRECISION	         = 0.0000001;
+
+	@Test
+	public void testCalculate()
+	{
+		try
+		{
+			// not a multiple of the tile size, so the last tiles are partial
+			int size = ParallelDistanceCalculator.TILE_SIZE * 3 + 5;
+
+			TriangularDistanceCache cache = new TriangularDistanceCache(size,
+			    DistanceStorageType.DOUBLE);
+
+			final List<Double> progress = new ArrayList<Double>();
+
+			new ParallelDistanceCalculator(THREAD_COUNT).calculate(cache,
+			    new ParallelDistanceCalculator.DistanceFunctionFactory()
+			    {
+				    @Override
+				    public DistanceMatrixFile.DistanceFunction createDistanceFunction()
+				    {
+					    return new DistanceMatrixFile.DistanceFunction()
+					    {
+						    @Override
+						    public double calculate(int index1, int index2)
+						    {
+							    return index1 * 1000.0 + index2;
+						    }
+					    };
+				    }
+			    }, new PrecomputableDistanceMeasure.ProgressListener()
+			    {
+				    @Override
+				    public void progress(double value)
+				    {
+					    progress.add(value);
+				    }
+			    });
+
+			assertEquals("Not all distances computed!", cache.getDistanceCount(),
+			    cache.getComputedCount());
+
+			for (int i = 0; i < size; ++i)
+			{
+				assertFalse("Diagonal computed!", cache.isComputed(i, i));
+
+				for (int j = i + 1; j < size; ++j)
+				{
+					assertEquals("Wrong distance!", i * 1000.0 + j,
+					    cache.getDistance(j, i, MISSING), 0.0);
+				}
+			}
+
+			assertEquals("Completion not reported!", 1.0,
+			    progress.get(progress.size() - 1), 0.0);
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testSingleThreadProgress()
+	{
+		try
+		{
+			int blockCount = 4;
+			TriangularDistanceCache cache = new TriangularDistanceCache(
+			    ParallelDistanceCalculator.TILE_SIZE * blockCount,
+			    DistanceStorageType.FLOAT);
+
+			final List<Double> progress = new ArrayList<Double>();
+
+			new ParallelDistanceCalculator(1).calculate(cache,
+			    new ParallelDistanceCalculator.DistanceFunctionFactory()
+			    {
+				    @Override
+				    public DistanceMatrixFile.DistanceFunction createDistanceFunction()
+				    {
+					    return new DistanceMatrixFile.DistanceFunction()
+					    {
+						    @Override
+						    public double calculate(int index1, int index2)
+						    {
+							    return 1.0;
+						    }
+					    };
+				    }
+			    }, new PrecomputableDistanceMeasure.ProgressListener()
+			    {
+				    @Override
+				    public void progress(double value)
+				    {
+					    progress.add(value);
+				    }
+			    });
+
+			// once per block of rows and once on completion
+			assertEquals("Progress not reported per block!", blockCount + 1,
+			    progress.size());
+
+			for (int i = 1; i < progress.size(); ++i)
+			{
+				assertTrue("Progress decreased!",
+				    progress.get(i - 1) <= progress.get(i));
+			}
+
+			assertEquals("Completion not reported!", 1.0,
+			    progress.get(progress.size() - 1), 0.0);
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testFailure()
+	{
+		try
+		{
+			new ParallelDistanceCalculator(THREAD_COUNT).calculate(
+			    new TriangularDistanceCache(ParallelDistanceCalculator.TILE_SIZE * 4,
+			        DistanceStorageType.FLOAT),
+			    new ParallelDistanceCalculator.DistanceFunctionFactory()
+			    {
+				    @Override
+				    public DistanceMatrixFile.DistanceFunction createDistanceFunction()
+				    {
+					    return new DistanceMatrixFile.DistanceFunction()
+					    {
+						    @Override
+						    public double calculate(int index1, int index2)
+						        throws CoreHunterException
+						    {
+							    if (index2 == 300)
+							    {
+								    throw new CoreHunterException("Failed : " + index1);
+							    }
+
+							    return 1.0;
+						    }
+					    };
+				    }
+			    }, null);
+
+			fail("Failure not thrown!");
+		}
+		catch (CoreHunterException e)
+		{
+			assertTrue("Wrong failure!", e.getMessage().startsWith("Failed"));
+		}
+	}
+
+	@Test
+	public void testSSRDistances()
+	{
+		try
+		{
+			AccessionSSRMarkerMatrix<Integer> data = new AccessionSSRMarkerMatrixListImplDataFileReader(
+			    SSR_DATA_NAME, getResource(SSR_DATA_NAME),
+			    AbstractFileUtility.COMMA_DELIMITER).readData();
+
+			ModifiedRogersDistanceSSR<Integer> modifiedRogers = new ModifiedRogersDistanceSSR<Integer>();
+			modifiedRogers.setData(data);
+			modifiedRogers.precomputeDistances(THREAD_COUNT, null);
+
+			CavalliSforzaEdwardsDistanceSSR<Integer> cavalliSforzaEdwards = new CavalliSforzaEdwardsDistanceSSR<Integer>();
+			cavalliSforzaEdwards.setData(data);
+			cavalliSforzaEdwards.precomputeDistances(THREAD_COUNT, null);
+
+			ModifiedRogersDistanceSSR<Integer> expectedModifiedRogers = new ModifiedRogersDistanceSSR<Integer>();
+			expectedModifiedRogers.setMaximumDistanceCacheSize(0);
+			expectedModifiedRogers.setData(data);
+
+			CavalliSforzaEdwardsDistanceSSR<Integer> expectedCavalliSforzaEdwards = new CavalliSforzaEdwardsDistanceSSR<Integer>();
+			expectedCavalliSforzaEdwards.setMaximumDistanceCacheSize(0);
+			expectedCavalliSforzaEdwards.setData(data);
+
+			assertTrue("Not precomputed!", modifiedRogers.isDistancesPrecomputed());
+			assertTrue("Not precomputed!",
+			    cavalliSforzaEdwards.isDistancesPrecomputed());
+
+			int size = data.getSize();
+
+			for (int i = 0; i < size; ++i)
+			{
+				for (int j = i + 1; j < size; ++j)
+				{
+					assertEquals("Precomputed distance not equal!",
+					    expectedModifiedRogers.calculate(i, j), modifiedRogers
+					        .getDistanceCache().getDistance(i, j, MISSING), PRECISION);
+					assertEquals("Precomputed distance not equal!",
+					    expectedCavalliSforzaEdwards.calculate(i, j),
+					    cavalliSforzaEdwards.getDistanceCache()
+					        .getDistance(i, j, MISSING), PRECISION);
+				}
+			}
+
+			// copies read the precomputed distances
+			ModifiedRogersDistanceSSR<Integer> copy = (ModifiedRogersDistanceSSR<Integer>) modifiedRogers
+			    .copy();
+
+			assertSame("Distances not shared!", modifiedRogers.getDistanceCache(),
+			    copy.getDistanceCache());
+			assertEquals("Mean distance not equal!",
+			    expectedModifiedRogers.calculate(null), copy.calculate(null),
+			    PRECISION);
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testVariableDistances()
+	{
+		try
+		{
+			Matrix<Integer, Object, Accession, Variable> data = new AccessionVariableMatrixListImplDataFileReader(
+			    VARIABLE_DATA_NAME, getResource(VARIABLE_DATA_NAME),
+			    AbstractFileUtility.COMMA_DELIMITER).readData();
+
+			MeanGowerDistanceVariable expected = new MeanGowerDistanceVariable();
+			expected.setData(data);
+
+			MeanGowerDistanceVariable precomputed = new MeanGowerDistanceVariable();
+			precomputed.setData(data);
+
+			assertFalse("Precomputed!", precomputed.isDistancesPrecomputed());
+
+			precomputed.precomputeDistances(THREAD_COUNT, null);
+
+			assertTrue("Not precomputed!", precomputed.isDistancesPrecomputed());
+
+			List<Integer> all = new ArrayList<Integer>();
+
+			for (int i = 0; i < data.getRowCount(); ++i)
+			{
+				all.add(i);
+			}
+
+			IntegerSubsetSolution solution = new IntegerSubsetSolution(
+			    data.getIndices(), all);
+
+			assertEquals("Mean distance not equal!", expected.calculate(solution),
+			    precomputed.calculate(solution), PRECISION);
+			assertEquals("Mean distance of copy not equal!",
+			    expected.calculate(solution), precomputed.copy().calculate(solution),
+			    PRECISION);
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	private File getResource(String name)
+	{
+		return new File(getClass().getResource("/" + name).getFile());
+	}
+}
@@ -0,0 +1,447 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.test.objectivefunction.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.IndexedData;
+import org.corehunter.model.impl.AbstractFileUtility;
+import org.corehunter.model.impl.EntityImpl;
+import org.corehunter.model.ssr.AccessionSSRMarkerMatrix;
+import org.corehunter.model.ssr.impl.AccessionSSRMarkerMatrixListImplDataFileReader;
+import org.corehunter.objectivefunction.DistanceMeasureType;
+import org.corehunter.objectivefunction.MultipleObjectiveFunction;
+import org.corehunter.objectivefunction.ObjectiveFunction;
+import org.corehunter.objectivefunction.impl.AbstractDistanceMeasure;
+import org.corehunter.objectivefunction.impl.BoundedDistanceCache;
+import org.corehunter.objectivefunction.ssr.ModifiedRogersDistanceSSR;
+import org.corehunter.objectivefunction.ssr.ShannonsDiversitySSR;
+import org.corehunter.search.solution.SubsetSolution;
+import org.corehunter.search.solution.impl.IntegerSubsetSolution;
+import org.junit.Test;
+
+public class SharedDistanceStoreTest
+{
+	private static final String	DATA_NAME	   = "bul.csv";
+	private static final int	  THREAD_COUNT	= 4;
+	private static final int	  SUBSET_COUNT	= 50;
+	private static final int	  SUBSET_SIZE	 = 20;
+	private static final double	PRECISION	   = 0.0000001;
+	// large enough for a dense cache that exceeds the smallest bounded cache
+	private static final int	  NON_POSITIONAL_SIZE	= 100;
+
+	@Test
+	public void testCopiesShareDistances()
+	{
+		try
+		{
+			ModifiedRogersDistanceSSR<Integer> measure = new ModifiedRogersDistanceSSR<Integer>();
+			measure.setData(readData());
+
+			assertNull("Cache created!", measure.getDistanceCache());
+
+			// copied before any distance is calculated
+			ModifiedRogersDistanceSSR<Integer> copy = (ModifiedRogersDistanceSSR<Integer>) measure
+			    .copy();
+
+			assertSame("Distances not shared!", measure.getDistanceCache(),
+			    copy.getDistanceCache());
+
+			copy.calculate(null);
+
+			assertEquals("Not all distances computed!", measure.getDistanceCache()
+			    .getDistanceCount(), measure.getDistanceCache().getComputedCount());
+
+			// changing a setting of a copy does not affect the original
+			copy.setMaximumDistanceCacheSize(0);
+
+			assertNull("Cache not flushed!", copy.getDistanceCache());
+			assertEquals("Distances of original flushed!", measure
+			    .getDistanceCache().getDistanceCount(), measure.getDistanceCache()
+			    .getComputedCount());
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testConcurrentCopies()
+	{
+		ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+
+		try
+		{
+			AccessionSSRMarkerMatrix<Integer> data = readData();
+
+			final ModifiedRogersDistanceSSR<Integer> expected = new ModifiedRogersDistanceSSR<Integer>();
+			expected.setMaximumDistanceCacheSize(0);
+			expected.setData(data);
+
+			ModifiedRogersDistanceSSR<Integer> measure = new ModifiedRogersDistanceSSR<Integer>();
+			measure.setData(data);
+
+			final List<List<Integer>> subsets = createSubsets(data.getSize());
+			final List<Integer> indices = data.getIndices();
+
+			List<Future<double[]>> results = new ArrayList<Future<double[]>>();
+
+			for (int t = 0; t < THREAD_COUNT; ++t)
+			{
+				final ObjectiveFunction<SubsetSolution<Integer>> copy = measure.copy();
+
+				results.add(executor.submit(new Callable<double[]>()
+				{
+					@Override
+					public double[] call() throws CoreHunterException
+					{
+						double[] scores = new double[subsets.size()];
+
+						for (int i = 0; i < scores.length; ++i)
+						{
+							scores[i] = copy.calculate(new IntegerSubsetSolution(indices,
+							    subsets.get(i)));
+						}
+
+						return scores;
+					}
+				}));
+			}
+
+			for (Future<double[]> result : results)
+			{
+				double[] scores = result.get();
+
+				for (int i = 0; i < scores.length; ++i)
+				{
+					assertEquals("Score not equal!",
+					    expected.calculate(new IntegerSubsetSolution(indices, subsets
+					        .get(i))), scores[i], PRECISION);
+				}
+			}
+
+			// each pair is stored at most once, however many copies computed it
+			assertEquals("Distances not shared!", 1, countDistinctCaches(measure,
+			    THREAD_COUNT));
+			assertEquals("Wrong number of computed distances!",
+			    countDistinctPairs(subsets, data.getSize()), measure
+			        .getDistanceCache().getComputedCount());
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testMultipleObjectiveCopy()
+	{
+		try
+		{
+			AccessionSSRMarkerMatrix<Integer> data = readData();
+
+			ModifiedRogersDistanceSSR<Integer> modifiedRogers = new ModifiedRogersDistanceSSR<Integer>();
+			modifiedRogers.setData(data);
+
+			ShannonsDiversitySSR<Integer> shannons = new ShannonsDiversitySSR<Integer>();
+			shannons.setData(data);
+
+			MultipleObjectiveFunction<SubsetSolution<Integer>, AccessionSSRMarkerMatrix<Integer>> objectiveFunction = new MultipleObjectiveFunction<SubsetSolution<Integer>, AccessionSSRMarkerMatrix<Integer>>();
+			objectiveFunction.addObjectiveFunction(modifiedRogers, 1.0);
+			objectiveFunction.addObjectiveFunction(shannons, 1.0);
+
+			@SuppressWarnings("unchecked")
+			MultipleObjectiveFunction<SubsetSolution<Integer>, AccessionSSRMarkerMatrix<Integer>> copy = (MultipleObjectiveFunction<SubsetSolution<Integer>, AccessionSSRMarkerMatrix<Integer>>) objectiveFunction
+			    .copy();
+
+			assertEquals("Wrong number of components!", 2, copy
+			    .getObjectiveFunctions().size());
+
+			for (int i = 0; i < 2; ++i)
+			{
+				assertNotSame("Component shared!", objectiveFunction
+				    .getObjectiveFunctions().get(i), copy.getObjectiveFunctions()
+				    .get(i));
+			}
+
+			assertSame("Distances not shared!", modifiedRogers.getDistanceCache(),
+			    ((ModifiedRogersDistanceSSR<Integer>) copy.getObjectiveFunctions()
+			        .get(0)).getDistanceCache());
+
+			List<Integer> subset = createSubsets(data.getSize()).get(0);
+
+			assertEquals("Score not equal!",
+			    objectiveFunction.calculate(new IntegerSubsetSolution(data
+			        .getIndices(), subset)),
+			    copy.calculate(new IntegerSubsetSolution(data.getIndices(), subset)),
+			    PRECISION);
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testNonPositionalIndices()
+	{
+		try
+		{
+			NameIndexedData data = new NameIndexedData(NON_POSITIONAL_SIZE);
+			long pairCount = (long) NON_POSITIONAL_SIZE * (NON_POSITIONAL_SIZE - 1) / 2;
+
+			// the dense cache fits, the names are looked up to their positions
+			NameDistance measure = new NameDistance();
+			measure.setData(data);
+
+			calculateAll(measure, data);
+
+			assertEquals("Distances not memoized!", pairCount,
+			    measure.calculationCount);
+			assertEquals("Not all distances stored!", pairCount, measure
+			    .getDistanceCache().getComputedCount());
+
+			// too small for the dense cache, a bounded cache of this size is used
+			measure = new NameDistance();
+			measure.setMaximumDistanceCacheSize(BoundedDistanceCache.SLOT_SIZE
+			    * 2048);
+			measure.setData(data);
+
+			calculateAll(measure, data);
+
+			assertNull("Dense cache created!", measure.getDistanceCache());
+			assertTrue("Bounded cache exceeded!", measure.getBoundedDistanceCache()
+			    .getMemorySize() <= BoundedDistanceCache.SLOT_SIZE * 2048);
+
+			// no memoization at all
+			measure = new NameDistance();
+			measure.setMaximumDistanceCacheSize(0);
+			measure.setData(data);
+
+			calculateAll(measure, data);
+
+			assertNull("Dense cache created!", measure.getDistanceCache());
+			assertNull("Bounded cache created!", measure.getBoundedDistanceCache());
+			assertEquals("Distances memoized!", 2 * pairCount,
+			    measure.calculationCount);
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Calculates the distances between all pairs twice
+	 */
+	private void calculateAll(NameDistance measure, NameIndexedData data)
+	    throws CoreHunterException
+	{
+		List<String> indices = data.getIndices();
+
+		for (int k = 0; k < 2; ++k)
+		{
+			for (int i = 0; i < indices.size(); ++i)
+			{
+				for (int j = i + 1; j < indices.size(); ++j)
+				{
+					assertEquals("Distance not correct!", Math.abs(i - j),
+					    measure.calculate(indices.get(j), indices.get(i)), PRECISION);
+				}
+			}
+		}
+	}
+
+	private int countDistinctCaches(ModifiedRogersDistanceSSR<Integer> measure,
+	    int copyCount) throws CoreHunterException
+	{
+		int count = 1;
+
+		for (int i = 0; i < copyCount; ++i)
+		{
+			if (((ModifiedRogersDistanceSSR<Integer>) measure.copy())
+			    .getDistanceCache() != measure.getDistanceCache())
+			{
+				++count;
+			}
+		}
+
+		return count;
+	}
+
+	private long countDistinctPairs(List<List<Integer>> subsets, int size)
+	{
+		boolean[][] pairs = new boolean[size][size];
+		long count = 0;
+
+		for (List<Integer> subset : subsets)
+		{
+			for (int i : subset)
+			{
+				for (int j : subset)
+				{
+					if (i < j && !pairs[i][j])
+					{
+						pairs[i][j] = true;
+						++count;
+					}
+				}
+			}
+		}
+
+		return count;
+	}
+
+	private List<List<Integer>> createSubsets(int size)
+	{
+		Random random = new Random(42);
+		List<List<Integer>> subsets = new ArrayList<List<Integer>>(SUBSET_COUNT);
+
+		for (int s = 0; s < SUBSET_COUNT; ++s)
+		{
+			List<Integer> subset = new ArrayList<Integer>(SUBSET_SIZE);
+
+			while (subset.size() < SUBSET_SIZE)
+			{
+				Integer index = random.nextInt(size);
+
+				if (!subset.contains(index))
+				{
+					subset.add(index);
+				}
+			}
+
+			subsets.add(subset);
+		}
+
+		return subsets;
+	}
+
+	private AccessionSSRMarkerMatrix<Integer> readData()
+	    throws CoreHunterException
+	{
+		return new AccessionSSRMarkerMatrixListImplDataFileReader(DATA_NAME,
+		    getResource(DATA_NAME), AbstractFileUtility.COMMA_DELIMITER).readData();
+	}
+
+	private File getResource(String name)
+	{
+		return new File(getClass().getResource("/" + name).getFile());
+	}
+
+	/**
+	 * Dataset indexed by names, which are not the positions of the indices
+	 */
+	private static class NameIndexedData extends EntityImpl implements
+	    IndexedData<String>
+	{
+		private List<String>	indices;
+
+		private NameIndexedData(int size)
+		{
+			super("names");
+
+			indices = new ArrayList<String>(size);
+
+			for (int i = 0; i < size; ++i)
+			{
+				indices.add("name" + i);
+			}
+		}
+
+		@Override
+		public List<String> getIndices()
+		{
+			return indices;
+		}
+
+		@Override
+		public int getSize()
+		{
+			return indices.size();
+		}
+
+		@Override
+		public void validate() throws CoreHunterException
+		{
+		}
+	}
+
+	/**
+	 * Distance between the numbers in two names, counting how many distances
+	 * are calculated rather than memoized
+	 */
+	private static class NameDistance extends
+	    AbstractDistanceMeasure<String, NameIndexedData>
+	{
+		private int	calculationCount;
+
+		private NameDistance()
+		{
+			super("ND", "Name distance", DistanceMeasureType.MEAN_DISTANCE);
+		}
+
+		private NameDistance(NameDistance distance) throws CoreHunterException
+		{
+			super(distance);
+		}
+
+		@Override
+		public ObjectiveFunction<SubsetSolution<String>> copy()
+		    throws CoreHunterException
+		{
+			return new NameDistance(this);
+		}
+
+		@Override
+		public double calculate(String index1, String index2)
+		{
+			double distance = getMemoizedValue(index1, index2);
+
+			if (distance == MISSING_VAL)
+			{
+				++calculationCount;
+				distance = Math.abs(Integer.parseInt(index1.substring(4))
+				    - Integer.parseInt(index2.substring(4)));
+				setMemoizedValue(index1, index2, distance);
+			}
+
+			return distance;
+		}
+	}
+}
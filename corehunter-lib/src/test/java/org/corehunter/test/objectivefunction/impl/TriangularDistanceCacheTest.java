@@ -0,0 +1,198 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.test.objectivefunction.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.distance.DistanceStorageType;
+import org.corehunter.model.impl.AbstractFileUtility;
+import org.corehunter.model.ssr.AccessionSSRMarkerMatrix;
+import org.corehunter.model.ssr.impl.AccessionSSRMarkerMatrixListImplDataFileReader;
+import org.corehunter.objectivefunction.DistanceMeasureType;
+import org.corehunter.objectivefunction.impl.TriangularDistanceCache;
+import org.corehunter.objectivefunction.ssr.CavalliSforzaEdwardsDistanceSSR;
+import org.corehunter.objectivefunction.ssr.ModifiedRogersDistanceSSR;
+import org.junit.Test;
+
+public class TriangularDistanceCacheTest
+{
+	private static final String	SSR_DATA_NAME	= "bul.csv";
+	private static final double	MISSING	      = -1.0;
+	private static final double	PRECISION	    = 0.0000001;
+
+	@Test
+	public void testCache()
+	{
+		testCache(DistanceStorageType.DOUBLE);
+		testCache(DistanceStorageType.FLOAT);
+	}
+
+	@Test
+	public void testSSRDistances()
+	{
+		try
+		{
+			AccessionSSRMarkerMatrix<Integer> data = new AccessionSSRMarkerMatrixListImplDataFileReader(
+			    SSR_DATA_NAME, getResource(SSR_DATA_NAME),
+			    AbstractFileUtility.COMMA_DELIMITER).readData();
+
+			int size = data.getSize();
+			long distanceCount = (long) size * (size - 1) / 2;
+
+			ModifiedRogersDistanceSSR<Integer> uncached = new ModifiedRogersDistanceSSR<Integer>();
+			uncached.setMaximumDistanceCacheSize(0);
+			uncached.setData(data);
+
+			ModifiedRogersDistanceSSR<Integer> cached = new ModifiedRogersDistanceSSR<Integer>();
+			cached.setData(data);
+
+			assertNull("Cache created before use!", cached.getDistanceCache());
+
+			assertEquals("Mean distance not equal!", uncached.calculate(null),
+			    cached.calculate(null), PRECISION);
+
+			TriangularDistanceCache cache = cached.getDistanceCache();
+
+			assertNotNull("Cache not created!", cache);
+			assertNull("Cache created beyond maximum size!",
+			    uncached.getDistanceCache());
+			assertEquals("Not all distances cached!", distanceCount,
+			    cache.getComputedCount());
+
+			for (int i = 0; i < size; ++i)
+			{
+				for (int j = i + 1; j < size; ++j)
+				{
+					assertEquals("Cached distance not equal!", uncached.calculate(i, j),
+					    cache.getDistance(j, i, MISSING), PRECISION);
+				}
+			}
+
+			// the settings are kept by copies, but the cache is not
+			ModifiedRogersDistanceSSR<Integer> copy = (ModifiedRogersDistanceSSR<Integer>) uncached
+			    .copy();
+
+			copy.calculate(null);
+
+			assertNull("Setting not copied!", copy.getDistanceCache());
+
+			CavalliSforzaEdwardsDistanceSSR<Integer> precomputed = new CavalliSforzaEdwardsDistanceSSR<Integer>(
+			    DistanceMeasureType.MIN_DISTANCE);
+			precomputed.setDistanceCacheStorageType(DistanceStorageType.FLOAT);
+			precomputed.setData(data);
+			precomputed.precomputeDistances();
+
+			assertEquals("Not all distances precomputed!", distanceCount,
+			    precomputed.getDistanceCache().getComputedCount());
+			assertEquals("Storage type not used!", DistanceStorageType.FLOAT,
+			    precomputed.getDistanceCache().getStorageType());
+
+			CavalliSforzaEdwardsDistanceSSR<Integer> expected = new CavalliSforzaEdwardsDistanceSSR<Integer>(
+			    DistanceMeasureType.MIN_DISTANCE);
+			expected.setMaximumDistanceCacheSize(0);
+			expected.setData(data);
+
+			assertEquals("Minimum distance not equal!", expected.calculate(null),
+			    precomputed.calculate(null), PRECISION);
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	private void testCache(DistanceStorageType storageType)
+	{
+		int size = 100;
+
+		TriangularDistanceCache cache = new TriangularDistanceCache(size,
+		    storageType);
+
+		assertEquals("Wrong number of distances!", size * (size - 1) / 2,
+		    cache.getDistanceCount());
+		assertEquals("Wrong memory size!", cache.getDistanceCount()
+		    * (storageType == DistanceStorageType.FLOAT ? 4 : 8) + 78 * 8,
+		    TriangularDistanceCache.getMemorySize(size, storageType));
+
+		for (int i = 0; i < size; ++i)
+		{
+			for (int j = 0; j < size; ++j)
+			{
+				assertFalse("Distance computed!", cache.isComputed(i, j));
+				assertEquals("Missing value not returned!", MISSING,
+				    cache.getDistance(i, j, MISSING), 0.0);
+			}
+		}
+
+		for (int i = 0; i < size; ++i)
+		{
+			for (int j = i; j < size; j += 3)
+			{
+				cache.setDistance(j, i, i + j / 1000.0);
+			}
+		}
+
+		long computedCount = 0;
+
+		for (int i = 0; i < size; ++i)
+		{
+			for (int j = 0; j < size; ++j)
+			{
+				int min = Math.min(i, j);
+				int max = Math.max(i, j);
+
+				if (min != max && (max - min) % 3 == 0)
+				{
+					assertTrue("Distance not computed!", cache.isComputed(i, j));
+					assertEquals("Distance not equal!", min + max / 1000.0,
+					    cache.getDistance(i, j, MISSING), 0.00001);
+
+					++computedCount;
+				}
+				else
+				{
+					assertFalse("Distance computed!", cache.isComputed(i, j));
+				}
+			}
+		}
+
+		assertEquals("Wrong number of computed distances!", computedCount / 2,
+		    cache.getComputedCount());
+
+		// NaN is a valid distance
+		cache.setDistance(1, 2, Double.NaN);
+
+		assertTrue("NaN not cached!",
+		    Double.isNaN(cache.getDistance(2, 1, MISSING)));
+
+		cache.clear();
+
+		assertEquals("Cache not cleared!", 0, cache.getComputedCount());
+		assertFalse("Distance computed!", cache.isComputed(0, 3));
+	}
+
+	private File getResource(String name)
+	{
+		return new File(getClass().getResource("/" + name).getFile());
+	}
+}
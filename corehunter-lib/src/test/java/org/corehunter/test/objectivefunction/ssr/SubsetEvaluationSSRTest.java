@@ -0,0 +1,125 @@
+// Copyright 2012 Guy Davenport, Herman De Beukelaer
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package org.corehunter.test.objectivefunction.ssr;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.corehunter.CoreHunterException;
+import org.corehunter.model.impl.AbstractFileUtility;
+import org.corehunter.model.ssr.AccessionSSRMarkerMatrix;
+import org.corehunter.model.ssr.impl.AccessionSSRMarkerMatrixListImplDataFileReader;
+import org.corehunter.objectivefunction.ssr.AbstractAccessionSSRObjectiveFunction;
+import org.corehunter.objectivefunction.ssr.CoverageSSR;
+import org.corehunter.objectivefunction.ssr.ExternalDistanceMeasureSSR;
+import org.corehunter.objectivefunction.ssr.HeterozygousLociDiversitySSR;
+import org.corehunter.objectivefunction.ssr.NumberEffectiveAllelesSSR;
+import org.corehunter.objectivefunction.ssr.ProportionNonInformativeAllelesSSR;
+import org.corehunter.objectivefunction.ssr.ShannonsDiversitySSR;
+import org.corehunter.search.solution.impl.IntegerSubsetSolution;
+import org.junit.Test;
+
+/**
+ * Checks that the SSR objective functions evaluate the subset of a solution,
+ * not all the accessions from which it is selected
+ */
+public class SubsetEvaluationSSRTest
+{
+	private static final String	SSR_DATA_NAME	     = "bul.csv";
+	private static final String	SSR_DIST_DATA_NAME	= "ssrdata-dist.txt";
+	private static final int	  SUBSET_SIZE	       = 10;
+	private static final double	PRECISION	         = 0.0000001;
+
+	@Test
+	public void testExternalDistance()
+	{
+		try
+		{
+			AccessionSSRMarkerMatrix<Integer> data = readData(SSR_DIST_DATA_NAME);
+
+			ExternalDistanceMeasureSSR<Integer> objectiveFunction = new ExternalDistanceMeasureSSR<Integer>();
+			objectiveFunction.setData(data);
+
+			List<Integer> subset = data.getIndices().subList(0, 2);
+
+			double expected = (data.getExternalDistance(subset.get(0)) + data
+			    .getExternalDistance(subset.get(1))) / 2;
+
+			assertEquals("Not the mean of the subset!", expected,
+			    objectiveFunction.calculate(new IntegerSubsetSolution(data
+			        .getIndices(), subset)), PRECISION);
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testDiversity()
+	{
+		try
+		{
+			AccessionSSRMarkerMatrix<Integer> data = readData(SSR_DATA_NAME);
+
+			List<AbstractAccessionSSRObjectiveFunction<Integer>> objectiveFunctions = new ArrayList<AbstractAccessionSSRObjectiveFunction<Integer>>();
+
+			objectiveFunctions.add(new ShannonsDiversitySSR<Integer>());
+			objectiveFunctions.add(new HeterozygousLociDiversitySSR<Integer>());
+			objectiveFunctions.add(new NumberEffectiveAllelesSSR<Integer>());
+			objectiveFunctions.add(new ProportionNonInformativeAllelesSSR<Integer>());
+			objectiveFunctions.add(new CoverageSSR<Integer>());
+
+			List<Integer> subset = data.getIndices().subList(0, SUBSET_SIZE);
+
+			for (AbstractAccessionSSRObjectiveFunction<Integer> objectiveFunction : objectiveFunctions)
+			{
+				objectiveFunction.setData(data);
+
+				double evaluation = objectiveFunction
+				    .calculate(new IntegerSubsetSolution(data.getIndices(), subset));
+
+				objectiveFunction.flushCachedResults();
+
+				// the same subset, selected without any remaining accessions
+				assertEquals(objectiveFunction.getName()
+				    + " depends on the remaining accessions!",
+				    objectiveFunction.calculate(new IntegerSubsetSolution(subset,
+				        subset)), evaluation, PRECISION);
+			}
+		}
+		catch (CoreHunterException e)
+		{
+			e.printStackTrace();
+			fail(e.getMessage());
+		}
+	}
+
+	private AccessionSSRMarkerMatrix<Integer> readData(String name)
+	    throws CoreHunterException
+	{
+		return new AccessionSSRMarkerMatrixListImplDataFileReader(name,
+		    getResource(name), AbstractFileUtility.COMMA_DELIMITER).readData();
+	}
+
+	private File getResource(String name)
+	{
+		return new File(getClass().getResource("/" + name).getFile());
+	}
+}
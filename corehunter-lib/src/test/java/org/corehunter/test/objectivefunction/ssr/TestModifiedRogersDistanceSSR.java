@@ -2,6 +2,7 @@ package org.corehunter.test.objectivefunction.ssr;
 
 import static org.junit.Assert.assertEquals;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -10,6 +11,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.corehunter.model.accession.Accession;
+import org.corehunter.model.impl.AbstractFileUtility;
+import org.corehunter.model.ssr.AccessionSSRMarkerMatrix;
+import org.corehunter.model.ssr.SSRAllele;
+import org.corehunter.model.ssr.SSRMarker;
+import org.corehunter.model.ssr.impl.AccessionSSRMarkerMatrixListImplDataFileReader;
 import org.corehunter.objectivefunction.DistanceMeasureType;
 import org.corehunter.objectivefunction.ssr.AbstractAccessionSSRDistanceMeasure;
 import org.corehunter.objectivefunction.ssr.ModifiedRogersDistanceSSR;
@@ -28,6 +35,7 @@ import org.junit.Test;
 public final class TestModifiedRogersDistanceSSR
 {
 	private static final double	precision	= 0.00001;
+	private static final String	SSR_DATA_NAME_10	= "bul10.csv";
 	private AccessionSSRMarkerMatrixListImplWrapperForTests	        ssrData, singleAccessionSSRData;
 	private AbstractAccessionSSRDistanceMeasure<Integer>	    mr;
 
@@ -191,7 +199,40 @@ public final class TestModifiedRogersDistanceSSR
         @Test
 	public void testCacheFlushUponNewData() throws Exception
 	{
-            // TO DO test cache flush upon setting new dataset
+            AccessionSSRMarkerMatrix<Integer> data = readData(SSR_DATA_NAME_10);
+            AccessionSSRMarkerMatrix<Integer> equalData = readData(SSR_DATA_NAME_10);
+            
+            ModifiedRogersDistanceSSR<Integer> measure = new ModifiedRogersDistanceSSR<Integer>();
+            measure.setData(data);
+            measure.calculate(null);
+            
+            // change both datasets in the same way, so they are still equal
+            changeValue(data);
+            changeValue(equalData);
+            
+            measure.setData(equalData);
+            
+            ModifiedRogersDistanceSSR<Integer> expected = new ModifiedRogersDistanceSSR<Integer>();
+            expected.setData(data);
+            
+            assertEquals(expected.calculate(null), measure.calculate(null), precision);
+        }
+        
+        private void changeValue(AccessionSSRMarkerMatrix<Integer> data) throws Exception
+        {
+            Accession accession = data.getRowHeaders().getElement(0);
+            SSRMarker marker = data.getColumnHeaders().getElement(0);
+            SSRAllele allele = marker.getAlleles().get(0);
+            Double value = data.getValue(accession, marker, allele);
+            
+            data.setValue(accession, marker, allele, value == null || value < 0.5 ? 1.0 : 0.0);
+        }
+        
+        private AccessionSSRMarkerMatrix<Integer> readData(String name) throws Exception
+        {
+            return new AccessionSSRMarkerMatrixListImplDataFileReader(
+                new File(getClass().getResource("/" + name).getFile()),
+                AbstractFileUtility.COMMA_DELIMITER).readData();
         }
 
 }